@@ -16,6 +16,7 @@ import edu.berkeley.cs186.database.index.BPlusTreeMetadata;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
 import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.BufferStats;
 import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
 import edu.berkeley.cs186.database.memory.EvictionPolicy;
 import edu.berkeley.cs186.database.query.QueryPlan;
@@ -24,7 +25,10 @@ import edu.berkeley.cs186.database.query.SortOperator;
 import edu.berkeley.cs186.database.query.expr.Expression;
 import edu.berkeley.cs186.database.recovery.ARIESRecoveryManager;
 import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import edu.berkeley.cs186.database.recovery.LogManager;
+import edu.berkeley.cs186.database.recovery.LogTransport;
 import edu.berkeley.cs186.database.recovery.RecoveryManager;
+import edu.berkeley.cs186.database.recovery.StandbyRecoveryManager;
 import edu.berkeley.cs186.database.table.*;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.stats.TableStats;
@@ -34,6 +38,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Phaser;
@@ -82,6 +87,68 @@ public class Database implements AutoCloseable {
     private static final int DEFAULT_BUFFER_SIZE = 262144; // default of 1G
     // effective page size - table metadata size
     private static final int MAX_SCHEMA_SIZE = 4006;
+    // file in the database directory listing the pages in the buffer cache at the last
+    // checkpoint or close, used to prewarm the buffer cache
+    private static final String HOT_PAGE_FILE_NAME = "hot_pages";
+
+    /**
+     * How the buffer cache is prewarmed when an existing database is opened, from the list
+     * of pages that were in it when the database was last closed (or checkpointed).
+     */
+    public enum PrewarmMode {
+        // pages are only loaded when they are requested
+        NONE,
+        // the pages are loaded before the constructor returns
+        BLOCKING,
+        // the pages are loaded by a background thread, while the database is in use
+        BACKGROUND
+    }
+
+    /**
+     * Settings of a database that are fixed when it is opened, and not persisted. Every
+     * setting has a default, and setters return the options, so they can be chained.
+     */
+    public static class Options {
+        // whether the buffer cache is allocated off-heap
+        private boolean offHeapBuffers = false;
+        // how the buffer cache is prewarmed, if the database already exists
+        private PrewarmMode prewarmMode = PrewarmMode.NONE;
+        // number of threads to redo the log with during restart recovery
+        private int redoThreads = 1;
+
+        /**
+         * @param offHeapBuffers whether to allocate the buffer cache off-heap (see
+         *                       BufferManager); false by default
+         * @return these options
+         */
+        public Options setOffHeapBuffers(boolean offHeapBuffers) {
+            this.offHeapBuffers = offHeapBuffers;
+            return this;
+        }
+
+        /**
+         * @param prewarmMode how to prewarm the buffer cache, if the database already
+         *                    exists; PrewarmMode.NONE by default
+         * @return these options
+         */
+        public Options setPrewarmMode(PrewarmMode prewarmMode) {
+            this.prewarmMode = prewarmMode;
+            return this;
+        }
+
+        /**
+         * @param redoThreads number of threads to redo the log with during restart recovery
+         *                    (see ARIESRecoveryManager); 1 by default
+         * @return these options
+         */
+        public Options setRedoThreads(int redoThreads) {
+            if (redoThreads <= 0) {
+                throw new IllegalArgumentException("number of redo threads must be positive");
+            }
+            this.redoThreads = redoThreads;
+            return this;
+        }
+    }
 
     // _metadata.tables, manages all tables in the database
     private Table tableMetadata;
@@ -103,6 +170,16 @@ public class Database implements AutoCloseable {
     private int workMem = 1024; // default of 4M
     // number of pages of memory available total
     private int numMemoryPages;
+    // number of contiguous pages reserved at a time for table (including temp table) partitions
+    private int tableExtentSize = 1;
+    // number of contiguous pages reserved at a time for index partitions
+    private int indexExtentSize = 1;
+    // extent sizes of specific tables ("table") and indices ("table.column")
+    private Map<String, Integer> extentSizes = new ConcurrentHashMap<>();
+    // whether pages of table (including temp table) partitions are compressed on disk
+    private boolean compressTables = false;
+    // compression setting of specific tables
+    private Map<String, Boolean> tableCompression = new ConcurrentHashMap<>();
     // active transactions
     private Phaser activeTransactions = new Phaser(0);
     // Statistics about the contents of the database.
@@ -156,7 +233,8 @@ public class Database implements AutoCloseable {
      * @param fileDir the directory to put the table files in
      * @param numMemoryPages the number of pages of memory in the buffer cache
      * @param lockManager the lock manager
-     * @param policy eviction policy for buffer cache
+     * @param policy eviction policy for buffer cache (e.g. ClockEvictionPolicy, LRUEvictionPolicy,
+     *               TwoQueueEvictionPolicy or ARCEvictionPolicy)
      */
     public Database(String fileDir, int numMemoryPages, LockManager lockManager,
                     EvictionPolicy policy) {
@@ -174,6 +252,21 @@ public class Database implements AutoCloseable {
      */
     public Database(String fileDir, int numMemoryPages, LockManager lockManager,
                     EvictionPolicy policy, boolean useRecoveryManager) {
+        this(fileDir, numMemoryPages, lockManager, policy, useRecoveryManager, new Options());
+    }
+
+    /**
+     * Creates a new database.
+     *
+     * @param fileDir the directory to put the table files in
+     * @param numMemoryPages the number of pages of memory in the buffer cache
+     * @param lockManager the lock manager
+     * @param policy eviction policy for buffer cache
+     * @param useRecoveryManager flag to enable or disable the recovery manager (ARIES)
+     * @param options other settings of the database
+     */
+    public Database(String fileDir, int numMemoryPages, LockManager lockManager,
+                    EvictionPolicy policy, boolean useRecoveryManager, Options options) {
         boolean initialized = setupDirectory(fileDir);
 
         numTransactions = 0;
@@ -181,14 +274,15 @@ public class Database implements AutoCloseable {
         this.lockManager = lockManager;
 
         if (useRecoveryManager) {
-            recoveryManager = new ARIESRecoveryManager(this::beginRecoveryTransaction);
+            recoveryManager = new ARIESRecoveryManager(this::beginRecoveryTransaction, options.redoThreads);
         } else {
             recoveryManager = new DummyRecoveryManager();
         }
 
         diskSpaceManager = new DiskSpaceManagerImpl(fileDir, recoveryManager);
         bufferManager = new BufferManager(diskSpaceManager, recoveryManager, numMemoryPages,
-                                              policy);
+                                              policy, options.offHeapBuffers);
+        bufferManager.setHotPageFile(Paths.get(fileDir, HOT_PAGE_FILE_NAME));
 
         // create log partition
         if (!initialized) diskSpaceManager.allocPart(0);
@@ -212,6 +306,72 @@ public class Database implements AutoCloseable {
             this.loadMetadataTables();
         }
         initTransaction.commit();
+
+        if (initialized && options.prewarmMode == PrewarmMode.BLOCKING) {
+            bufferManager.prewarm();
+        } else if (initialized && options.prewarmMode == PrewarmMode.BACKGROUND) {
+            bufferManager.startPrewarm();
+        }
+    }
+
+    /**
+     * Opens a standby database: a read-only copy of a primary database, kept up to date
+     * by replaying the log the primary ships to it (see
+     * ARIESRecoveryManager#startLogShipping and StandbyRecoveryManager). The standby is
+     * built from the primary's log alone, in a new directory, and serves read-only
+     * transactions (without temporary tables, so queries that sort or hash to disk are
+     * not supported). Transactions see the primary's changes up to the last point at
+     * which none of its transactions was in flight, so never changes of transactions that
+     * have not committed, and the state they see does not change while they run (replay
+     * waits for them).
+     *
+     * Waits until the primary's metadata tables are replayed.
+     *
+     * @param fileDir the directory to put the standby's files in; must not exist or be empty
+     * @param numMemoryPages the number of pages of memory in the buffer cache
+     * @param transport transport to receive the primary's log from
+     */
+    public Database(String fileDir, int numMemoryPages, LogTransport transport) {
+        if (setupDirectory(fileDir)) {
+            throw new DatabaseException("a standby must be opened on an empty directory");
+        }
+
+        numTransactions = 0;
+        this.numMemoryPages = numMemoryPages;
+        this.lockManager = new DummyLockManager();
+
+        StandbyRecoveryManager standby = new StandbyRecoveryManager(transport);
+        recoveryManager = standby;
+        diskSpaceManager = new DiskSpaceManagerImpl(fileDir, recoveryManager);
+        bufferManager = new BufferManager(diskSpaceManager, recoveryManager, numMemoryPages,
+                                          new ClockEvictionPolicy());
+
+        // Starts replaying the primary's log
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        recoveryManager.restart();
+        try {
+            if (!standby.awaitCommit()) {
+                RuntimeException failure = standby.getReplayFailure();
+                if (failure != null) throw new DatabaseException(failure);
+                throw new DatabaseException("log shipping ended before the primary's metadata tables " +
+                                            "were replayed");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            recoveryManager.close();
+            bufferManager.close();
+            diskSpaceManager.close();
+            throw new DatabaseException("interrupted while waiting for the primary's metadata tables");
+        } catch (DatabaseException e) {
+            recoveryManager.close();
+            bufferManager.close();
+            diskSpaceManager.close();
+            throw e;
+        }
+
+        Transaction initTransaction = beginTransaction();
+        this.loadMetadataTables();
+        initTransaction.commit();
     }
 
     private boolean setupDirectory(String fileDir) {
@@ -252,6 +412,8 @@ public class Database implements AutoCloseable {
         PageDirectory pageDirectory = new PageDirectory(bufferManager, 2, indexInfoPage0, (short) 0,
                                               indexInfoContext);
         indexMetadata = new Table(INDEX_INFO_TABLE_NAME, getIndexInfoSchema(), pageDirectory, indexInfoContext, stats);
+        // laid out as loadMetadataTables loads it
+        indexMetadata.setFullPageRecords();
     }
 
     private void loadMetadataTables() {
@@ -291,9 +453,13 @@ public class Database implements AutoCloseable {
 
         dropDemoTables();
 
+        // a standby stops replaying before its pages are written back
+        if (isStandby()) this.recoveryManager.close();
+
+        this.bufferManager.saveHotPages();
         this.bufferManager.evictAll();
 
-        this.recoveryManager.close();
+        if (!isStandby()) this.recoveryManager.close();
 
         this.tableMetadata = null;
         this.indexMetadata = null;
@@ -314,6 +480,72 @@ public class Database implements AutoCloseable {
         return bufferManager;
     }
 
+    /**
+     * @return the number of pages of memory in the buffer cache
+     */
+    public int getNumMemoryPages() {
+        return this.numMemoryPages;
+    }
+
+    /**
+     * Resizes the buffer cache while the database is running. Shrinking the buffer evicts
+     * the pages in the frames that are dropped (writing them back first if dirty), and
+     * waits for those frames to be unpinned. Work memory is capped by the new size.
+     *
+     * @param numMemoryPages the new number of pages of memory in the buffer cache
+     * @throws IllegalStateException if frames to be dropped stay pinned
+     */
+    public void setNumMemoryPages(int numMemoryPages) {
+        this.bufferManager.resize(numMemoryPages);
+        this.numMemoryPages = numMemoryPages;
+    }
+
+    /**
+     * Sets whether the changes a transaction makes to a page are logged together when
+     * the page is unpinned, rather than as each write is made (see
+     * BufferManager#setWriteBatching). The setting is not persisted.
+     *
+     * @param writeBatching whether to batch page writes
+     */
+    public void setWriteBatching(boolean writeBatching) {
+        this.bufferManager.setWriteBatching(writeBatching);
+    }
+
+    /**
+     * Returns the ARIES recovery manager, through which its settings (e.g. group commit)
+     * are changed while the database is running. These settings are not persisted.
+     *
+     * @return the recovery manager
+     * @throws DatabaseException if the recovery manager is not enabled
+     */
+    public ARIESRecoveryManager getARIESRecoveryManager() {
+        if (!(this.recoveryManager instanceof ARIESRecoveryManager)) {
+            throw new DatabaseException("the recovery manager is not enabled");
+        }
+        return (ARIESRecoveryManager) this.recoveryManager;
+    }
+
+    /**
+     * @return whether this is a standby database, replaying the log of a primary
+     */
+    public boolean isStandby() {
+        return this.recoveryManager instanceof StandbyRecoveryManager;
+    }
+
+    /**
+     * Returns the recovery manager of a standby database, which reports how far it has
+     * replayed the primary's log.
+     *
+     * @return the recovery manager
+     * @throws DatabaseException if this is not a standby database
+     */
+    public StandbyRecoveryManager getStandbyRecoveryManager() {
+        if (!isStandby()) {
+            throw new DatabaseException("not a standby database");
+        }
+        return (StandbyRecoveryManager) this.recoveryManager;
+    }
+
     public int getWorkMem() {
         // cap work memory at number of memory pages -- this is likely to cause out of memory
         // errors if actually set this high
@@ -324,6 +556,95 @@ public class Database implements AutoCloseable {
         this.workMem = workMem;
     }
 
+    /**
+     * Sets the default extent size of tables: the number of contiguous pages the
+     * disk space manager reserves at a time when a table grows. Larger extents keep
+     * a table's data pages physically sequential. Extent sizes are not persisted, and
+     * only affect pages allocated after the call.
+     *
+     * @param extentSize number of pages per extent
+     */
+    public void setTableExtentSize(int extentSize) {
+        checkExtentSize(extentSize);
+        this.tableExtentSize = extentSize;
+    }
+
+    /**
+     * Sets the default extent size of indices. See setTableExtentSize.
+     *
+     * @param extentSize number of pages per extent
+     */
+    public void setIndexExtentSize(int extentSize) {
+        checkExtentSize(extentSize);
+        this.indexExtentSize = extentSize;
+    }
+
+    /**
+     * Sets the extent size of a single table, overriding the default.
+     *
+     * @param tableName name of the table
+     * @param extentSize number of pages per extent
+     */
+    public void setExtentSize(String tableName, int extentSize) {
+        checkExtentSize(extentSize);
+        this.extentSizes.put(normalize(tableName), extentSize);
+    }
+
+    /**
+     * Sets the extent size of the index on tableName(columnName), overriding the default.
+     *
+     * @param tableName name of the table
+     * @param columnName name of the indexed column
+     * @param extentSize number of pages per extent
+     */
+    public void setExtentSize(String tableName, String columnName, int extentSize) {
+        checkExtentSize(extentSize);
+        this.extentSizes.put(normalize(tableName) + "." + normalize(columnName), extentSize);
+    }
+
+    /**
+     * Sets whether tables compress their pages on disk by default. Compressed pages are
+     * read back transparently whatever the current setting, so this may be changed at
+     * any time; it only affects pages written after the call. The setting is not persisted.
+     *
+     * @param compress whether to compress table pages
+     */
+    public void setTableCompression(boolean compress) {
+        this.compressTables = compress;
+    }
+
+    /**
+     * Sets whether a single table compresses its pages on disk, overriding the default.
+     *
+     * @param tableName name of the table
+     * @param compress whether to compress the table's pages
+     */
+    public void setCompression(String tableName, boolean compress) {
+        this.tableCompression.put(normalize(tableName), compress);
+    }
+
+    // Applies per-table storage settings to a table's partition. Temp tables
+    // (tableName == null) use the defaults.
+    private void configureTablePartition(int partNum, String tableName) {
+        int extentSize = tableExtentSize;
+        boolean compress = compressTables;
+        if (tableName != null) {
+            tableName = normalize(tableName);
+            extentSize = extentSizes.getOrDefault(tableName, extentSize);
+            compress = tableCompression.getOrDefault(tableName, compress);
+        }
+        diskSpaceManager.setExtentSize(partNum, extentSize);
+        diskSpaceManager.setCompression(partNum, compress);
+    }
+
+    private void checkExtentSize(int extentSize) {
+        // an extent must fit in the data pages managed by one header page
+        int maxExtentSize = DiskSpaceManager.PAGE_SIZE * 8;
+        if (extentSize < 1 || extentSize > maxExtentSize) {
+            throw new IllegalArgumentException("extent size must be between 1 and " + maxExtentSize);
+        }
+    }
+
     /**
      * @return Schema for _metadata.tables with fields:
      *   | field name   | field type
@@ -448,6 +769,7 @@ public class Database implements AutoCloseable {
     // TableMetadata -> Table object
     private Table tableFromMetadata(TableMetadata metadata) {
         String tableName = normalize(metadata.tableName);
+        configureTablePartition(metadata.partNum, tableName);
         LockContext tableContext = getTableContext(tableName);
         long page0 = DiskSpaceManager.getVirtualPageNum(metadata.partNum, 0);
         PageDirectory pd = new PageDirectory(bufferManager, metadata.partNum, page0, (short) 0, tableContext);
@@ -482,6 +804,67 @@ public class Database implements AutoCloseable {
         return result;
     }
 
+    /**
+     * @return Schema for buffer statistics with fields:
+     *   | field name   | field type
+     * --+--------------+------------
+     * 0 | part_num     | int
+     * 1 | name         | string(65)
+     * 2 | kind         | string(5)
+     * 3 | resident     | int
+     * 4 | hits         | long
+     * 5 | misses       | long
+     * 6 | hit_ratio    | float
+     * 7 | evictions    | long
+     * 8 | writebacks   | long
+     * 9 | pin_wait_ms  | float
+     */
+    public Schema getBufferStatsSchema() {
+        return new Schema()
+                .add("part_num", Type.intType())
+                .add("name", Type.stringType(65))
+                .add("kind", Type.stringType(5))
+                .add("resident", Type.intType())
+                .add("hits", Type.longType())
+                .add("misses", Type.longType())
+                .add("hit_ratio", Type.floatType())
+                .add("evictions", Type.longType())
+                .add("writebacks", Type.longType())
+                .add("pin_wait_ms", Type.floatType());
+    }
+
+    /**
+     * Takes a snapshot of the buffer statistics of every partition, labelled with the
+     * table or index stored in the partition. The kind of a partition is one of "log",
+     * "table", "index", or "temp" (temporary tables of running transactions, and
+     * partitions of tables or indices dropped since the statistics were last reset).
+     *
+     * @return one record per partition, with schema getBufferStatsSchema()
+     */
+    public List<Record> getBufferStatsRecords() {
+        BufferStats bufferStats = bufferManager.getStats();
+        Map<Integer, Pair<String, String>> labels = new HashMap<>();
+        labels.put(LogManager.LOG_PARTITION, new Pair<>("_log", "log"));
+        labels.put(1, new Pair<>(TABLE_INFO_TABLE_NAME, "table"));
+        labels.put(2, new Pair<>(INDEX_INFO_TABLE_NAME, "table"));
+        for (Record record : scanTableMetadataRecords()) {
+            labels.put(record.getValue(1).getInt(), new Pair<>(record.getValue(0).getString(), "table"));
+        }
+        for (Record record : scanIndexMetadataRecords()) {
+            String indexName = record.getValue(0).getString() + "." + record.getValue(1).getString();
+            labels.put(record.getValue(3).getInt(), new Pair<>(indexName, "index"));
+        }
+        List<Record> result = new ArrayList<>();
+        for (Map.Entry<Integer, BufferStats.PartitionStats> entry : bufferStats.getPartitions().entrySet()) {
+            Pair<String, String> label = labels.getOrDefault(entry.getKey(), new Pair<>("", "temp"));
+            BufferStats.PartitionStats s = entry.getValue();
+            result.add(new Record(entry.getKey(), label.getFirst(), label.getSecond(), s.getResidentPages(),
+                                  s.getHits(), s.getMisses(), (float) s.getHitRatio(), s.getEvictions(),
+                                  s.getWritebacks(), (float) (s.getPinWaitNanos() / 1e6)));
+        }
+        return result;
+    }
+
     /**
      * @param tableName
      * @param columnName
@@ -530,6 +913,8 @@ public class Database implements AutoCloseable {
     private BPlusTree indexFromMetadata(BPlusTreeMetadata metadata) {
         String tableName = normalize(metadata.getTableName());
         String columnName = normalize(metadata.getColName());
+        diskSpaceManager.setExtentSize(metadata.getPartNum(),
+                extentSizes.getOrDefault(tableName + "." + columnName, indexExtentSize));
         LockContext indexContext = lockManager.databaseContext().childContext(tableName + "." + columnName);
         return new BPlusTree(bufferManager, metadata, indexContext);
     }
@@ -629,13 +1014,20 @@ public class Database implements AutoCloseable {
 
         @Override
         public String createTempTable(Schema schema) {
+            if (isStandby()) {
+                throw new DatabaseException("temporary tables are not available on a standby database");
+            }
             String tempTableName = "tempTable" + tempTableCounter++;
             String tableName = prefixTempTableName(tempTableName);
 
             int partNum = diskSpaceManager.allocPart();
+            configureTablePartition(partNum, null);
             long pageNum = diskSpaceManager.allocPage(partNum);
             // We can use dummy contexts since this table will only be visible from the current transaction
             PageDirectory pageDirectory = new PageDirectory(bufferManager, partNum, pageNum, (short) 0, new DummyLockContext("_dummyPageDir"));
+            // Temporary tables (sort runs, hash partitions) are written once and read
+            // once, so their pages go through a ring instead of the whole buffer
+            pageDirectory.setBufferRing(bufferManager.newRing());
             tempTables.put(tempTableName, new Table(tableName, schema, pageDirectory, new DummyLockContext("_dummyTempTable" + tempTableName), stats));
             return tempTableName;
         }
@@ -1054,6 +1446,7 @@ public class Database implements AutoCloseable {
             }
             TableMetadata metadata = new TableMetadata(tableName);
             metadata.partNum = diskSpaceManager.allocPart();
+            configureTablePartition(metadata.partNum, tableName);
             metadata.pageNum = diskSpaceManager.allocPage(metadata.partNum);
             metadata.schema = s;
             synchronized (tableMetadata) {
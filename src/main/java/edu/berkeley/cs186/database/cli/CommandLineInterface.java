@@ -189,6 +189,18 @@ public class CommandLineInterface {
             List<Record> records = db.scanIndexMetadataRecords();
             new PrettyPrinter(out).printRecords(db.getIndexInfoSchema().getFieldNames(),
                     records.iterator());
+        } else if (cmd.equals("buffer")) {
+            if (tokens.length == 2 && tokens[1].equals("reset")) {
+                db.getBufferManager().resetStats();
+                this.out.println("Buffer statistics reset.");
+            } else if (tokens.length == 3 && tokens[1].equals("resize")) {
+                db.setNumMemoryPages(Integer.parseInt(tokens[2]));
+                this.out.printf("Buffer resized to %d pages.\n", db.getNumMemoryPages());
+            } else {
+                List<Record> records = db.getBufferStatsRecords();
+                new PrettyPrinter(out).printRecords(db.getBufferStatsSchema().getFieldNames(),
+                        records.iterator());
+            }
         } else if (cmd.equals("locks")) {
             if (tc == null) {
                 this.out.println("No locks held, because not currently in a transaction.");
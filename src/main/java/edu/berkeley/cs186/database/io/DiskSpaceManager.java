@@ -1,5 +1,7 @@
 package edu.berkeley.cs186.database.io;
 
+import java.nio.ByteBuffer;
+
 public interface DiskSpaceManager extends AutoCloseable {
     short PAGE_SIZE = 4096; // size of a page in bytes
     long INVALID_PAGE_NUM = -1L; // a page number that is always invalid
@@ -29,6 +31,42 @@ public interface DiskSpaceManager extends AutoCloseable {
      */
     void freePart(int partNum);
 
+    /**
+     * Sets the extent size of a partition: allocPage(int) reserves runs of this many
+     * contiguous pages at a time, and hands them out in order, so that pages allocated
+     * one after the other are also adjacent on disk. The default extent size is 1.
+     * Disk space managers that do not care about physical layout may ignore this.
+     *
+     * @param partNum partition number
+     * @param extentSize number of pages reserved at a time
+     */
+    default void setExtentSize(int partNum, int extentSize) {}
+
+    /**
+     * Sets whether pages of a partition are compressed when written. Compressed pages
+     * are always decompressed transparently on read, so changing this setting only affects
+     * pages written afterwards. Once compression was enabled on a partition, the first
+     * 4 bytes of its pages are reserved: pages that are stored as is must not have the top
+     * bit of the first byte set (pages of the buffer manager's data partitions never do).
+     * Disk space managers without compression support may ignore this.
+     *
+     * @param partNum partition number
+     * @param compress whether to compress pages written to the partition
+     */
+    default void setCompression(int partNum, boolean compress) {}
+
+    /**
+     * Gets the compression ratio achieved by a partition: the number of bytes of page data
+     * written to the partition since it was opened, divided by the number of bytes needed to
+     * store them. Pages written without compression count at a ratio of 1.
+     *
+     * @param partNum partition number
+     * @return compression ratio of the partition, or 1.0 if nothing has been written
+     */
+    default double getCompressionRatio(int partNum) {
+        return 1.0;
+    }
+
     /**
      * Allocates a new page.
      * @param partNum partition to allocate new page under
@@ -65,6 +103,107 @@ public interface DiskSpaceManager extends AutoCloseable {
      */
     void writePage(long page, byte[] buf);
 
+    /**
+     * Reads a page into a (possibly direct) byte buffer. The buffer's capacity must be
+     * the page size; its position and limit are ignored and left unchanged. Implementations
+     * may transfer data directly between the buffer and the OS.
+     *
+     * @param page number of page to be read
+     * @param buf buffer whose contents will be filled with page data
+     */
+    default void readPage(long page, ByteBuffer buf) {
+        if (buf.capacity() != PAGE_SIZE) {
+            throw new IllegalArgumentException("readPage expects a page-sized buffer");
+        }
+        byte[] bytes = new byte[PAGE_SIZE];
+        readPage(page, bytes);
+        ByteBuffer b = buf.duplicate();
+        b.clear();
+        b.put(bytes);
+    }
+
+    /**
+     * Writes to a page from a (possibly direct) byte buffer. The buffer's capacity must be
+     * the page size; its position and limit are ignored and left unchanged.
+     *
+     * @param page number of page to be written
+     * @param buf buffer that contains the new page data
+     */
+    default void writePage(long page, ByteBuffer buf) {
+        if (buf.capacity() != PAGE_SIZE) {
+            throw new IllegalArgumentException("writePage expects a page-sized buffer");
+        }
+        byte[] bytes = new byte[PAGE_SIZE];
+        ByteBuffer b = buf.duplicate();
+        b.clear();
+        b.get(bytes);
+        writePage(page, bytes);
+    }
+
+    /**
+     * Reads several pages. Pages that are adjacent on disk may be read with a single
+     * I/O, so callers should prefer this to calling readPage in a loop.
+     *
+     * @param pages numbers of pages to be read
+     * @param bufs byte buffers whose contents will be filled with page data, where
+     *             bufs[i] receives the contents of pages[i]
+     */
+    default void readPages(long[] pages, byte[][] bufs) {
+        if (pages.length != bufs.length) {
+            throw new IllegalArgumentException("readPages expects one buffer per page");
+        }
+        for (int i = 0; i < pages.length; ++i) {
+            readPage(pages[i], bufs[i]);
+        }
+    }
+
+    /**
+     * Writes to several pages. Pages that are adjacent on disk may be written with a
+     * single I/O, so callers should prefer this to calling writePage in a loop.
+     *
+     * @param pages numbers of pages to be written
+     * @param bufs byte buffers that contain the new page data, where bufs[i] holds
+     *             the new contents of pages[i]
+     */
+    default void writePages(long[] pages, byte[][] bufs) {
+        if (pages.length != bufs.length) {
+            throw new IllegalArgumentException("writePages expects one buffer per page");
+        }
+        for (int i = 0; i < pages.length; ++i) {
+            writePage(pages[i], bufs[i]);
+        }
+    }
+
+    /**
+     * Reads several pages into byte buffers, as in readPage(long, ByteBuffer).
+     *
+     * @param pages numbers of pages to be read
+     * @param bufs page-sized buffers, where bufs[i] receives the contents of pages[i]
+     */
+    default void readPages(long[] pages, ByteBuffer[] bufs) {
+        if (pages.length != bufs.length) {
+            throw new IllegalArgumentException("readPages expects one buffer per page");
+        }
+        for (int i = 0; i < pages.length; ++i) {
+            readPage(pages[i], bufs[i]);
+        }
+    }
+
+    /**
+     * Writes to several pages from byte buffers, as in writePage(long, ByteBuffer).
+     *
+     * @param pages numbers of pages to be written
+     * @param bufs page-sized buffers, where bufs[i] holds the new contents of pages[i]
+     */
+    default void writePages(long[] pages, ByteBuffer[] bufs) {
+        if (pages.length != bufs.length) {
+            throw new IllegalArgumentException("writePages expects one buffer per page");
+        }
+        for (int i = 0; i < pages.length; ++i) {
+            writePage(pages[i], bufs[i]);
+        }
+    }
+
     /**
      * Checks if a page is allocated
      *
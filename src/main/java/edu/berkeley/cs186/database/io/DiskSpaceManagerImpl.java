@@ -5,11 +5,13 @@ import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * An implementation of a disk space manager with virtual page translation, and
@@ -44,6 +46,19 @@ import java.util.concurrent.locks.ReentrantLock;
  * - the second header page follows
  * - the next 32K pages are data pages managed by the second header page
  * - etc.
+ *
+ * Data pages are normally read and written with positional file channel I/O. The disk space
+ * manager may instead be constructed in mapped I/O mode, in which each partition file is mapped
+ * into memory in fixed-size regions (mapped lazily, as pages in them are first accessed, and only up
+ * to the end of the file), and data pages are copied to and from the mappings. Writes are still forced
+ * to disk before writePage returns.
+ *
+ * Partitions may also compress their data pages. A compressed page keeps its page-aligned slot in the
+ * OS file, but only the compressed bytes (prefixed by their length, with a flag bit set) are written to
+ * the slot, so the flag is written atomically with the page. Pages that do not compress are stored as is.
+ * Once compression is enabled on a partition, an empty OS file next to the partition's marks it as
+ * compressed (see PartitionHandle#COMPRESSION_MARKER_SUFFIX), and pages stored as is in it must not start
+ * with the flag bit set; the buffer manager's pages never do.
  */
 public class DiskSpaceManagerImpl implements DiskSpaceManager {
     static final int MAX_HEADER_PAGES = PAGE_SIZE / 2; // 2 bytes per header page
@@ -52,18 +67,19 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
     // Name of base directory.
     private String dbDir;
 
-    // Info about each partition.
+    // Info about each partition. Lookups are lock-free; each partition's state is
+    // guarded by its own partition lock.
     private Map<Integer, PartitionHandle> partInfo;
 
     // Counter to generate new partition numbers.
     private AtomicInteger partNumCounter;
 
-    // Lock on the entire manager.
-    private ReentrantLock managerLock;
-
     // recovery manager
     private RecoveryManager recoveryManager;
 
+    // whether partitions use mapped I/O for data pages
+    private boolean useMappedIO;
+
     /**
      * Initialize the disk space manager using the given directory. Creates the directory
      * if not present.
@@ -71,11 +87,23 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
      * @param dbDir base directory of the database
      */
     public DiskSpaceManagerImpl(String dbDir, RecoveryManager recoveryManager) {
+        this(dbDir, recoveryManager, false);
+    }
+
+    /**
+     * Initialize the disk space manager using the given directory. Creates the directory
+     * if not present.
+     *
+     * @param dbDir base directory of the database
+     * @param useMappedIO whether to read and write data pages through memory mappings
+     *                    of the partition files
+     */
+    public DiskSpaceManagerImpl(String dbDir, RecoveryManager recoveryManager, boolean useMappedIO) {
         this.dbDir = dbDir;
         this.recoveryManager = recoveryManager;
-        this.partInfo = new HashMap<>();
+        this.useMappedIO = useMappedIO;
+        this.partInfo = new ConcurrentHashMap<>();
         this.partNumCounter = new AtomicInteger(0);
-        this.managerLock = new ReentrantLock();
 
         File dir = new File(dbDir);
         if (!dir.exists()) {
@@ -89,6 +117,10 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
                 throw new PageException("could not initialize disk space manager - directory is a file");
             }
             for (File f : files) {
+                if (!f.getName().matches("\\d+")) {
+                    // not a partition (e.g. a compression marker, or the buffer manager's hot page list)
+                    continue;
+                }
                 if (f.length() == 0) {
                     if (!f.delete()) {
                         throw new PageException("could not clean up unused file - " + f.getName());
@@ -98,7 +130,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
                 int fileNum = Integer.parseInt(f.getName());
                 maxFileNum = Math.max(maxFileNum, fileNum);
 
-                PartitionHandle pi = new PartitionHandle(fileNum, recoveryManager);
+                PartitionHandle pi = new PartitionHandle(fileNum, recoveryManager, useMappedIO);
                 pi.open(dbDir + "/" + f.getName());
                 this.partInfo.put(fileNum, pi);
             }
@@ -129,24 +161,17 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
     }
 
     private int allocPartHelper(int partNum) {
-        PartitionHandle pi;
-
-        this.managerLock.lock();
+        PartitionHandle pi = new PartitionHandle(partNum, recoveryManager, useMappedIO);
+        // Lock the partition before publishing it, so that nobody else can use it
+        // until it has been opened.
+        pi.partitionLock.lock();
         try {
-            if (this.partInfo.containsKey(partNum)) {
+            if (this.partInfo.putIfAbsent(partNum, pi) != null) {
                 throw new IllegalStateException("partition number " + partNum + " already exists");
             }
 
-            pi = new PartitionHandle(partNum, recoveryManager);
-            this.partInfo.put(partNum, pi);
-
-            pi.partitionLock.lock();
-        } finally {
-            this.managerLock.unlock();
-        }
-        try {
-            // We must open partition only after logging, but we need to release the
-            // manager lock first, in case the log manager is currently in the process
+            // We must open partition only after logging. No lock other than the new
+            // partition's is held here, in case the log manager is currently in the process
             // of allocating a new log page (for another txn's records).
             TransactionContext transaction = TransactionContext.getTransaction();
             if (transaction != null) {
@@ -162,22 +187,13 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
 
     @Override
     public void freePart(int partNum) {
-        PartitionHandle pi;
-
-        this.managerLock.lock();
-        try {
-            pi = this.partInfo.remove(partNum);
-            if (pi == null) {
-                throw new NoSuchElementException("no partition " + partNum);
-            }
-            pi.partitionLock.lock();
-        } finally {
-            this.managerLock.unlock();
-        }
+        PartitionHandle pi = lockPartition(partNum);
         try {
+            this.partInfo.remove(partNum, pi);
             try {
                 pi.freeDataPages();
                 pi.close();
+                pi.deleteCompressionMarker();
             } catch (IOException e) {
                 throw new PageException("could not close partition " + partNum + ": " + e.getMessage());
             }
@@ -197,15 +213,40 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
     }
 
     @Override
-    public long allocPage(int partNum) {
-        this.managerLock.lock();
-        PartitionHandle pi;
+    public void setExtentSize(int partNum, int extentSize) {
+        PartitionHandle pi = lockPartition(partNum);
         try {
-            pi = getPartInfo(partNum);
-            pi.partitionLock.lock();
+            pi.setExtentSize(extentSize);
         } finally {
-            this.managerLock.unlock();
+            pi.partitionLock.unlock();
         }
+    }
+
+    @Override
+    public void setCompression(int partNum, boolean compress) {
+        PartitionHandle pi = lockPartition(partNum);
+        try {
+            pi.setCompression(compress);
+        } catch (IOException e) {
+            throw new PageException("could not mark partition " + partNum + " as compressed: " + e.getMessage());
+        } finally {
+            pi.partitionLock.unlock();
+        }
+    }
+
+    @Override
+    public double getCompressionRatio(int partNum) {
+        PartitionHandle pi = lockPartition(partNum);
+        try {
+            return pi.getCompressionRatio();
+        } finally {
+            pi.partitionLock.unlock();
+        }
+    }
+
+    @Override
+    public long allocPage(int partNum) {
+        PartitionHandle pi = lockPartition(partNum);
         try {
             int pageNum = pi.allocPage();
             pi.writePage(pageNum, new byte[PAGE_SIZE]);
@@ -224,14 +265,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         int headerIndex = pageNum / DATA_PAGES_PER_HEADER;
         int pageIndex = pageNum % DATA_PAGES_PER_HEADER;
 
-        this.managerLock.lock();
-        PartitionHandle pi;
-        try {
-            pi = getPartInfo(partNum);
-            pi.partitionLock.lock();
-        } finally {
-            this.managerLock.unlock();
-        }
+        PartitionHandle pi = lockPartition(partNum);
         try {
             pi.allocPage(headerIndex, pageIndex);
             pi.writePage(pageNum, new byte[PAGE_SIZE]);
@@ -247,14 +281,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
     public void freePage(long page) {
         int partNum = DiskSpaceManager.getPartNum(page);
         int pageNum = DiskSpaceManager.getPageNum(page);
-        this.managerLock.lock();
-        PartitionHandle pi;
-        try {
-            pi = getPartInfo(partNum);
-            pi.partitionLock.lock();
-        } finally {
-            this.managerLock.unlock();
-        }
+        PartitionHandle pi = lockPartition(partNum);
         try {
             pi.freePage(pageNum);
         } catch (IOException e) {
@@ -269,16 +296,17 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         if (buf.length != PAGE_SIZE) {
             throw new IllegalArgumentException("readPage expects a page-sized buffer");
         }
+        this.readPage(page, ByteBuffer.wrap(buf));
+    }
+
+    @Override
+    public void readPage(long page, ByteBuffer buf) {
+        if (buf.capacity() != PAGE_SIZE) {
+            throw new IllegalArgumentException("readPage expects a page-sized buffer");
+        }
         int partNum = DiskSpaceManager.getPartNum(page);
         int pageNum = DiskSpaceManager.getPageNum(page);
-        this.managerLock.lock();
-        PartitionHandle pi;
-        try {
-            pi = getPartInfo(partNum);
-            pi.partitionLock.lock();
-        } finally {
-            this.managerLock.unlock();
-        }
+        PartitionHandle pi = lockPartition(partNum);
         try {
             pi.readPage(pageNum, buf);
         } catch (IOException e) {
@@ -293,16 +321,17 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         if (buf.length != PAGE_SIZE) {
             throw new IllegalArgumentException("writePage expects a page-sized buffer");
         }
+        this.writePage(page, ByteBuffer.wrap(buf));
+    }
+
+    @Override
+    public void writePage(long page, ByteBuffer buf) {
+        if (buf.capacity() != PAGE_SIZE) {
+            throw new IllegalArgumentException("writePage expects a page-sized buffer");
+        }
         int partNum = DiskSpaceManager.getPartNum(page);
         int pageNum = DiskSpaceManager.getPageNum(page);
-        this.managerLock.lock();
-        PartitionHandle pi;
-        try {
-            pi = getPartInfo(partNum);
-            pi.partitionLock.lock();
-        } finally {
-            this.managerLock.unlock();
-        }
+        PartitionHandle pi = lockPartition(partNum);
         try {
             pi.writePage(pageNum, buf);
         } catch (IOException e) {
@@ -312,18 +341,91 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
     }
 
+    @Override
+    public void readPages(long[] pages, byte[][] bufs) {
+        this.batchIO(pages, wrapAll(bufs, "readPages"), false);
+    }
+
+    @Override
+    public void writePages(long[] pages, byte[][] bufs) {
+        this.batchIO(pages, wrapAll(bufs, "writePages"), true);
+    }
+
+    @Override
+    public void readPages(long[] pages, ByteBuffer[] bufs) {
+        this.batchIO(pages, bufs, false);
+    }
+
+    @Override
+    public void writePages(long[] pages, ByteBuffer[] bufs) {
+        this.batchIO(pages, bufs, true);
+    }
+
+    private static ByteBuffer[] wrapAll(byte[][] bufs, String op) {
+        ByteBuffer[] wrapped = new ByteBuffer[bufs.length];
+        for (int i = 0; i < bufs.length; ++i) {
+            if (bufs[i].length != PAGE_SIZE) {
+                throw new IllegalArgumentException(op + " expects page-sized buffers");
+            }
+            wrapped[i] = ByteBuffer.wrap(bufs[i]);
+        }
+        return wrapped;
+    }
+
+    /**
+     * Reads or writes a batch of pages, one partition at a time. Within each partition, pages are
+     * handled in order of page number so that runs of adjacent pages turn into a single
+     * scattering read or gathering write.
+     */
+    private void batchIO(long[] pages, ByteBuffer[] bufs, boolean write) {
+        String op = write ? "write" : "read";
+        if (pages.length != bufs.length) {
+            throw new IllegalArgumentException(op + "Pages expects one buffer per page");
+        }
+        for (ByteBuffer buf : bufs) {
+            if (buf.capacity() != PAGE_SIZE) {
+                throw new IllegalArgumentException(op + "Pages expects page-sized buffers");
+            }
+        }
+        Integer[] order = new Integer[pages.length];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> pages[i]));
+
+        for (int start = 0, end; start < order.length; start = end) {
+            int partNum = DiskSpaceManager.getPartNum(pages[order[start]]);
+            end = start + 1;
+            while (end < order.length && DiskSpaceManager.getPartNum(pages[order[end]]) == partNum) {
+                ++end;
+            }
+            int[] pageNums = new int[end - start];
+            ByteBuffer[] partBufs = new ByteBuffer[end - start];
+            for (int i = start; i < end; ++i) {
+                pageNums[i - start] = DiskSpaceManager.getPageNum(pages[order[i]]);
+                partBufs[i - start] = bufs[order[i]];
+            }
+
+            PartitionHandle pi = lockPartition(partNum);
+            try {
+                if (write) {
+                    pi.writePages(pageNums, partBufs);
+                } else {
+                    pi.readPages(pageNums, partBufs);
+                }
+            } catch (IOException e) {
+                throw new PageException("could not " + op + " partition " + partNum + ": " + e.getMessage());
+            } finally {
+                pi.partitionLock.unlock();
+            }
+        }
+    }
+
     @Override
     public boolean pageAllocated(long page) {
         int partNum = DiskSpaceManager.getPartNum(page);
         int pageNum = DiskSpaceManager.getPageNum(page);
-        this.managerLock.lock();
-        PartitionHandle pi;
-        try {
-            pi = getPartInfo(partNum);
-            pi.partitionLock.lock();
-        } finally {
-            this.managerLock.unlock();
-        }
+        PartitionHandle pi = lockPartition(partNum);
         try {
             return !pi.isNotAllocatedPage(pageNum);
         } finally {
@@ -339,4 +441,17 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
         return pi;
     }
+
+    // Gets PartInfo and acquires its partition lock, throws exception if not found. Since
+    // lookups do not block freePart, the partition may have been freed by the time we get
+    // its lock, in which case it is no longer in partInfo.
+    private PartitionHandle lockPartition(int partNum) {
+        PartitionHandle pi = getPartInfo(partNum);
+        pi.partitionLock.lock();
+        if (this.partInfo.get(partNum) != pi) {
+            pi.partitionLock.unlock();
+            throw new NoSuchElementException("no partition " + partNum);
+        }
+        return pi;
+    }
 }
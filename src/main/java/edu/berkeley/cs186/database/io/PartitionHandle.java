@@ -5,19 +5,49 @@ import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import static edu.berkeley.cs186.database.io.DiskSpaceManager.PAGE_SIZE;
 import static edu.berkeley.cs186.database.io.DiskSpaceManagerImpl.DATA_PAGES_PER_HEADER;
 import static edu.berkeley.cs186.database.io.DiskSpaceManagerImpl.MAX_HEADER_PAGES;
 
 class PartitionHandle implements AutoCloseable {
+    // Maximum size (in bytes) of each region of the OS file mapped into memory in mapped
+    // I/O mode.
+    static final long MAPPED_SEGMENT_SIZE = 1024L * PAGE_SIZE;
+
+    // Compressed pages are stored as a 4 byte header, the length of the compressed data
+    // with COMPRESSED_FLAG set, and then the compressed data. A page and its flag are
+    // written together, so a crash cannot leave a page with the wrong flag. The flag is
+    // only looked for in partitions marked as compressed (see COMPRESSION_MARKER_SUFFIX),
+    // whose uncompressed pages must not start with it set. Pages of the buffer manager
+    // never do: it does not write the first bytes of the space it reserves on each page
+    // (see BufferManager#RESERVED_SPACE).
+    static final int COMPRESSED_HEADER_SIZE = 4;
+    static final int COMPRESSED_FLAG = 0x80000000;
+
+    // Suffix of the name of the OS file marking a partition as compressed, next to the
+    // partition's file. It is created, and forced to disk, when compression is first
+    // enabled on the partition, before any page is stored compressed, and is kept until
+    // the partition is freed.
+    static final String COMPRESSION_MARKER_SUFFIX = ".compressed";
+
     // Lock on the partition.
     ReentrantLock partitionLock;
 
@@ -38,12 +68,49 @@ class PartitionHandle implements AutoCloseable {
     // Partition number
     private int partNum;
 
+    // Whether data pages are read and written through memory mappings of the OS file
+    private boolean mappedIO;
+
+    // Mapped regions of the OS file (mapped I/O mode only), indexed by file offset
+    // divided by MAPPED_SEGMENT_SIZE. Regions are mapped lazily on first access, and
+    // only up to the end of the file, so they are remapped as the file grows. Regions
+    // that are dropped are unmapped when they are garbage collected.
+    private List<MappedByteBuffer> mappedSegments;
+
+    // Number of contiguous data pages reserved at a time by allocPage()
+    private int extentSize;
+
+    // Whether data pages are compressed when written, whether the partition is marked as
+    // compressed (so that data pages are checked for COMPRESSED_FLAG on read), the OS file
+    // of the marker, and the (de)compressors used, which are created on first use
+    private boolean compression;
+    private boolean compressionMarked;
+    private String compressionMarkerName;
+    private Deflater deflater;
+    private Inflater inflater;
+
+    // Bytes of page data written since the partition was opened, and bytes actually stored
+    private long logicalBytesWritten;
+    private long storedBytesWritten;
+
+    // Current extent: data pages [extentNext, extentEnd) are reserved for upcoming
+    // calls to allocPage(). Reservations are only kept in memory.
+    private int extentNext;
+    private int extentEnd;
+
     PartitionHandle(int partNum, RecoveryManager recoveryManager) {
+        this(partNum, recoveryManager, false);
+    }
+
+    PartitionHandle(int partNum, RecoveryManager recoveryManager, boolean mappedIO) {
         this.masterPage = new int[MAX_HEADER_PAGES];
         this.headerPages = new byte[MAX_HEADER_PAGES][];
         this.partitionLock = new ReentrantLock();
         this.recoveryManager = recoveryManager;
         this.partNum = partNum;
+        this.mappedIO = mappedIO;
+        this.mappedSegments = new ArrayList<>();
+        this.extentSize = 1;
     }
 
     /**
@@ -55,11 +122,18 @@ class PartitionHandle implements AutoCloseable {
         try {
             this.file = new RandomAccessFile(fileName, "rw");
             this.fileChannel = this.file.getChannel();
+            this.compressionMarkerName = fileName + COMPRESSION_MARKER_SUFFIX;
             long length = this.file.length();
+            File compressionMarker = new File(this.compressionMarkerName);
             if (length == 0) {
-                // new file, write empty master page
+                // new file, write empty master page; a compression marker left over from
+                // a freed partition is not ours
+                if (compressionMarker.exists() && !compressionMarker.delete()) {
+                    throw new IOException("could not delete " + this.compressionMarkerName);
+                }
                 this.writeMasterPage();
             } else {
+                this.compressionMarked = compressionMarker.exists();
                 // old file, read in master page + header pages
                 ByteBuffer b = ByteBuffer.wrap(new byte[PAGE_SIZE]);
                 this.fileChannel.read(b, PartitionHandle.masterPageOffset());
@@ -84,6 +158,15 @@ class PartitionHandle implements AutoCloseable {
         this.partitionLock.lock();
         try {
             Arrays.fill(this.headerPages, null);
+            this.mappedSegments.clear();
+            if (this.deflater != null) {
+                this.deflater.end();
+                this.deflater = null;
+            }
+            if (this.inflater != null) {
+                this.inflater.end();
+                this.inflater = null;
+            }
             this.file.close();
             this.fileChannel.close();
         } finally {
@@ -91,6 +174,17 @@ class PartitionHandle implements AutoCloseable {
         }
     }
 
+    /**
+     * Deletes the OS file of the compression marker, if any. Called when the partition
+     * is freed, after closing it.
+     */
+    void deleteCompressionMarker() throws IOException {
+        File compressionMarker = new File(this.compressionMarkerName);
+        if (compressionMarker.exists() && !compressionMarker.delete()) {
+            throw new IOException("could not delete " + this.compressionMarkerName);
+        }
+    }
+
     /**
      * Writes the master page to disk.
      */
@@ -113,10 +207,35 @@ class PartitionHandle implements AutoCloseable {
     }
 
     /**
-     * Allocates a new page in the partition.
+     * Sets the number of contiguous data pages reserved at a time by allocPage(). Any
+     * pages left in the current extent are still handed out before a new extent is reserved.
+     * @param extentSize number of pages per extent, between 1 and DATA_PAGES_PER_HEADER
+     */
+    void setExtentSize(int extentSize) {
+        if (extentSize < 1 || extentSize > DATA_PAGES_PER_HEADER) {
+            throw new IllegalArgumentException("extent size must be between 1 and " + DATA_PAGES_PER_HEADER);
+        }
+        this.extentSize = extentSize;
+    }
+
+    /**
+     * Allocates a new page in the partition. If the extent size is greater than one, pages are
+     * handed out in order from a reserved run of contiguous free pages (an extent), and a new
+     * extent is reserved once the current one is used up.
      * @return data page number
      */
     int allocPage() throws IOException {
+        while (this.extentNext < this.extentEnd) {
+            int pageNum = this.extentNext++;
+            if (this.isNotAllocatedPage(pageNum)) {
+                return this.allocPage(pageNum / DATA_PAGES_PER_HEADER, pageNum % DATA_PAGES_PER_HEADER);
+            }
+        }
+        if (this.extentSize > 1 && this.reserveExtent()) {
+            int pageNum = this.extentNext++;
+            return this.allocPage(pageNum / DATA_PAGES_PER_HEADER, pageNum % DATA_PAGES_PER_HEADER);
+        }
+
         int headerIndex = -1;
         for (int i = 0; i < MAX_HEADER_PAGES; ++i) {
             if (this.masterPage[i] < DATA_PAGES_PER_HEADER) {
@@ -148,6 +267,53 @@ class PartitionHandle implements AutoCloseable {
         return this.allocPage(headerIndex, pageIndex);
     }
 
+    /**
+     * Reserves the first run of extentSize free data pages managed by a single header page
+     * as the current extent.
+     * @return true if an extent was reserved, false if no header page has a long enough run
+     */
+    private boolean reserveExtent() {
+        for (int i = 0; i < MAX_HEADER_PAGES; ++i) {
+            if (DATA_PAGES_PER_HEADER - this.masterPage[i] < this.extentSize) {
+                continue;
+            }
+            byte[] headerBytes = this.headerPages[i];
+            int runStart = 0;
+            if (headerBytes != null) {
+                runStart = PartitionHandle.findFreeRun(headerBytes, this.extentSize);
+                if (runStart < 0) {
+                    continue;
+                }
+            }
+            this.extentNext = i * DATA_PAGES_PER_HEADER + runStart;
+            this.extentEnd = this.extentNext + this.extentSize;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Finds the first run of length free (zero) bits in a header page.
+     * @param headerBytes contents of header page
+     * @param length length of run
+     * @return index of first page in run, or -1 if there is no such run
+     */
+    private static int findFreeRun(byte[] headerBytes, int length) {
+        int runStart = 0;
+        for (int i = 0; i < DATA_PAGES_PER_HEADER; ++i) {
+            if (i % 8 == 0 && headerBytes[i / 8] == (byte) 0xFF) {
+                // skip over fully allocated bytes
+                i += 7;
+                runStart = i + 1;
+            } else if (Bits.getBit(headerBytes, i) == Bits.Bit.ONE) {
+                runStart = i + 1;
+            } else if (i - runStart + 1 == length) {
+                return runStart;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Allocates a new page in the partition.
      * @param headerIndex index of header page managing new page
@@ -236,11 +402,26 @@ class PartitionHandle implements AutoCloseable {
      * @param buf output buffer to be filled with page - assumed to be page size
      */
     void readPage(int pageNum, byte[] buf) throws IOException {
+        this.readPage(pageNum, ByteBuffer.wrap(buf));
+    }
+
+    /**
+     * Reads in a data page. The page is read straight into buf, so reading into a
+     * direct buffer does not go through an intermediate heap copy. The position and
+     * limit of buf are ignored and left unchanged. Assumes that the partition lock is held.
+     * @param pageNum data page number to read in
+     * @param buf output buffer to be filled with page - assumed to have page size capacity
+     */
+    void readPage(int pageNum, ByteBuffer buf) throws IOException {
         if (this.isNotAllocatedPage(pageNum)) {
             throw new PageException("page " + pageNum + " is not allocated");
         }
-        ByteBuffer b = ByteBuffer.wrap(buf);
-        this.fileChannel.read(b, PartitionHandle.dataPageOffset(pageNum));
+        if (this.mappedIO) {
+            this.readMappedPage(pageNum, buf);
+        } else {
+            this.fileChannel.read(buf.duplicate().clear(), PartitionHandle.dataPageOffset(pageNum));
+        }
+        this.decompressPage(buf);
     }
 
     /**
@@ -249,17 +430,366 @@ class PartitionHandle implements AutoCloseable {
      * @param buf input buffer with new contents of page - assumed to be page size
      */
     void writePage(int pageNum, byte[] buf) throws IOException {
+        this.writePage(pageNum, ByteBuffer.wrap(buf));
+    }
+
+    /**
+     * Writes to a data page, straight from buf unless the page is compressed. The
+     * position and limit of buf are ignored and left unchanged. Assumes that the
+     * partition lock is held.
+     * @param pageNum data page number to write to
+     * @param buf input buffer with new contents of page - assumed to have page size capacity
+     */
+    void writePage(int pageNum, ByteBuffer buf) throws IOException {
         if (this.isNotAllocatedPage(pageNum)) {
             throw new PageException("page " + pageNum + " is not allocated");
         }
-        ByteBuffer b = ByteBuffer.wrap(buf);
-        this.fileChannel.write(b, PartitionHandle.dataPageOffset(pageNum));
-        this.fileChannel.force(false);
+        // only the compressed bytes of a compressed page are written
+        ByteBuffer stored = this.compressPage(buf);
+        if (stored == null) {
+            stored = buf.duplicate().clear();
+        }
+        if (!this.mappedIO || !this.writeMappedPage(pageNum, stored)) {
+            long offset = PartitionHandle.dataPageOffset(pageNum);
+            while (stored.hasRemaining()) {
+                this.fileChannel.write(stored, offset + stored.position());
+            }
+            this.fileChannel.force(false);
+        }
 
         long vpn = DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
         recoveryManager.diskIOHook(vpn);
     }
 
+    /**
+     * Reads in several data pages, issuing one scattering read for each run of consecutive
+     * pages managed by the same header page. Assumes that the partition lock is held.
+     * @param pageNums data page numbers to read in, in ascending order
+     * @param bufs output buffers to be filled with the pages - assumed to have page size
+     *             capacity; their positions and limits are ignored and left unchanged
+     */
+    void readPages(int[] pageNums, ByteBuffer[] bufs) throws IOException {
+        for (int pageNum : pageNums) {
+            if (this.isNotAllocatedPage(pageNum)) {
+                throw new PageException("page " + pageNum + " is not allocated");
+            }
+        }
+        if (this.mappedIO) {
+            for (int i = 0; i < pageNums.length; ++i) {
+                this.readMappedPage(pageNums[i], bufs[i]);
+                this.decompressPage(bufs[i]);
+            }
+            return;
+        }
+        for (int start = 0, end; start < pageNums.length; start = end) {
+            end = PartitionHandle.runEnd(pageNums, start);
+            ByteBuffer[] run = PartitionHandle.viewRun(bufs, start, end);
+            long offset = PartitionHandle.dataPageOffset(pageNums[start]);
+            long numRead = 0;
+            while (run[run.length - 1].hasRemaining()) {
+                this.fileChannel.position(offset + numRead);
+                long n = this.fileChannel.read(run);
+                if (n < 0) {
+                    break;
+                }
+                numRead += n;
+            }
+        }
+        for (int i = 0; i < pageNums.length; ++i) {
+            this.decompressPage(bufs[i]);
+        }
+    }
+
+    /**
+     * Writes to several data pages, issuing one gathering write for each run of consecutive
+     * pages managed by the same header page, and forcing the file to disk once at the end.
+     * Assumes that the partition lock is held.
+     * @param pageNums data page numbers to write to, in ascending order
+     * @param bufs input buffers with new contents of pages - assumed to have page size
+     *             capacity; their positions and limits are ignored and left unchanged
+     */
+    void writePages(int[] pageNums, ByteBuffer[] bufs) throws IOException {
+        for (int pageNum : pageNums) {
+            if (this.isNotAllocatedPage(pageNum)) {
+                throw new PageException("page " + pageNum + " is not allocated");
+            }
+        }
+        if (this.compressionMarked) {
+            // runs are written with a single gathering write, so every page keeps its full size
+            ByteBuffer[] stored = new ByteBuffer[bufs.length];
+            for (int i = 0; i < bufs.length; ++i) {
+                ByteBuffer page = this.compressPage(bufs[i]);
+                if (page != null) {
+                    stored[i] = ByteBuffer.allocate(PAGE_SIZE);
+                    stored[i].put(page);
+                } else {
+                    stored[i] = bufs[i];
+                }
+            }
+            bufs = stored;
+        }
+        if (this.mappedIO) {
+            // mapped regions written to, each forced once; mapped buffers compare by
+            // contents, so regions are compared by identity
+            Set<MappedByteBuffer> written = Collections.newSetFromMap(new IdentityHashMap<>());
+            boolean wroteFile = false;
+            for (int i = 0; i < pageNums.length; ++i) {
+                ByteBuffer page = bufs[i].duplicate().clear();
+                MappedByteBuffer segment = this.putMappedPage(pageNums[i], page);
+                if (segment == null) {
+                    // past the end of the file: written to the file, which grows to hold it
+                    long offset = PartitionHandle.dataPageOffset(pageNums[i]);
+                    while (page.hasRemaining()) {
+                        this.fileChannel.write(page, offset + page.position());
+                    }
+                    wroteFile = true;
+                    continue;
+                }
+                written.add(segment);
+            }
+            for (MappedByteBuffer segment : written) {
+                segment.force();
+            }
+            if (wroteFile) {
+                this.fileChannel.force(false);
+            }
+        } else {
+            for (int start = 0, end; start < pageNums.length; start = end) {
+                end = PartitionHandle.runEnd(pageNums, start);
+                ByteBuffer[] run = PartitionHandle.viewRun(bufs, start, end);
+                long offset = PartitionHandle.dataPageOffset(pageNums[start]);
+                long numWritten = 0;
+                while (run[run.length - 1].hasRemaining()) {
+                    this.fileChannel.position(offset + numWritten);
+                    numWritten += this.fileChannel.write(run);
+                }
+            }
+            this.fileChannel.force(false);
+        }
+
+        for (int pageNum : pageNums) {
+            recoveryManager.diskIOHook(DiskSpaceManager.getVirtualPageNum(partNum, pageNum));
+        }
+    }
+
+    /**
+     * Finds the end of the run of consecutive data pages starting at pageNums[start]. Data pages
+     * managed by different header pages are never adjacent in the OS file, so runs stop at header
+     * page boundaries.
+     * @param pageNums data page numbers, in ascending order
+     * @param start index of first page of the run
+     * @return index one past the last page of the run
+     */
+    private static int runEnd(int[] pageNums, int start) {
+        int headerIndex = pageNums[start] / DATA_PAGES_PER_HEADER;
+        int end = start + 1;
+        while (end < pageNums.length && pageNums[end] == pageNums[end - 1] + 1
+                && pageNums[end] / DATA_PAGES_PER_HEADER == headerIndex) {
+            ++end;
+        }
+        return end;
+    }
+
+    // Full-page views of bufs[start..end), so that the callers' positions are left alone.
+    private static ByteBuffer[] viewRun(ByteBuffer[] bufs, int start, int end) {
+        ByteBuffer[] run = new ByteBuffer[end - start];
+        for (int i = start; i < end; ++i) {
+            run[i - start] = bufs[i].duplicate().clear();
+        }
+        return run;
+    }
+
+    /**
+     * Writes a data page through the file mapping, and forces the page's mapped region
+     * to disk before returning (only the region's modified pages are written back, and
+     * every other write forces its region too). The buffer manager only calls writePage after
+     * RecoveryManager#pageFlushHook has flushed the log up to the page's pageLSN,
+     * and the page's new contents are only copied into the mapping here, so the
+     * OS can never write back a page whose log records are not yet durable.
+     * Assumes that the partition lock is held.
+     * @param pageNum data page number to write to
+     * @param buf input buffer with new contents of page between its position and
+     *            limit - at most page size
+     * @return false if the page is past the end of the file, and was not written
+     */
+    private boolean writeMappedPage(int pageNum, ByteBuffer buf) throws IOException {
+        MappedByteBuffer segment = this.putMappedPage(pageNum, buf);
+        if (segment == null) {
+            return false;
+        }
+        segment.force();
+        return true;
+    }
+
+    /**
+     * Copies a data page into the file mapping, without forcing it to disk. Pages past
+     * the end of the file are not mapped (mapping them would grow the file), and are
+     * left to the caller to write to the file. Assumes that the partition lock is held.
+     * @param pageNum data page number to write to
+     * @param buf input buffer with new contents of page between its position and
+     *            limit - at most page size
+     * @return the mapped region the page was copied into, or null if the page is past
+     * the end of the file
+     */
+    private MappedByteBuffer putMappedPage(int pageNum, ByteBuffer buf) throws IOException {
+        long offset = PartitionHandle.dataPageOffset(pageNum);
+        MappedByteBuffer segment = this.getMappedSegment(offset);
+        if (segment == null) {
+            return null;
+        }
+        ByteBuffer b = segment.duplicate();
+        b.position((int) (offset % MAPPED_SEGMENT_SIZE));
+        b.put(buf);
+        return segment;
+    }
+
+    /**
+     * Reads a data page through the file mapping. Pages past the end of the file were
+     * never written, and read as zeroes. Assumes that the partition lock is held.
+     * @param pageNum data page number to read in
+     * @param buf output buffer to be filled with page - assumed to have page size capacity
+     */
+    private void readMappedPage(int pageNum, ByteBuffer buf) throws IOException {
+        long offset = PartitionHandle.dataPageOffset(pageNum);
+        MappedByteBuffer segment = this.getMappedSegment(offset);
+        ByteBuffer out = buf.duplicate().clear();
+        if (segment == null) {
+            out.put(new byte[PAGE_SIZE]);
+            return;
+        }
+        ByteBuffer b = segment.duplicate();
+        int position = (int) (offset % MAPPED_SEGMENT_SIZE);
+        b.limit(position + PAGE_SIZE);
+        b.position(position);
+        out.put(b);
+    }
+
+    /**
+     * Sets whether data pages are compressed when written. Enabling compression marks the
+     * partition as compressed for good; compressed pages are then decompressed on read
+     * regardless of this setting. Assumes that the partition lock is held.
+     * @param compression whether to compress data pages
+     */
+    void setCompression(boolean compression) throws IOException {
+        if (compression && !this.compressionMarked) {
+            try (FileChannel marker = new RandomAccessFile(this.compressionMarkerName, "rw").getChannel()) {
+                marker.force(true);
+            }
+            this.compressionMarked = true;
+        }
+        this.compression = compression;
+    }
+
+    /**
+     * @return bytes of page data written since the partition was opened, divided by
+     * bytes stored for them (1.0 if nothing has been written)
+     */
+    double getCompressionRatio() {
+        if (this.storedBytesWritten == 0) {
+            return 1.0;
+        }
+        return (double) this.logicalBytesWritten / this.storedBytesWritten;
+    }
+
+    /**
+     * Compresses a data page, if compression is enabled and the page compresses.
+     * Assumes that the partition lock is held.
+     * @param buf contents of page - assumed to have page size capacity
+     * @return buffer with the compressed page header followed by the compressed data
+     * between its position and limit, at most page size, or null if the page is to be
+     * stored as is
+     * @throws PageException if the page is to be stored as is in a partition marked as
+     * compressed, and starts with COMPRESSED_FLAG set
+     */
+    private ByteBuffer compressPage(ByteBuffer buf) {
+        ByteBuffer stored = null;
+        if (this.compression) {
+            if (this.deflater == null) {
+                this.deflater = new Deflater(Deflater.BEST_SPEED);
+            }
+            this.deflater.reset();
+            this.deflater.setInput(buf.duplicate().clear());
+            this.deflater.finish();
+            ByteBuffer out = ByteBuffer.allocate(PAGE_SIZE);
+            out.position(COMPRESSED_HEADER_SIZE);
+            int length = this.deflater.deflate(out);
+            if (this.deflater.finished()) {
+                out.flip();
+                out.putInt(0, COMPRESSED_FLAG | length);
+                stored = out;
+            }
+        }
+        if (stored == null && this.compressionMarked && (buf.getInt(0) & COMPRESSED_FLAG) != 0) {
+            throw new PageException("uncompressed page in compressed partition " + partNum
+                                    + " starts with the compressed page flag");
+        }
+        this.logicalBytesWritten += PAGE_SIZE;
+        this.storedBytesWritten += stored == null ? PAGE_SIZE : stored.remaining();
+        return stored;
+    }
+
+    /**
+     * Decompresses a data page in place, if it is stored compressed.
+     * Assumes that the partition lock is held.
+     * @param buf contents of page slot, replaced with contents of page - assumed to have
+     *            page size capacity
+     */
+    private void decompressPage(ByteBuffer buf) {
+        if (!this.compressionMarked || (buf.getInt(0) & COMPRESSED_FLAG) == 0) {
+            return;
+        }
+        int length = buf.getInt(0) & ~COMPRESSED_FLAG;
+        if (length <= 0 || length > PAGE_SIZE - COMPRESSED_HEADER_SIZE) {
+            throw new PageException("corrupt compressed page in partition " + partNum);
+        }
+        byte[] compressed = new byte[length];
+        buf.duplicate().position(COMPRESSED_HEADER_SIZE).get(compressed);
+        if (this.inflater == null) {
+            this.inflater = new Inflater();
+        }
+        this.inflater.reset();
+        this.inflater.setInput(compressed);
+        try {
+            if (this.inflater.inflate(buf.duplicate().clear()) != PAGE_SIZE || !this.inflater.finished()) {
+                throw new PageException("corrupt compressed page in partition " + partNum);
+            }
+        } catch (DataFormatException e) {
+            throw new PageException("corrupt compressed page in partition " + partNum + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the mapped region of the OS file containing the data page at the given offset.
+     * Regions are mapped up to the end of the file (never growing it), so a region is
+     * mapped the first time one of its pages is accessed, and mapped again when a page
+     * is accessed that was added to the file since. Since MAPPED_SEGMENT_SIZE is a multiple
+     * of the page size, a page never straddles two regions. Assumes that the partition
+     * lock is held.
+     * @param offset offset in OS file of a data page
+     * @return the mapped region containing the page, or null if the page is (partly)
+     * past the end of the file
+     */
+    private MappedByteBuffer getMappedSegment(long offset) throws IOException {
+        int index = (int) (offset / MAPPED_SEGMENT_SIZE);
+        long start = index * MAPPED_SEGMENT_SIZE;
+        long end = offset + PAGE_SIZE;
+        while (this.mappedSegments.size() <= index) {
+            this.mappedSegments.add(null);
+        }
+        MappedByteBuffer segment = this.mappedSegments.get(index);
+        if (segment != null && start + segment.capacity() >= end) {
+            return segment;
+        }
+        long length = this.fileChannel.size();
+        if (length < end) {
+            return null;
+        }
+        MappedByteBuffer remapped = this.fileChannel.map(FileChannel.MapMode.READ_WRITE, start,
+                                                         Math.min(MAPPED_SEGMENT_SIZE, length - start));
+        this.mappedSegments.set(index, remapped);
+        return remapped;
+    }
+
     /**
      * Checks if page number is for an unallocated data page
      * @param pageNum data page number
@@ -322,7 +852,7 @@ class PartitionHandle implements AutoCloseable {
      * @param pageNum data page number
      * @return offset in OS file for data page
      */
-    private static long dataPageOffset(int pageNum) {
+    static long dataPageOffset(int pageNum) {
         // Consider the layout if we had 4 data pages per header:
         // Offset (in pages):  0  1  2  3  4  5  6  7  8  9 10
         // Page Type:         [M][H][D][D][D][D][H][D][D][D][D]
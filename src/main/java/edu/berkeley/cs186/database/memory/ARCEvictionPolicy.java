@@ -0,0 +1,195 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Implementation of the ARC (adaptive replacement cache) eviction policy (Megiddo and
+ * Modha). Resident pages are split between T1, pages used once recently, and T2, pages
+ * used at least twice recently, both kept in LRU order. The page numbers of pages evicted
+ * from T1 and T2 are remembered in B1 and B2. A page loaded again while remembered in B1
+ * means T1 should have been larger, and one remembered in B2 means T2 should have been
+ * larger, so the target size of T1 adapts to the workload. Pages only read once, as in a
+ * sequential scan, never leave T1, and so cannot push hot pages out of T2.
+ *
+ * Frames are hit once for every read or write, so a page is typically hit several times
+ * right after being loaded. Hits on a page in T1 only move it to T2 once at least
+ * correlatedLoads other pages have been loaded since it was, so that such correlated
+ * hits do not count as reuse. Since the buffer manager picks a victim before it knows
+ * which page it is loading, the victim is chosen without the special case for pages
+ * remembered in B2 in the original algorithm.
+ *
+ * Methods are synchronized, since frames are hit without holding the buffer manager's lock.
+ */
+public class ARCEvictionPolicy implements EvictionPolicy {
+    private static final int DEFAULT_CORRELATED_LOADS = 8;
+
+    private final int correlatedLoads;
+
+    // Resident pages used once recently, in LRU order
+    private final FrameQueue t1 = new FrameQueue();
+    // Resident pages used at least twice recently, in LRU order
+    private final FrameQueue t2 = new FrameQueue();
+    // Page numbers of pages evicted from T1 and T2, in LRU order
+    private final Set<Long> b1 = new LinkedHashSet<>();
+    private final Set<Long> b2 = new LinkedHashSet<>();
+
+    // Target size of T1
+    private double target = 0;
+    // Number of pages loaded so far
+    private long loads = 0;
+    // Number of frames; learned from the first call to evict or peekVictims
+    private int capacity = 0;
+    // Last frame returned by evict, so that cleanup can tell evictions from frees
+    private BufferFrame lastVictim;
+
+    public ARCEvictionPolicy() {
+        this(DEFAULT_CORRELATED_LOADS);
+    }
+
+    /**
+     * @param correlatedLoads number of pages that must be loaded after a page before
+     *                        hits on it count as reuse
+     */
+    public ARCEvictionPolicy(int correlatedLoads) {
+        if (correlatedLoads < 0) {
+            throw new IllegalArgumentException("correlatedLoads must be non-negative");
+        }
+        this.correlatedLoads = correlatedLoads;
+    }
+
+    /**
+     * Called to initiaize a new buffer frame.
+     * @param frame new frame to be initialized
+     */
+    @Override
+    public synchronized void init(BufferFrame frame) {
+        long pageNum = frame.getPageNum();
+        FrameQueue.Node node;
+        if (this.b1.remove(pageNum)) {
+            double delta = Math.max(1.0, (double) this.b2.size() / Math.max(1, this.b1.size()));
+            this.target = Math.min(this.capacity, this.target + delta);
+            node = this.t2.add(frame);
+        } else if (this.b2.remove(pageNum)) {
+            double delta = Math.max(1.0, (double) this.b1.size() / Math.max(1, this.b2.size()));
+            this.target = Math.max(0, this.target - delta);
+            node = this.t2.add(frame);
+        } else {
+            node = this.t1.add(frame);
+        }
+        node.loadTick = ++this.loads;
+    }
+
+    /**
+     * Called when a frame is hit.
+     * @param frame Frame object that is being read from/written to
+     */
+    @Override
+    public synchronized void hit(BufferFrame frame) {
+        FrameQueue.Node node = (FrameQueue.Node) frame.tag;
+        if (node.getQueue() == this.t2
+                || (node.getQueue() == this.t1 && this.loads - node.loadTick >= this.correlatedLoads)) {
+            this.t2.moveToBack(node);
+        }
+    }
+
+    /**
+     * Called when a frame needs to be evicted. Evicts the least recently used page of T1
+     * if T1 is larger than its target size, and of T2 otherwise.
+     * @param frames Array of all frames (same length every call, until the buffer is resized)
+     * @return index of frame to be evicted
+     * @throws IllegalStateException if everything is pinned
+     */
+    @Override
+    public synchronized BufferFrame evict(BufferFrame[] frames) {
+        this.capacity = frames.length;
+        FrameQueue[] order = this.evictionOrder();
+        BufferFrame victim = order[0].firstUnpinned();
+        if (victim == null) {
+            victim = order[1].firstUnpinned();
+        }
+        if (victim == null) {
+            throw new IllegalStateException("cannot evict anything - everything pinned");
+        }
+        this.lastVictim = victim;
+        return victim;
+    }
+
+    @Override
+    public synchronized List<BufferFrame> peekVictims(BufferFrame[] frames, int maxFrames) {
+        this.capacity = frames.length;
+        List<BufferFrame> victims = new ArrayList<>();
+        for (FrameQueue queue : this.evictionOrder()) {
+            queue.addUnpinned(victims, maxFrames);
+        }
+        return victims;
+    }
+
+    /**
+     * Called when a frame is removed, either because it
+     * was returned from a call to evict, or because of other constraints
+     * (e.g. if the page is deleted on disk).
+     * @param frame frame being removed
+     */
+    @Override
+    public synchronized void cleanup(BufferFrame frame) {
+        FrameQueue.Node node = (FrameQueue.Node) frame.tag;
+        if (node == null || node.getQueue() == null) {
+            return;
+        }
+        FrameQueue queue = node.getQueue();
+        queue.remove(node);
+        if (frame == this.lastVictim) {
+            this.lastVictim = null;
+            (queue == this.t1 ? this.b1 : this.b2).add(frame.getPageNum());
+            this.trimGhosts();
+        }
+    }
+
+    /**
+     * Called when the buffer is resized; the target size of T1 and the ghost lists are
+     * bounded by the new buffer size.
+     * @param numFrames new number of frames
+     */
+    @Override
+    public synchronized void resize(int numFrames) {
+        this.capacity = numFrames;
+        this.target = Math.min(this.target, numFrames);
+        this.trimGhosts();
+    }
+
+    /**
+     * @return target size of T1
+     */
+    synchronized double getTarget() {
+        return this.target;
+    }
+
+    /**
+     * @return the queues in the order they are evicted from
+     */
+    private FrameQueue[] evictionOrder() {
+        if (this.t1.size() > 0 && (this.t1.size() > this.target || this.t2.size() == 0)) {
+            return new FrameQueue[] { this.t1, this.t2 };
+        }
+        return new FrameQueue[] { this.t2, this.t1 };
+    }
+
+    // Forgets evicted pages until |T1| + |B1| <= c, and |T1| + |T2| + |B1| + |B2| <= 2c.
+    private void trimGhosts() {
+        trim(this.b1, Math.max(0, this.capacity - this.t1.size()));
+        trim(this.b2, Math.max(0, 2 * this.capacity - this.t1.size() - this.t2.size() - this.b1.size()));
+    }
+
+    // Forgets the least recently evicted pages until at most maxSize remain.
+    private static void trim(Set<Long> ghosts, int maxSize) {
+        Iterator<Long> iter = ghosts.iterator();
+        while (ghosts.size() > maxSize) {
+            iter.next();
+            iter.remove();
+        }
+    }
+}
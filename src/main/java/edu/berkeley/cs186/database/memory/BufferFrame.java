@@ -1,5 +1,7 @@
 package edu.berkeley.cs186.database.memory;
 
+import edu.berkeley.cs186.database.common.Bits;
+
 /**
  * Buffer frame.
  */
@@ -63,6 +65,30 @@ abstract class BufferFrame {
      */
     abstract void writeBytes(short position, short num, byte[] buf);
 
+    /**
+     * Changes a slot of the page: writes a record at offset (unless after is null), sets
+     * the slot's bit in the slot bitmap at bitmapOffset (clears it if after is null), and
+     * marks frame as dirtied. By default the change is made, and logged, as writes of the
+     * bytes it changes.
+     * @param bitmapOffset position of the slot bitmap, or -1 to leave the bitmap as is
+     * @param slot slot number
+     * @param offset position of the slot's record
+     * @param before record in the slot before the change, or null for an insert
+     * @param after record in the slot after the change, or null for a delete
+     */
+    void writeSlot(short bitmapOffset, short slot, short offset, byte[] before, byte[] after) {
+        if (after != null) {
+            this.writeBytes(offset, (short) after.length, after);
+        }
+        if (bitmapOffset >= 0) {
+            short position = (short) (bitmapOffset + slot / 8);
+            byte[] bitmap = new byte[1];
+            this.readBytes(position, (short) 1, bitmap);
+            Bits.setBit(bitmap, slot % 8, after != null ? Bits.Bit.ONE : Bits.Bit.ZERO);
+            this.writeBytes(position, (short) 1, bitmap);
+        }
+    }
+
     /**
      * Requests a valid Frame object for the page (if invalid, a new Frame object is returned).
      * Frame is pinned on return.
@@ -1,6 +1,7 @@
 package edu.berkeley.cs186.database.memory;
 
 import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
@@ -9,18 +10,43 @@ import edu.berkeley.cs186.database.recovery.LogManager;
 import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
 import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 
 /**
  * Implementation of a buffer manager, with configurable page replacement policies.
- * Data is stored in page-sized byte arrays, and returned in a Frame object specific
+ * Data is stored in page-sized byte buffers, and returned in a Frame object specific
  * to the page loaded (evicting and loading a new page into the frame will result in
- * a new Frame object, with the same underlying byte array), with old Frame objects
- * backed by the same byte array marked as invalid.
+ * a new Frame object, with the same underlying byte buffer), with old Frame objects
+ * backed by the same byte buffer marked as invalid.
+ *
+ * Frame buffers are either heap byte arrays, or (in off-heap mode) slices of a few
+ * large direct byte buffers ("arenas") allocated when the buffer manager is created.
+ * Off-heap frames are not managed by the garbage collector, and are read from and
+ * written to disk without being copied through the heap.
  */
 public class BufferManager implements AutoCloseable {
+    // Maximum number of pages written with a single call to DiskSpaceManager#writePages.
+    static final int FLUSH_BATCH_SIZE = 256;
+
+    // Default time to wait for frames to be unpinned when shrinking the buffer
+    static final long DEFAULT_RESIZE_TIMEOUT_MILLIS = 10000;
+
+    // Number of times the eviction policy is asked for a victim before giving up, when the
+    // frames it chooses are being pinned or written by other threads
+    static final int MAX_EVICTION_ATTEMPTS = 1024;
+
+    // Default number of frames in a buffer ring (128KB)
+    static final int DEFAULT_RING_SIZE = 32;
+
+    // Number of frames per direct buffer in off-heap mode (256MB arenas), so that
+    // every arena stays well below the 2GB limit on a single ByteBuffer.
+    static final int ARENA_FRAMES = 65536;
+
     // We reserve 36 bytes on each page for bookkeeping for recovery
     // (used to store the pageLSN, and to ensure that a redo-only/undo-only log record can
     // fit on one page).
@@ -29,16 +55,18 @@ public class BufferManager implements AutoCloseable {
     // Effective page size available to users of buffer manager.
     public static final short EFFECTIVE_PAGE_SIZE = (short) (DiskSpaceManager.PAGE_SIZE - RESERVED_SPACE);
 
-    // Buffer frames
-    private Frame[] frames;
+    // Buffer frames; replaced by a new array (while holding the manager lock) when the
+    // buffer is resized
+    private volatile Frame[] frames;
 
     // Reference to the disk space manager underneath this buffer manager instance.
     private DiskSpaceManager diskSpaceManager;
 
-    // Map of page number to frame index
-    private Map<Long, Integer> pageToFrame;
+    // Map of page number to frame index. Lookups do not need the manager lock;
+    // updates are made while holding it.
+    private PageTable pageTable;
 
-    // Lock on buffer manager
+    // Lock on buffer manager, held to load pages and to change which page a frame holds
     private ReentrantLock managerLock;
 
     // Eviction policy
@@ -51,24 +79,78 @@ public class BufferManager implements AutoCloseable {
     private RecoveryManager recoveryManager;
 
     // Count of number of I/Os
-    private long numIOs = 0;
+    private final AtomicLong numIOs = new AtomicLong();
+
+    // Whether frame buffers are allocated off-heap
+    private boolean offHeap;
+
+    // Background writer, if started
+    private PageCleaner pageCleaner;
+
+    // Next frame to look at when the page cleaner scans for dirty frames
+    private int cleanerCursor = 0;
+
+    // Number of dirty pages written back by the page cleaner
+    private final AtomicLong numPagesCleaned = new AtomicLong();
+
+    // Number of dirty pages written back while being evicted to load another page
+    private final AtomicLong numSyncEvictionWrites = new AtomicLong();
+
+    // Number of frames in each new buffer ring; 0 disables buffer rings
+    private volatile int ringSize = DEFAULT_RING_SIZE;
+
+    // Background read-ahead, if started
+    private volatile ReadAhead readAhead;
+
+    // Number of pages loaded by read-ahead and prewarming
+    private final AtomicLong numPagesPrefetched = new AtomicLong();
+
+    // File the list of resident pages is saved to and prewarmed from, or null
+    private volatile Path hotPageFile;
+
+    // Background prewarming thread, if started
+    private Thread prewarmThread;
+
+    // Whether writes to a pinned page are logged together when it is unpinned (or flushed),
+    // rather than as they are made
+    private volatile boolean writeBatching = false;
+
+    // Hit, miss, eviction, writeback and pin wait counters of each partition
+    private final Map<Integer, BufferStats.Counters> partitionCounters = new ConcurrentHashMap<>();
 
     /**
      * Buffer frame, containing information about the loaded page, wrapped around the
-     * underlying byte array. Free frames use the index field to create a (singly) linked
+     * underlying byte buffer. Free frames use the index field to create a (singly) linked
      * list between free frames.
      */
     class Frame extends BufferFrame {
         private static final int INVALID_INDEX = Integer.MIN_VALUE;
 
-        byte[] contents;
+        // Page-sized buffer; only absolute get/put and duplicates are used, so that
+        // concurrent readers never share a position.
+        ByteBuffer contents;
         private int index;
         private long pageNum;
         private boolean dirty;
         private ReentrantLock frameLock;
         private boolean logPage;
+        // Ring the page was loaded through, or null if it was loaded (or since
+        // fetched) without one
+        private BufferRing ring;
+        // Whether the page was loaded by read-ahead, and has not been fetched since
+        private boolean prefetched;
+        // Whether read-ahead failed to read the page; the frame is dropped instead of used
+        private boolean loadFailed;
+        // When batching writes: the page's data as of the first write since the page was
+        // pinned, or null if there are no writes that have not been logged yet
+        private byte[] batchBefore;
+        // When batching writes: transaction that made the writes that have not been logged
+        // yet, and the range of data (positions [batchStart, batchEnd)) they touched
+        private long batchTransNum;
+        private int batchStart;
+        private int batchEnd;
 
-        Frame(byte[] contents, int nextFree) {
+        Frame(ByteBuffer contents, int nextFree) {
             this(contents, ~nextFree, DiskSpaceManager.INVALID_PAGE_NUM);
         }
 
@@ -76,7 +158,7 @@ public class BufferManager implements AutoCloseable {
             this(frame.contents, frame.index, frame.pageNum);
         }
 
-        Frame(byte[] contents, int index, long pageNum) {
+        Frame(ByteBuffer contents, int index, long pageNum) {
             this.contents = contents;
             this.index = index;
             this.pageNum = pageNum;
@@ -107,7 +189,17 @@ public class BufferManager implements AutoCloseable {
         @Override
         public void unpin() {
             super.unpin();
-            this.frameLock.unlock();
+            try {
+                if (this.batchBefore != null && !this.isPinned()) {
+                    if (this.isValid()) {
+                        this.logBatchedWrites();
+                    } else {
+                        this.batchBefore = null;
+                    }
+                }
+            } finally {
+                this.frameLock.unlock();
+            }
         }
 
         /**
@@ -176,6 +268,10 @@ public class BufferManager implements AutoCloseable {
                 if (!this.isValid()) {
                     return;
                 }
+                if (this.batchBefore != null) {
+                    // the page must not reach disk before the log records of its changes
+                    this.logBatchedWrites();
+                }
                 if (!this.dirty) {
                     return;
                 }
@@ -184,6 +280,7 @@ public class BufferManager implements AutoCloseable {
                 }
                 BufferManager.this.diskSpaceManager.writePage(pageNum, contents);
                 BufferManager.this.incrementIOs();
+                BufferManager.this.counters(pageNum).writebacks.increment();
                 this.dirty = false;
             } finally {
                 super.unpin();
@@ -204,8 +301,12 @@ public class BufferManager implements AutoCloseable {
                 if (!this.isValid()) {
                     throw new IllegalStateException("reading from invalid buffer frame");
                 }
-                System.arraycopy(this.contents, position + dataOffset(), buf, 0, num);
-                BufferManager.this.evictionPolicy.hit(this);
+                ByteBuffer b = this.contents.duplicate();
+                b.position(position + dataOffset());
+                b.get(buf, 0, num);
+                if (this.ring == null) {
+                    BufferManager.this.evictionPolicy.hit(this);
+                }
             } finally {
                 this.unpin();
             }
@@ -227,20 +328,78 @@ public class BufferManager implements AutoCloseable {
                 int offset = position + dataOffset();
                 TransactionContext transaction = TransactionContext.getTransaction();
                 if (transaction != null && !logPage) {
-                    List<Pair<Integer, Integer>> changedRanges = getChangedBytes(offset, num, buf);
-                    for (Pair<Integer, Integer> range : changedRanges) {
-                        int start = range.getFirst();
-                        int len = range.getSecond();
-                        byte[] before = Arrays.copyOfRange(contents, start + offset, start + offset + len);
-                        byte[] after = Arrays.copyOfRange(buf, start, start + len);
-                        long pageLSN = recoveryManager.logPageWrite(transaction.getTransNum(), pageNum, (short) (start + position), before,
-                                       after);
-                        this.setPageLSN(pageLSN);
+                    if (writeBatching) {
+                        this.batchWrite(transaction.getTransNum(), position, num);
+                    } else {
+                        byte[] before = new byte[num];
+                        ByteBuffer b = contents.duplicate();
+                        b.position(offset);
+                        b.get(before);
+                        this.logWrite(transaction.getTransNum(), position, before, buf, num);
+                    }
+                }
+                ByteBuffer b = this.contents.duplicate();
+                b.position(offset);
+                b.put(buf, 0, num);
+                this.dirty = true;
+                if (this.ring == null) {
+                    BufferManager.this.evictionPolicy.hit(this);
+                }
+            } finally {
+                this.unpin();
+            }
+        }
+
+        /**
+         * Changes a slot of the page, logging the change as one slot record rather than as
+         * update records of the bytes it changes. Updates of records too large for an
+         * update slot record to fit on a log page are made (and logged) as writes.
+         */
+        @Override
+        void writeSlot(short bitmapOffset, short slot, short offset, byte[] before, byte[] after) {
+            if (before != null && after != null && after.length > EFFECTIVE_PAGE_SIZE / 2) {
+                super.writeSlot(bitmapOffset, slot, offset, before, after);
+                return;
+            }
+            this.pin();
+            try {
+                if (!this.isValid()) {
+                    throw new IllegalStateException("writing to invalid buffer frame");
+                }
+                TransactionContext transaction = TransactionContext.getTransaction();
+                if (transaction != null && !logPage) {
+                    if (this.batchBefore != null) {
+                        // writes not logged yet are logged before the slot change
+                        this.logBatchedWrites();
                     }
+                    long transNum = transaction.getTransNum();
+                    long pageLSN;
+                    if (before == null) {
+                        pageLSN = recoveryManager.logSlotInsert(transNum, pageNum, bitmapOffset, slot, offset,
+                                                                after);
+                    } else if (after == null) {
+                        pageLSN = recoveryManager.logSlotDelete(transNum, pageNum, bitmapOffset, slot, offset,
+                                                                before);
+                    } else {
+                        pageLSN = recoveryManager.logSlotUpdate(transNum, pageNum, slot, offset, before, after);
+                    }
+                    this.setPageLSN(pageLSN);
+                }
+                if (after != null) {
+                    ByteBuffer b = this.contents.duplicate();
+                    b.position(offset + dataOffset());
+                    b.put(after);
+                }
+                if (bitmapOffset >= 0) {
+                    int position = bitmapOffset + slot / 8 + dataOffset();
+                    byte[] bitmap = new byte[] { this.contents.get(position) };
+                    Bits.setBit(bitmap, slot % 8, after != null ? Bits.Bit.ONE : Bits.Bit.ZERO);
+                    this.contents.put(position, bitmap[0]);
                 }
-                System.arraycopy(buf, 0, this.contents, offset, num);
                 this.dirty = true;
-                BufferManager.this.evictionPolicy.hit(this);
+                if (this.ring == null) {
+                    BufferManager.this.evictionPolicy.hit(this);
+                }
             } finally {
                 this.unpin();
             }
@@ -252,16 +411,17 @@ public class BufferManager implements AutoCloseable {
          */
         @Override
         Frame requestValidFrame() {
-            this.frameLock.lock();
+            this.lockForPin();
             try {
                 if (this.isFreed()) {
                     throw new PageException("page already freed");
                 }
                 if (this.isValid()) {
                     this.pin();
+                    BufferManager.this.counters(this.pageNum).hits.increment();
                     return this;
                 }
-                return BufferManager.this.fetchPageFrame(this.pageNum);
+                return BufferManager.this.fetchPageFrame(this.pageNum, this.ring);
             } finally {
                 this.frameLock.unlock();
             }
@@ -278,7 +438,7 @@ public class BufferManager implements AutoCloseable {
 
         @Override
         long getPageLSN() {
-            return ByteBuffer.wrap(this.contents).getLong(8);
+            return this.contents.getLong(8);
         }
 
         @Override
@@ -293,21 +453,82 @@ public class BufferManager implements AutoCloseable {
         }
 
         /**
-         * Generates (offset, length) pairs for where buf differs from contents. Merges nearby
+         * Logs a write of num bytes at position (of the page's data), one update record per
+         * changed range, and updates the pageLSN.
+         * @param transNum transaction that made the write
+         * @param position position of the write
+         * @param before bytes at position before the write
+         * @param after bytes at position after the write
+         * @param num number of bytes written
+         */
+        private void logWrite(long transNum, int position, byte[] before, byte[] after, int num) {
+            for (Pair<Integer, Integer> range : getChangedBytes(before, after, num)) {
+                int start = range.getFirst();
+                int len = range.getSecond();
+                long pageLSN = recoveryManager.logPageWrite(transNum, pageNum, (short) (start + position),
+                                                            Arrays.copyOfRange(before, start, start + len),
+                                                            Arrays.copyOfRange(after, start, start + len));
+                this.setPageLSN(pageLSN);
+            }
+        }
+
+        /**
+         * Records a write of num bytes at position (of the page's data) that is about to be
+         * made, to be logged (together with the other writes made while the page is pinned)
+         * when the page is unpinned or flushed. A write by a different transaction than the
+         * writes not logged yet logs them first.
+         */
+        private void batchWrite(long transNum, int position, int num) {
+            if (this.batchBefore != null && this.batchTransNum != transNum) {
+                this.logBatchedWrites();
+            }
+            if (this.batchBefore == null) {
+                this.batchBefore = new byte[EFFECTIVE_PAGE_SIZE];
+                ByteBuffer b = this.contents.duplicate();
+                b.position(dataOffset());
+                b.get(this.batchBefore);
+                this.batchTransNum = transNum;
+                this.batchStart = position;
+                this.batchEnd = position + num;
+            } else {
+                this.batchStart = Math.min(this.batchStart, position);
+                this.batchEnd = Math.max(this.batchEnd, position + num);
+            }
+        }
+
+        /**
+         * Logs the writes made since the page was pinned, by comparing the data they touched
+         * with its contents when the page was first written, so that repeated and adjacent
+         * writes are logged as one change.
+         */
+        private void logBatchedWrites() {
+            int num = this.batchEnd - this.batchStart;
+            byte[] before = Arrays.copyOfRange(this.batchBefore, this.batchStart, this.batchEnd);
+            byte[] after = new byte[num];
+            ByteBuffer b = this.contents.duplicate();
+            b.position(this.batchStart + dataOffset());
+            b.get(after);
+            this.batchBefore = null;
+            this.logWrite(this.batchTransNum, this.batchStart, before, after, num);
+        }
+
+        /**
+         * Generates (offset, length) pairs for where after differs from before. Merges nearby
          * pairs (where nearby is defined as pairs that have fewer than BufferManager.RESERVED_SPACE
          * bytes of unmodified data between them).
          */
-        private List<Pair<Integer, Integer>> getChangedBytes(int offset, int num, byte[] buf) {
+        private List<Pair<Integer, Integer>> getChangedBytes(byte[] before, byte[] after, int num) {
             List<Pair<Integer, Integer>> ranges = new ArrayList<>();
             int maxRange = EFFECTIVE_PAGE_SIZE / 2;
             int startIndex = -1;
             int skip = -1;
             for (int i = 0; i < num; ++i) {
                 if (startIndex >= 0 && maxRange == i - startIndex) {
-                    ranges.add(new Pair<>(startIndex, maxRange));
-                    startIndex = -1;
-                    skip = -1;
-                } else if (buf[i] == contents[offset + i] && startIndex >= 0) {
+                    // the range is full; byte i starts the next one if it changed
+                    ranges.add(new Pair<>(startIndex, maxRange - skip));
+                    startIndex = after[i] != before[i] ? i : -1;
+                    skip = after[i] != before[i] ? 0 : -1;
+                } else if (after[i] == before[i] && startIndex >= 0) {
                     if (skip > BufferManager.RESERVED_SPACE) {
                         ranges.add(new Pair<>(startIndex, i - startIndex - skip));
                         startIndex = -1;
@@ -315,7 +536,7 @@ public class BufferManager implements AutoCloseable {
                     } else {
                         ++skip;
                     }
-                } else if (buf[i] != contents[offset + i]) {
+                } else if (after[i] != before[i]) {
                     if (startIndex < 0) {
                         startIndex = i;
                     }
@@ -329,7 +550,20 @@ public class BufferManager implements AutoCloseable {
         }
 
         void setPageLSN(long pageLSN) {
-            ByteBuffer.wrap(this.contents).putLong(8, pageLSN);
+            this.contents.putLong(8, pageLSN);
+        }
+
+        /**
+         * Locks the frame in order to pin it, counting the time spent waiting if the
+         * frame is held (pinned) by another thread as pin wait time of the page's partition.
+         */
+        private void lockForPin() {
+            if (this.frameLock.tryLock()) {
+                return;
+            }
+            long start = System.nanoTime();
+            this.frameLock.lock();
+            BufferManager.this.counters(this.pageNum).pinWaitNanos.add(System.nanoTime() - start);
         }
 
         private short dataOffset() {
@@ -342,7 +576,7 @@ public class BufferManager implements AutoCloseable {
     }
 
     /**
-     * Creates a new buffer manager.
+     * Creates a new buffer manager, with frames allocated on the heap.
      *
      * @param diskSpaceManager the underlying disk space manager
      * @param bufferSize size of buffer (in pages)
@@ -350,20 +584,197 @@ public class BufferManager implements AutoCloseable {
      */
     public BufferManager(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
                          int bufferSize, EvictionPolicy evictionPolicy) {
+        this(diskSpaceManager, recoveryManager, bufferSize, evictionPolicy, false);
+    }
+
+    /**
+     * Creates a new buffer manager.
+     *
+     * @param diskSpaceManager the underlying disk space manager
+     * @param bufferSize size of buffer (in pages)
+     * @param evictionPolicy eviction policy to use
+     * @param offHeap whether to allocate frames off-heap, in direct byte buffer arenas
+     */
+    public BufferManager(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
+                         int bufferSize, EvictionPolicy evictionPolicy, boolean offHeap) {
         this.frames = new Frame[bufferSize];
+        ByteBuffer[] buffers = offHeap ? allocateArenaFrames(bufferSize) : null;
         for (int i = 0; i < bufferSize; ++i) {
-            this.frames[i] = new Frame(new byte[DiskSpaceManager.PAGE_SIZE], i + 1);
+            ByteBuffer contents = offHeap ? buffers[i] : ByteBuffer.wrap(new byte[DiskSpaceManager.PAGE_SIZE]);
+            this.frames[i] = new Frame(contents, i + 1);
         }
+        this.offHeap = offHeap;
         this.firstFreeIndex = 0;
         this.diskSpaceManager = diskSpaceManager;
-        this.pageToFrame = new HashMap<>();
+        this.pageTable = new PageTable(bufferSize);
         this.managerLock = new ReentrantLock();
         this.evictionPolicy = evictionPolicy;
         this.recoveryManager = recoveryManager;
     }
 
+    /**
+     * Allocates direct byte buffer arenas of up to ARENA_FRAMES pages each, and slices
+     * them into page-sized frame buffers.
+     *
+     * @param bufferSize number of frames
+     * @return bufferSize page-sized buffers
+     */
+    private static ByteBuffer[] allocateArenaFrames(int bufferSize) {
+        ByteBuffer[] buffers = new ByteBuffer[bufferSize];
+        for (int start = 0; start < bufferSize; start += ARENA_FRAMES) {
+            int numFrames = Math.min(ARENA_FRAMES, bufferSize - start);
+            ByteBuffer arena = ByteBuffer.allocateDirect(numFrames * DiskSpaceManager.PAGE_SIZE);
+            for (int i = 0; i < numFrames; ++i) {
+                arena.limit((i + 1) * DiskSpaceManager.PAGE_SIZE);
+                arena.position(i * DiskSpaceManager.PAGE_SIZE);
+                buffers[start + i] = arena.slice();
+            }
+        }
+        return buffers;
+    }
+
+    /**
+     * @return whether frames are allocated off-heap
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * @return number of frames in the buffer
+     */
+    public int getBufferSize() {
+        return this.frames.length;
+    }
+
+    /**
+     * Changes the number of frames in the buffer, waiting up to DEFAULT_RESIZE_TIMEOUT_MILLIS
+     * for frames to be unpinned when shrinking. See resize(int, long).
+     *
+     * @param bufferSize new number of frames
+     */
+    public void resize(int bufferSize) {
+        this.resize(bufferSize, DEFAULT_RESIZE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Changes the number of frames in the buffer while it is in use. Growing the buffer adds
+     * free frames at the end of the frame array. Shrinking it retires the frames at the end
+     * of the frame array: their pages are written back if dirty and evicted (and the eviction
+     * policy told, as for any other eviction), and the frames are dropped. Frames to be
+     * retired must be unpinned; if some of them are still pinned after timeoutMillis, the
+     * buffer is left unchanged. Retired off-heap frames are only released once every
+     * frame sharing their arena is.
+     *
+     * @param bufferSize new number of frames
+     * @param timeoutMillis maximum time to wait for frames to be retired to be unpinned
+     * @throws IllegalStateException if frames to be retired stay pinned
+     */
+    public void resize(int bufferSize, long timeoutMillis) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("buffer size must be positive");
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            this.managerLock.lock();
+            try {
+                if (bufferSize >= this.frames.length) {
+                    this.grow(bufferSize);
+                    return;
+                }
+                // pinned frames are locked, and their holders may need the manager lock,
+                // so frames to be retired are only tried, and tried again later
+                List<Frame> retired = new ArrayList<>();
+                for (int i = bufferSize; i < this.frames.length; ++i) {
+                    Frame frame = this.frames[i];
+                    if (!frame.frameLock.tryLock()) {
+                        break;
+                    }
+                    retired.add(frame);
+                    if (frame.isPinned()) {
+                        break;
+                    }
+                }
+                try {
+                    if (retired.size() == this.frames.length - bufferSize
+                            && !retired.get(retired.size() - 1).isPinned()) {
+                        this.shrink(bufferSize, retired);
+                        return;
+                    }
+                } finally {
+                    for (Frame frame : retired) {
+                        frame.frameLock.unlock();
+                    }
+                }
+            } finally {
+                this.managerLock.unlock();
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                throw new IllegalStateException("cannot shrink buffer - frames to be retired are pinned");
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while shrinking buffer");
+            }
+        }
+    }
+
+    /**
+     * Adds free frames to the end of the frame array. The free list ends at the index
+     * frames.length, which becomes the first new frame, so the new frames are appended to
+     * the free list. Assumes that the manager lock is held.
+     */
+    private void grow(int bufferSize) {
+        int oldSize = this.frames.length;
+        if (bufferSize == oldSize) {
+            return;
+        }
+        Frame[] newFrames = Arrays.copyOf(this.frames, bufferSize);
+        ByteBuffer[] buffers = this.offHeap ? allocateArenaFrames(bufferSize - oldSize) : null;
+        for (int i = oldSize; i < bufferSize; ++i) {
+            ByteBuffer contents = this.offHeap ? buffers[i - oldSize]
+                                               : ByteBuffer.wrap(new byte[DiskSpaceManager.PAGE_SIZE]);
+            newFrames[i] = new Frame(contents, i + 1);
+        }
+        this.frames = newFrames;
+        this.evictionPolicy.resize(bufferSize);
+    }
+
+    /**
+     * Evicts the pages of the frames at and after index bufferSize, and drops those frames.
+     * The free list is rebuilt from the free frames that are kept. Assumes that the manager
+     * lock and the locks of the retired frames are held, and that none of them is pinned.
+     */
+    private void shrink(int bufferSize, List<Frame> retired) {
+        for (Frame frame : retired) {
+            if (frame.isValid()) {
+                this.pageTable.remove(frame.pageNum, frame.index);
+                this.evictionPolicy.cleanup(frame);
+                this.counters(frame.pageNum).evictions.increment();
+                frame.invalidate();
+            }
+        }
+        List<Integer> free = new ArrayList<>();
+        for (int i = this.firstFreeIndex; i < this.frames.length; i = ~this.frames[i].index) {
+            if (i < bufferSize) {
+                free.add(i);
+            }
+        }
+        for (int i = 0; i < free.size(); ++i) {
+            this.frames[free.get(i)].index = ~(i + 1 < free.size() ? free.get(i + 1) : bufferSize);
+        }
+        this.firstFreeIndex = free.isEmpty() ? bufferSize : free.get(0);
+        this.frames = Arrays.copyOf(this.frames, bufferSize);
+        this.evictionPolicy.resize(bufferSize);
+    }
+
     @Override
     public void close() {
+        this.stopPageCleaner();
+        this.stopReadAhead();
+        this.stopPrewarm();
         this.managerLock.lock();
         try {
             for (Frame frame : this.frames) {
@@ -395,41 +806,137 @@ public class BufferManager implements AutoCloseable {
      * @return buffer frame with specified page loaded
      */
     Frame fetchPageFrame(long pageNum) {
+        return this.fetchPageFrame(pageNum, null);
+    }
+
+    /**
+     * Fetches a buffer frame with data for the specified page, loading it through a
+     * buffer ring if it is not already in memory. Pins the buffer frame.
+     *
+     * @param pageNum page number
+     * @param ring buffer ring to load the page through, or null to use the whole buffer
+     * @return buffer frame with specified page loaded
+     */
+    Frame fetchPageFrame(long pageNum, BufferRing ring) {
+        while (true) {
+            boolean loaded = false;
+            Frame frame = this.fetchResidentFrame(pageNum, ring);
+            if (frame == null) {
+                frame = this.loadPageFrame(pageNum, ring);
+                loaded = frame != null;
+            }
+            if (frame != null) {
+                ReadAhead readAhead = this.readAhead;
+                if (readAhead != null && (loaded || frame.prefetched)) {
+                    readAhead.onAccess(pageNum, ring);
+                }
+                frame.prefetched = false;
+                return frame;
+            }
+        }
+    }
+
+    /**
+     * Pins the buffer frame of a page that is already loaded in memory, without taking the
+     * manager lock. The frame is locked first and then checked to still hold the page,
+     * since it may have been evicted between the lookup and the lock. A page loaded through
+     * a buffer ring that is fetched without one is no longer considered part of the ring.
+     *
+     * @param pageNum page number
+     * @param ring buffer ring the page is fetched through, or null
+     * @return pinned buffer frame with specified page loaded, or null if the page is not loaded
+     */
+    private Frame fetchResidentFrame(long pageNum, BufferRing ring) {
+        int frameIndex = this.pageTable.get(pageNum);
+        if (frameIndex == PageTable.NOT_FOUND) {
+            return null;
+        }
+        Frame[] frames = this.frames;
+        if (frameIndex >= frames.length) {
+            // the frame was retired by a concurrent resize
+            return null;
+        }
+        Frame frame = frames[frameIndex];
+        frame.lockForPin();
+        try {
+            if (frame.loadFailed) {
+                // dropped below, without holding the frame lock
+            } else if (frame.isValid() && frame.pageNum == pageNum && this.frames[frameIndex] == frame
+                    && this.pageTable.get(pageNum) == frameIndex) {
+                frame.pin();
+                this.counters(pageNum).hits.increment();
+                if (ring == null) {
+                    frame.ring = null;
+                }
+                return frame;
+            } else {
+                return null;
+            }
+        } finally {
+            frame.frameLock.unlock();
+        }
+        this.dropFailedFrame(frame);
+        return null;
+    }
+
+    /**
+     * Loads a page that is not in memory into a free or evicted buffer frame, and pins it.
+     * When loading through a buffer ring, the ring's oldest frame is reused if possible.
+     *
+     * @param pageNum page number
+     * @param ring buffer ring to load the page through, or null
+     * @return pinned buffer frame with specified page loaded, or null if the page was
+     * loaded by another thread in the meantime
+     */
+    private Frame loadPageFrame(long pageNum, BufferRing ring) {
         this.managerLock.lock();
         Frame newFrame;
         Frame evictedFrame;
+        boolean evicting = true;
         // figure out what frame to load data to, and update manager state
         try {
             if (!this.diskSpaceManager.pageAllocated(pageNum)) {
                 throw new PageException("page " + pageNum + " not allocated");
             }
-            if (this.pageToFrame.containsKey(pageNum)) {
-                newFrame = this.frames[this.pageToFrame.get(pageNum)];
-                newFrame.pin();
-                return newFrame;
+            if (this.pageTable.containsKey(pageNum)) {
+                return null;
             }
-            // prioritize free frames over eviction
-            if (this.firstFreeIndex < this.frames.length) {
+            // prioritize the ring's own frames, then free frames, over eviction
+            if (ring != null && (evictedFrame = this.lockRingVictim(ring)) != null) {
+                this.pageTable.remove(evictedFrame.pageNum, evictedFrame.index);
+                evictionPolicy.cleanup(evictedFrame);
+            } else if (this.firstFreeIndex < this.frames.length) {
                 evictedFrame = this.frames[this.firstFreeIndex];
                 evictedFrame.setUsed();
+                evicting = false;
+                evictedFrame.frameLock.lock();
             } else {
-                evictedFrame = (Frame) evictionPolicy.evict(frames);
-                this.pageToFrame.remove(evictedFrame.pageNum, evictedFrame.index);
+                evictedFrame = this.lockEvictionVictim();
+                this.pageTable.remove(evictedFrame.pageNum, evictedFrame.index);
                 evictionPolicy.cleanup(evictedFrame);
             }
             int frameIndex = evictedFrame.index;
             newFrame = this.frames[frameIndex] = new Frame(evictedFrame.contents, frameIndex, pageNum);
+            newFrame.ring = ring;
             evictionPolicy.init(newFrame);
+            if (ring != null) {
+                ring.advance(newFrame);
+            }
 
-            evictedFrame.frameLock.lock();
             newFrame.frameLock.lock();
 
-            this.pageToFrame.put(pageNum, frameIndex);
+            this.pageTable.put(pageNum, frameIndex);
         } finally {
             this.managerLock.unlock();
         }
         // flush evicted frame
         try {
+            if (evicting) {
+                this.counters(evictedFrame.pageNum).evictions.increment();
+                if (evictedFrame.dirty) {
+                    this.numSyncEvictionWrites.incrementAndGet();
+                }
+            }
             evictedFrame.invalidate();
         } finally {
             evictedFrame.frameLock.unlock();
@@ -440,6 +947,7 @@ public class BufferManager implements AutoCloseable {
             newFrame.pin();
             BufferManager.this.diskSpaceManager.readPage(pageNum, newFrame.contents);
             this.incrementIOs();
+            this.counters(pageNum).misses.increment();
             return newFrame;
         } catch (PageException e) {
             newFrame.unpin();
@@ -450,65 +958,362 @@ public class BufferManager implements AutoCloseable {
     }
 
     /**
-     * Fetches the specified page, with a loaded and pinned buffer frame.
+     * Asks the eviction policy for a frame to evict, and locks it. Frames are pinned without
+     * holding the manager lock, so if the chosen frame is being pinned by another thread, the
+     * eviction policy is asked again, up to MAX_EVICTION_ATTEMPTS times. Assumes that the
+     * manager lock is held.
      *
-     * @param parentContext lock context of the **parent** of the page being fetched
-     * @param pageNum       page number]
-     * @return specified page
+     * @return locked, unpinned frame to evict
+     * @throws IllegalStateException if no frame could be locked for eviction
      */
-    public Page fetchPage(LockContext parentContext, long pageNum) {
-        return this.frameToPage(parentContext, pageNum, this.fetchPageFrame(pageNum));
+    private Frame lockEvictionVictim() {
+        for (int i = 0; i < MAX_EVICTION_ATTEMPTS; ++i) {
+            Frame frame = (Frame) evictionPolicy.evict(frames);
+            if (frame.frameLock.tryLock()) {
+                if (!frame.isPinned()) {
+                    return frame;
+                }
+                frame.frameLock.unlock();
+            }
+            Thread.onSpinWait();
+        }
+        throw new IllegalStateException("cannot evict - frames to evict stay in use");
     }
 
     /**
-     * Fetches a buffer frame for a new page. Pins the buffer frame. Cannot be used outside the package.
+     * Locks the frame in the slot of a buffer ring that is reused next, if it still holds
+     * the page loaded through the ring and is not pinned. Assumes that the manager lock is held.
      *
-     * @param partNum partition number for new page
-     * @return buffer frame for the new page
+     * @param ring buffer ring
+     * @return locked, unpinned frame to evict, or null if the ring's frame cannot be reused
      */
-    Frame fetchNewPageFrame(int partNum) {
-        long pageNum = this.diskSpaceManager.allocPage(partNum);
+    private Frame lockRingVictim(BufferRing ring) {
+        Frame frame = (Frame) ring.current();
+        if (frame == null || !frame.frameLock.tryLock()) {
+            return null;
+        }
+        if (frame.ring == ring && frame.isValid() && !frame.isPinned() && this.frames[frame.index] == frame) {
+            return frame;
+        }
+        frame.frameLock.unlock();
+        return null;
+    }
+
+    /**
+     * Loads pages that are not in memory into free frames, frames of a buffer ring, or clean
+     * frames that the eviction policy would evict next, without pinning them. Stops at the
+     * first page that is not allocated, or when no such frame is left. The pages are read
+     * with a single call to the disk space manager, while holding their frame locks (so that
+     * a thread fetching one of them waits for it to be read), but not the manager lock.
+     * Called by the read-ahead thread.
+     *
+     * @param firstPage page number of the first page to load
+     * @param numPages number of consecutive pages to load
+     * @param ring buffer ring to load the pages through, or null
+     * @return number of pages loaded
+     */
+    int prefetchPages(long firstPage, int numPages, BufferRing ring) {
+        return this.prefetchPages(firstPage, numPages, ring, false);
+    }
+
+    /**
+     * Loads pages that are not in memory without pinning them, as above.
+     *
+     * @param firstPage page number of the first page to load
+     * @param numPages number of consecutive pages to load
+     * @param ring buffer ring to load the pages through, or null
+     * @param freeFramesOnly whether to only use free frames (and the ring's frames), and
+     *                       never evict pages chosen by the eviction policy
+     * @return number of pages loaded
+     */
+    private int prefetchPages(long firstPage, int numPages, BufferRing ring, boolean freeFramesOnly) {
+        List<Frame> newFrames = new ArrayList<>();
+        List<Frame> evictedFrames = new ArrayList<>();
         this.managerLock.lock();
         try {
-            return fetchPageFrame(pageNum);
+            List<BufferFrame> victims = freeFramesOnly ? Collections.emptyList()
+                                                       : this.evictionPolicy.peekVictims(this.frames, numPages);
+            int nextVictim = 0;
+            for (int i = 0; i < numPages; ++i) {
+                long pageNum = firstPage + i;
+                if (this.pageTable.containsKey(pageNum)) {
+                    continue;
+                }
+                if (!this.isAllocated(pageNum)) {
+                    break;
+                }
+                // prioritize the ring's own frames, then free frames, over clean victims;
+                // stop once the ring would reuse a frame prefetched and not yet read
+                Frame evictedFrame = ring != null ? this.lockRingVictim(ring) : null;
+                if (evictedFrame != null && evictedFrame.prefetched) {
+                    evictedFrame.frameLock.unlock();
+                    break;
+                }
+                if (evictedFrame != null && evictedFrame.dirty) {
+                    evictedFrame.frameLock.unlock();
+                    evictedFrame = null;
+                }
+                boolean free = false;
+                if (evictedFrame == null && this.firstFreeIndex < this.frames.length) {
+                    evictedFrame = this.frames[this.firstFreeIndex];
+                    evictedFrame.setUsed();
+                    evictedFrame.frameLock.lock();
+                    free = true;
+                }
+                while (evictedFrame == null && nextVictim < victims.size()) {
+                    evictedFrame = this.lockCleanVictim((Frame) victims.get(nextVictim++));
+                }
+                if (evictedFrame == null) {
+                    break;
+                }
+                if (!free) {
+                    this.pageTable.remove(evictedFrame.pageNum, evictedFrame.index);
+                    evictionPolicy.cleanup(evictedFrame);
+                    evictedFrames.add(evictedFrame);
+                }
+                int frameIndex = evictedFrame.index;
+                Frame newFrame = this.frames[frameIndex] = new Frame(evictedFrame.contents, frameIndex, pageNum);
+                newFrame.ring = ring;
+                newFrame.prefetched = true;
+                evictionPolicy.init(newFrame);
+                if (ring != null) {
+                    ring.advance(newFrame);
+                }
+                newFrame.frameLock.lock();
+                this.pageTable.put(pageNum, frameIndex);
+                newFrames.add(newFrame);
+                if (free) {
+                    evictedFrame.invalidate();
+                    evictedFrame.frameLock.unlock();
+                }
+            }
         } finally {
             this.managerLock.unlock();
         }
+        // evicted frames are clean, so invalidating them does not write them back
+        for (Frame evictedFrame : evictedFrames) {
+            this.counters(evictedFrame.pageNum).evictions.increment();
+            evictedFrame.invalidate();
+            evictedFrame.frameLock.unlock();
+        }
+        if (newFrames.isEmpty()) {
+            return 0;
+        }
+        long[] pageNums = new long[newFrames.size()];
+        ByteBuffer[] contents = new ByteBuffer[newFrames.size()];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = newFrames.get(i).pageNum;
+            contents[i] = newFrames.get(i).contents;
+        }
+        boolean success = false;
+        try {
+            this.diskSpaceManager.readPages(pageNums, contents);
+            for (int i = 0; i < pageNums.length; ++i) {
+                this.incrementIOs();
+            }
+            this.numPagesPrefetched.addAndGet(pageNums.length);
+            success = true;
+            return pageNums.length;
+        } finally {
+            for (Frame newFrame : newFrames) {
+                newFrame.loadFailed = !success;
+                newFrame.frameLock.unlock();
+            }
+            if (!success) {
+                for (Frame newFrame : newFrames) {
+                    this.dropFailedFrame(newFrame);
+                }
+            }
+        }
     }
 
     /**
-     * Fetches a new page, with a loaded and pinned buffer frame.
+     * Locks an eviction candidate for read-ahead, if it is still loaded, unpinned and clean.
+     * Assumes that the manager lock is held.
      *
-     * @param parentContext parent lock context of the new page
-     * @param partNum       partition number for new page
-     * @return the new page
+     * @param frame frame returned by EvictionPolicy#peekVictims
+     * @return locked frame to evict, or null if the frame cannot be used
      */
-    public Page fetchNewPage(LockContext parentContext, int partNum) {
-        Frame newFrame = this.fetchNewPageFrame(partNum);
-        return this.frameToPage(parentContext, newFrame.getPageNum(), newFrame);
+    private Frame lockCleanVictim(Frame frame) {
+        if (!frame.frameLock.tryLock()) {
+            return null;
+        }
+        if (frame.isValid() && !frame.isPinned() && !frame.dirty && this.frames[frame.index] == frame) {
+            return frame;
+        }
+        frame.frameLock.unlock();
+        return null;
     }
 
     /**
-     * Frees a page - evicts the page from cache, and tells the disk space manager
-     * that the page is no longer needed. Page must be pinned before this call,
-     * and cannot be used after this call (aside from unpinning).
+     * Unloads a frame that read-ahead failed to read into, so that the page is loaded
+     * again on demand. Must not be called while holding the frame's lock.
      *
-     * @param page page to free
+     * @param frame frame with loadFailed set
      */
-    public void freePage(Page page) {
+    private void dropFailedFrame(Frame frame) {
         this.managerLock.lock();
         try {
-            TransactionContext transaction = TransactionContext.getTransaction();
-            int frameIndex = this.pageToFrame.get(page.getPageNum());
-
-            Frame frame = this.frames[frameIndex];
-            if (transaction != null) page.flush();
-            this.pageToFrame.remove(page.getPageNum(), frameIndex);
-            evictionPolicy.cleanup(frame);
-            frame.setFree();
-
-            this.frames[frameIndex] = new Frame(frame);
-            diskSpaceManager.freePage(page.getPageNum());
+            if (frame.isValid() && this.frames[frame.index] == frame) {
+                frame.dirty = false;
+                this.evict(frame.index);
+            }
+        } finally {
+            this.managerLock.unlock();
+        }
+    }
+
+    /**
+     * @return whether a page is allocated; false if its partition does not exist
+     */
+    private boolean isAllocated(long pageNum) {
+        try {
+            return this.diskSpaceManager.pageAllocated(pageNum);
+        } catch (NoSuchElementException | PageException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Fetches the specified page, with a loaded and pinned buffer frame.
+     *
+     * @param parentContext lock context of the **parent** of the page being fetched
+     * @param pageNum       page number]
+     * @return specified page
+     */
+    public Page fetchPage(LockContext parentContext, long pageNum) {
+        return this.fetchPage(parentContext, pageNum, null);
+    }
+
+    /**
+     * Fetches the specified page, with a loaded and pinned buffer frame, loading it
+     * through a buffer ring if it is not in memory.
+     *
+     * @param parentContext lock context of the **parent** of the page being fetched
+     * @param pageNum       page number
+     * @param ring          buffer ring to load the page through, or null to use the whole buffer
+     * @return specified page
+     */
+    public Page fetchPage(LockContext parentContext, long pageNum, BufferRing ring) {
+        return this.frameToPage(parentContext, pageNum, this.fetchPageFrame(pageNum, ring));
+    }
+
+    /**
+     * Fetches a buffer frame for a new page. Pins the buffer frame. Cannot be used outside the package.
+     *
+     * @param partNum partition number for new page
+     * @return buffer frame for the new page
+     */
+    Frame fetchNewPageFrame(int partNum) {
+        return this.fetchNewPageFrame(partNum, null);
+    }
+
+    /**
+     * Fetches a buffer frame for a new page, loaded through a buffer ring. Pins the buffer frame.
+     *
+     * @param partNum partition number for new page
+     * @param ring buffer ring to load the page through, or null to use the whole buffer
+     * @return buffer frame for the new page
+     */
+    Frame fetchNewPageFrame(int partNum, BufferRing ring) {
+        long pageNum = this.diskSpaceManager.allocPage(partNum);
+        this.managerLock.lock();
+        try {
+            return fetchPageFrame(pageNum, ring);
+        } finally {
+            this.managerLock.unlock();
+        }
+    }
+
+    /**
+     * Fetches a new page, with a loaded and pinned buffer frame.
+     *
+     * @param parentContext parent lock context of the new page
+     * @param partNum       partition number for new page
+     * @return the new page
+     */
+    public Page fetchNewPage(LockContext parentContext, int partNum) {
+        return this.fetchNewPage(parentContext, partNum, null);
+    }
+
+    /**
+     * Fetches a new page, with a loaded and pinned buffer frame loaded through a buffer ring.
+     *
+     * @param parentContext parent lock context of the new page
+     * @param partNum       partition number for new page
+     * @param ring          buffer ring to load the page through, or null to use the whole buffer
+     * @return the new page
+     */
+    public Page fetchNewPage(LockContext parentContext, int partNum, BufferRing ring) {
+        Frame newFrame = this.fetchNewPageFrame(partNum, ring);
+        return this.frameToPage(parentContext, newFrame.getPageNum(), newFrame);
+    }
+
+    /**
+     * Creates a buffer ring for bulk access, such as reading and writing a temporary table.
+     *
+     * @return new buffer ring, or null if buffer rings are disabled
+     */
+    public BufferRing newRing() {
+        int size = Math.min(this.ringSize, Math.max(1, this.frames.length / 4));
+        return size > 0 ? new BufferRing(size) : null;
+    }
+
+    /**
+     * Creates a buffer ring for a sequential scan, if the scan is large: scans of at most
+     * a quarter of the buffer use the whole buffer, so that small tables stay cached.
+     *
+     * @param numPages number of pages to be scanned
+     * @return new buffer ring, or null if the scan should not use one
+     */
+    public BufferRing newScanRing(long numPages) {
+        if (numPages <= this.frames.length / 4) {
+            return null;
+        }
+        return this.newRing();
+    }
+
+    /**
+     * Sets the number of frames in buffer rings created from now on. A ring never uses
+     * more than a quarter of the buffer.
+     *
+     * @param ringSize number of frames per ring, or 0 to disable buffer rings
+     */
+    public void setRingSize(int ringSize) {
+        if (ringSize < 0) {
+            throw new IllegalArgumentException("ring size must be non-negative");
+        }
+        this.ringSize = ringSize;
+    }
+
+    /**
+     * @return number of frames in new buffer rings, or 0 if buffer rings are disabled
+     */
+    public int getRingSize() {
+        return this.ringSize;
+    }
+
+    /**
+     * Frees a page - evicts the page from cache, and tells the disk space manager
+     * that the page is no longer needed. Page must be pinned before this call,
+     * and cannot be used after this call (aside from unpinning).
+     *
+     * @param page page to free
+     */
+    public void freePage(Page page) {
+        this.managerLock.lock();
+        try {
+            TransactionContext transaction = TransactionContext.getTransaction();
+            int frameIndex = this.pageTable.get(page.getPageNum());
+
+            Frame frame = this.frames[frameIndex];
+            if (transaction != null) page.flush();
+            this.pageTable.remove(page.getPageNum(), frameIndex);
+            evictionPolicy.cleanup(frame);
+            frame.setFree();
+
+            this.frames[frameIndex] = new Frame(frame);
+            diskSpaceManager.freePage(page.getPageNum());
         } finally {
             this.managerLock.unlock();
         }
@@ -527,7 +1332,7 @@ public class BufferManager implements AutoCloseable {
             for (int i = 0; i < frames.length; ++i) {
                 Frame frame = frames[i];
                 if (DiskSpaceManager.getPartNum(frame.pageNum) == partNum) {
-                    this.pageToFrame.remove(frame.getPageNum(), i);
+                    this.pageTable.remove(frame.getPageNum(), i);
                     evictionPolicy.cleanup(frame);
                     frame.flush();
                     frame.setFree();
@@ -536,6 +1341,11 @@ public class BufferManager implements AutoCloseable {
             }
 
             diskSpaceManager.freePart(partNum);
+            this.partitionCounters.remove(partNum);
+            ReadAhead readAhead = this.readAhead;
+            if (readAhead != null) {
+                readAhead.forget(partNum);
+            }
         } finally {
             this.managerLock.unlock();
         }
@@ -549,21 +1359,26 @@ public class BufferManager implements AutoCloseable {
     public void evict(long pageNum) {
         managerLock.lock();
         try {
-            if (!pageToFrame.containsKey(pageNum)) {
+            int frameIndex = pageTable.get(pageNum);
+            if (frameIndex == PageTable.NOT_FOUND) {
                 return;
             }
-            evict(pageToFrame.get(pageNum));
+            evict(frameIndex);
         } finally {
             managerLock.unlock();
         }
     }
 
     private void evict(int i) {
+        if (i >= frames.length) {
+            // retired by a concurrent resize
+            return;
+        }
         Frame frame = frames[i];
         frame.frameLock.lock();
         try {
             if (frame.isValid() && !frame.isPinned()) {
-                this.pageToFrame.remove(frame.pageNum, frame.index);
+                this.pageTable.remove(frame.pageNum, frame.index);
                 evictionPolicy.cleanup(frame);
 
                 frames[i] = new Frame(frame.contents, this.firstFreeIndex);
@@ -577,14 +1392,518 @@ public class BufferManager implements AutoCloseable {
     }
 
     /**
-     * Calls evict on every frame in sequence.
+     * Calls evict on every frame in sequence. Dirty pages are first written back
+     * in batches, so that runs of adjacent pages are written with one I/O each.
      */
     public void evictAll() {
+        flushAll();
         for (int i = 0; i < frames.length; ++i) {
             evict(i);
         }
     }
 
+    /**
+     * Flushes every unpinned dirty page, FLUSH_BATCH_SIZE pages at a time. Frames
+     * that are locked by another thread are skipped.
+     */
+    private void flushAll() {
+        Frame[] frames = this.frames;
+        List<Frame> batch = new ArrayList<>();
+        for (int i = 0; i < frames.length; ++i) {
+            Frame frame = frames[i];
+            if (!frame.frameLock.tryLock()) {
+                continue;
+            }
+            if (frame.isValid() && frame.dirty && !frame.isPinned()) {
+                frame.pin();
+                batch.add(frame);
+            } else {
+                frame.frameLock.unlock();
+            }
+            if (batch.size() == FLUSH_BATCH_SIZE || (i == frames.length - 1 && !batch.isEmpty())) {
+                flushFrames(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of pinned frames to disk with a single call to the disk space
+     * manager, and unpins and unlocks them. The log is flushed up to the largest pageLSN in the
+     * batch first, which may itself write back log pages in the batch.
+     * @param batch pinned frames to flush
+     * @return number of pages written
+     */
+    private int flushFrames(List<Frame> batch) {
+        try {
+            long maxPageLSN = -1;
+            for (Frame frame : batch) {
+                if (!frame.logPage) {
+                    maxPageLSN = Math.max(maxPageLSN, frame.getPageLSN());
+                }
+            }
+            if (maxPageLSN >= 0) {
+                recoveryManager.pageFlushHook(maxPageLSN);
+            }
+            List<Frame> dirtyFrames = new ArrayList<>();
+            for (Frame frame : batch) {
+                if (frame.dirty) {
+                    dirtyFrames.add(frame);
+                }
+            }
+            long[] pageNums = new long[dirtyFrames.size()];
+            ByteBuffer[] contents = new ByteBuffer[dirtyFrames.size()];
+            for (int i = 0; i < pageNums.length; ++i) {
+                pageNums[i] = dirtyFrames.get(i).pageNum;
+                contents[i] = dirtyFrames.get(i).contents;
+            }
+            diskSpaceManager.writePages(pageNums, contents);
+            for (Frame frame : dirtyFrames) {
+                incrementIOs();
+                counters(frame.pageNum).writebacks.increment();
+                frame.dirty = false;
+            }
+            return dirtyFrames.size();
+        } finally {
+            for (Frame frame : batch) {
+                frame.unpin();
+                frame.frameLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes back the given pages, if they are loaded, dirty and not pinned. The pages
+     * stay loaded. Frames that are locked by another thread are skipped.
+     *
+     * @param pageNums page numbers of the pages to write back
+     * @return number of pages written
+     */
+    public int flushPages(Collection<Long> pageNums) {
+        List<Long> sorted = new ArrayList<>(pageNums);
+        Collections.sort(sorted);
+        List<Frame> batch = new ArrayList<>();
+        managerLock.lock();
+        try {
+            for (long pageNum : sorted) {
+                int frameIndex = pageTable.get(pageNum);
+                if (frameIndex == PageTable.NOT_FOUND || frameIndex >= frames.length) {
+                    continue;
+                }
+                Frame frame = frames[frameIndex];
+                if (!frame.frameLock.tryLock()) {
+                    continue;
+                }
+                if (frame.isValid() && frame.pageNum == pageNum && frame.dirty && !frame.isPinned()) {
+                    frame.pin();
+                    batch.add(frame);
+                } else {
+                    frame.frameLock.unlock();
+                }
+            }
+        } finally {
+            managerLock.unlock();
+        }
+        // flushing the log may load log pages, which takes the manager lock
+        int numWritten = 0;
+        int i = 0;
+        try {
+            for (; i < batch.size(); i += FLUSH_BATCH_SIZE) {
+                numWritten += flushFrames(batch.subList(i, Math.min(batch.size(), i + FLUSH_BATCH_SIZE)));
+            }
+        } finally {
+            // frames of the batches after a failed one are still pinned and locked
+            for (int j = i + FLUSH_BATCH_SIZE; j < batch.size(); ++j) {
+                batch.get(j).unpin();
+                batch.get(j).frameLock.unlock();
+            }
+        }
+        return numWritten;
+    }
+
+    /**
+     * Starts a background thread that writes back dirty pages ahead of eviction.
+     * Does nothing if the page cleaner is already running.
+     *
+     * @param maxPagesPerSecond maximum rate at which pages are written back
+     * @param intervalMillis time between cleaning rounds, in milliseconds
+     */
+    public void startPageCleaner(int maxPagesPerSecond, long intervalMillis) {
+        this.managerLock.lock();
+        try {
+            if (this.pageCleaner == null) {
+                this.pageCleaner = new PageCleaner(this, maxPagesPerSecond, intervalMillis);
+                this.pageCleaner.start();
+            }
+        } finally {
+            this.managerLock.unlock();
+        }
+    }
+
+    /**
+     * Changes the rate limit of the running page cleaner.
+     *
+     * @param maxPagesPerSecond maximum rate at which pages are written back
+     */
+    public void setPageCleanerRate(int maxPagesPerSecond) {
+        this.managerLock.lock();
+        try {
+            if (this.pageCleaner == null) {
+                throw new IllegalStateException("page cleaner is not running");
+            }
+            this.pageCleaner.setMaxPagesPerSecond(maxPagesPerSecond);
+        } finally {
+            this.managerLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the page cleaner, if it is running, and waits for it to finish.
+     */
+    public void stopPageCleaner() {
+        PageCleaner cleaner;
+        this.managerLock.lock();
+        try {
+            cleaner = this.pageCleaner;
+            this.pageCleaner = null;
+        } finally {
+            this.managerLock.unlock();
+        }
+        // the cleaner takes the manager lock, so wait for it without holding the lock
+        if (cleaner != null) {
+            cleaner.stop();
+        }
+    }
+
+    /**
+     * Starts sequential read-ahead: when pages of a partition are accessed in order, the
+     * following pages are loaded ahead of time by a background thread. Does nothing if
+     * read-ahead is already running.
+     *
+     * @param numPages number of pages to prefetch at a time
+     */
+    public void startReadAhead(int numPages) {
+        this.managerLock.lock();
+        try {
+            if (this.readAhead == null) {
+                ReadAhead readAhead = new ReadAhead(this, numPages);
+                readAhead.start();
+                this.readAhead = readAhead;
+            }
+        } finally {
+            this.managerLock.unlock();
+        }
+    }
+
+    /**
+     * Stops read-ahead, if it is running, and waits for the current prefetch to finish.
+     */
+    public void stopReadAhead() {
+        ReadAhead readAhead;
+        this.managerLock.lock();
+        try {
+            readAhead = this.readAhead;
+            this.readAhead = null;
+        } finally {
+            this.managerLock.unlock();
+        }
+        // prefetching takes the manager lock, so wait for it without holding the lock
+        if (readAhead != null) {
+            readAhead.stop();
+        }
+    }
+
+    /**
+     * @return number of pages prefetched at a time, or 0 if read-ahead is not running
+     */
+    public int getReadAheadPages() {
+        ReadAhead readAhead = this.readAhead;
+        return readAhead == null ? 0 : readAhead.getNumPages();
+    }
+
+    /**
+     * @return number of pages loaded by read-ahead and prewarming
+     */
+    public long getNumPagesPrefetched() {
+        return this.numPagesPrefetched.get();
+    }
+
+    /**
+     * Enables or disables write batching. Normally, every write to a page in a transaction
+     * is logged as it is made, as one update record per changed range. With write batching,
+     * the writes made while a page is pinned are logged together when it is unpinned (or
+     * flushed, if that happens first), as one update record per range of the page that
+     * differs from its contents when the page was first written. A page header written one
+     * field at a time, for example, is then logged as one record instead of one per field,
+     * and bytes written several times are only logged once. No page reaches disk before
+     * the records of its changes are logged, as flushing logs them first.
+     *
+     * @param writeBatching whether to batch writes
+     */
+    public void setWriteBatching(boolean writeBatching) {
+        this.writeBatching = writeBatching;
+    }
+
+    /**
+     * @return whether writes are batched (see setWriteBatching)
+     */
+    public boolean isWriteBatching() {
+        return this.writeBatching;
+    }
+
+    /**
+     * Sets the file that the list of resident pages is saved to (by saveHotPages) and
+     * prewarmed from (by prewarm and startPrewarm).
+     *
+     * @param hotPageFile file for the hot page list, or null to disable saving and prewarming
+     */
+    public void setHotPageFile(Path hotPageFile) {
+        this.hotPageFile = hotPageFile;
+    }
+
+    /**
+     * Saves the page numbers of the pages in memory (other than log pages) to the hot page
+     * file, if one is set, replacing the previous list. Called when the database is closed,
+     * and at checkpoints. Frames are not locked, so the list is a snapshot that may be
+     * slightly out of date.
+     *
+     * @return number of pages in the list
+     */
+    public int saveHotPages() {
+        Path file = this.hotPageFile;
+        if (file == null) {
+            return 0;
+        }
+        Frame[] frames = this.frames;
+        long[] pageNums = new long[frames.length];
+        int numPages = 0;
+        for (Frame frame : frames) {
+            long pageNum = frame.pageNum;
+            if (frame.isValid() && !frame.logPage && pageNum != DiskSpaceManager.INVALID_PAGE_NUM) {
+                pageNums[numPages++] = pageNum;
+            }
+        }
+        HotPageList.write(file, Arrays.copyOf(pageNums, numPages));
+        return numPages;
+    }
+
+    /**
+     * Loads the pages in the hot page file into free frames, reading runs of consecutive
+     * pages with one call to the disk space manager each. Stops when there are no free
+     * frames left (so pages already loaded on demand are never evicted by prewarming), or
+     * when the calling thread is interrupted. Pages that no longer exist are skipped.
+     *
+     * @return number of pages loaded
+     */
+    public int prewarm() {
+        Path file = this.hotPageFile;
+        if (file == null) {
+            return 0;
+        }
+        long[] pageNums = HotPageList.read(file);
+        int loaded = 0;
+        for (int start = 0; start < pageNums.length && !Thread.currentThread().isInterrupted(); ) {
+            if (this.firstFreeIndex >= this.frames.length) {
+                break;
+            }
+            int end = start + 1;
+            while (end < pageNums.length && end - start < FLUSH_BATCH_SIZE
+                    && pageNums[end] == pageNums[end - 1] + 1) {
+                ++end;
+            }
+            try {
+                loaded += this.prefetchPages(pageNums[start], end - start, null, true);
+            } catch (PageException | NoSuchElementException e) {
+                // pages that can no longer be read are loaded (or fail) on demand
+            }
+            start = end;
+        }
+        return loaded;
+    }
+
+    /**
+     * Starts prewarming the buffer from the hot page file in a background thread. Pages
+     * may be fetched while they are being prewarmed. Does nothing if prewarming has
+     * already been started.
+     */
+    public void startPrewarm() {
+        this.managerLock.lock();
+        try {
+            if (this.prewarmThread == null) {
+                this.prewarmThread = new Thread(this::prewarm, "prewarm");
+                this.prewarmThread.setDaemon(true);
+                this.prewarmThread.start();
+            }
+        } finally {
+            this.managerLock.unlock();
+        }
+    }
+
+    /**
+     * Waits for background prewarming, if started, to finish.
+     */
+    public void awaitPrewarm() {
+        Thread thread;
+        this.managerLock.lock();
+        try {
+            thread = this.prewarmThread;
+        } finally {
+            this.managerLock.unlock();
+        }
+        boolean interrupted = false;
+        while (thread != null && thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops background prewarming, if it is running, after the current batch of pages.
+     */
+    private void stopPrewarm() {
+        Thread thread;
+        this.managerLock.lock();
+        try {
+            thread = this.prewarmThread;
+        } finally {
+            this.managerLock.unlock();
+        }
+        if (thread != null) {
+            thread.interrupt();
+            this.awaitPrewarm();
+        }
+    }
+
+    /**
+     * Writes back up to maxPages dirty, unpinned pages without evicting them: first the
+     * pages that the eviction policy would evict next, and then other dirty pages, in
+     * frame order starting where the previous call left off. Log pages are left to the
+     * log manager. Frames locked by another thread are skipped. Called by the page cleaner.
+     *
+     * @param maxPages maximum number of pages to write back
+     * @return number of pages written back
+     */
+    int cleanPages(int maxPages) {
+        List<BufferFrame> victims;
+        this.managerLock.lock();
+        try {
+            victims = this.evictionPolicy.peekVictims(this.frames, maxPages);
+        } finally {
+            this.managerLock.unlock();
+        }
+        List<Frame> batch = new ArrayList<>();
+        int cleaned = 0;
+        for (BufferFrame victim : victims) {
+            if (batch.size() + cleaned == maxPages) {
+                break;
+            }
+            cleaned += this.addToCleaningBatch((Frame) victim, batch);
+        }
+        Frame[] frames = this.frames;
+        for (int i = 0; i < frames.length && batch.size() + cleaned < maxPages; ++i) {
+            int index = this.cleanerCursor % frames.length;
+            this.cleanerCursor = (index + 1) % frames.length;
+            cleaned += this.addToCleaningBatch(frames[index], batch);
+        }
+        if (!batch.isEmpty()) {
+            cleaned += this.flushFrames(batch);
+        }
+        this.numPagesCleaned.addAndGet(cleaned);
+        return cleaned;
+    }
+
+    /**
+     * Locks and pins frame and adds it to batch if it is a valid, unpinned, dirty data page,
+     * and flushes batch once it is full. Frames already in the batch are pinned, so they
+     * are not added twice.
+     *
+     * @return number of pages written back
+     */
+    private int addToCleaningBatch(Frame frame, List<Frame> batch) {
+        if (!frame.dirty || frame.logPage || !frame.frameLock.tryLock()) {
+            return 0;
+        }
+        if (frame.isValid() && frame.dirty && !frame.isPinned()) {
+            frame.pin();
+            batch.add(frame);
+        } else {
+            frame.frameLock.unlock();
+        }
+        if (batch.size() < FLUSH_BATCH_SIZE) {
+            return 0;
+        }
+        int flushed = this.flushFrames(batch);
+        batch.clear();
+        return flushed;
+    }
+
+    /**
+     * @return number of dirty pages written back by the page cleaner
+     */
+    public long getNumPagesCleaned() {
+        return this.numPagesCleaned.get();
+    }
+
+    /**
+     * @return number of dirty pages that had to be written back synchronously,
+     * while being evicted to load another page
+     */
+    public long getNumSyncEvictionWrites() {
+        return this.numSyncEvictionWrites.get();
+    }
+
+    /**
+     * Takes a snapshot of the buffer statistics of every partition. Resident pages are
+     * counted without locking frames, so the snapshot does not wait for pinned pages.
+     *
+     * @return buffer statistics
+     */
+    public BufferStats getStats() {
+        Map<Integer, Integer> residentPages = new HashMap<>();
+        for (Frame frame : this.frames) {
+            if (frame.isValid()) {
+                residentPages.merge(DiskSpaceManager.getPartNum(frame.pageNum), 1, Integer::sum);
+            }
+        }
+        Map<Integer, BufferStats.PartitionStats> partitions = new HashMap<>();
+        for (Map.Entry<Integer, BufferStats.Counters> entry : this.partitionCounters.entrySet()) {
+            int partNum = entry.getKey();
+            partitions.put(partNum, entry.getValue().snapshot(residentPages.getOrDefault(partNum, 0)));
+        }
+        for (Map.Entry<Integer, Integer> entry : residentPages.entrySet()) {
+            if (!partitions.containsKey(entry.getKey())) {
+                partitions.put(entry.getKey(), new BufferStats.Counters().snapshot(entry.getValue()));
+            }
+        }
+        return new BufferStats(partitions);
+    }
+
+    /**
+     * Resets the hit, miss, eviction, writeback and pin wait counters of every partition.
+     */
+    public void resetStats() {
+        this.partitionCounters.clear();
+    }
+
+    /**
+     * @param pageNum page number
+     * @return live statistics counters of the page's partition
+     */
+    private BufferStats.Counters counters(long pageNum) {
+        int partNum = DiskSpaceManager.getPartNum(pageNum);
+        BufferStats.Counters counters = this.partitionCounters.get(partNum);
+        if (counters == null) {
+            counters = this.partitionCounters.computeIfAbsent(partNum, p -> new BufferStats.Counters());
+        }
+        return counters;
+    }
+
     /**
      * Calls the passed in method with the page number of every loaded page.
      * @param process method to consume page numbers. The first parameter is the page number,
@@ -611,7 +1930,7 @@ public class BufferManager implements AutoCloseable {
      * @return number of I/Os
      */
     public long getNumIOs() {
-        return numIOs;
+        return numIOs.get();
     }
 
     public static boolean logIOs;
@@ -626,7 +1945,7 @@ public class BufferManager implements AutoCloseable {
                 }
             }
         }
-        ++numIOs;
+        numIOs.incrementAndGet();
     }
 
     /**
@@ -0,0 +1,47 @@
+package edu.berkeley.cs186.database.memory;
+
+/**
+ * A small, private ring of buffer frames for a bulk access (a large sequential scan, or
+ * the reads and writes of a temporary table holding a sort run or hash partition).
+ * Pages loaded through a ring reuse the ring's oldest frame when it is not pinned,
+ * instead of evicting pages chosen by the buffer manager's eviction policy, so a bulk
+ * access only ever occupies a ring's worth of frames and leaves the rest of the buffer
+ * (the working set of other transactions) alone. Reads and writes of pages loaded through
+ * a ring do not count as hits for the eviction policy, until the page is fetched without
+ * a ring.
+ *
+ * Rings are created by BufferManager#newRing and BufferManager#newScanRing, and are only
+ * accessed while holding the buffer manager's lock.
+ */
+public class BufferRing {
+    // Frames loaded through this ring, in order of loading; slots[next] is reused next
+    private final BufferFrame[] slots;
+    private int next = 0;
+
+    BufferRing(int size) {
+        this.slots = new BufferFrame[size];
+    }
+
+    /**
+     * @return frame in the slot that is reused next, or null if the slot is empty
+     */
+    BufferFrame current() {
+        return this.slots[this.next];
+    }
+
+    /**
+     * Puts a newly loaded frame in the slot that is reused next, and moves to the following slot.
+     * @param frame frame loaded through this ring
+     */
+    void advance(BufferFrame frame) {
+        this.slots[this.next] = frame;
+        this.next = (this.next + 1) % this.slots.length;
+    }
+
+    /**
+     * @return number of frames in the ring
+     */
+    public int size() {
+        return this.slots.length;
+    }
+}
@@ -0,0 +1,148 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Snapshot of buffer manager statistics, broken down by partition. For each partition:
+ * - hits: page requests (fetches and re-pins) served by a page already in memory
+ * - misses: page requests that had to load the page into a frame
+ * - evictions: pages of the partition evicted to make room for another page
+ * - writebacks: dirty pages of the partition written back to disk, whether on eviction,
+ *   by the page cleaner, or on flush
+ * - pin wait: time spent waiting for a frame held by another thread, in nanoseconds
+ * - resident pages: pages of the partition in memory when the snapshot was taken
+ *
+ * Snapshots are taken with BufferManager#getStats, without stopping other threads, so
+ * the counters of different partitions are not necessarily consistent with each other.
+ */
+public class BufferStats {
+    private final Map<Integer, PartitionStats> partitions;
+    private final PartitionStats total;
+
+    /**
+     * Statistics of a single partition (or, for BufferStats#getTotal, of all partitions).
+     */
+    public static class PartitionStats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long writebacks;
+        private final long pinWaitNanos;
+        private final int residentPages;
+
+        PartitionStats(long hits, long misses, long evictions, long writebacks, long pinWaitNanos,
+                       int residentPages) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.writebacks = writebacks;
+            this.pinWaitNanos = pinWaitNanos;
+            this.residentPages = residentPages;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return fraction of page requests that were hits, or 0 if there were no requests
+         */
+        public double getHitRatio() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getWritebacks() {
+            return writebacks;
+        }
+
+        public long getPinWaitNanos() {
+            return pinWaitNanos;
+        }
+
+        public int getResidentPages() {
+            return residentPages;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d (hit ratio %.3f) evictions=%d writebacks=%d " +
+                                 "pinWait=%.3fms resident=%d", hits, misses, getHitRatio(), evictions,
+                                 writebacks, pinWaitNanos / 1e6, residentPages);
+        }
+    }
+
+    /**
+     * Live counters of a partition, updated by the buffer manager without locking.
+     */
+    static class Counters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+        final LongAdder writebacks = new LongAdder();
+        final LongAdder pinWaitNanos = new LongAdder();
+
+        PartitionStats snapshot(int residentPages) {
+            return new PartitionStats(hits.sum(), misses.sum(), evictions.sum(), writebacks.sum(),
+                                      pinWaitNanos.sum(), residentPages);
+        }
+    }
+
+    BufferStats(Map<Integer, PartitionStats> partitions) {
+        this.partitions = Collections.unmodifiableMap(new TreeMap<>(partitions));
+        long hits = 0, misses = 0, evictions = 0, writebacks = 0, pinWaitNanos = 0;
+        int residentPages = 0;
+        for (PartitionStats stats : partitions.values()) {
+            hits += stats.hits;
+            misses += stats.misses;
+            evictions += stats.evictions;
+            writebacks += stats.writebacks;
+            pinWaitNanos += stats.pinWaitNanos;
+            residentPages += stats.residentPages;
+        }
+        this.total = new PartitionStats(hits, misses, evictions, writebacks, pinWaitNanos, residentPages);
+    }
+
+    /**
+     * @return statistics of every partition with pages in memory or counted accesses,
+     * keyed and ordered by partition number
+     */
+    public Map<Integer, PartitionStats> getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * @param partNum partition number
+     * @return statistics of the partition (all zero if it has not been accessed)
+     */
+    public PartitionStats getPartition(int partNum) {
+        return partitions.getOrDefault(partNum, new PartitionStats(0, 0, 0, 0, 0, 0));
+    }
+
+    /**
+     * @return statistics summed over all partitions
+     */
+    public PartitionStats getTotal() {
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("total: ").append(total);
+        for (Map.Entry<Integer, PartitionStats> entry : partitions.entrySet()) {
+            sb.append("\npartition ").append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+        return sb.toString();
+    }
+}
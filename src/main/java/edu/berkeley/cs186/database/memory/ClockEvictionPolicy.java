@@ -1,5 +1,8 @@
 package edu.berkeley.cs186.database.memory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Implementation of clock eviction policy, which works by adding a reference
  * bit to each frame, and running the algorithm.
@@ -33,7 +36,7 @@ public class ClockEvictionPolicy implements EvictionPolicy {
 
     /**
      * Called when a frame needs to be evicted.
-     * @param frames Array of all frames (same length every call)
+     * @param frames Array of all frames (same length every call, until the buffer is resized)
      * @return index of frame to be evicted
      * @throws IllegalStateException if everything is pinned
      */
@@ -58,6 +61,40 @@ public class ClockEvictionPolicy implements EvictionPolicy {
         return evicted;
     }
 
+    /**
+     * Returns the frames that are likely to be evicted next: unpinned frames with bit 0,
+     * in order from the arm, followed by unpinned frames with bit 1 (which the arm would
+     * clear on its first pass).
+     * @param frames Array of all frames (same length every call, until the buffer is resized)
+     * @param maxFrames maximum number of frames to return
+     * @return unpinned frames likely to be evicted next
+     */
+    @Override
+    public List<BufferFrame> peekVictims(BufferFrame[] frames, int maxFrames) {
+        List<BufferFrame> victims = new ArrayList<>();
+        for (Object bit : new Object[] { INACTIVE, ACTIVE }) {
+            for (int i = 0; i < frames.length && victims.size() < maxFrames; ++i) {
+                BufferFrame frame = frames[(this.arm + i) % frames.length];
+                if (frame.tag == bit && !frame.isPinned()) {
+                    victims.add(frame);
+                }
+            }
+        }
+        return victims;
+    }
+
+    /**
+     * Called when the buffer is resized; moves the arm back to the first frame if the
+     * frame it points to was dropped.
+     * @param numFrames new number of frames
+     */
+    @Override
+    public void resize(int numFrames) {
+        if (this.arm >= numFrames) {
+            this.arm = 0;
+        }
+    }
+
     /**
      * Called when a frame is removed, either because it
      * was returned from a call to evict, or because of other constraints
@@ -1,5 +1,8 @@
 package edu.berkeley.cs186.database.memory;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Interface for eviction policies for the buffer manager.
  */
@@ -18,12 +21,33 @@ public interface EvictionPolicy {
 
     /**
      * Called when a frame needs to be evicted.
-     * @param frames Array of all frames (same length every call)
+     * @param frames Array of all frames (same length every call, until the buffer is resized)
      * @return index of frame to be evicted
      * @throws IllegalStateException if everything is pinned
      */
     BufferFrame evict(BufferFrame[] frames);
 
+    /**
+     * Returns the frames that are likely to be evicted next, in the order they would be
+     * evicted, without changing any state. Used by the buffer manager's page cleaner to
+     * write back dirty pages before they are evicted. Policies that cannot predict their
+     * victims return an empty list, in which case the cleaner only scans for dirty frames.
+     * @param frames Array of all frames (same length every call, until the buffer is resized)
+     * @param maxFrames maximum number of frames to return
+     * @return unpinned frames likely to be evicted next
+     */
+    default List<BufferFrame> peekVictims(BufferFrame[] frames, int maxFrames) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Called when the buffer is resized, after the frames that were dropped (if any) have
+     * been cleaned up. Later calls to evict and peekVictims get an array of the new length.
+     * @param numFrames new number of frames
+     */
+    default void resize(int numFrames) {
+    }
+
     /**
      * Called when a frame is removed, either because it
      * was returned from a call to evict, or because of other constraints
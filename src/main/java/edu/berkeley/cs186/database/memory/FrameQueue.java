@@ -0,0 +1,123 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Doubly-linked list of buffer frames, in order from least to most recently inserted
+ * (or moved to the back), used by eviction policies that keep frames in several
+ * queues. A frame's node is stored in its tag, so a frame can be in at most one
+ * queue at a time.
+ */
+class FrameQueue {
+    private final Node head;
+    private int size;
+
+    static class Node {
+        private Node prev;
+        private Node next;
+        private FrameQueue queue;
+        final BufferFrame frame;
+        // number of pages loaded by the eviction policy when the frame was loaded
+        long loadTick;
+
+        private Node(BufferFrame frame) {
+            this.frame = frame;
+        }
+
+        /**
+         * @return queue the frame is in, or null if it is not in any queue
+         */
+        FrameQueue getQueue() {
+            return queue;
+        }
+    }
+
+    FrameQueue() {
+        this.head = new Node(null);
+        this.head.prev = this.head.next = this.head;
+    }
+
+    /**
+     * Adds a frame that is not in any queue to the back of this queue.
+     * @param frame frame to add
+     * @return node of the frame, also stored in frame.tag
+     */
+    Node add(BufferFrame frame) {
+        Node node = new Node(frame);
+        frame.tag = node;
+        this.link(node);
+        return node;
+    }
+
+    /**
+     * Moves a frame's node from whichever queue it is in to the back of this queue.
+     * @param node node of frame to move
+     */
+    void moveToBack(Node node) {
+        node.queue.unlink(node);
+        this.link(node);
+    }
+
+    /**
+     * Removes a frame's node from this queue.
+     * @param node node of frame to remove
+     */
+    void remove(Node node) {
+        this.unlink(node);
+    }
+
+    /**
+     * @return the unpinned frame closest to the front of the queue, or null if every
+     * frame is pinned
+     */
+    BufferFrame firstUnpinned() {
+        for (Node node = this.head.next; node != this.head; node = node.next) {
+            if (!node.frame.isPinned()) {
+                return node.frame;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds unpinned frames to victims, from the front of the queue, until victims has
+     * maxFrames frames.
+     */
+    void addUnpinned(List<BufferFrame> victims, int maxFrames) {
+        for (Node node = this.head.next; node != this.head && victims.size() < maxFrames; node = node.next) {
+            if (!node.frame.isPinned()) {
+                victims.add(node.frame);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    List<BufferFrame> toList() {
+        List<BufferFrame> frames = new ArrayList<>();
+        for (Node node = this.head.next; node != this.head; node = node.next) {
+            frames.add(node.frame);
+        }
+        return frames;
+    }
+
+    private void link(Node node) {
+        node.prev = this.head.prev;
+        node.next = this.head;
+        this.head.prev.next = node;
+        this.head.prev = node;
+        node.queue = this;
+        ++this.size;
+    }
+
+    private void unlink(Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = node.next = node;
+        node.queue = null;
+        --this.size;
+    }
+}
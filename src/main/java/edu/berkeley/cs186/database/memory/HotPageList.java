@@ -0,0 +1,107 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.io.PageException;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Reads and writes the list of pages that were in the buffer, used to prewarm the buffer
+ * when a database is opened again. The list is stored in a file of its own, as:
+ *
+ *   | magic (4 bytes) | number of pages (varint) | page number deltas (varints) |
+ *
+ * where page numbers are sorted, and each is stored as the (unsigned LEB128) difference from
+ * the previous one, so that runs of pages of the same partition take about a byte per page.
+ * The file is written to a temporary file first and then renamed, so a crash while writing
+ * it leaves the previous list in place.
+ */
+final class HotPageList {
+    private static final int MAGIC = 0x484f5450; // "HOTP"
+
+    private HotPageList() {
+    }
+
+    /**
+     * Writes a list of page numbers to a file, replacing it.
+     *
+     * @param file file to write
+     * @param pageNums page numbers (any order; not modified)
+     */
+    static void write(Path file, long[] pageNums) {
+        long[] sorted = pageNums.clone();
+        Arrays.sort(sorted);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            writeVarLong(out, sorted.length);
+            long prev = 0;
+            for (long pageNum : sorted) {
+                writeVarLong(out, pageNum - prev);
+                prev = pageNum;
+            }
+        } catch (IOException e) {
+            throw new PageException("could not write hot page list: " + e.getMessage());
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new PageException("could not write hot page list: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads a list of page numbers from a file.
+     *
+     * @param file file to read
+     * @return sorted page numbers, or an empty array if the file does not exist or is not
+     * a hot page list
+     */
+    static long[] read(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return new long[0];
+            }
+            long count = readVarLong(in);
+            if (count < 0 || count > Integer.MAX_VALUE) {
+                return new long[0];
+            }
+            long[] pageNums = new long[(int) count];
+            long prev = 0;
+            for (int i = 0; i < pageNums.length; ++i) {
+                prev += readVarLong(in);
+                pageNums[i] = prev;
+            }
+            return pageNums;
+        } catch (NoSuchFileException | EOFException e) {
+            // no list (or a truncated one): nothing to prewarm
+            return new long[0];
+        } catch (IOException e) {
+            throw new PageException("could not read hot page list: " + e.getMessage());
+        }
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+}
@@ -1,5 +1,8 @@
 package edu.berkeley.cs186.database.memory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Implementation of LRU eviction policy, which works by creating a
  * doubly-linked list between frames in order of ascending use time.
@@ -63,7 +66,7 @@ public class LRUEvictionPolicy implements EvictionPolicy {
 
     /**
      * Called when a frame needs to be evicted.
-     * @param frames Array of all frames (same length every call)
+     * @param frames Array of all frames (same length every call, until the buffer is resized)
      * @return index of frame to be evicted
      * @throws IllegalStateException if everything is pinned
      */
@@ -79,6 +82,24 @@ public class LRUEvictionPolicy implements EvictionPolicy {
         return frameTag.cur;
     }
 
+    /**
+     * Returns the least recently used unpinned frames, least recently used first.
+     * @param frames Array of all frames (same length every call, until the buffer is resized)
+     * @param maxFrames maximum number of frames to return
+     * @return unpinned frames likely to be evicted next
+     */
+    @Override
+    public List<BufferFrame> peekVictims(BufferFrame[] frames, int maxFrames) {
+        List<BufferFrame> victims = new ArrayList<>();
+        for (Tag frameTag = this.listHead.next; frameTag.cur != null && victims.size() < maxFrames;
+                frameTag = frameTag.next) {
+            if (!frameTag.cur.isPinned()) {
+                victims.add(frameTag.cur);
+            }
+        }
+        return victims;
+    }
+
     /**
      * Called when a frame is removed, either because it
      * was returned from a call to evict, or because of other constraints
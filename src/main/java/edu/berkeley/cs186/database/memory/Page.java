@@ -126,6 +126,63 @@ public class Page {
         writeBytes(zeros);
     }
 
+    /**
+     * Inserts a record into a slot of the page: writes it at offset, and sets the slot's
+     * bit in the slot bitmap at bitmapOffset. The insert is logged as one slot record,
+     * rather than as writes of the bytes it changes. Positions are relative to getBuffer().
+     * @param bitmapOffset position of the slot bitmap, or -1 if the page has none
+     * @param slot slot number
+     * @param offset position of the slot's record
+     * @param record bytes of the record
+     */
+    public void insertSlot(int bitmapOffset, int slot, int offset, byte[] record) {
+        writeSlot(bitmapOffset, slot, offset, null, record);
+    }
+
+    /**
+     * Deletes the record in a slot of the page, by clearing the slot's bit in the slot
+     * bitmap at bitmapOffset. The delete is logged as one slot record (holding the record,
+     * for undo). Positions are relative to getBuffer().
+     * @param bitmapOffset position of the slot bitmap, or -1 if the page has none
+     * @param slot slot number
+     * @param offset position of the slot's record
+     * @param record bytes of the record
+     */
+    public void deleteSlot(int bitmapOffset, int slot, int offset, byte[] record) {
+        writeSlot(bitmapOffset, slot, offset, record, null);
+    }
+
+    /**
+     * Overwrites the record in a slot of the page. The update is logged as one slot
+     * record. Positions are relative to getBuffer().
+     * @param slot slot number
+     * @param offset position of the slot's record
+     * @param before bytes of the record
+     * @param after new bytes of the record, of the same length
+     */
+    public void updateSlot(int slot, int offset, byte[] before, byte[] after) {
+        if (before.length != after.length) {
+            throw new PageException("record cannot change length");
+        }
+        writeSlot(-1, slot, offset, before, after);
+    }
+
+    private void writeSlot(int bitmapOffset, int slot, int offset, byte[] before, byte[] after) {
+        LockUtil.ensureSufficientLockHeld(lockContext, LockType.X);
+        int length = after != null ? after.length : before.length;
+        if (bitmapOffset < -1 || slot < 0 || offset < 0) {
+            throw new PageException("position or slot can't be negative");
+        }
+        if (frame.getEffectivePageSize() < offset + length
+                || frame.getEffectivePageSize() <= bitmapOffset + slot / 8) {
+            throw new PageException("writeSlot would go out of bounds");
+        }
+        // subclasses may return buffers that start further into the page
+        int start = ((PageBuffer) getBuffer()).offset;
+        this.frame.writeSlot((short) (bitmapOffset < 0 ? -1 : start + bitmapOffset), (short) slot,
+                             (short) (start + offset), before, after);
+    }
+
     /**
      * Force the page to disk.
      */
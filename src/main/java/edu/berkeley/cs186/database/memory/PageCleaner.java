@@ -0,0 +1,96 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.io.PageException;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Background writer for a buffer manager. Every interval, the cleaner writes back up to
+ * (maxPagesPerSecond * interval) dirty pages, starting with the pages the eviction policy
+ * would evict next, so that transactions loading a page usually find a clean frame to
+ * evict instead of having to write the evicted page back themselves.
+ *
+ * The log is flushed up to the pageLSNs of cleaned pages before they are written (see
+ * BufferManager#cleanPages), so cleaning never breaks the write-ahead logging rule.
+ */
+class PageCleaner implements Runnable {
+    private final BufferManager bufferManager;
+    private final long intervalMillis;
+    private final Thread thread;
+    private volatile int maxPagesPerSecond;
+    private volatile boolean running;
+
+    /**
+     * @param bufferManager buffer manager to clean
+     * @param maxPagesPerSecond maximum rate at which pages are written back
+     * @param intervalMillis time between cleaning rounds, in milliseconds
+     */
+    PageCleaner(BufferManager bufferManager, int maxPagesPerSecond, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("cleaning interval must be positive");
+        }
+        this.bufferManager = bufferManager;
+        this.intervalMillis = intervalMillis;
+        this.setMaxPagesPerSecond(maxPagesPerSecond);
+        this.thread = new Thread(this, "page-cleaner");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        this.running = true;
+        this.thread.start();
+    }
+
+    /**
+     * Stops the cleaner, and waits for the current round (if any) to finish.
+     */
+    void stop() {
+        this.running = false;
+        this.thread.interrupt();
+        boolean interrupted = false;
+        while (this.thread.isAlive()) {
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param maxPagesPerSecond new maximum rate at which pages are written back
+     */
+    void setMaxPagesPerSecond(int maxPagesPerSecond) {
+        if (maxPagesPerSecond <= 0) {
+            throw new IllegalArgumentException("cleaning rate must be positive");
+        }
+        this.maxPagesPerSecond = maxPagesPerSecond;
+    }
+
+    /**
+     * @return maximum number of pages written back in one round
+     */
+    int getPagesPerRound() {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, this.maxPagesPerSecond * this.intervalMillis / 1000));
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            try {
+                this.bufferManager.cleanPages(this.getPagesPerRound());
+            } catch (PageException | NoSuchElementException e) {
+                // the page or its partition was freed while being cleaned; it no
+                // longer needs to be written back
+            }
+            try {
+                Thread.sleep(this.intervalMillis);
+            } catch (InterruptedException e) {
+                // stop() interrupts to wake us up; running is checked again
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Map from page number to buffer frame index, used by the buffer manager to find
+ * resident pages. Page numbers are spread over a fixed number of stripes, each of
+ * which is an open-addressing (linear probing) hash table of primitive longs and ints
+ * guarded by its own lock, so operations never allocate (except to grow a stripe)
+ * and only contend with operations on the same stripe. Lookups are optimistic, and
+ * do not take a lock at all unless they race with a write to their stripe.
+ */
+class PageTable {
+    // Returned by get when a page number is not in the table.
+    static final int NOT_FOUND = -1;
+
+    // Number of stripes; must be a power of two.
+    private static final int NUM_STRIPES = 64;
+
+    // Marks an empty slot. Page numbers are never negative, except for
+    // DiskSpaceManager.INVALID_PAGE_NUM, which is never stored.
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final Stripe[] stripes;
+
+    /**
+     * Open-addressing hash table for one stripe. Entries are removed with backward
+     * shifting rather than tombstones, and the table is kept at most half full, so
+     * probe sequences stay short.
+     */
+    private static class Stripe {
+        private final StampedLock lock = new StampedLock();
+        private long[] keys;
+        private int[] values;
+        private int size;
+
+        Stripe(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new int[capacity];
+            Arrays.fill(this.keys, EMPTY);
+        }
+
+        int get(long pageNum, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                int value = find(keys, values, pageNum, hash);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return find(keys, values, pageNum, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        // Looks up pageNum. The arrays may be modified concurrently (in which case the
+        // caller discards the result), so probing is bounded by the table length.
+        private static int find(long[] keys, int[] values, long pageNum, int hash) {
+            int mask = keys.length - 1;
+            for (int i = 0, slot = hash & mask; i < keys.length; ++i, slot = (slot + 1) & mask) {
+                long key = keys[slot];
+                if (key == pageNum) {
+                    return values[slot];
+                }
+                if (key == EMPTY) {
+                    return NOT_FOUND;
+                }
+            }
+            return NOT_FOUND;
+        }
+
+        void put(long pageNum, int hash, int frameIndex) {
+            long stamp = lock.writeLock();
+            try {
+                if (2 * (size + 1) > keys.length) {
+                    resize(keys.length * 2);
+                }
+                int mask = keys.length - 1;
+                int slot = hash & mask;
+                while (keys[slot] != EMPTY && keys[slot] != pageNum) {
+                    slot = (slot + 1) & mask;
+                }
+                if (keys[slot] == EMPTY) {
+                    ++size;
+                }
+                values[slot] = frameIndex;
+                keys[slot] = pageNum;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        boolean remove(long pageNum, int hash, int frameIndex) {
+            long stamp = lock.writeLock();
+            try {
+                int mask = keys.length - 1;
+                int slot = hash & mask;
+                while (keys[slot] != pageNum) {
+                    if (keys[slot] == EMPTY) {
+                        return false;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                if (values[slot] != frameIndex) {
+                    return false;
+                }
+                // shift back later entries of the probe sequence into the hole
+                int hole = slot;
+                for (int next = (hole + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+                    int home = mix(keys[next]) & mask;
+                    // move the entry if its home slot is not in (hole, next]
+                    if (((next - home) & mask) >= ((next - hole) & mask)) {
+                        keys[hole] = keys[next];
+                        values[hole] = values[next];
+                        hole = next;
+                    }
+                }
+                keys[hole] = EMPTY;
+                --size;
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        // Assumes the write lock is held.
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            long[] newKeys = new long[capacity];
+            int[] newValues = new int[capacity];
+            Arrays.fill(newKeys, EMPTY);
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; ++i) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = mix(oldKeys[i]) & mask;
+                    while (newKeys[slot] != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    newKeys[slot] = oldKeys[i];
+                    newValues[slot] = oldValues[i];
+                }
+            }
+            values = newValues;
+            keys = newKeys;
+        }
+    }
+
+    /**
+     * Creates a page table sized for the given number of entries.
+     * @param capacity expected maximum number of entries (the buffer size)
+     */
+    PageTable(int capacity) {
+        int stripeCapacity = 16;
+        while (stripeCapacity < 2 * capacity / NUM_STRIPES + 1) {
+            stripeCapacity *= 2;
+        }
+        this.stripes = new Stripe[NUM_STRIPES];
+        for (int i = 0; i < NUM_STRIPES; ++i) {
+            this.stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    /**
+     * @param pageNum page number
+     * @return index of the frame holding pageNum, or NOT_FOUND
+     */
+    int get(long pageNum) {
+        int hash = mix(pageNum);
+        return stripeFor(hash).get(pageNum, hash);
+    }
+
+    /**
+     * @param pageNum page number
+     * @return whether pageNum is in the table
+     */
+    boolean containsKey(long pageNum) {
+        return get(pageNum) != NOT_FOUND;
+    }
+
+    /**
+     * Maps pageNum to frameIndex, replacing any previous mapping.
+     * @param pageNum page number
+     * @param frameIndex index of frame holding the page
+     */
+    void put(long pageNum, int frameIndex) {
+        int hash = mix(pageNum);
+        stripeFor(hash).put(pageNum, hash, frameIndex);
+    }
+
+    /**
+     * Removes the mapping for pageNum, if it maps to frameIndex.
+     * @param pageNum page number
+     * @param frameIndex index of frame expected to hold the page
+     * @return whether the mapping was removed
+     */
+    boolean remove(long pageNum, int frameIndex) {
+        int hash = mix(pageNum);
+        return stripeFor(hash).remove(pageNum, hash, frameIndex);
+    }
+
+    /**
+     * @return number of entries in the table
+     */
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private Stripe stripeFor(int hash) {
+        // the low bits pick the slot within a stripe, so use the high bits here
+        return stripes[hash >>> (Integer.SIZE - Integer.numberOfTrailingZeros(NUM_STRIPES))];
+    }
+
+    // Hashes a page number; page numbers of a partition are consecutive, so they
+    // need to be spread out over both stripes and slots.
+    private static int mix(long pageNum) {
+        long h = pageNum * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,171 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.PageException;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sequential read-ahead for a buffer manager. The buffer manager reports every page it
+ * loads on request, and every first access to a page that was prefetched. When pages of a
+ * partition are accessed in order of page number (as in a heap file scan, a walk along the
+ * leaves of a B+ tree, or a scan of the log), the next pages of the partition are
+ * prefetched by a background thread, so that the scan finds them already in memory.
+ *
+ * The pages of a partition are prefetched in windows of numPages pages. A new window is
+ * requested when the scan reaches the middle of the previous one, so that reading the next
+ * window overlaps with processing the current one. Prefetching only uses free frames, the
+ * frames of the scan's buffer ring, and clean frames that the eviction policy would evict
+ * next (see BufferManager#prefetchPages), so it never has to write a page back.
+ *
+ * A partition is considered to be scanned sequentially once SEQUENTIAL_THRESHOLD
+ * consecutive pages have been accessed in order; accessing any other page of the
+ * partition resets the detection. Only one scan per partition is tracked.
+ */
+class ReadAhead implements Runnable {
+    // Number of consecutive pages that must be accessed in order before prefetching
+    static final int SEQUENTIAL_THRESHOLD = 2;
+
+    // Maximum number of prefetch requests waiting for the background thread; further
+    // requests are dropped, and the pages are loaded on demand
+    private static final int MAX_PENDING_REQUESTS = 64;
+
+    private final BufferManager bufferManager;
+    private final int numPages;
+    private final Thread thread;
+    private final BlockingQueue<Request> requests = new ArrayBlockingQueue<>(MAX_PENDING_REQUESTS);
+    private final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+    private volatile boolean running;
+
+    // Access pattern of a partition
+    private static class Stream {
+        // last page accessed
+        private long lastPage = DiskSpaceManager.INVALID_PAGE_NUM;
+        // number of consecutive pages accessed in order, up to lastPage
+        private int run = 0;
+        // last page requested to be prefetched
+        private long prefetchedUpTo = DiskSpaceManager.INVALID_PAGE_NUM;
+    }
+
+    // Pages to prefetch
+    private static class Request {
+        private final long firstPage;
+        private final int numPages;
+        private final BufferRing ring;
+
+        private Request(long firstPage, int numPages, BufferRing ring) {
+            this.firstPage = firstPage;
+            this.numPages = numPages;
+            this.ring = ring;
+        }
+    }
+
+    /**
+     * @param bufferManager buffer manager to prefetch pages into
+     * @param numPages number of pages prefetched at a time
+     */
+    ReadAhead(BufferManager bufferManager, int numPages) {
+        if (numPages <= 0) {
+            throw new IllegalArgumentException("read-ahead window must be positive");
+        }
+        this.bufferManager = bufferManager;
+        this.numPages = numPages;
+        this.thread = new Thread(this, "read-ahead");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        this.running = true;
+        this.thread.start();
+    }
+
+    /**
+     * Stops the read-ahead thread, and waits for the current prefetch (if any) to finish.
+     * Pending requests are dropped.
+     */
+    void stop() {
+        this.running = false;
+        this.thread.interrupt();
+        boolean interrupted = false;
+        while (this.thread.isAlive()) {
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        this.requests.clear();
+    }
+
+    /**
+     * @return number of pages prefetched at a time
+     */
+    int getNumPages() {
+        return this.numPages;
+    }
+
+    /**
+     * Called when a page is loaded on request, or when a prefetched page is accessed for
+     * the first time. Requests the next window of pages if the partition is being scanned
+     * sequentially and the scan has reached the middle of the last window requested.
+     *
+     * @param pageNum page accessed
+     * @param ring buffer ring the page was accessed through, or null
+     */
+    void onAccess(long pageNum, BufferRing ring) {
+        Stream stream = this.streams.computeIfAbsent(DiskSpaceManager.getPartNum(pageNum), p -> new Stream());
+        long firstPage;
+        int count;
+        synchronized (stream) {
+            if (stream.lastPage != DiskSpaceManager.INVALID_PAGE_NUM && pageNum == stream.lastPage + 1) {
+                ++stream.run;
+            } else {
+                stream.run = 1;
+                stream.prefetchedUpTo = pageNum;
+            }
+            stream.lastPage = pageNum;
+            firstPage = Math.max(pageNum, stream.prefetchedUpTo) + 1;
+            if (stream.run < SEQUENTIAL_THRESHOLD || firstPage - pageNum > this.numPages / 2) {
+                return;
+            }
+            count = (int) (pageNum + this.numPages - firstPage + 1);
+            stream.prefetchedUpTo = pageNum + this.numPages;
+        }
+        this.requests.offer(new Request(firstPage, count, ring));
+    }
+
+    /**
+     * Forgets the access pattern of a partition, e.g. when it is freed.
+     *
+     * @param partNum partition number
+     */
+    void forget(int partNum) {
+        this.streams.remove(partNum);
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            Request request;
+            try {
+                request = this.requests.take();
+            } catch (InterruptedException e) {
+                // stop() interrupts to wake us up; running is checked again
+                continue;
+            }
+            try {
+                this.bufferManager.prefetchPages(request.firstPage, request.numPages, request.ring);
+            } catch (PageException | NoSuchElementException e) {
+                // the partition was freed, or a page could not be read; the page is
+                // loaded (or the error reported) when it is requested
+            }
+        }
+    }
+}
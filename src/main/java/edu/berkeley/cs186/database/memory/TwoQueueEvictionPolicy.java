@@ -0,0 +1,170 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Implementation of the 2Q eviction policy (Johnson and Shasha), which is resistant
+ * to sequential scans. Newly loaded pages go into a FIFO queue (A1in), and stay there
+ * no matter how often they are hit, so a burst of hits right after a page is loaded
+ * (e.g. reading every record of a page during a scan) does not make it look hot. When
+ * a page is evicted from A1in, its page number is remembered in a second, bounded FIFO
+ * queue of evicted pages (A1out). Only pages that are loaded again while remembered in
+ * A1out are considered hot, and go into an LRU queue (Am). A scan therefore only ever
+ * evicts pages from A1in, leaving pages in Am alone.
+ *
+ * Methods are synchronized, since frames are hit without holding the buffer manager's lock.
+ */
+public class TwoQueueEvictionPolicy implements EvictionPolicy {
+    // Default fractions of the buffer size used for A1in and A1out, as suggested by the
+    // authors of 2Q.
+    private static final double DEFAULT_IN_FRACTION = 0.25;
+    private static final double DEFAULT_OUT_FRACTION = 0.5;
+
+    private final double inFraction;
+    private final double outFraction;
+
+    // Resident pages seen once recently, in order of loading
+    private final FrameQueue a1in = new FrameQueue();
+    // Resident hot pages, in order of least to most recently used
+    private final FrameQueue am = new FrameQueue();
+    // Page numbers of pages recently evicted from A1in, in order of eviction
+    private final Set<Long> a1out = new LinkedHashSet<>();
+
+    // Number of frames; learned from the first call to evict or peekVictims
+    private int capacity = 0;
+    // Last frame returned by evict, so that cleanup can tell evictions from frees
+    private BufferFrame lastVictim;
+
+    public TwoQueueEvictionPolicy() {
+        this(DEFAULT_IN_FRACTION, DEFAULT_OUT_FRACTION);
+    }
+
+    /**
+     * @param inFraction fraction of the buffer that A1in may use before it is evicted from
+     * @param outFraction number of evicted page numbers remembered in A1out, as a fraction
+     *                    of the buffer size
+     */
+    public TwoQueueEvictionPolicy(double inFraction, double outFraction) {
+        if (inFraction <= 0 || inFraction >= 1 || outFraction <= 0) {
+            throw new IllegalArgumentException("invalid 2Q queue sizes");
+        }
+        this.inFraction = inFraction;
+        this.outFraction = outFraction;
+    }
+
+    /**
+     * Called to initiaize a new buffer frame.
+     * @param frame new frame to be initialized
+     */
+    @Override
+    public synchronized void init(BufferFrame frame) {
+        if (this.a1out.remove(frame.getPageNum())) {
+            this.am.add(frame);
+        } else {
+            this.a1in.add(frame);
+        }
+    }
+
+    /**
+     * Called when a frame is hit.
+     * @param frame Frame object that is being read from/written to
+     */
+    @Override
+    public synchronized void hit(BufferFrame frame) {
+        FrameQueue.Node node = (FrameQueue.Node) frame.tag;
+        if (node.getQueue() == this.am) {
+            this.am.moveToBack(node);
+        }
+    }
+
+    /**
+     * Called when a frame needs to be evicted. Evicts the oldest page in A1in if A1in is
+     * over its share of the buffer, and the least recently used page in Am otherwise.
+     * @param frames Array of all frames (same length every call, until the buffer is resized)
+     * @return index of frame to be evicted
+     * @throws IllegalStateException if everything is pinned
+     */
+    @Override
+    public synchronized BufferFrame evict(BufferFrame[] frames) {
+        this.capacity = frames.length;
+        FrameQueue[] order = this.evictionOrder();
+        BufferFrame victim = order[0].firstUnpinned();
+        if (victim == null) {
+            victim = order[1].firstUnpinned();
+        }
+        if (victim == null) {
+            throw new IllegalStateException("cannot evict anything - everything pinned");
+        }
+        this.lastVictim = victim;
+        return victim;
+    }
+
+    @Override
+    public synchronized List<BufferFrame> peekVictims(BufferFrame[] frames, int maxFrames) {
+        this.capacity = frames.length;
+        List<BufferFrame> victims = new ArrayList<>();
+        for (FrameQueue queue : this.evictionOrder()) {
+            queue.addUnpinned(victims, maxFrames);
+        }
+        return victims;
+    }
+
+    /**
+     * Called when a frame is removed, either because it
+     * was returned from a call to evict, or because of other constraints
+     * (e.g. if the page is deleted on disk).
+     * @param frame frame being removed
+     */
+    @Override
+    public synchronized void cleanup(BufferFrame frame) {
+        FrameQueue.Node node = (FrameQueue.Node) frame.tag;
+        if (node == null || node.getQueue() == null) {
+            return;
+        }
+        FrameQueue queue = node.getQueue();
+        queue.remove(node);
+        if (frame == this.lastVictim) {
+            this.lastVictim = null;
+            if (queue == this.a1in) {
+                this.a1out.add(frame.getPageNum());
+                this.trimOut();
+            }
+        }
+    }
+
+    /**
+     * Called when the buffer is resized; the sizes of A1in and A1out follow the new
+     * buffer size.
+     * @param numFrames new number of frames
+     */
+    @Override
+    public synchronized void resize(int numFrames) {
+        this.capacity = numFrames;
+        this.trimOut();
+    }
+
+    // Forgets the oldest evicted pages until A1out is within its share of the buffer.
+    private void trimOut() {
+        int maxOut = Math.max(1, (int) (this.capacity * this.outFraction));
+        Iterator<Long> iter = this.a1out.iterator();
+        while (this.a1out.size() > maxOut) {
+            iter.next();
+            iter.remove();
+        }
+    }
+
+    /**
+     * @return the queues in the order they are evicted from
+     */
+    private FrameQueue[] evictionOrder() {
+        int maxIn = Math.max(1, (int) (this.capacity * this.inFraction));
+        if (this.a1in.size() > maxIn || this.am.size() == 0) {
+            return new FrameQueue[] { this.a1in, this.am };
+        }
+        return new FrameQueue[] { this.am, this.a1in };
+    }
+}
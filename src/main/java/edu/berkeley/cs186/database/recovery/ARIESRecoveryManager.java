@@ -1,15 +1,18 @@
 package edu.berkeley.cs186.database.recovery;
 
 import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.concurrency.DummyLockContext;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.BufferStats;
 import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.recovery.records.*;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 /**
@@ -34,9 +37,52 @@ public class ARIESRecoveryManager implements RecoveryManager {
     // true if redo phase of restart has terminated, false otherwise. Used
     // to prevent DPT entries from being flushed during restartRedo.
     boolean redoComplete;
+    // Flushes the log for commits in batches, or null if every commit flushes the log itself
+    private volatile GroupCommit groupCommit;
+    // Flushes the log for commits in the background, or null if commits wait for the flush
+    private volatile AsyncCommit asyncCommit;
+    // LSN of the latest commit record known to be flushed, apart from those of asyncCommit
+    private final AtomicLong durableCommitLSN = new AtomicLong(-1L);
+    // Number of threads page records are redone by during restart recovery
+    private int redoThreads;
+    // Time taken by each phase of the last restart, in nanoseconds, in order
+    private final Map<String, Long> restartPhaseNanos = new LinkedHashMap<>();
+    // Counters of the last restart, by phase (see getRestartCounters), in order
+    private final Map<String, Long> restartCounters = new LinkedHashMap<>();
+    // Number of records redone, and of records not redone because their page already
+    // reflected them, during the last restart
+    private final AtomicLong numRecordsRedone = new AtomicLong();
+    private final AtomicLong numRecordsSkipped = new AtomicLong();
+    // Takes checkpoints in the background, or null if checkpoints are only taken explicitly;
+    // guarded by checkpointerLock
+    private Checkpointer checkpointer;
+    private final Object checkpointerLock = new Object();
+    // Number of checkpoints taken, time the last one took (in nanoseconds), and LSN redo
+    // would start from if we crashed right after it
+    private volatile long numCheckpoints;
+    private volatile long lastCheckpointNanos;
+    private volatile long redoStartLSN = -1L;
+    // Whether to truncate the log after every checkpoint
+    private volatile boolean logTruncation;
+    // Ships the log to a standby, or null if the log is not shipped; set with this held
+    private volatile LogShipper logShipper;
 
     public ARIESRecoveryManager(Function<Long, Transaction> newTransaction) {
+        this(newTransaction, 1);
+    }
+
+    /**
+     * @param newTransaction function to create a new transaction for recovery with a given
+     *                       transaction number
+     * @param redoThreads number of threads to redo page records with during restart recovery
+     *                    (see ParallelRedo)
+     */
+    public ARIESRecoveryManager(Function<Long, Transaction> newTransaction, int redoThreads) {
+        if (redoThreads <= 0) {
+            throw new IllegalArgumentException("number of redo threads must be positive");
+        }
         this.newTransaction = newTransaction;
+        this.redoThreads = redoThreads;
     }
 
     /**
@@ -64,7 +110,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
     public void setManagers(DiskSpaceManager diskSpaceManager, BufferManager bufferManager) {
         this.diskSpaceManager = diskSpaceManager;
         this.bufferManager = bufferManager;
-        this.logManager = new LogManager(bufferManager);
+        this.logManager = new LogManager(bufferManager, diskSpaceManager);
     }
 
     // Forward Processing //////////////////////////////////////////////////////
@@ -92,8 +138,181 @@ public class ARIESRecoveryManager implements RecoveryManager {
      */
     @Override
     public long commit(long transNum) {
-        // TODO(proj5): implement
-        return -1L;
+        TransactionTableEntry transactionEntry = transactionTable.get(transNum);
+        assert (transactionEntry != null);
+
+        LogRecord record = new CommitTransactionLogRecord(transNum, transactionEntry.lastLSN);
+        long LSN = logManager.appendToLog(record);
+        transactionEntry.lastLSN = LSN;
+        AsyncCommit asyncCommit = this.asyncCommit;
+        // with async commit, the log is flushed in the background (unless async commit
+        // was disabled after we read it)
+        if (asyncCommit == null || !asyncCommit.committed(LSN)) {
+            flushCommit(LSN);
+            durableCommitLSN.accumulateAndGet(LSN, Math::max);
+        }
+        transactionEntry.transaction.setStatus(Transaction.Status.COMMITTING);
+        return LSN;
+    }
+
+    /**
+     * Flushes the log up to a commit record, as part of a batch if group commit is enabled.
+     * @param LSN LSN of the commit record
+     */
+    private void flushCommit(long LSN) {
+        GroupCommit groupCommit = this.groupCommit;
+        if (groupCommit != null) {
+            try {
+                groupCommit.awaitFlush(LSN);
+                return;
+            } catch (IllegalStateException e) {
+                // group commit was disabled after we read it; flush the log ourselves
+            }
+        }
+        flushToLSN(LSN);
+    }
+
+    /**
+     * Enables group commit: committing transactions wait for a background thread to flush
+     * the log for them, once for every batch of commits, instead of each flushing the log.
+     * A batch is flushed when it has maxBatchSize commits, or maxDelayMicros microseconds
+     * after its first commit, whichever comes first (see GroupCommit). Replaces the
+     * current group commit settings, if any.
+     *
+     * @param maxBatchSize number of commits that are flushed without further delay
+     * @param maxDelayMicros maximum time a commit waits for others to be batched with
+     */
+    public synchronized void enableGroupCommit(int maxBatchSize, long maxDelayMicros) {
+        GroupCommit groupCommit = new GroupCommit(logManager, maxBatchSize, maxDelayMicros);
+        groupCommit.start();
+        disableGroupCommit();
+        this.groupCommit = groupCommit;
+    }
+
+    /**
+     * Disables group commit, after flushing the log for the commits waiting for a batch.
+     * Does nothing if group commit is not enabled.
+     */
+    public synchronized void disableGroupCommit() {
+        GroupCommit groupCommit = this.groupCommit;
+        this.groupCommit = null;
+        if (groupCommit != null) {
+            groupCommit.stop();
+        }
+    }
+
+    /**
+     * @return whether group commit is enabled
+     */
+    public boolean isGroupCommitEnabled() {
+        return this.groupCommit != null;
+    }
+
+    /**
+     * Enables async commit: commit returns as soon as the commit record is appended,
+     * without waiting for the log to be flushed, and a background thread flushes the log
+     * within maxLagMillis of a commit, or once maxLagBytes bytes of log were appended
+     * after it, whichever comes first (see AsyncCommit). A crash can lose the commits
+     * within that window; getDurableCommitLSN tells how far commits are durable. Takes
+     * precedence over group commit. Replaces the current async commit settings, if any.
+     *
+     * @param maxLagMillis time after which a commit is made durable, in milliseconds
+     * @param maxLagBytes bytes of log after a commit after which it is made durable, or 0
+     *                    to not flush based on log volume
+     */
+    public synchronized void enableAsyncCommit(long maxLagMillis, long maxLagBytes) {
+        AsyncCommit asyncCommit = new AsyncCommit(logManager, maxLagMillis, maxLagBytes);
+        asyncCommit.start();
+        disableAsyncCommit();
+        this.asyncCommit = asyncCommit;
+    }
+
+    /**
+     * Disables async commit, after flushing the log for the commits made so far. Does
+     * nothing if async commit is not enabled.
+     */
+    public synchronized void disableAsyncCommit() {
+        AsyncCommit asyncCommit = this.asyncCommit;
+        this.asyncCommit = null;
+        if (asyncCommit != null) {
+            asyncCommit.stop();
+            durableCommitLSN.accumulateAndGet(asyncCommit.getDurableCommitLSN(), Math::max);
+        }
+    }
+
+    /**
+     * @return whether async commit is enabled
+     */
+    public boolean isAsyncCommitEnabled() {
+        return this.asyncCommit != null;
+    }
+
+    /**
+     * @return LSN of the latest commit record known to be flushed to disk, or -1 if no
+     * transaction has committed since the recovery manager was set up. Every commit up to
+     * this LSN survives a crash.
+     */
+    public long getDurableCommitLSN() {
+        AsyncCommit asyncCommit = this.asyncCommit;
+        long LSN = durableCommitLSN.get();
+        return asyncCommit == null ? LSN : Math.max(LSN, asyncCommit.getDurableCommitLSN());
+    }
+
+    /**
+     * Starts taking checkpoints in the background, whenever maxLogBytes bytes of log
+     * have been written or maxIntervalMillis have passed since the last checkpoint
+     * (see Checkpointer). Replaces the current settings if already enabled.
+     *
+     * @param maxLogBytes bytes of log after which a checkpoint is taken, or 0 to not take
+     *                    checkpoints based on log volume
+     * @param maxIntervalMillis time after which a checkpoint is taken, in milliseconds, or 0
+     *                          to not take checkpoints based on time
+     * @param numPagesToFlush number of dirty pages with the oldest recLSNs to write back
+     *                        before each checkpoint, to move the redo start point forward
+     */
+    public void enableCheckpointer(long maxLogBytes, long maxIntervalMillis, int numPagesToFlush) {
+        Checkpointer checkpointer = new Checkpointer(this, maxLogBytes, maxIntervalMillis, numPagesToFlush);
+        // not synchronized on this: stopping waits for a checkpoint in progress, which holds it
+        synchronized (this.checkpointerLock) {
+            disableCheckpointer();
+            checkpointer.start();
+            this.checkpointer = checkpointer;
+        }
+    }
+
+    /**
+     * Stops taking checkpoints in the background, after the current one (if any) is done.
+     */
+    public void disableCheckpointer() {
+        synchronized (this.checkpointerLock) {
+            if (this.checkpointer != null) {
+                this.checkpointer.stop();
+                this.checkpointer = null;
+            }
+        }
+    }
+
+    public boolean isCheckpointerEnabled() {
+        synchronized (this.checkpointerLock) {
+            return this.checkpointer != null;
+        }
+    }
+
+    /**
+     * Writes back the dirty pages with the oldest recLSNs, which removes them from the
+     * dirty page table and moves the point redo starts from forward.
+     *
+     * @param numPages maximum number of pages to write back
+     * @return number of pages written
+     */
+    public int flushOldestDirtyPages(int numPages) {
+        List<Map.Entry<Long, Long>> entries = new ArrayList<>(dirtyPageTable.entrySet());
+        entries.sort(Map.Entry.comparingByValue());
+        List<Long> pageNums = new ArrayList<>();
+        for (int i = 0; i < entries.size() && i < numPages; ++i) {
+            pageNums.add(entries.get(i).getKey());
+        }
+        return bufferManager.flushPages(pageNums);
     }
 
     /**
@@ -108,8 +327,14 @@ public class ARIESRecoveryManager implements RecoveryManager {
      */
     @Override
     public long abort(long transNum) {
-        // TODO(proj5): implement
-        return -1L;
+        TransactionTableEntry transactionEntry = transactionTable.get(transNum);
+        assert (transactionEntry != null);
+
+        LogRecord record = new AbortTransactionLogRecord(transNum, transactionEntry.lastLSN);
+        long LSN = logManager.appendToLog(record);
+        transactionEntry.lastLSN = LSN;
+        transactionEntry.transaction.setStatus(Transaction.Status.ABORTING);
+        return LSN;
     }
 
     /**
@@ -126,8 +351,19 @@ public class ARIESRecoveryManager implements RecoveryManager {
      */
     @Override
     public long end(long transNum) {
-        // TODO(proj5): implement
-        return -1L;
+        TransactionTableEntry transactionEntry = transactionTable.get(transNum);
+        assert (transactionEntry != null);
+
+        Transaction.Status status = transactionEntry.transaction.getStatus();
+        if (status == Transaction.Status.ABORTING || status == Transaction.Status.RECOVERY_ABORTING) {
+            rollbackToLSN(transNum, 0L);
+        }
+        transactionTable.remove(transNum);
+        LogRecord record = new EndTransactionLogRecord(transNum, transactionEntry.lastLSN);
+        long LSN = logManager.appendToLog(record);
+        transactionEntry.lastLSN = LSN;
+        transactionEntry.transaction.setStatus(Transaction.Status.COMPLETE);
+        return LSN;
     }
 
     /**
@@ -154,7 +390,32 @@ public class ARIESRecoveryManager implements RecoveryManager {
         // Small optimization: if the last record is a CLR we can start rolling
         // back from the next record that hasn't yet been undone.
         long currentLSN = lastRecord.getUndoNextLSN().orElse(lastRecordLSN);
-        // TODO(proj5) implement the rollback logic described above
+        while (currentLSN > LSN) {
+            LogRecord record = logManager.fetchLogRecord(currentLSN);
+            if (record.isUndoable()) {
+                LogRecord clr = record.undo(transactionEntry.lastLSN);
+                transactionEntry.lastLSN = logManager.appendToLog(clr);
+                redoCLR(clr);
+            }
+            // CLRs of an earlier partial rollback skip the records it already undid
+            currentLSN = record.getUndoNextLSN().orElse(record.getPrevLSN().orElse(0L));
+        }
+    }
+
+    // Performs the undo of a CLR. The change is already logged by the CLR, so it is not
+    // logged again for the transaction running on this thread (if any).
+    private void redoCLR(LogRecord clr) {
+        TransactionContext transaction = TransactionContext.getTransaction();
+        if (transaction != null) {
+            TransactionContext.unsetTransaction();
+        }
+        try {
+            clr.redo(this, diskSpaceManager, bufferManager);
+        } finally {
+            if (transaction != null) {
+                TransactionContext.setTransaction(transaction);
+            }
+        }
     }
 
     /**
@@ -204,8 +465,94 @@ public class ARIESRecoveryManager implements RecoveryManager {
                              byte[] after) {
         assert (before.length == after.length);
         assert (before.length <= BufferManager.EFFECTIVE_PAGE_SIZE / 2);
-        // TODO(proj5): implement
-        return -1L;
+        TransactionTableEntry transactionEntry = transactionTable.get(transNum);
+        assert (transactionEntry != null);
+        return logPageRecord(transactionEntry, new UpdatePageLogRecord(transNum, pageNum,
+                             transactionEntry.lastLSN, pageOffset, before, after));
+    }
+
+    /**
+     * Called when a record is inserted into a slot of a heap file page.
+     *
+     * One insert slot record is appended (rather than update records of the bytes
+     * the insert changes), and the transaction table and dirty page table are
+     * updated accordingly.
+     *
+     * @param transNum transaction performing the insert
+     * @param pageNum page number of the page
+     * @param bitmapOffset offset into page of the page's slot bitmap, or -1 if it has none
+     * @param slot slot the record is inserted into
+     * @param offset offset into page of the slot's record
+     * @param record bytes of the record
+     * @return LSN of record written to log
+     */
+    @Override
+    public long logSlotInsert(long transNum, long pageNum, short bitmapOffset, short slot, short offset,
+                              byte[] record) {
+        TransactionTableEntry transactionEntry = transactionTable.get(transNum);
+        assert (transactionEntry != null);
+        return logPageRecord(transactionEntry, new InsertSlotLogRecord(transNum, pageNum,
+                             transactionEntry.lastLSN, bitmapOffset, slot, offset, record));
+    }
+
+    /**
+     * Called when the record in a slot of a heap file page is deleted.
+     *
+     * One delete slot record, which holds the record for undo, is appended, and the
+     * transaction table and dirty page table are updated accordingly.
+     *
+     * @param transNum transaction performing the delete
+     * @param pageNum page number of the page
+     * @param bitmapOffset offset into page of the page's slot bitmap, or -1 if it has none
+     * @param slot slot of the record
+     * @param offset offset into page of the slot's record
+     * @param record bytes of the record
+     * @return LSN of record written to log
+     */
+    @Override
+    public long logSlotDelete(long transNum, long pageNum, short bitmapOffset, short slot, short offset,
+                              byte[] record) {
+        TransactionTableEntry transactionEntry = transactionTable.get(transNum);
+        assert (transactionEntry != null);
+        return logPageRecord(transactionEntry, new DeleteSlotLogRecord(transNum, pageNum,
+                             transactionEntry.lastLSN, bitmapOffset, slot, offset, record));
+    }
+
+    /**
+     * Called when the record in a slot of a heap file page is overwritten. Arguments to
+     * the before and after params are guaranteed to be the same length.
+     *
+     * One update slot record is appended, and the transaction table and dirty page table
+     * are updated accordingly.
+     *
+     * @param transNum transaction performing the update
+     * @param pageNum page number of the page
+     * @param slot slot of the record
+     * @param offset offset into page of the slot's record
+     * @param before bytes of the record before the update
+     * @param after bytes of the record after the update
+     * @return LSN of record written to log
+     */
+    @Override
+    public long logSlotUpdate(long transNum, long pageNum, short slot, short offset, byte[] before,
+                              byte[] after) {
+        assert (before.length == after.length);
+        assert (before.length <= BufferManager.EFFECTIVE_PAGE_SIZE / 2);
+        TransactionTableEntry transactionEntry = transactionTable.get(transNum);
+        assert (transactionEntry != null);
+        return logPageRecord(transactionEntry, new UpdateSlotLogRecord(transNum, pageNum,
+                             transactionEntry.lastLSN, slot, offset, before, after));
+    }
+
+    // Appends a record of a transaction that changes a page, and updates its lastLSN and
+    // the DPT.
+    private long logPageRecord(TransactionTableEntry transactionEntry, LogRecord record) {
+        long LSN = logManager.appendToLog(record);
+        // Update lastLSN
+        transactionEntry.lastLSN = LSN;
+        // The page is dirtied by the change
+        dirtyPageTable.putIfAbsent(record.getPageNum().get(), LSN);
+        return LSN;
     }
 
     /**
@@ -380,8 +727,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
         // All of the transaction's changes strictly after the record at LSN should be undone.
         long savepointLSN = transactionEntry.getSavepoint(name);
 
-        // TODO(proj5): implement
-        return;
+        rollbackToLSN(transNum, savepointLSN);
     }
 
     /**
@@ -404,10 +750,30 @@ public class ARIESRecoveryManager implements RecoveryManager {
         LogRecord beginRecord = new BeginCheckpointLogRecord();
         long beginLSN = logManager.appendToLog(beginRecord);
 
+        long start = System.nanoTime();
         Map<Long, Long> chkptDPT = new HashMap<>();
         Map<Long, Pair<Transaction.Status, Long>> chkptTxnTable = new HashMap<>();
 
-        // TODO(proj5): generate end checkpoint record(s) for DPT and transaction table
+        // Redo would start from the smallest recLSN, or at the latest from this checkpoint
+        long minRecLSN = beginLSN;
+        for (Map.Entry<Long, Long> entry : dirtyPageTable.entrySet()) {
+            if (!EndCheckpointLogRecord.fitsInOneRecord(chkptDPT.size() + 1, 0)) {
+                logManager.appendToLog(new EndCheckpointLogRecord(chkptDPT, chkptTxnTable));
+                chkptDPT = new HashMap<>();
+            }
+            chkptDPT.put(entry.getKey(), entry.getValue());
+            minRecLSN = Math.min(minRecLSN, entry.getValue());
+        }
+        for (Map.Entry<Long, TransactionTableEntry> entry : transactionTable.entrySet()) {
+            if (!EndCheckpointLogRecord.fitsInOneRecord(chkptDPT.size(), chkptTxnTable.size() + 1)) {
+                logManager.appendToLog(new EndCheckpointLogRecord(chkptDPT, chkptTxnTable));
+                chkptDPT = new HashMap<>();
+                chkptTxnTable = new HashMap<>();
+            }
+            TransactionTableEntry transactionEntry = entry.getValue();
+            chkptTxnTable.put(entry.getKey(), new Pair<>(transactionEntry.transaction.getStatus(),
+                                                         transactionEntry.lastLSN));
+        }
 
         // Last end checkpoint record
         LogRecord endRecord = new EndCheckpointLogRecord(chkptDPT, chkptTxnTable);
@@ -418,6 +784,104 @@ public class ARIESRecoveryManager implements RecoveryManager {
         // Update master record
         MasterLogRecord masterRecord = new MasterLogRecord(beginLSN);
         logManager.rewriteMasterRecord(masterRecord);
+
+        // Remember what is in the buffer, to prewarm it if we crash before the next checkpoint
+        bufferManager.saveHotPages();
+
+        this.redoStartLSN = minRecLSN;
+        if (this.logTruncation) {
+            this.truncateLog();
+        }
+        this.lastCheckpointNanos = System.nanoTime() - start;
+        ++this.numCheckpoints;
+    }
+
+    /**
+     * Sets whether log records are written in the compact format (see CompactEncoding).
+     * Logs with records in both formats can be recovered.
+     */
+    public void setCompactLogFormat(boolean compactFormat) {
+        this.logManager.setCompactFormat(compactFormat);
+    }
+
+    /**
+     * Sets whether the log is truncated after every checkpoint (see truncateLog).
+     */
+    public void setLogTruncation(boolean logTruncation) {
+        this.logTruncation = logTruncation;
+    }
+
+    public boolean isLogTruncation() {
+        return this.logTruncation;
+    }
+
+    /**
+     * Truncates the log up to the oldest record restart recovery may still need: the
+     * redo start point of the last checkpoint (or a smaller recLSN in the dirty page
+     * table), or the first record of a transaction in the transaction table, which undo
+     * may have to go back to. The master record and the records of the last checkpoint
+     * are always kept.
+     *
+     * @return number of log pages freed
+     */
+    public synchronized int truncateLog() {
+        long truncateLSN = this.redoStartLSN;
+        if (truncateLSN < 0) {
+            // no checkpoint yet
+            return 0;
+        }
+        for (long recLSN : dirtyPageTable.values()) {
+            truncateLSN = Math.min(truncateLSN, recLSN);
+        }
+        for (TransactionTableEntry entry : transactionTable.values()) {
+            long firstLSN = this.getFirstLSN(entry);
+            if (firstLSN > 0) {
+                truncateLSN = Math.min(truncateLSN, firstLSN);
+            }
+        }
+        LogShipper logShipper = this.logShipper;
+        if (logShipper != null) {
+            // records not shipped yet are still needed by the standby
+            truncateLSN = Math.min(truncateLSN, Math.max(logShipper.getShippedLSN(), 0L));
+        }
+        return logManager.truncate(truncateLSN);
+    }
+
+    // Returns the LSN of the first record of a transaction, or 0 if it has none.
+    private long getFirstLSN(TransactionTableEntry entry) {
+        if (entry.firstLSN == 0 && entry.lastLSN > 0) {
+            long LSN = entry.lastLSN;
+            LogRecord record = logManager.fetchLogRecord(LSN);
+            while (record != null && record.getPrevLSN().isPresent() && record.getPrevLSN().get() > 0) {
+                LSN = record.getPrevLSN().get();
+                record = logManager.fetchLogRecord(LSN);
+            }
+            entry.firstLSN = LSN;
+        }
+        return entry.firstLSN;
+    }
+
+    /**
+     * @return number of checkpoints taken since the recovery manager was created
+     */
+    public long getNumCheckpoints() {
+        return this.numCheckpoints;
+    }
+
+    /**
+     * @return time the last checkpoint took, in nanoseconds
+     */
+    public long getLastCheckpointNanos() {
+        return this.lastCheckpointNanos;
+    }
+
+    /**
+     * @return LSN redo would start from on restart if we crashed right after the last
+     * checkpoint (the smallest recLSN in the dirty page table at the time, or the LSN of the
+     * checkpoint if no page was dirty), or -1 if no checkpoint was taken yet
+     */
+    public long getRedoStartLSN() {
+        return this.redoStartLSN;
     }
 
     /**
@@ -440,10 +904,66 @@ public class ARIESRecoveryManager implements RecoveryManager {
         dirtyPageTable.computeIfPresent(pageNum, (k, v) -> Math.min(LSN,v));
     }
 
+    /**
+     * Starts shipping the log to a standby (see LogShipper): every record, from the start
+     * of the log, is sent through the transport once it is flushed. While the log is
+     * shipped, log truncation keeps the records not shipped yet.
+     *
+     * @param transport transport to the standby; closed when shipping stops
+     * @throws IllegalStateException if the log is already shipped, or was truncated (the
+     * standby needs the whole log)
+     */
+    public synchronized void startLogShipping(LogTransport transport) {
+        if (this.logShipper != null) {
+            throw new IllegalStateException("log is already shipped");
+        }
+        if (logManager.getFirstLSN() > LogManager.makeLSN(1L, 0)) {
+            throw new IllegalStateException("log was truncated, so a standby cannot be built from it");
+        }
+        LogShipper logShipper = new LogShipper(logManager, transport);
+        logShipper.start();
+        this.logShipper = logShipper;
+    }
+
+    /**
+     * Stops shipping the log, after shipping every record flushed so far, and closes the
+     * transport. Does nothing if the log is not shipped.
+     *
+     * @throws IllegalStateException if shipping failed
+     */
+    public synchronized void stopLogShipping() {
+        LogShipper logShipper = this.logShipper;
+        this.logShipper = null;
+        if (logShipper != null) {
+            logShipper.stop();
+        }
+    }
+
+    /**
+     * @return whether the log is shipped to a standby
+     */
+    public boolean isLogShipping() {
+        return this.logShipper != null;
+    }
+
+    /**
+     * @return LSN of the last record shipped to the standby, or -1 if the log is not
+     * shipped or no record was shipped yet
+     */
+    public long getShippedLSN() {
+        LogShipper logShipper = this.logShipper;
+        return logShipper == null ? -1L : logShipper.getShippedLSN();
+    }
+
     @Override
     public void close() {
+        this.disableCheckpointer();
+        this.disableAsyncCommit();
+        this.disableGroupCommit();
         this.checkpoint();
         this.logManager.close();
+        // after the last flush, so that the standby gets the whole log
+        this.stopLogShipping();
     }
 
     // Restart Recovery ////////////////////////////////////////////////////////
@@ -460,12 +980,71 @@ public class ARIESRecoveryManager implements RecoveryManager {
      */
     @Override
     public void restart() {
-        this.restartAnalysis();
-        this.restartRedo();
+        this.restartPhaseNanos.clear();
+        this.restartCounters.clear();
+        this.numRecordsRedone.set(0);
+        this.numRecordsSkipped.set(0);
+        this.timeRestartPhase("analysis", this::restartAnalysis);
+        this.timeRestartPhase("redo", this::restartRedo);
+        this.restartCounters.put("redo.recordsRedone", this.numRecordsRedone.get());
+        this.restartCounters.put("redo.recordsSkipped", this.numRecordsSkipped.get());
         this.redoComplete = true;
-        this.cleanDPT();
-        this.restartUndo();
-        this.checkpoint();
+        this.timeRestartPhase("cleanDPT", this::cleanDPT);
+        this.timeRestartPhase("undo", this::restartUndo);
+        this.timeRestartPhase("checkpoint", this::checkpoint);
+    }
+
+    private void timeRestartPhase(String phase, Runnable run) {
+        long recordsScanned = logManager.getNumRecordsRead();
+        long clrsWritten = logManager.getNumCLRsAppended();
+        BufferStats stats = bufferManager.getStats();
+        long pagesFetched = countPagesFetched(stats);
+        long pagesRead = countPagesRead(stats);
+        long start = System.nanoTime();
+        run.run();
+        this.restartPhaseNanos.put(phase, System.nanoTime() - start);
+        stats = bufferManager.getStats();
+        this.restartCounters.put(phase + ".recordsScanned", logManager.getNumRecordsRead() - recordsScanned);
+        this.restartCounters.put(phase + ".pagesFetched", countPagesFetched(stats) - pagesFetched);
+        this.restartCounters.put(phase + ".pagesRead", countPagesRead(stats) - pagesRead);
+        this.restartCounters.put(phase + ".clrsWritten", logManager.getNumCLRsAppended() - clrsWritten);
+    }
+
+    // Number of requests for pages outside the log partition.
+    private static long countPagesFetched(BufferStats stats) {
+        BufferStats.PartitionStats total = stats.getTotal();
+        BufferStats.PartitionStats log = stats.getPartition(0);
+        return total.getHits() + total.getMisses() - log.getHits() - log.getMisses();
+    }
+
+    // Number of pages outside the log partition loaded into the buffer.
+    private static long countPagesRead(BufferStats stats) {
+        return stats.getTotal().getMisses() - stats.getPartition(0).getMisses();
+    }
+
+    /**
+     * @return time taken by each phase of the last restart (analysis, redo, cleanDPT, undo
+     * and checkpoint), in nanoseconds, in the order the phases ran
+     */
+    public Map<String, Long> getRestartPhaseNanos() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(this.restartPhaseNanos));
+    }
+
+    /**
+     * Counters of the last restart, keyed by "phase.counter", in the order the phases ran.
+     * For every phase of getRestartPhaseNanos:
+     * - recordsScanned: log records read
+     * - pagesFetched: requests for pages outside the log partition
+     * - pagesRead: pages outside the log partition loaded into the buffer (the rest were
+     *   already in memory)
+     * - clrsWritten: compensation log records appended
+     * and for redo, redo.recordsRedone and redo.recordsSkipped, the records redone and the
+     * page records not redone because their page already reflected them (pageLSN).
+     *
+     * @return counters of the last restart
+     */
+    public Map<String, Long> getRestartCounters() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(this.restartCounters));
     }
 
     /**
@@ -482,6 +1061,7 @@ public class ARIESRecoveryManager implements RecoveryManager {
      *
      * If the log record is page-related (getPageNum is present), update the dpt
      *   - update/undoupdate page will dirty pages
+     *   - insert/delete/update slot and their undo records will dirty pages
      *   - free/undoalloc page always flush changes to disk
      *   - no action needed for alloc/undofree page
      *
@@ -519,8 +1099,109 @@ public class ARIESRecoveryManager implements RecoveryManager {
         long LSN = masterRecord.lastCheckpointLSN;
         // Set of transactions that have completed
         Set<Long> endedTransactions = new HashSet<>();
-        // TODO(proj5): implement
-        return;
+        Iterator<LogRecord> iter = logManager.scanFrom(LSN);
+        while (iter.hasNext()) {
+            record = iter.next();
+            if (record.getTransNum().isPresent()) {
+                TransactionTableEntry transactionEntry = getOrStartTransaction(record.getTransNum().get());
+                transactionEntry.lastLSN = record.getLSN();
+            }
+            switch (record.getType()) {
+            case UPDATE_PAGE:
+            case UNDO_UPDATE_PAGE:
+            case INSERT_SLOT:
+            case DELETE_SLOT:
+            case UPDATE_SLOT:
+            case UNDO_INSERT_SLOT:
+            case UNDO_DELETE_SLOT:
+            case UNDO_UPDATE_SLOT:
+                dirtyPageTable.putIfAbsent(record.getPageNum().get(), record.getLSN());
+                break;
+            case FREE_PAGE:
+            case UNDO_ALLOC_PAGE:
+                dirtyPageTable.remove(record.getPageNum().get());
+                break;
+            case COMMIT_TRANSACTION:
+                transactionTable.get(record.getTransNum().get()).transaction.setStatus(
+                    Transaction.Status.COMMITTING);
+                break;
+            case ABORT_TRANSACTION:
+                transactionTable.get(record.getTransNum().get()).transaction.setStatus(
+                    Transaction.Status.RECOVERY_ABORTING);
+                break;
+            case END_TRANSACTION: {
+                long transNum = record.getTransNum().get();
+                Transaction transaction = transactionTable.remove(transNum).transaction;
+                transaction.cleanup();
+                transaction.setStatus(Transaction.Status.COMPLETE);
+                endedTransactions.add(transNum);
+                break;
+            }
+            case END_CHECKPOINT:
+                dirtyPageTable.putAll(record.getDirtyPageTable());
+                for (Map.Entry<Long, Pair<Transaction.Status, Long>> entry :
+                        record.getTransactionTable().entrySet()) {
+                    long transNum = entry.getKey();
+                    if (endedTransactions.contains(transNum)) {
+                        continue;
+                    }
+                    TransactionTableEntry transactionEntry = getOrStartTransaction(transNum);
+                    transactionEntry.lastLSN = Math.max(transactionEntry.lastLSN, entry.getValue().getSecond());
+                    Transaction.Status status = entry.getValue().getFirst();
+                    if (status == Transaction.Status.ABORTING) {
+                        status = Transaction.Status.RECOVERY_ABORTING;
+                    }
+                    if (canTransition(transactionEntry.transaction.getStatus(), status)) {
+                        transactionEntry.transaction.setStatus(status);
+                    }
+                }
+                break;
+            default:
+                break;
+            }
+        }
+
+        // Committing transactions end, running transactions are aborted (and rolled back
+        // by undo)
+        for (Map.Entry<Long, TransactionTableEntry> entry : new ArrayList<>(transactionTable.entrySet())) {
+            long transNum = entry.getKey();
+            TransactionTableEntry transactionEntry = entry.getValue();
+            Transaction transaction = transactionEntry.transaction;
+            if (transaction.getStatus() == Transaction.Status.COMMITTING) {
+                transaction.cleanup();
+                transaction.setStatus(Transaction.Status.COMPLETE);
+                logManager.appendToLog(new EndTransactionLogRecord(transNum, transactionEntry.lastLSN));
+                transactionTable.remove(transNum);
+            } else if (transaction.getStatus() == Transaction.Status.RUNNING) {
+                transaction.setStatus(Transaction.Status.RECOVERY_ABORTING);
+                transactionEntry.lastLSN = logManager.appendToLog(
+                    new AbortTransactionLogRecord(transNum, transactionEntry.lastLSN));
+            }
+        }
+    }
+
+    // Returns the transaction table entry of a transaction, starting the transaction (with
+    // the function given to the constructor) if it is not in the table.
+    private TransactionTableEntry getOrStartTransaction(long transNum) {
+        if (!transactionTable.containsKey(transNum)) {
+            startTransaction(newTransaction.apply(transNum));
+        }
+        return transactionTable.get(transNum);
+    }
+
+    // Returns whether a transaction can go from status from to status to: running
+    // transactions commit or abort, and committing or aborting ones complete.
+    private static boolean canTransition(Transaction.Status from, Transaction.Status to) {
+        switch (from) {
+        case RUNNING:
+            return to != Transaction.Status.RUNNING;
+        case COMMITTING:
+        case ABORTING:
+        case RECOVERY_ABORTING:
+            return to == Transaction.Status.COMPLETE;
+        default:
+            return false;
+        }
     }
 
     /**
@@ -531,13 +1212,97 @@ public class ARIESRecoveryManager implements RecoveryManager {
      * Then, scanning from the starting point, if the record is redoable and
      * - partition-related (Alloc/Free/UndoAlloc/UndoFree..Part), always redo it
      * - allocates a page (AllocPage/UndoFreePage), always redo it
-     * - modifies a page (Update/UndoUpdate/Free/UndoAlloc....Page) in
+     * - modifies a page (Update/UndoUpdate/Free/UndoAlloc....Page, and
+     *   Insert/Delete/Update/UndoInsert/UndoDelete/UndoUpdate....Slot) in
      *   the dirty page table with LSN >= recLSN, the page is fetched from disk,
      *   the pageLSN is checked, and the record is redone if needed.
+     *
+     * Records that allocate or modify a page are redone by redoThreads threads, the
+     * records of each page in log order (see ParallelRedo); partition-related records
+     * wait for every record before them to be redone.
      */
     void restartRedo() {
-        // TODO(proj5): implement
-        return;
+        if (dirtyPageTable.isEmpty()) {
+            return;
+        }
+        long startLSN = Collections.min(dirtyPageTable.values());
+        ParallelRedo parallelRedo = new ParallelRedo(redoThreads, this::redoPageRecord);
+        try {
+            Iterator<LogRecord> iter = logManager.scanFrom(startLSN);
+            while (iter.hasNext()) {
+                LogRecord record = iter.next();
+                if (!record.isRedoable()) {
+                    continue;
+                }
+                switch (record.getType()) {
+                case ALLOC_PART:
+                case FREE_PART:
+                case UNDO_ALLOC_PART:
+                case UNDO_FREE_PART:
+                    parallelRedo.barrier();
+                    record.redo(this, diskSpaceManager, bufferManager);
+                    numRecordsRedone.incrementAndGet();
+                    break;
+                case ALLOC_PAGE:
+                case UNDO_FREE_PAGE:
+                    parallelRedo.dispatch(record.getPageNum().get(), record);
+                    break;
+                case UPDATE_PAGE:
+                case UNDO_UPDATE_PAGE:
+                case FREE_PAGE:
+                case UNDO_ALLOC_PAGE:
+                case INSERT_SLOT:
+                case DELETE_SLOT:
+                case UPDATE_SLOT:
+                case UNDO_INSERT_SLOT:
+                case UNDO_DELETE_SLOT:
+                case UNDO_UPDATE_SLOT:
+                    long pageNum = record.getPageNum().get();
+                    Long recLSN = dirtyPageTable.get(pageNum);
+                    if (recLSN != null && record.getLSN() >= recLSN) {
+                        parallelRedo.dispatch(pageNum, record);
+                    }
+                    break;
+                default:
+                    break;
+                }
+            }
+        } finally {
+            parallelRedo.finish();
+        }
+    }
+
+    private void redoPageRecord(LogRecord record) {
+        if (redoRecord(record, this, diskSpaceManager, bufferManager)) {
+            numRecordsRedone.incrementAndGet();
+        } else {
+            numRecordsSkipped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Redoes a redoable record, unless it modifies a page that already reflects it (whose
+     * pageLSN is not lower than the record's LSN). Records that do not modify a page, or
+     * that allocate one, are always redone.
+     *
+     * @return whether the record was redone
+     */
+    static boolean redoRecord(LogRecord record, RecoveryManager rm, DiskSpaceManager dsm, BufferManager bm) {
+        if (record.getPageNum().isPresent() && record.getType() != LogType.ALLOC_PAGE
+                && record.getType() != LogType.UNDO_FREE_PAGE) {
+            Page page = bm.fetchPage(new DummyLockContext(), record.getPageNum().get());
+            long pageLSN;
+            try {
+                pageLSN = page.getPageLSN();
+            } finally {
+                page.unpin();
+            }
+            if (pageLSN >= record.getLSN()) {
+                return false;
+            }
+        }
+        record.redo(rm, dsm, bm);
+        return true;
     }
 
     /**
@@ -554,8 +1319,32 @@ public class ARIESRecoveryManager implements RecoveryManager {
      *   and remove from transaction table.
      */
     void restartUndo() {
-        // TODO(proj5): implement
-        return;
+        PriorityQueue<Pair<Long, Long>> toUndo = new PriorityQueue<>(new PairFirstReverseComparator<>());
+        for (Map.Entry<Long, TransactionTableEntry> entry : transactionTable.entrySet()) {
+            if (entry.getValue().transaction.getStatus() == Transaction.Status.RECOVERY_ABORTING) {
+                toUndo.add(new Pair<>(entry.getValue().lastLSN, entry.getKey()));
+            }
+        }
+        while (!toUndo.isEmpty()) {
+            Pair<Long, Long> next = toUndo.poll();
+            long transNum = next.getSecond();
+            TransactionTableEntry transactionEntry = transactionTable.get(transNum);
+            LogRecord record = logManager.fetchLogRecord(next.getFirst());
+            if (record.isUndoable()) {
+                LogRecord clr = record.undo(transactionEntry.lastLSN);
+                transactionEntry.lastLSN = logManager.appendToLog(clr);
+                redoCLR(clr);
+            }
+            long nextLSN = record.getUndoNextLSN().orElse(record.getPrevLSN().orElse(0L));
+            if (nextLSN == 0) {
+                transactionEntry.transaction.cleanup();
+                transactionEntry.transaction.setStatus(Transaction.Status.COMPLETE);
+                logManager.appendToLog(new EndTransactionLogRecord(transNum, transactionEntry.lastLSN));
+                transactionTable.remove(transNum);
+            } else {
+                toUndo.add(new Pair<>(nextLSN, transNum));
+            }
+        }
     }
 
     /**
@@ -0,0 +1,200 @@
+package edu.berkeley.cs186.database.recovery;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous commit for a log manager. Committing transactions do not wait for the log
+ * to be flushed up to their commit record: they return as soon as it is appended, and a
+ * background thread flushes the log for them. A crash can therefore lose the last
+ * commits, but never more than a bounded window of them: the log is flushed once the
+ * oldest commit not yet durable was appended maxLagMillis ago, or once maxLagBytes bytes
+ * of log have been appended since it, whichever comes first.
+ *
+ * The durable commit LSN, the LSN of the latest commit record known to be flushed, tells
+ * how far commits are durable; it also advances when the log is flushed for other
+ * reasons (page flushes, synchronous commits).
+ */
+class AsyncCommit implements Runnable {
+    // Time between checks of the log volume, in milliseconds
+    private static final long POLL_MILLIS = 10;
+
+    private final LogManager logManager;
+    private final long maxLagNanos;
+    private final long maxLagBytes;
+    private final Thread thread;
+
+    // The following are guarded by this; the thread waits on this between checks.
+    private boolean running;
+    // LSNs of the commit records not known to be flushed, and the largest of them
+    private final PriorityQueue<Long> pending = new PriorityQueue<>();
+    private long maxPendingLSN;
+    // Time and bytes of log appended when the oldest pending commit was appended
+    private long firstPendingNanos;
+    private long firstPendingBytes;
+    // LSN of the latest commit record known to be flushed
+    private long durableCommitLSN = -1L;
+    // Set if a flush failed; no further commits are accepted
+    private RuntimeException failure;
+
+    // Number of log flushes done for commits
+    private final AtomicLong numFlushes = new AtomicLong();
+
+    /**
+     * @param logManager log manager to flush
+     * @param maxLagMillis time after which a commit is made durable, in milliseconds (0 to
+     *                     flush as soon as possible)
+     * @param maxLagBytes bytes of log appended after a commit after which it is made durable,
+     *                    or 0 to not flush based on log volume
+     */
+    AsyncCommit(LogManager logManager, long maxLagMillis, long maxLagBytes) {
+        if (maxLagMillis < 0 || maxLagBytes < 0) {
+            throw new IllegalArgumentException("durability lag must not be negative");
+        }
+        this.logManager = logManager;
+        this.maxLagNanos = maxLagMillis * 1000000L;
+        this.maxLagBytes = maxLagBytes;
+        this.thread = new Thread(this, "async-commit");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        synchronized (this) {
+            this.running = true;
+        }
+        this.thread.start();
+    }
+
+    /**
+     * Stops the flusher thread, after flushing the log for every commit made so far.
+     */
+    void stop() {
+        synchronized (this) {
+            this.running = false;
+            this.notifyAll();
+        }
+        boolean interrupted = false;
+        while (this.thread.isAlive()) {
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Called after a commit record is appended; the log is flushed up to it later.
+     *
+     * @param LSN LSN of the commit record
+     * @return false if stopped, in which case the caller must flush the log itself
+     */
+    synchronized boolean committed(long LSN) {
+        if (this.failure != null) {
+            throw new IllegalStateException("async commit failed", this.failure);
+        }
+        if (!this.running) {
+            return false;
+        }
+        if (this.pending.isEmpty()) {
+            this.firstPendingNanos = System.nanoTime();
+            this.firstPendingBytes = this.logManager.getNumBytesAppended();
+            this.notifyAll();
+        } else if (this.maxLagBytes > 0 && this.logManager.getNumBytesAppended() - this.firstPendingBytes
+                   >= this.maxLagBytes) {
+            this.notifyAll();
+        }
+        this.pending.add(LSN);
+        this.maxPendingLSN = Math.max(this.maxPendingLSN, LSN);
+        return true;
+    }
+
+    /**
+     * @return LSN of the latest commit record known to be flushed, or -1 if none is
+     */
+    synchronized long getDurableCommitLSN() {
+        this.collectDurable();
+        return this.durableCommitLSN;
+    }
+
+    /**
+     * @return number of log flushes done for commits
+     */
+    long getNumFlushes() {
+        return this.numFlushes.get();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            long LSN;
+            synchronized (this) {
+                if (!this.awaitFlushDue()) {
+                    return;
+                }
+                LSN = this.maxPendingLSN;
+            }
+            try {
+                this.logManager.flushToLSN(LSN);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    this.failure = e;
+                }
+                return;
+            }
+            this.numFlushes.incrementAndGet();
+            synchronized (this) {
+                this.collectDurable();
+            }
+        }
+    }
+
+    // Waits until the log should be flushed for the pending commits; returns false if
+    // stopped with no commits pending. Called with the monitor held.
+    private boolean awaitFlushDue() {
+        while (true) {
+            this.collectDurable();
+            if (this.pending.isEmpty()) {
+                if (!this.running) {
+                    return false;
+                }
+                this.await(0);
+                continue;
+            }
+            if (!this.running) {
+                return true;
+            }
+            if (this.maxLagBytes > 0 && this.logManager.getNumBytesAppended() - this.firstPendingBytes
+                                        >= this.maxLagBytes) {
+                return true;
+            }
+            long remaining = this.firstPendingNanos + this.maxLagNanos - System.nanoTime();
+            if (remaining <= 0) {
+                return true;
+            }
+            long waitMillis = remaining / 1000000L + 1;
+            this.await(this.maxLagBytes > 0 ? Math.min(waitMillis, POLL_MILLIS) : waitMillis);
+        }
+    }
+
+    private void await(long millis) {
+        try {
+            this.wait(millis);
+        } catch (InterruptedException e) {
+            // checked again by the caller
+        }
+    }
+
+    // Moves the pending commits the log is flushed past to durable. The lag of the
+    // commits left is still counted from the oldest pending commit, which only makes
+    // them durable sooner. Called with the monitor held.
+    private void collectDurable() {
+        long flushedLSN = this.logManager.getFlushedLSN();
+        while (!this.pending.isEmpty() && this.pending.peek() <= flushedLSN) {
+            this.durableCommitLSN = Math.max(this.durableCommitLSN, this.pending.poll());
+        }
+    }
+}
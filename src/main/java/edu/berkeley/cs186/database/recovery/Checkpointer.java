@@ -0,0 +1,143 @@
+package edu.berkeley.cs186.database.recovery;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background checkpointer for an ARIES recovery manager. Takes a (fuzzy) checkpoint
+ * whenever maxLogBytes bytes of log have been appended since the last checkpoint, or
+ * maxIntervalMillis have passed since it, whichever comes first, so that the amount of
+ * log analysis and redo have to go through on restart stays bounded.
+ *
+ * Before a checkpoint, the checkpointer can write back the dirty pages with the oldest
+ * recLSNs. Since written back pages leave the dirty page table, this moves the point
+ * redo starts from (the smallest recLSN) forward.
+ */
+class Checkpointer implements Runnable {
+    // Time between checks of the log volume, in milliseconds
+    private static final long POLL_MILLIS = 50;
+
+    private final ARIESRecoveryManager recoveryManager;
+    private final long maxLogBytes;
+    private final long maxIntervalNanos;
+    private final int numPagesToFlush;
+    private final Thread thread;
+    // Guarded by this; the thread waits on this between checks
+    private boolean running;
+
+    // Bytes of log appended and time at the last checkpoint
+    private long lastCheckpointBytes;
+    private long lastCheckpointNanos;
+
+    // Number of checkpoints taken, and dirty pages written back for them
+    private final AtomicLong numCheckpoints = new AtomicLong();
+    private final AtomicLong numPagesFlushed = new AtomicLong();
+
+    /**
+     * @param recoveryManager recovery manager to checkpoint
+     * @param maxLogBytes bytes of log after which a checkpoint is taken, or 0 to not take
+     *                    checkpoints based on log volume
+     * @param maxIntervalMillis time after which a checkpoint is taken, in milliseconds, or 0
+     *                          to not take checkpoints based on time
+     * @param numPagesToFlush number of dirty pages with the oldest recLSNs to write back
+     *                        before each checkpoint
+     */
+    Checkpointer(ARIESRecoveryManager recoveryManager, long maxLogBytes, long maxIntervalMillis,
+                 int numPagesToFlush) {
+        if (maxLogBytes < 0 || maxIntervalMillis < 0) {
+            throw new IllegalArgumentException("checkpoint thresholds must not be negative");
+        }
+        if (maxLogBytes == 0 && maxIntervalMillis == 0) {
+            throw new IllegalArgumentException("at least one checkpoint threshold must be set");
+        }
+        if (numPagesToFlush < 0) {
+            throw new IllegalArgumentException("number of pages to flush must not be negative");
+        }
+        this.recoveryManager = recoveryManager;
+        this.maxLogBytes = maxLogBytes;
+        this.maxIntervalNanos = maxIntervalMillis * 1000000L;
+        this.numPagesToFlush = numPagesToFlush;
+        this.thread = new Thread(this, "checkpointer");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        this.lastCheckpointBytes = this.recoveryManager.logManager.getNumBytesAppended();
+        this.lastCheckpointNanos = System.nanoTime();
+        synchronized (this) {
+            this.running = true;
+        }
+        this.thread.start();
+    }
+
+    /**
+     * Stops the checkpointer, and waits for the current checkpoint (if any) to finish.
+     */
+    void stop() {
+        synchronized (this) {
+            this.running = false;
+            this.notifyAll();
+        }
+        boolean interrupted = false;
+        while (this.thread.isAlive()) {
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return number of checkpoints taken
+     */
+    long getNumCheckpoints() {
+        return this.numCheckpoints.get();
+    }
+
+    /**
+     * @return number of dirty pages written back ahead of checkpoints
+     */
+    long getNumPagesFlushed() {
+        return this.numPagesFlushed.get();
+    }
+
+    @Override
+    public void run() {
+        while (this.awaitCheckpointDue()) {
+            if (this.numPagesToFlush > 0) {
+                this.numPagesFlushed.addAndGet(this.recoveryManager.flushOldestDirtyPages(this.numPagesToFlush));
+            }
+            this.lastCheckpointBytes = this.recoveryManager.logManager.getNumBytesAppended();
+            this.lastCheckpointNanos = System.nanoTime();
+            this.recoveryManager.checkpoint();
+            this.numCheckpoints.incrementAndGet();
+        }
+    }
+
+    // Waits until a checkpoint is due; returns false if stopped first.
+    private synchronized boolean awaitCheckpointDue() {
+        while (this.running) {
+            if (this.maxLogBytes > 0 && this.recoveryManager.logManager.getNumBytesAppended()
+                                        - this.lastCheckpointBytes >= this.maxLogBytes) {
+                return true;
+            }
+            long waitMillis = POLL_MILLIS;
+            if (this.maxIntervalNanos > 0) {
+                long remaining = this.lastCheckpointNanos + this.maxIntervalNanos - System.nanoTime();
+                if (remaining <= 0) {
+                    return true;
+                }
+                waitMillis = Math.min(waitMillis, remaining / 1000000L + 1);
+            }
+            try {
+                this.wait(waitMillis);
+            } catch (InterruptedException e) {
+                // running is checked again
+            }
+        }
+        return false;
+    }
+}
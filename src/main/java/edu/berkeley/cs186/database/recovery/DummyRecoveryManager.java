@@ -51,6 +51,24 @@ public class DummyRecoveryManager implements RecoveryManager {
         return 0L;
     }
 
+    @Override
+    public long logSlotInsert(long transNum, long pageNum, short bitmapOffset, short slot, short offset,
+                              byte[] record) {
+        return 0L;
+    }
+
+    @Override
+    public long logSlotDelete(long transNum, long pageNum, short bitmapOffset, short slot, short offset,
+                              byte[] record) {
+        return 0L;
+    }
+
+    @Override
+    public long logSlotUpdate(long transNum, long pageNum, short slot, short offset, byte[] before,
+                              byte[] after) {
+        return 0L;
+    }
+
     @Override
     public long logAllocPart(long transNum, int partNum) {
         return 0L;
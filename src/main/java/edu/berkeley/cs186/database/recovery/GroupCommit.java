@@ -0,0 +1,214 @@
+package edu.berkeley.cs186.database.recovery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Group commit for a log manager. Instead of every committing transaction flushing the
+ * log itself, committers enqueue a request to flush the log up to their commit record
+ * and wait on a future, and a single background thread flushes the log once for a
+ * whole batch of requests, completing all of their futures. Since flushing the log tail
+ * costs about the same whether it holds one commit record or a hundred, this trades a
+ * little commit latency for far fewer log flushes when many transactions commit at once.
+ *
+ * A batch is flushed when it has maxBatchSize requests, or maxDelayMicros after its
+ * first request arrived, whichever comes first. Requests that arrive while a batch is
+ * being flushed form the next batch, so with a delay of 0, batches are as large as the
+ * number of transactions that committed during the previous flush.
+ */
+class GroupCommit implements Runnable {
+    private final LogManager logManager;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final Thread thread;
+    private volatile boolean running;
+
+    // Requests waiting for the next flush, and when the first of them arrived
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition requestsPending = lock.newCondition();
+    private List<Request> pending = new ArrayList<>();
+    private long firstPendingNanos;
+
+    // Number of requests served and log flushes done for them
+    private final AtomicLong numRequests = new AtomicLong();
+    private final AtomicLong numFlushes = new AtomicLong();
+
+    // Request to flush the log up to an LSN
+    private static class Request {
+        private final long LSN;
+        private final CompletableFuture<Long> flushed = new CompletableFuture<>();
+
+        private Request(long LSN) {
+            this.LSN = LSN;
+        }
+    }
+
+    /**
+     * @param logManager log manager to flush
+     * @param maxBatchSize number of requests that causes a flush without further delay
+     * @param maxDelayMicros maximum time a request waits for more requests to be batched
+     *                       with, in microseconds
+     */
+    GroupCommit(LogManager logManager, int maxBatchSize, long maxDelayMicros) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("group commit batch size must be positive");
+        }
+        if (maxDelayMicros < 0) {
+            throw new IllegalArgumentException("group commit delay must not be negative");
+        }
+        this.logManager = logManager;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelayMicros * 1000L;
+        this.thread = new Thread(this, "group-commit");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        this.running = true;
+        this.thread.start();
+    }
+
+    /**
+     * Stops the flusher thread, after flushing the log for every request made so far.
+     */
+    void stop() {
+        this.lock.lock();
+        try {
+            this.running = false;
+            this.requestsPending.signal();
+        } finally {
+            this.lock.unlock();
+        }
+        boolean interrupted = false;
+        while (this.thread.isAlive()) {
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Requests the log to be flushed up to (and including) the record at LSN.
+     *
+     * @param LSN LSN up to which the log should be flushed
+     * @return future completed with the flushedLSN once the log is flushed up to LSN
+     */
+    CompletableFuture<Long> requestFlush(long LSN) {
+        if (this.logManager.getFlushedLSN() >= LSN) {
+            return CompletableFuture.completedFuture(this.logManager.getFlushedLSN());
+        }
+        Request request = new Request(LSN);
+        this.lock.lock();
+        try {
+            if (!this.running) {
+                throw new IllegalStateException("group commit is stopped");
+            }
+            if (this.pending.isEmpty()) {
+                this.firstPendingNanos = System.nanoTime();
+            }
+            this.pending.add(request);
+            if (this.pending.size() == 1 || this.pending.size() >= this.maxBatchSize) {
+                this.requestsPending.signal();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        return request.flushed;
+    }
+
+    /**
+     * Waits for the log to be flushed up to (and including) the record at LSN, as part of
+     * a batch.
+     *
+     * @param LSN LSN up to which the log should be flushed
+     */
+    void awaitFlush(long LSN) {
+        try {
+            this.requestFlush(LSN).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of flush requests served
+     */
+    long getNumRequests() {
+        return this.numRequests.get();
+    }
+
+    /**
+     * @return number of log flushes done to serve requests
+     */
+    long getNumFlushes() {
+        return this.numFlushes.get();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            List<Request> batch;
+            this.lock.lock();
+            try {
+                while (this.pending.isEmpty() && this.running) {
+                    this.requestsPending.awaitUninterruptibly();
+                }
+                if (this.pending.isEmpty()) {
+                    return;
+                }
+                // wait for the batch to fill up, unless we are stopping
+                long deadline = this.firstPendingNanos + this.maxDelayNanos;
+                long remaining = deadline - System.nanoTime();
+                while (this.running && this.pending.size() < this.maxBatchSize && remaining > 0) {
+                    try {
+                        remaining = this.requestsPending.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        remaining = deadline - System.nanoTime();
+                    }
+                }
+                batch = this.pending;
+                this.pending = new ArrayList<>();
+            } finally {
+                this.lock.unlock();
+            }
+            this.flush(batch);
+        }
+    }
+
+    // Flushes the log once for a batch of requests, and completes them.
+    private void flush(List<Request> batch) {
+        long maxLSN = Long.MIN_VALUE;
+        for (Request request : batch) {
+            maxLSN = Math.max(maxLSN, request.LSN);
+        }
+        try {
+            if (this.logManager.getFlushedLSN() < maxLSN) {
+                this.logManager.flushToLSN(maxLSN);
+                this.numFlushes.incrementAndGet();
+            }
+        } catch (RuntimeException e) {
+            for (Request request : batch) {
+                request.flushed.completeExceptionally(e);
+            }
+            return;
+        }
+        this.numRequests.addAndGet(batch.size());
+        long flushedLSN = this.logManager.getFlushedLSN();
+        for (Request request : batch) {
+            request.flushed.complete(flushedLSN);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package edu.berkeley.cs186.database.recovery;
 
+import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterable;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
@@ -13,11 +14,14 @@ import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.recovery.records.MasterLogRecord;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The LogManager is responsible for interfacing with the log itself. The log is stored
- * on its own partition (partition 0). Since log pages are never deleted, the page number
- * is always increasing, so we assign LSNs as follow:
+ * on its own partition (partition 0). Since log pages are never reused (see truncate),
+ * the page number is always increasing, so we assign LSNs as follow:
  * - page 1: [ LSN 10000, LSN 10040, LSN 10080, ...]
  * - page 2: [ LSN 20000, LSN 20030, LSN 20055, ...]
  * - page 3: [ LSN 30000, LSN 30047, LSN 30090, ...]
@@ -36,24 +40,158 @@ import java.util.*;
  */
 public class LogManager implements Iterable<LogRecord>, AutoCloseable {
     private BufferManager bufferManager;
-    private Deque<Page> unflushedLogTail;
-    private Page logTail;
-    private Buffer logTailBuffer;
-    private boolean logTailPinned = false;
-    private long flushedLSN;
+    // Disk space manager of the log partition, or null if log pages are allocated through
+    // the buffer manager and the log cannot be truncated
+    private final DiskSpaceManager diskSpaceManager;
+    // First log page after page 0 that has not been truncated
+    private volatile long firstLogPage = 1L;
+    // Number of log pages freed by truncation
+    private volatile long numPagesTruncated = 0;
+    // Log pages not flushed yet, in order; the last one is the log tail. Guarded by tailLock.
+    private Deque<LogPageBuffer> unflushedLogTail;
+    // Page records are appended to
+    private volatile LogPageBuffer logTail;
+    private volatile long flushedLSN;
+    // Number of log records, and of bytes of log records, appended since the log manager
+    // was created
+    private final LongAdder appendedRecords = new LongAdder();
+    private final LongAdder appendedBytes = new LongAdder();
+    // Number of compensation log records appended, and of log records read, since the log
+    // manager was created
+    private final LongAdder appendedCLRs = new LongAdder();
+    private final LongAdder readRecords = new LongAdder();
+    // Whether records are appended in the compact format (see CompactEncoding)
+    private volatile boolean compactFormat;
+
+    // Held to seal the log tail and start a new log page, and to access unflushedLogTail
+    private final ReentrantLock tailLock = new ReentrantLock();
+    // Held to flush log pages and update flushedLSN, and to truncate the log
+    private final ReentrantLock flushLock = new ReentrantLock();
 
     public static final int LOG_PARTITION = 0;
 
+    // Reservation offset of a sealed log page: no record fits
+    private static final int SEALED = DiskSpaceManager.PAGE_SIZE + 1;
+
+    // Number of times to spin waiting for earlier records to be published before yielding
+    // (not at all on a single processor, where the writers we wait for cannot run meanwhile)
+    private static final int PUBLISH_SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 100 : 0;
+
+    /**
+     * Log buffer for a log page. Records are appended without locking: a writer reserves
+     * space for its record by atomically advancing the reserved offset, serializes the
+     * record into its slot of the buffer (in parallel with other writers), and then
+     * publishes it. Records are published in order of their offsets (a writer waits for
+     * the writers before it, which only copy bytes), so the published bytes are always a
+     * prefix of the page, and only published bytes are copied into the page in the buffer
+     * manager. Once sealed, a log page takes no more records.
+     */
+    private class LogPageBuffer {
+        private final Page page;
+        private final long pageNum;
+        private final byte[] bytes = new byte[DiskSpaceManager.PAGE_SIZE];
+        // End of the space reserved by writers, or SEALED
+        private final AtomicInteger reserved = new AtomicInteger();
+        // End of the published records
+        private final AtomicInteger published = new AtomicInteger();
+        // End of the bytes copied into the page; guarded by tailLock
+        private int copied = 0;
+        // Whether the page was flushed; guarded by flushLock
+        private boolean flushed = false;
+
+        private LogPageBuffer(Page page) {
+            this.page = page;
+            this.pageNum = page.getPageNum();
+        }
+
+        /**
+         * @return offset of the slot reserved for a record of length bytes, or -1 if the
+         * record does not fit or the page is sealed
+         */
+        private int reserve(int length) {
+            while (true) {
+                int offset = this.reserved.get();
+                if (offset + length > DiskSpaceManager.PAGE_SIZE) {
+                    return -1;
+                }
+                if (this.reserved.compareAndSet(offset, offset + length)) {
+                    return offset;
+                }
+            }
+        }
+
+        /**
+         * Copies a record into the slot reserved for it at offset, and publishes it once
+         * every record before it is published.
+         */
+        private void write(int offset, byte[] record) {
+            System.arraycopy(record, 0, this.bytes, offset, record.length);
+            awaitPublished(offset);
+            this.published.set(offset + record.length);
+        }
+
+        // Waits until the records before offset are published.
+        private void awaitPublished(int offset) {
+            for (int spins = 0; this.published.get() < offset; ++spins) {
+                if (spins < PUBLISH_SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+
+        /**
+         * Copies the records published so far into the page, after waiting for the
+         * records already reserved to be published. Must be called with tailLock held.
+         * @param seal whether to seal the page first, so no more records are appended
+         */
+        private void sync(boolean seal) {
+            int end = seal ? this.reserved.getAndSet(SEALED) : this.reserved.get();
+            if (end == SEALED) {
+                // already sealed, and copied into the page then
+                return;
+            }
+            awaitPublished(end);
+            if (end > this.copied) {
+                this.page.pin();
+                try {
+                    this.page.getBuffer().position(this.copied).put(Arrays.copyOfRange(this.bytes, this.copied, end));
+                } finally {
+                    this.page.unpin();
+                }
+                this.copied = end;
+            }
+        }
+    }
+
     LogManager(BufferManager bufferManager) {
+        this(bufferManager, null);
+    }
+
+    /**
+     * @param bufferManager buffer manager to load log pages through
+     * @param diskSpaceManager disk space manager to allocate and free log pages with, or
+     *                         null to allocate them through the buffer manager (in which
+     *                         case the log cannot be truncated)
+     */
+    LogManager(BufferManager bufferManager, DiskSpaceManager diskSpaceManager) {
         this.bufferManager = bufferManager;
+        this.diskSpaceManager = diskSpaceManager;
         this.unflushedLogTail = new ArrayDeque<>();
 
-        this.logTail = bufferManager.fetchNewPage(new DummyLockContext("_dummyLogPageRecord"), LOG_PARTITION);
+        Page page;
+        if (diskSpaceManager != null && diskSpaceManager.pageAllocated(0L)) {
+            // the log exists, and may have been truncated: continue after its last page
+            page = this.fetchNewLogPage(this.findLastLogPage() + 1);
+        } else {
+            page = bufferManager.fetchNewPage(new DummyLockContext("_dummyLogPageRecord"), LOG_PARTITION);
+        }
+        page.unpin();
+        this.logTail = new LogPageBuffer(page);
         this.unflushedLogTail.add(this.logTail);
-        this.logTailBuffer = this.logTail.getBuffer();
-        this.logTail.unpin();
 
-        this.flushedLSN = maxLSN(this.logTail.getPageNum() - 1L);
+        this.flushedLSN = maxLSN(this.logTail.pageNum - 1L);
     }
 
     /**
@@ -71,36 +209,120 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
     }
 
     /**
-     * Appends a log record to the log.
+     * Appends a log record to the log. Does not block other appends, except when the
+     * log tail is full (or was flushed) and a new log page has to be started.
      * @param record log record to append to the log
      * @return LSN of new log record
      */
-    public synchronized long appendToLog(LogRecord record) {
-        byte[] bytes = record.toBytes();
-        // loop in case accessing log tail requires flushing the log in order to evict dirty page to load log tail
-        do {
-            if (logTailBuffer == null || bytes.length > DiskSpaceManager.PAGE_SIZE - logTailBuffer.position()) {
-                logTailPinned = true;
-                logTail = bufferManager.fetchNewPage(new DummyLockContext("_dummyLogPageRecord"), LOG_PARTITION);
-                unflushedLogTail.add(logTail);
-                logTailBuffer = logTail.getBuffer();
-            } else {
-                logTailPinned = true;
-                logTail.pin();
-                if (logTailBuffer == null) {
-                    logTail.unpin();
+    public long appendToLog(LogRecord record) {
+        byte[] bytes = this.compactFormat ? record.toCompactBytes() : record.toBytes();
+        while (true) {
+            LogPageBuffer tail = this.logTail;
+            int offset = tail.reserve(bytes.length);
+            if (offset >= 0) {
+                tail.write(offset, bytes);
+                this.appendedRecords.increment();
+                this.appendedBytes.add(bytes.length);
+                if (record.getUndoNextLSN().isPresent()) {
+                    this.appendedCLRs.increment();
                 }
+                long LSN = makeLSN(tail.pageNum, offset);
+                record.LSN = LSN;
+                return LSN;
             }
-        } while (logTailBuffer == null);
+            startLogPage(tail);
+        }
+    }
+
+    /**
+     * Seals a full log tail and starts a new log page, unless another thread already has.
+     * @param full log tail that a record did not fit in
+     */
+    private void startLogPage(LogPageBuffer full) {
+        this.tailLock.lock();
         try {
-            int pos = logTailBuffer.position();
-            logTailBuffer.put(bytes);
-            long LSN = makeLSN(unflushedLogTail.getLast().getPageNum(), pos);
-            record.LSN = LSN;
-            return LSN;
+            if (this.logTail != full) {
+                return;
+            }
+            full.sync(true);
+            // fetching a new page may evict a dirty page, flushing the log (with tailLock
+            // held, which is reentrant)
+            Page page;
+            if (this.diskSpaceManager != null) {
+                // freed (truncated) log pages must not be reused, as LSNs must increase
+                page = this.fetchNewLogPage(full.pageNum + 1);
+            } else {
+                page = bufferManager.fetchNewPage(new DummyLockContext("_dummyLogPageRecord"), LOG_PARTITION);
+            }
+            page.unpin();
+            LogPageBuffer tail = new LogPageBuffer(page);
+            this.unflushedLogTail.add(tail);
+            this.logTail = tail;
         } finally {
-            logTail.unpin();
-            logTailPinned = false;
+            this.tailLock.unlock();
+        }
+    }
+
+    /**
+     * Allocates a specific log page, and fetches it.
+     * @param pageNum page number of the new log page
+     * @return the new log page, pinned
+     */
+    private Page fetchNewLogPage(long pageNum) {
+        this.diskSpaceManager.allocPage(pageNum);
+        return bufferManager.fetchPage(new DummyLockContext("_dummyLogPageRecord"), pageNum);
+    }
+
+    /**
+     * Finds the pages of an existing log. The log is page 0 followed by a run of allocated
+     * pages, which contains the page of the last checkpoint (pages before the run were
+     * truncated). Sets firstLogPage.
+     * @return page number of the last log page
+     */
+    private long findLastLogPage() {
+        long checkpointPage = 1L;
+        Page masterPage = bufferManager.fetchPage(new DummyLockContext("_dummyLogPageRecord"), LOG_PARTITION);
+        try {
+            Optional<LogRecord> master = LogRecord.fromBytes(masterPage.getBuffer());
+            if (master.isPresent() && master.get() instanceof MasterLogRecord) {
+                checkpointPage = Math.max(1L, getLSNPage(((MasterLogRecord) master.get()).lastCheckpointLSN));
+            }
+        } finally {
+            masterPage.unpin();
+        }
+        if (!diskSpaceManager.pageAllocated(checkpointPage)) {
+            // nothing was logged after the master page
+            this.firstLogPage = checkpointPage;
+            return checkpointPage - 1;
+        }
+        long firstPage = checkpointPage;
+        while (firstPage > 1 && diskSpaceManager.pageAllocated(firstPage - 1)) {
+            --firstPage;
+        }
+        this.firstLogPage = firstPage;
+        long lastPage = checkpointPage;
+        while (diskSpaceManager.pageAllocated(lastPage + 1)) {
+            ++lastPage;
+        }
+        return lastPage;
+    }
+
+    /**
+     * Copies the records published so far into a log page, if it is the log tail, so that
+     * they can be read through the buffer manager.
+     * @param pageNum page number of log page
+     */
+    private void syncLogPage(long pageNum) {
+        if (this.logTail.pageNum != pageNum) {
+            return;
+        }
+        this.tailLock.lock();
+        try {
+            if (this.logTail.pageNum == pageNum) {
+                this.logTail.sync(false);
+            }
+        } finally {
+            this.tailLock.unlock();
         }
     }
 
@@ -111,12 +333,16 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
      */
     public LogRecord fetchLogRecord(long LSN) {
         try {
+            syncLogPage(getLSNPage(LSN));
             Page logPage = bufferManager.fetchPage(new DummyLockContext("_dummyLogPageRecord"), getLSNPage(LSN));
             try {
                 Buffer buf = logPage.getBuffer();
                 buf.position(getLSNIndex(LSN));
                 Optional<LogRecord> record = LogRecord.fromBytes(buf);
                 record.ifPresent((LogRecord e) -> e.setLSN(LSN));
+                if (record.isPresent()) {
+                    readRecords.increment();
+                }
                 return record.orElse(null);
             } finally {
                 logPage.unpin();
@@ -130,25 +356,44 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
      * Flushes the log to at least the specified record,
      * essentially flushing up to and including the page
      * that contains the record specified by the LSN.
+     * A flushed page is sealed: records appended later go on a new page.
      * @param LSN LSN up to which the log should be flushed
      */
-    public synchronized void flushToLSN(long LSN) {
-        Iterator<Page> iter = unflushedLogTail.iterator();
+    public void flushToLSN(long LSN) {
         long pageNum = getLSNPage(LSN);
-        while (iter.hasNext()) {
-            Page page = iter.next();
-            if (page.getPageNum() > pageNum) {
-                break;
+        if (flushedLSN >= maxLSN(pageNum)) {
+            return;
+        }
+        List<LogPageBuffer> pages = new ArrayList<>();
+        this.tailLock.lock();
+        try {
+            for (LogPageBuffer page : this.unflushedLogTail) {
+                if (page.pageNum > pageNum) {
+                    break;
+                }
+                page.sync(true);
+                pages.add(page);
             }
-            page.flush();
-            iter.remove();
+        } finally {
+            this.tailLock.unlock();
         }
-        flushedLSN = Math.max(flushedLSN, maxLSN(pageNum));
-        if (unflushedLogTail.size() == 0) {
-            if (!logTailPinned) {
-                logTail = null;
+        this.flushLock.lock();
+        try {
+            for (LogPageBuffer page : pages) {
+                if (!page.flushed) {
+                    page.page.flush();
+                    page.flushed = true;
+                }
             }
-            logTailBuffer = null;
+            flushedLSN = Math.max(flushedLSN, maxLSN(pageNum));
+        } finally {
+            this.flushLock.unlock();
+        }
+        this.tailLock.lock();
+        try {
+            this.unflushedLogTail.removeAll(pages);
+        } finally {
+            this.tailLock.unlock();
         }
     }
 
@@ -159,6 +404,104 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
         return flushedLSN;
     }
 
+    /**
+     * Truncates the log: frees every log page (other than the master page) before the
+     * page of LSN. Only pages that have been flushed are freed. Scans that start before
+     * the truncated pages continue from the first page left.
+     *
+     * Freed pages are not reused for the log, since LSNs are derived from page numbers
+     * and must keep increasing.
+     *
+     * @param LSN LSN of the oldest record that must be kept
+     * @return number of log pages freed
+     */
+    public int truncate(long LSN) {
+        if (this.diskSpaceManager == null) {
+            throw new IllegalStateException("log truncation requires a disk space manager");
+        }
+        // log pages are freed without logging, even when truncating on a transaction's thread
+        TransactionContext transaction = TransactionContext.getTransaction();
+        if (transaction != null) {
+            TransactionContext.unsetTransaction();
+        }
+        this.flushLock.lock();
+        try {
+            long endPage = Math.min(getLSNPage(LSN), getLSNPage(this.flushedLSN) + 1);
+            int numFreed = 0;
+            for (long pageNum = this.firstLogPage; pageNum < endPage; ++pageNum) {
+                // new scans skip the page before it is freed
+                this.firstLogPage = pageNum + 1;
+                bufferManager.evict(pageNum);
+                diskSpaceManager.freePage(pageNum);
+                ++numFreed;
+            }
+            this.numPagesTruncated += numFreed;
+            return numFreed;
+        } finally {
+            this.flushLock.unlock();
+            if (transaction != null) {
+                TransactionContext.setTransaction(transaction);
+            }
+        }
+    }
+
+    /**
+     * @return LSN of the first record that may still be in the log after the master
+     * page; records before it were truncated
+     */
+    public long getFirstLSN() {
+        return makeLSN(this.firstLogPage, 0);
+    }
+
+    /**
+     * @return number of log pages freed by truncation since the log manager was created
+     */
+    public long getNumPagesTruncated() {
+        return this.numPagesTruncated;
+    }
+
+    /**
+     * Sets whether records are appended in the compact format (see CompactEncoding).
+     * Records in either format can be read back, so this can be changed at any time.
+     */
+    public void setCompactFormat(boolean compactFormat) {
+        this.compactFormat = compactFormat;
+    }
+
+    public boolean isCompactFormat() {
+        return this.compactFormat;
+    }
+
+    /**
+     * @return number of log records appended since the log manager was created
+     */
+    public long getNumRecordsAppended() {
+        return appendedRecords.sum();
+    }
+
+    /**
+     * @return number of bytes of log records appended since the log manager was created
+     */
+    public long getNumBytesAppended() {
+        return appendedBytes.sum();
+    }
+
+    /**
+     * @return number of compensation log records (records with an undoNextLSN) appended
+     * since the log manager was created
+     */
+    public long getNumCLRsAppended() {
+        return appendedCLRs.sum();
+    }
+
+    /**
+     * @return number of log records read, by fetchLogRecord or by scanning the log, since
+     * the log manager was created
+     */
+    public long getNumRecordsRead() {
+        return readRecords.sum();
+    }
+
     /**
      * Generates LSN from log page number and index
      * @param pageNum page number of log page
@@ -215,10 +558,8 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
     }
 
     @Override
-    public synchronized void close() {
-        if (!this.unflushedLogTail.isEmpty()) {
-            this.flushToLSN(maxLSN(unflushedLogTail.getLast().getPageNum()));
-        }
+    public void close() {
+        this.flushToLSN(maxLSN(this.logTail.pageNum));
     }
 
     private class LogPageIterator extends IndexBacktrackingIterator<LogRecord> {
@@ -234,6 +575,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
 
         @Override
         protected int getNextNonEmpty(int currentIndex) {
+            syncLogPage(logPage.getPageNum());
             logPage.pin();
             try {
                 Buffer buf = logPage.getBuffer();
@@ -264,6 +606,7 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
                 buf.position(index);
                 LogRecord record = LogRecord.fromBytes(buf).orElseThrow(NoSuchElementException::new);
                 record.setLSN(makeLSN(logPage.getPageNum(), index));
+                readRecords.increment();
                 return record;
             } finally {
                 logPage.unpin();
@@ -277,9 +620,15 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
 
         private LogPagesIterator(long startLSN) {
             nextIndex = getLSNPage(startLSN);
+            int startIndex = getLSNIndex(startLSN);
+            if (nextIndex > 0 && nextIndex < firstLogPage) {
+                // truncated: start from the first record left
+                nextIndex = firstLogPage;
+                startIndex = 0;
+            }
             try {
                 Page page = bufferManager.fetchPage(new DummyLockContext(), nextIndex);
-                nextIter = new LogPageIterator(page, getLSNIndex(startLSN));
+                nextIter = new LogPageIterator(page, startIndex);
             } catch (PageException e) {
                 nextIter = null;
             }
@@ -313,7 +662,8 @@ public class LogManager implements Iterable<LogRecord>, AutoCloseable {
 
                 nextIter = null;
                 do {
-                    ++nextIndex;
+                    // skip truncated pages
+                    nextIndex = Math.max(nextIndex + 1, firstLogPage);
                     try {
                         Page page = bufferManager.fetchPage(new DummyLockContext(), nextIndex);
                         nextIter = new LogPageIterator(page, 0);
@@ -168,6 +168,15 @@ public abstract class LogRecord {
      */
     public abstract byte[] toBytes();
 
+    /**
+     * Serializes the record in the compact format (see CompactEncoding), which fromBytes
+     * tells apart from the regular format by a flag on the type byte. Records without a
+     * compact format are serialized as in toBytes.
+     */
+    public byte[] toCompactBytes() {
+        return toBytes();
+    }
+
     /**
      * Load a log record from a buffer.
      * @param buf Buffer containing a serialized log record.
@@ -177,13 +186,16 @@ public abstract class LogRecord {
     public static Optional<LogRecord> fromBytes(Buffer buf) {
         int type;
         try {
-            type = buf.get();
+            type = buf.get() & 0xFF;
         } catch (PageException e) {
             return Optional.empty();
         }
         if (type == 0) {
             return Optional.empty();
         }
+        if ((type & CompactEncoding.FLAG) != 0) {
+            return fromCompactBytes(LogType.fromInt(type & ~CompactEncoding.FLAG), buf);
+        }
         switch (LogType.fromInt(type)) {
         case MASTER:
             return MasterLogRecord.fromBytes(buf);
@@ -217,6 +229,56 @@ public abstract class LogRecord {
             return UndoAllocPartLogRecord.fromBytes(buf);
         case UNDO_FREE_PART:
             return UndoFreePartLogRecord.fromBytes(buf);
+        case INSERT_SLOT:
+            return InsertSlotLogRecord.fromBytes(buf);
+        case DELETE_SLOT:
+            return DeleteSlotLogRecord.fromBytes(buf);
+        case UPDATE_SLOT:
+            return UpdateSlotLogRecord.fromBytes(buf);
+        case UNDO_INSERT_SLOT:
+            return UndoInsertSlotLogRecord.fromBytes(buf);
+        case UNDO_DELETE_SLOT:
+            return UndoDeleteSlotLogRecord.fromBytes(buf);
+        case UNDO_UPDATE_SLOT:
+            return UndoUpdateSlotLogRecord.fromBytes(buf);
+        default:
+            throw new UnsupportedOperationException("bad log type");
+        }
+    }
+
+    // Loads a log record in the compact format, after its type byte.
+    private static Optional<LogRecord> fromCompactBytes(LogType type, Buffer buf) {
+        switch (type) {
+        case ALLOC_PAGE:
+            return AllocPageLogRecord.fromCompactBytes(buf);
+        case UPDATE_PAGE:
+            return UpdatePageLogRecord.fromCompactBytes(buf);
+        case FREE_PAGE:
+            return FreePageLogRecord.fromCompactBytes(buf);
+        case COMMIT_TRANSACTION:
+            return CommitTransactionLogRecord.fromCompactBytes(buf);
+        case ABORT_TRANSACTION:
+            return AbortTransactionLogRecord.fromCompactBytes(buf);
+        case END_TRANSACTION:
+            return EndTransactionLogRecord.fromCompactBytes(buf);
+        case UNDO_ALLOC_PAGE:
+            return UndoAllocPageLogRecord.fromCompactBytes(buf);
+        case UNDO_UPDATE_PAGE:
+            return UndoUpdatePageLogRecord.fromCompactBytes(buf);
+        case UNDO_FREE_PAGE:
+            return UndoFreePageLogRecord.fromCompactBytes(buf);
+        case INSERT_SLOT:
+            return InsertSlotLogRecord.fromCompactBytes(buf);
+        case DELETE_SLOT:
+            return DeleteSlotLogRecord.fromCompactBytes(buf);
+        case UPDATE_SLOT:
+            return UpdateSlotLogRecord.fromCompactBytes(buf);
+        case UNDO_INSERT_SLOT:
+            return UndoInsertSlotLogRecord.fromCompactBytes(buf);
+        case UNDO_DELETE_SLOT:
+            return UndoDeleteSlotLogRecord.fromCompactBytes(buf);
+        case UNDO_UPDATE_SLOT:
+            return UndoUpdateSlotLogRecord.fromCompactBytes(buf);
         default:
             throw new UnsupportedOperationException("bad log type");
         }
@@ -0,0 +1,188 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ships the log of a primary database to a standby (see StandbyRecoveryManager), through
+ * a log transport. A background thread sends every log record, from the start of the log,
+ * in log order, once it is flushed: a record is never shipped before it is durable on the
+ * primary, so the standby never gets ahead of what the primary would recover after a
+ * crash.
+ *
+ * Each record is sent as a frame holding its LSN (8 bytes), the time it was shipped at
+ * (8 bytes, in milliseconds since the epoch, for the standby to measure its replay lag),
+ * and the record in the regular format (see LogRecord#toBytes).
+ */
+class LogShipper implements Runnable {
+    // Time between checks of the flushed LSN, in milliseconds
+    private static final long POLL_MILLIS = 10;
+
+    private final LogManager logManager;
+    private final LogTransport transport;
+    private final Thread thread;
+    // Guarded by this; the thread waits on this between checks
+    private boolean running;
+
+    // LSN of the last record shipped, or -1 if none was
+    private volatile long shippedLSN = -1L;
+    // Number of records shipped
+    private final AtomicLong numRecordsShipped = new AtomicLong();
+    // Set if shipping failed, which stops the thread
+    private volatile RuntimeException failure;
+
+    /**
+     * @param logManager log manager to ship the log of
+     * @param transport transport to send records through
+     */
+    LogShipper(LogManager logManager, LogTransport transport) {
+        this.logManager = logManager;
+        this.transport = transport;
+        this.thread = new Thread(this, "log-shipper");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        synchronized (this) {
+            this.running = true;
+        }
+        this.thread.start();
+    }
+
+    /**
+     * Stops shipping, after shipping every record flushed so far, and closes the transport.
+     *
+     * @throws IllegalStateException if shipping failed
+     */
+    void stop() {
+        synchronized (this) {
+            this.running = false;
+            this.notifyAll();
+        }
+        boolean interrupted = false;
+        while (this.thread.isAlive()) {
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        this.transport.close();
+        if (this.failure != null) {
+            throw new IllegalStateException("log shipping failed", this.failure);
+        }
+    }
+
+    /**
+     * @return LSN of the last record shipped, or -1 if none was
+     */
+    long getShippedLSN() {
+        return this.shippedLSN;
+    }
+
+    /**
+     * @return number of records shipped
+     */
+    long getNumRecordsShipped() {
+        return this.numRecordsShipped.get();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            boolean running;
+            synchronized (this) {
+                running = this.running;
+            }
+            try {
+                this.shipFlushed();
+            } catch (RuntimeException e) {
+                this.failure = e;
+                return;
+            }
+            if (!running) {
+                // everything flushed before stop was called is shipped
+                return;
+            }
+            synchronized (this) {
+                if (this.running) {
+                    try {
+                        this.wait(POLL_MILLIS);
+                    } catch (InterruptedException e) {
+                        // checked again on the next iteration
+                    }
+                }
+            }
+        }
+    }
+
+    // Ships the records flushed since the last records shipped.
+    private void shipFlushed() {
+        long flushedLSN = this.logManager.getFlushedLSN();
+        if (flushedLSN <= this.shippedLSN) {
+            return;
+        }
+        Iterator<LogRecord> iter = this.logManager.scanFrom(Math.max(this.shippedLSN, 0L));
+        boolean shipped = false;
+        while (iter.hasNext()) {
+            LogRecord record = iter.next();
+            if (record.getLSN() <= this.shippedLSN) {
+                continue;
+            }
+            if (record.getLSN() > flushedLSN) {
+                break;
+            }
+            this.transport.send(encode(record, System.currentTimeMillis()));
+            this.shippedLSN = record.getLSN();
+            this.numRecordsShipped.incrementAndGet();
+            shipped = true;
+        }
+        if (shipped) {
+            this.transport.flush();
+        }
+    }
+
+    /**
+     * @param record record to ship
+     * @param shippedMillis time the record is shipped at, in milliseconds since the epoch
+     * @return frame for the record
+     */
+    static byte[] encode(LogRecord record, long shippedMillis) {
+        byte[] bytes = record.toBytes();
+        byte[] frame = new byte[2 * Long.BYTES + bytes.length];
+        ByteBuffer.wrap(frame).putLong(record.getLSN()).putLong(shippedMillis).put(bytes);
+        return frame;
+    }
+
+    /**
+     * Reads the time a frame was shipped at.
+     *
+     * @param frame frame made by encode
+     * @return time the record was shipped at, in milliseconds since the epoch
+     */
+    static long decodeShippedMillis(byte[] frame) {
+        return ByteBuffer.wrap(frame).position(Long.BYTES).getLong();
+    }
+
+    /**
+     * Reads the record of a frame.
+     *
+     * @param frame frame made by encode
+     * @return the record, with its LSN set
+     */
+    static LogRecord decodeRecord(byte[] frame) {
+        Buffer buf = ByteBuffer.wrap(frame);
+        long LSN = buf.getLong();
+        buf.getLong();
+        LogRecord record = LogRecord.fromBytes(buf).orElseThrow(
+                () -> new IllegalArgumentException("frame holds no log record"));
+        record.setLSN(LSN);
+        return record;
+    }
+}
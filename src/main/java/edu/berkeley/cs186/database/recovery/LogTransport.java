@@ -0,0 +1,45 @@
+package edu.berkeley.cs186.database.recovery;
+
+/**
+ * Carries log records from a primary database to a standby (see LogShipper and
+ * StandbyRecoveryManager). Records are sent as opaque frames of bytes, which are received
+ * in the order they were sent. A transport has a single sender and a single receiver.
+ *
+ * Implementations: QueueLogTransport (in-process) and SocketLogTransport (over a local
+ * socket).
+ */
+public interface LogTransport extends AutoCloseable {
+    /**
+     * Sends a frame. May block while the receiver is behind.
+     *
+     * @param frame frame to send
+     * @throws IllegalStateException if the transport is closed
+     */
+    void send(byte[] frame);
+
+    /**
+     * Makes every frame sent so far available to the receiver, for transports that buffer
+     * frames.
+     */
+    default void flush() {}
+
+    /**
+     * Receives the next frame.
+     *
+     * @param timeoutMillis maximum time to wait for a frame, in milliseconds
+     * @return the next frame, or null if none arrived within the timeout or the transport
+     * is closed (see isClosed)
+     */
+    byte[] receive(long timeoutMillis) throws InterruptedException;
+
+    /**
+     * @return whether the transport was closed, and every frame sent before was received
+     */
+    boolean isClosed();
+
+    /**
+     * Closes the transport. Frames already sent can still be received.
+     */
+    @Override
+    void close();
+}
@@ -33,7 +33,19 @@ public enum LogType {
     // compensation log record for undoing a partition alloc
     UNDO_ALLOC_PART,
     // compensation log record for undoing a partition free
-    UNDO_FREE_PART;
+    UNDO_FREE_PART,
+    // log record for inserting a record into a slot of a heap file page
+    INSERT_SLOT,
+    // log record for deleting the record in a slot of a heap file page
+    DELETE_SLOT,
+    // log record for overwriting the record in a slot of a heap file page
+    UPDATE_SLOT,
+    // compensation log record for undoing a slot insert
+    UNDO_INSERT_SLOT,
+    // compensation log record for undoing a slot delete
+    UNDO_DELETE_SLOT,
+    // compensation log record for undoing a slot update
+    UNDO_UPDATE_SLOT;
 
     private static LogType[] values = LogType.values();
 
@@ -0,0 +1,175 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.recovery.records.MasterLogRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Redoes page-scoped log records on several worker threads during the redo pass of
+ * restart recovery. Records are dispatched to workers by page number, so all the records
+ * of a page are redone by the same worker, in the order they were dispatched (log order);
+ * records of different pages are redone in parallel, as redoing a record only reads and
+ * writes its own page. Records that are not page-scoped (e.g. partition allocations) are
+ * redone by the dispatching thread after a barrier, which waits for every record
+ * dispatched before it to be redone.
+ *
+ * With a single thread, records are redone by the dispatching thread as they are
+ * dispatched, in log order.
+ */
+class ParallelRedo {
+    // Maximum number of records waiting for each worker; the dispatching thread blocks when
+    // a worker's queue is full
+    private static final int QUEUE_CAPACITY = 1024;
+
+    // Queued to stop a worker
+    private static final LogRecord STOP = new MasterLogRecord(0);
+
+    private final Consumer<LogRecord> redo;
+    private final List<BlockingQueue<LogRecord>> queues;
+    private final Thread[] workers;
+
+    // Number of records dispatched but not redone yet, and the first failure of a worker;
+    // guarded by this
+    private long outstanding = 0;
+    private RuntimeException failure;
+
+    /**
+     * @param numThreads number of worker threads
+     * @param redo redoes a page-scoped record
+     */
+    ParallelRedo(int numThreads, Consumer<LogRecord> redo) {
+        if (numThreads <= 0) {
+            throw new IllegalArgumentException("number of redo threads must be positive");
+        }
+        this.redo = redo;
+        int numWorkers = numThreads == 1 ? 0 : numThreads;
+        this.queues = new ArrayList<>(numWorkers);
+        this.workers = new Thread[numWorkers];
+        for (int i = 0; i < numWorkers; ++i) {
+            BlockingQueue<LogRecord> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+            this.queues.add(queue);
+            this.workers[i] = new Thread(() -> this.work(queue), "redo-" + i);
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+    }
+
+    /**
+     * Dispatches a page-scoped record to the worker of its page.
+     * @param pageNum page the record is for
+     * @param record record to redo
+     */
+    void dispatch(long pageNum, LogRecord record) {
+        if (this.workers.length == 0) {
+            this.redo.accept(record);
+            return;
+        }
+        synchronized (this) {
+            this.throwIfFailed();
+            ++this.outstanding;
+        }
+        int worker = Math.floorMod(Long.hashCode(pageNum), this.workers.length);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                this.queues.get(worker).put(record);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for every record dispatched so far to be redone.
+     * @throws RuntimeException the first exception thrown by a worker, if any
+     */
+    synchronized void barrier() {
+        boolean interrupted = false;
+        while (this.outstanding > 0 && this.failure == null) {
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        this.throwIfFailed();
+    }
+
+    /**
+     * Waits for every record dispatched so far to be redone, and stops the workers.
+     * @throws RuntimeException the first exception thrown by a worker, if any
+     */
+    void finish() {
+        try {
+            this.barrier();
+        } finally {
+            boolean interrupted = false;
+            for (int i = 0; i < this.workers.length; ++i) {
+                while (true) {
+                    try {
+                        this.queues.get(i).put(STOP);
+                        this.workers[i].join();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void throwIfFailed() {
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+
+    private void work(BlockingQueue<LogRecord> queue) {
+        while (true) {
+            LogRecord record;
+            try {
+                record = queue.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (record == STOP) {
+                return;
+            }
+            RuntimeException exception = null;
+            synchronized (this) {
+                // after a failure, the remaining records are dropped
+                if (this.failure != null) {
+                    --this.outstanding;
+                    this.notifyAll();
+                    continue;
+                }
+            }
+            try {
+                this.redo.accept(record);
+            } catch (RuntimeException e) {
+                exception = e;
+            }
+            synchronized (this) {
+                if (exception != null && this.failure == null) {
+                    this.failure = exception;
+                }
+                --this.outstanding;
+                this.notifyAll();
+            }
+        }
+    }
+}
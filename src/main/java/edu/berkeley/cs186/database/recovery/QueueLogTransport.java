@@ -0,0 +1,75 @@
+package edu.berkeley.cs186.database.recovery;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Log transport between a primary and a standby in the same process, through a bounded
+ * queue of frames. The sender blocks while the queue is full.
+ */
+public class QueueLogTransport implements LogTransport {
+    // Default maximum number of frames sent but not received yet
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    // Time between checks of whether the transport was closed while blocked, in milliseconds
+    private static final long POLL_MILLIS = 10;
+
+    private final BlockingQueue<byte[]> queue;
+    private volatile boolean closed;
+
+    public QueueLogTransport() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum number of frames sent but not received yet
+     */
+    public QueueLogTransport(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.queue = new LinkedBlockingQueue<>(capacity);
+    }
+
+    @Override
+    public void send(byte[] frame) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                if (this.closed) {
+                    throw new IllegalStateException("log transport is closed");
+                }
+                try {
+                    if (this.queue.offer(frame, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public byte[] receive(long timeoutMillis) throws InterruptedException {
+        if (this.isClosed()) {
+            return null;
+        }
+        return this.queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return this.closed && this.queue.isEmpty();
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+    }
+}
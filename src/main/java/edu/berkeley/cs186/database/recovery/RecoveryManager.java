@@ -81,6 +81,52 @@ public interface RecoveryManager extends AutoCloseable {
     long logPageWrite(long transNum, long pageNum, short pageOffset, byte[] before,
                       byte[] after);
 
+    /**
+     * Called when a record is inserted into a slot of a heap file page. The insert is
+     * logged as one record, instead of as writes of the bytes it changes.
+     *
+     * @param transNum transaction performing the insert
+     * @param pageNum page number of the page
+     * @param bitmapOffset offset into page of the page's slot bitmap, or -1 if it has none
+     * @param slot slot the record is inserted into
+     * @param offset offset into page of the slot's record
+     * @param record bytes of the record
+     * @return LSN of record written to log
+     */
+    long logSlotInsert(long transNum, long pageNum, short bitmapOffset, short slot, short offset,
+                       byte[] record);
+
+    /**
+     * Called when the record in a slot of a heap file page is deleted. The delete is
+     * logged as one record, instead of as writes of the bytes it changes.
+     *
+     * @param transNum transaction performing the delete
+     * @param pageNum page number of the page
+     * @param bitmapOffset offset into page of the page's slot bitmap, or -1 if it has none
+     * @param slot slot of the record
+     * @param offset offset into page of the slot's record
+     * @param record bytes of the record
+     * @return LSN of record written to log
+     */
+    long logSlotDelete(long transNum, long pageNum, short bitmapOffset, short slot, short offset,
+                       byte[] record);
+
+    /**
+     * Called when the record in a slot of a heap file page is overwritten. The update is
+     * logged as one record, instead of as writes of the bytes it changes. Arguments to the
+     * before and after params must be the same length.
+     *
+     * @param transNum transaction performing the update
+     * @param pageNum page number of the page
+     * @param slot slot of the record
+     * @param offset offset into page of the slot's record
+     * @param before bytes of the record before the update
+     * @param after bytes of the record after the update
+     * @return LSN of record written to log
+     */
+    long logSlotUpdate(long transNum, long pageNum, short slot, short offset, byte[] before,
+                       byte[] after);
+
     /**
      * Called when a new partition is allocated. A log flush is necessary,
      * since changes are visible on disk immediately after this returns.
@@ -0,0 +1,210 @@
+package edu.berkeley.cs186.database.recovery;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Log transport between a primary and a standby over a socket on the loopback interface.
+ * The standby listens (listen), and the primary connects to it (connect); each side only
+ * supports its own operations. Frames are written as their length (4 bytes) followed by
+ * their bytes.
+ *
+ * On the receiving side, a thread reads frames from the connection as they arrive, so
+ * that receive can time out without losing part of a frame.
+ */
+public class SocketLogTransport implements LogTransport {
+    // Maximum number of frames read from the connection but not received yet
+    private static final int QUEUE_CAPACITY = 4096;
+
+    // Time between checks of whether the transport was closed while the queue is full, in
+    // milliseconds
+    private static final long POLL_MILLIS = 10;
+
+    // Sending side
+    private final Socket socket;
+    private final DataOutputStream out;
+
+    // Receiving side
+    private final ServerSocket serverSocket;
+    private final BlockingQueue<byte[]> queue;
+    private final Thread reader;
+    // Connection accepted from the primary, once there is one
+    private volatile Socket connection;
+    // Set once the reader is done: the connection was closed (and every frame was read
+    // from it), the receiving side was closed, or reading failed
+    private volatile boolean ended;
+    // Set when the receiving side is closed
+    private volatile boolean closing;
+    // Set if reading from the connection failed
+    private volatile IOException failure;
+
+    private SocketLogTransport(Socket socket) throws IOException {
+        this.socket = socket;
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.serverSocket = null;
+        this.queue = null;
+        this.reader = null;
+    }
+
+    private SocketLogTransport(ServerSocket serverSocket) {
+        this.socket = null;
+        this.out = null;
+        this.serverSocket = serverSocket;
+        this.queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+        this.reader = new Thread(this::read, "log-transport-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Listens for the primary on the loopback interface, to receive frames from it.
+     *
+     * @param port port to listen on, or 0 for any free port (see getPort)
+     * @return receiving side of the transport
+     */
+    public static SocketLogTransport listen(int port) {
+        try {
+            return new SocketLogTransport(new ServerSocket(port, 1, InetAddress.getLoopbackAddress()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Connects to a standby listening on the loopback interface, to send frames to it.
+     *
+     * @param port port the standby listens on
+     * @return sending side of the transport
+     */
+    public static SocketLogTransport connect(int port) {
+        try {
+            return new SocketLogTransport(new Socket(InetAddress.getLoopbackAddress(), port));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return port the receiving side listens on
+     */
+    public int getPort() {
+        if (this.serverSocket == null) {
+            throw new UnsupportedOperationException("not the receiving side of the transport");
+        }
+        return this.serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void send(byte[] frame) {
+        if (this.out == null) {
+            throw new UnsupportedOperationException("not the sending side of the transport");
+        }
+        if (this.socket.isClosed()) {
+            throw new IllegalStateException("log transport is closed");
+        }
+        try {
+            this.out.writeInt(frame.length);
+            this.out.write(frame);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (this.out == null) {
+            throw new UnsupportedOperationException("not the sending side of the transport");
+        }
+        try {
+            this.out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public byte[] receive(long timeoutMillis) throws InterruptedException {
+        if (this.queue == null) {
+            throw new UnsupportedOperationException("not the receiving side of the transport");
+        }
+        if (this.isClosed()) {
+            if (this.failure != null) {
+                throw new UncheckedIOException(this.failure);
+            }
+            return null;
+        }
+        return this.queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean isClosed() {
+        if (this.queue == null) {
+            return this.socket.isClosed();
+        }
+        return this.ended && this.queue.isEmpty();
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (this.socket != null) {
+                if (!this.socket.isClosed()) {
+                    this.out.flush();
+                }
+                this.socket.close();
+            } else {
+                // stops the reader, which is blocked accepting or reading
+                this.closing = true;
+                this.serverSocket.close();
+                Socket connection = this.connection;
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Accepts the primary's connection, and reads frames from it until it is closed.
+    private void read() {
+        try {
+            try (Socket socket = this.serverSocket.accept()) {
+                this.serverSocket.close();
+                this.connection = socket;
+                if (this.closing) {
+                    return;
+                }
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                while (true) {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    byte[] frame = new byte[length];
+                    in.readFully(frame);
+                    while (!this.queue.offer(frame, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        if (this.closing) {
+                            return;
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (!this.closing) {
+                this.failure = e;
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } finally {
+            this.ended = true;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recovery manager of a standby database: a read-only copy of a primary database, kept
+ * up to date by replaying the log records the primary ships to it (see LogShipper).
+ *
+ * Replay starts when restart is called, and runs on a background thread until the
+ * transport is closed or the standby is. Records are held back until every transaction
+ * they belong to has committed or ended, and are then replayed in log order, so that the
+ * standby only ever shows the primary's state at a point where no transaction was in
+ * flight: changes of transactions that have not committed are not visible, and changes
+ * of aborted transactions are only replayed together with the CLRs that undo them. While
+ * transactions keep overlapping on the primary, records pile up in memory and the standby
+ * lags behind.
+ *
+ * Records held back are replayed while no transaction of the standby is running, and
+ * transactions starting meanwhile wait for the replay, so that a transaction sees the same
+ * state throughout. Long transactions on the standby therefore delay replay.
+ *
+ * Every record is redone the way the redo pass of ARIES redoes it (see
+ * ARIESRecoveryManager#redoRecord): records that modify a page are skipped if the page
+ * already reflects them. Replaying records again, e.g. when the primary starts shipping
+ * from the start of its log after a restart, is therefore safe.
+ *
+ * The standby has no log of its own, and does not support writes: transactions are
+ * read-only.
+ */
+public class StandbyRecoveryManager implements RecoveryManager {
+    // Time to wait for a frame before checking whether replay was stopped, in milliseconds
+    private static final long POLL_MILLIS = 10;
+
+    private final LogTransport transport;
+    private DiskSpaceManager diskSpaceManager;
+    private BufferManager bufferManager;
+    private final Map<Long, Transaction> transactions = new ConcurrentHashMap<>();
+    private Thread thread;
+
+    // The following are guarded by this; waiters for a commit wait on this.
+    private boolean running;
+    // Whether a commit record was replayed
+    private boolean committed;
+    // Whether replay is over: stopped, transport closed, or failed
+    private boolean ended;
+    private RuntimeException failure;
+    // Number of transactions of the standby running, and whether records are being
+    // replayed; each waits for the other to be over
+    private int numRunningTransactions;
+    private boolean replaying;
+
+    // Records received but not replayed yet, in log order, and the transactions they
+    // belong to that have neither committed nor ended; only used by the replay thread
+    private final List<LogRecord> pendingRecords = new ArrayList<>();
+    private final Set<Long> openTransactions = new HashSet<>();
+
+    // LSN of the last record replayed, or -1 if none was
+    private volatile long replayedLSN = -1L;
+    // Time between the last record replayed being shipped and replayed, in milliseconds
+    private volatile long replayLagMillis;
+    // Number of records replayed (whether redone or not)
+    private final AtomicLong numRecordsReplayed = new AtomicLong();
+
+    /**
+     * @param transport transport to receive the primary's log records from
+     */
+    public StandbyRecoveryManager(LogTransport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    public void initialize() {}
+
+    @Override
+    public void setManagers(DiskSpaceManager diskSpaceManager, BufferManager bufferManager) {
+        this.diskSpaceManager = diskSpaceManager;
+        this.bufferManager = bufferManager;
+    }
+
+    /**
+     * Starts replaying the primary's log records.
+     */
+    @Override
+    public synchronized void restart() {
+        if (this.thread != null) {
+            throw new IllegalStateException("replay already started");
+        }
+        this.running = true;
+        this.thread = new Thread(this::replay, "log-replay");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Waits until a commit record of the primary was replayed. The first transaction to
+     * commit on a new primary creates its metadata tables, so once it is replayed, the
+     * standby has them.
+     *
+     * @return whether a commit record was replayed; false if replay ended first
+     */
+    public synchronized boolean awaitCommit() throws InterruptedException {
+        while (!this.committed && !this.ended) {
+            this.wait();
+        }
+        return this.committed;
+    }
+
+    /**
+     * @return LSN of the last record replayed, or -1 if none was
+     */
+    public long getReplayedLSN() {
+        return this.replayedLSN;
+    }
+
+    /**
+     * @return time between the last record replayed being shipped by the primary and
+     * replayed, in milliseconds (0 if no record was replayed)
+     */
+    public long getReplayLagMillis() {
+        return this.replayLagMillis;
+    }
+
+    /**
+     * @return number of records replayed
+     */
+    public long getNumRecordsReplayed() {
+        return this.numRecordsReplayed.get();
+    }
+
+    /**
+     * @return whether replay is over, because the standby or the transport was closed, or
+     * because replay failed (see getReplayFailure)
+     */
+    public synchronized boolean isReplayEnded() {
+        return this.ended;
+    }
+
+    /**
+     * @return the exception replay failed with, or null if it did not fail
+     */
+    public synchronized RuntimeException getReplayFailure() {
+        return this.failure;
+    }
+
+    private void replay() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (!this.running) {
+                        return;
+                    }
+                }
+                byte[] frame = this.transport.receive(POLL_MILLIS);
+                if (frame == null) {
+                    if (this.transport.isClosed()) {
+                        return;
+                    }
+                    continue;
+                }
+                LogRecord record = LogShipper.decodeRecord(frame);
+                this.pendingRecords.add(record);
+                if (record.getTransNum().isPresent()) {
+                    if (record.getType() == LogType.COMMIT_TRANSACTION
+                            || record.getType() == LogType.END_TRANSACTION) {
+                        this.openTransactions.remove(record.getTransNum().get());
+                    } else {
+                        this.openTransactions.add(record.getTransNum().get());
+                    }
+                }
+                if (this.openTransactions.isEmpty()) {
+                    synchronized (this) {
+                        while (this.numRunningTransactions > 0) {
+                            if (!this.running) {
+                                return;
+                            }
+                            this.wait(POLL_MILLIS);
+                        }
+                        this.replaying = true;
+                    }
+                    try {
+                        this.replayPendingRecords();
+                    } finally {
+                        synchronized (this) {
+                            this.replaying = false;
+                            this.notifyAll();
+                        }
+                    }
+                    this.replayLagMillis = Math.max(0L, System.currentTimeMillis()
+                                                    - LogShipper.decodeShippedMillis(frame));
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                this.failure = e;
+            }
+        } finally {
+            synchronized (this) {
+                this.ended = true;
+                this.notifyAll();
+            }
+        }
+    }
+
+    // Replays the records held back, now that none of their transactions is in flight.
+    private void replayPendingRecords() {
+        boolean replayedCommit = false;
+        for (LogRecord record : this.pendingRecords) {
+            if (record.isRedoable()) {
+                ARIESRecoveryManager.redoRecord(record, this, this.diskSpaceManager, this.bufferManager);
+            }
+            this.replayedLSN = record.getLSN();
+            this.numRecordsReplayed.incrementAndGet();
+            replayedCommit |= record.getType() == LogType.COMMIT_TRANSACTION;
+        }
+        this.pendingRecords.clear();
+        if (replayedCommit) {
+            synchronized (this) {
+                if (!this.committed) {
+                    this.committed = true;
+                    this.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for records being replayed, if any, before the transaction starts.
+     */
+    @Override
+    public void startTransaction(Transaction transaction) {
+        synchronized (this) {
+            boolean interrupted = false;
+            while (this.replaying) {
+                try {
+                    this.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            ++this.numRunningTransactions;
+        }
+        this.transactions.put(transaction.getTransNum(), transaction);
+    }
+
+    @Override
+    public long commit(long transNum) {
+        this.transactions.get(transNum).setStatus(Transaction.Status.COMMITTING);
+        return 0L;
+    }
+
+    @Override
+    public long abort(long transNum) {
+        // read-only transactions have nothing to roll back
+        this.transactions.get(transNum).setStatus(Transaction.Status.ABORTING);
+        return 0L;
+    }
+
+    @Override
+    public long end(long transNum) {
+        Transaction transaction = this.transactions.remove(transNum);
+        transaction.setStatus(Transaction.Status.COMPLETE);
+        synchronized (this) {
+            --this.numRunningTransactions;
+            this.notifyAll();
+        }
+        return 0L;
+    }
+
+    // Pages are rebuilt from the primary's log, so they can be written back at any time.
+    @Override
+    public void pageFlushHook(long pageLSN) {}
+
+    @Override
+    public void diskIOHook(long pageNum) {}
+
+    @Override
+    public long logPageWrite(long transNum, long pageNum, short pageOffset, byte[] before,
+                             byte[] after) {
+        throw readOnly();
+    }
+
+    @Override
+    public long logSlotInsert(long transNum, long pageNum, short bitmapOffset, short slot, short offset,
+                              byte[] record) {
+        throw readOnly();
+    }
+
+    @Override
+    public long logSlotDelete(long transNum, long pageNum, short bitmapOffset, short slot, short offset,
+                              byte[] record) {
+        throw readOnly();
+    }
+
+    @Override
+    public long logSlotUpdate(long transNum, long pageNum, short slot, short offset, byte[] before,
+                              byte[] after) {
+        throw readOnly();
+    }
+
+    @Override
+    public long logAllocPart(long transNum, int partNum) {
+        throw readOnly();
+    }
+
+    @Override
+    public long logFreePart(long transNum, int partNum) {
+        throw readOnly();
+    }
+
+    @Override
+    public long logAllocPage(long transNum, long pageNum) {
+        throw readOnly();
+    }
+
+    @Override
+    public long logFreePage(long transNum, long pageNum) {
+        throw readOnly();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("standby database is read-only");
+    }
+
+    @Override
+    public void savepoint(long transNum, String name) {}
+
+    @Override
+    public void releaseSavepoint(long transNum, String name) {}
+
+    @Override
+    public void rollbackToSavepoint(long transNum, String name) {}
+
+    @Override
+    public void checkpoint() {}
+
+    @Override
+    public void flushToLSN(long LSN) {}
+
+    @Override
+    public void dirtyPage(long pageNum, long LSN) {}
+
+    /**
+     * Stops replay, and closes the transport.
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            this.running = false;
+            thread = this.thread;
+        }
+        if (thread != null) {
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.transport.close();
+    }
+}
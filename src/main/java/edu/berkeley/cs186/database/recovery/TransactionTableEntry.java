@@ -12,6 +12,9 @@ class TransactionTableEntry {
     Transaction transaction;
     // lastLSN of transaction, or 0 if no log entries for the transaction exist.
     long lastLSN = 0;
+    // LSN of the first log entry of the transaction, or 0 if not known yet. Found by
+    // following prevLSNs back from lastLSN, and kept since it does not change.
+    long firstLSN = 0;
     // map of transaction's savepoints
     private Map<String, Long> savepoints = new HashMap<>();
 
@@ -0,0 +1,125 @@
+package edu.berkeley.cs186.database.recovery.records;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.recovery.LogType;
+
+import java.util.Arrays;
+
+/**
+ * Compact log record format. A record in the compact format has FLAG set on its type
+ * byte, followed by its fields, with integers (transaction numbers, page numbers, LSNs,
+ * offsets and lengths) written as varints: 7 bits per byte, least significant group
+ * first, with the high bit set on every byte but the last. Transaction numbers and LSNs
+ * take 1-5 bytes instead of 8 this way.
+ *
+ * The after image of a page update is written as its XOR with the before image, as runs
+ * of unchanged bytes (XOR 0, only the run length is written) alternating with runs of
+ * changed bytes:
+ *
+ *   | unchanged run length (varint) | changed run length (varint) | changed bytes | ...
+ *
+ * Records that are rarely written (partition and checkpoint records, and the master
+ * record) are always written in the regular format.
+ */
+public final class CompactEncoding {
+    // Set on the type byte of records in the compact format
+    public static final int FLAG = 0x80;
+
+    private CompactEncoding() {}
+
+    /**
+     * Builds a record in the compact format.
+     */
+    static class Writer {
+        private byte[] bytes = new byte[32];
+        private int size = 0;
+
+        Writer(LogType type) {
+            this.putByte(type.getValue() | FLAG);
+        }
+
+        private void putByte(int b) {
+            if (this.size == this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+            }
+            this.bytes[this.size++] = (byte) b;
+        }
+
+        Writer putVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                this.putByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            this.putByte((int) value);
+            return this;
+        }
+
+        Writer put(byte[] b) {
+            for (byte x : b) {
+                this.putByte(x);
+            }
+            return this;
+        }
+
+        /**
+         * Writes bytes as their XOR with base (of the same length), with runs of equal
+         * bytes reduced to their length.
+         */
+        Writer putXor(byte[] base, byte[] b) {
+            int i = 0;
+            while (i < b.length) {
+                int start = i;
+                while (i < b.length && b[i] == base[i]) {
+                    ++i;
+                }
+                this.putVarLong(i - start);
+                start = i;
+                while (i < b.length && b[i] != base[i]) {
+                    ++i;
+                }
+                this.putVarLong(i - start);
+                for (int j = start; j < i; ++j) {
+                    this.putByte(b[j] ^ base[j]);
+                }
+            }
+            return this;
+        }
+
+        byte[] toBytes() {
+            return Arrays.copyOf(this.bytes, this.size);
+        }
+    }
+
+    /**
+     * Reads a varint.
+     */
+    static long getVarLong(Buffer buf) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("malformed varint in log record");
+    }
+
+    /**
+     * Reads bytes written with Writer#putXor.
+     * @param base bytes the XOR was taken with
+     * @return the bytes
+     */
+    static byte[] getXor(Buffer buf, byte[] base) {
+        byte[] b = Arrays.copyOf(base, base.length);
+        int i = 0;
+        while (i < b.length) {
+            i += (int) getVarLong(buf);
+            int changed = (int) getVarLong(buf);
+            for (int j = 0; j < changed; ++j, ++i) {
+                b[i] ^= buf.get();
+            }
+        }
+        return b;
+    }
+}
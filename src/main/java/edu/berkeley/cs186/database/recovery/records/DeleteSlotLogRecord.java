@@ -0,0 +1,173 @@
+package edu.berkeley.cs186.database.recovery.records;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.recovery.LogRecord;
+import edu.berkeley.cs186.database.recovery.LogType;
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+public class DeleteSlotLogRecord extends LogRecord {
+    private long transNum; // transaction that deleted the record
+    private long pageNum; // page the record was deleted from
+    private long prevLSN; // previous log's LSN
+    public short bitmapOffset; // position of the page's slot bitmap, or -1 if none
+    public short slot; // slot the record was deleted from
+    public short offset; // position of the slot's record
+    public byte[] record; // the record, for undo
+
+    /**
+     * @param transNum transaction number of transaction that deleted the record
+     * @param pageNum the page the record was deleted from
+     * @param prevLSN previous log's LSN
+     * @param bitmapOffset position of the page's slot bitmap, or -1 if the page has none
+     * @param slot slot the record was deleted from
+     * @param offset position of the slot's record
+     * @param record the record, for undo
+     */
+    public DeleteSlotLogRecord(long transNum, long pageNum, long prevLSN, short bitmapOffset, short slot,
+                               short offset, byte[] record) {
+        super(LogType.DELETE_SLOT);
+        this.transNum = transNum;
+        this.pageNum = pageNum;
+        this.prevLSN = prevLSN;
+        this.bitmapOffset = bitmapOffset;
+        this.slot = slot;
+        this.offset = offset;
+        this.record = record;
+    }
+
+    @Override
+    public Optional<Long> getTransNum() {
+        return Optional.of(transNum);
+    }
+
+    @Override
+    public Optional<Long> getPrevLSN() {
+        return Optional.of(prevLSN);
+    }
+
+    @Override
+    public Optional<Long> getPageNum() {
+        return Optional.of(pageNum);
+    }
+
+    @Override
+    public boolean isUndoable() { return true; }
+
+    @Override
+    public boolean isRedoable() { return true; }
+
+    @Override
+    public LogRecord undo(long lastLSN) {
+        if (!isUndoable()) {
+            throw new UnsupportedOperationException("cannot undo this record: " + this);
+        }
+        return new UndoDeleteSlotLogRecord(transNum, pageNum, lastLSN, prevLSN, bitmapOffset, slot, offset,
+                                           record);
+    }
+
+    @Override
+    public void redo(RecoveryManager rm, DiskSpaceManager dsm, BufferManager bm) {
+        super.redo(rm, dsm, bm);
+
+        Slots.write(bm, pageNum, bitmapOffset, slot, offset, null, false, getLSN());
+    }
+
+    @Override
+    public byte[] toBytes() {
+        byte[] b = new byte[33 + record.length];
+        ByteBuffer.wrap(b)
+        .put((byte) getType().getValue())
+        .putLong(transNum)
+        .putLong(pageNum)
+        .putLong(prevLSN)
+        .putShort(bitmapOffset)
+        .putShort(slot)
+        .putShort(offset)
+        .putShort((short) record.length)
+        .put(record);
+        return b;
+    }
+
+    public static Optional<LogRecord> fromBytes(Buffer buf) {
+        long transNum = buf.getLong();
+        long pageNum = buf.getLong();
+        long prevLSN = buf.getLong();
+        short bitmapOffset = buf.getShort();
+        short slot = buf.getShort();
+        short offset = buf.getShort();
+        byte[] record = new byte[buf.getShort()];
+        buf.get(record);
+        return Optional.of(new DeleteSlotLogRecord(transNum, pageNum, prevLSN, bitmapOffset, slot, offset,
+                                                   record));
+    }
+
+    @Override
+    public byte[] toCompactBytes() {
+        return new CompactEncoding.Writer(getType())
+               .putVarLong(transNum)
+               .putVarLong(pageNum)
+               .putVarLong(prevLSN)
+               .putVarLong(bitmapOffset + 1)
+               .putVarLong(slot)
+               .putVarLong(offset)
+               .putVarLong(record.length)
+               .put(record)
+               .toBytes();
+    }
+
+    public static Optional<LogRecord> fromCompactBytes(Buffer buf) {
+        long transNum = CompactEncoding.getVarLong(buf);
+        long pageNum = CompactEncoding.getVarLong(buf);
+        long prevLSN = CompactEncoding.getVarLong(buf);
+        short bitmapOffset = (short) (CompactEncoding.getVarLong(buf) - 1);
+        short slot = (short) CompactEncoding.getVarLong(buf);
+        short offset = (short) CompactEncoding.getVarLong(buf);
+        byte[] record = new byte[(int) CompactEncoding.getVarLong(buf)];
+        buf.get(record);
+        return Optional.of(new DeleteSlotLogRecord(transNum, pageNum, prevLSN, bitmapOffset, slot, offset,
+                                                   record));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (o == null || getClass() != o.getClass()) { return false; }
+        if (!super.equals(o)) { return false; }
+        DeleteSlotLogRecord that = (DeleteSlotLogRecord) o;
+        return transNum == that.transNum &&
+               pageNum == that.pageNum &&
+               prevLSN == that.prevLSN &&
+               bitmapOffset == that.bitmapOffset &&
+               slot == that.slot &&
+               offset == that.offset &&
+               Arrays.equals(record, that.record);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hash(super.hashCode(), transNum, pageNum, prevLSN, bitmapOffset, slot, offset);
+        result = 31 * result + Arrays.hashCode(record);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "DeleteSlotLogRecord{" +
+               "transNum=" + transNum +
+               ", pageNum=" + pageNum +
+               ", bitmapOffset=" + bitmapOffset +
+               ", slot=" + slot +
+               ", offset=" + offset +
+               ", record=" + Arrays.toString(record) +
+               ", prevLSN=" + prevLSN +
+               ", LSN=" + LSN +
+               '}';
+    }
+}
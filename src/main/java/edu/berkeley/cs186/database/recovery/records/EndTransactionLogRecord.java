@@ -44,6 +44,20 @@ public class EndTransactionLogRecord extends LogRecord {
         return Optional.of(new EndTransactionLogRecord(transNum, prevLSN));
     }
 
+    @Override
+    public byte[] toCompactBytes() {
+        return new CompactEncoding.Writer(getType())
+               .putVarLong(transNum)
+               .putVarLong(prevLSN)
+               .toBytes();
+    }
+
+    public static Optional<LogRecord> fromCompactBytes(Buffer buf) {
+        long transNum = CompactEncoding.getVarLong(buf);
+        long prevLSN = CompactEncoding.getVarLong(buf);
+        return Optional.of(new EndTransactionLogRecord(transNum, prevLSN));
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) { return true; }
@@ -87,6 +87,22 @@ public class FreePageLogRecord extends LogRecord {
         return Optional.of(new FreePageLogRecord(transNum, pageNum, prevLSN));
     }
 
+    @Override
+    public byte[] toCompactBytes() {
+        return new CompactEncoding.Writer(getType())
+               .putVarLong(transNum)
+               .putVarLong(pageNum)
+               .putVarLong(prevLSN)
+               .toBytes();
+    }
+
+    public static Optional<LogRecord> fromCompactBytes(Buffer buf) {
+        long transNum = CompactEncoding.getVarLong(buf);
+        long pageNum = CompactEncoding.getVarLong(buf);
+        long prevLSN = CompactEncoding.getVarLong(buf);
+        return Optional.of(new FreePageLogRecord(transNum, pageNum, prevLSN));
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) { return true; }
@@ -0,0 +1,45 @@
+package edu.berkeley.cs186.database.recovery.records;
+
+import edu.berkeley.cs186.database.common.Bits;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.Page;
+
+/**
+ * Redo of the slot log records. A slot of a heap file page (see Table) is its record,
+ * at some offset of the page, and its bit in the page's slot bitmap, which is set if the
+ * slot is used.
+ */
+final class Slots {
+    private Slots() {}
+
+    /**
+     * Writes a record into a slot and sets or clears the slot's bit, and sets the pageLSN.
+     * @param bitmapOffset position of the page's slot bitmap, or -1 if the page has none
+     * @param slot slot number
+     * @param offset position of the slot's record
+     * @param record bytes of the record, or null to leave the record as is
+     * @param used whether the slot's bit is set
+     * @param LSN new pageLSN
+     */
+    static void write(BufferManager bm, long pageNum, short bitmapOffset, short slot, short offset,
+                      byte[] record, boolean used, long LSN) {
+        Page page = bm.fetchPage(new DummyLockContext("_dummySlotRecord"), pageNum);
+        try {
+            Buffer buf = page.getBuffer();
+            if (record != null) {
+                buf.position(offset).put(record);
+            }
+            if (bitmapOffset >= 0) {
+                int position = bitmapOffset + slot / 8;
+                byte[] b = new byte[] { buf.get(position) };
+                Bits.setBit(b, slot % 8, used ? Bits.Bit.ONE : Bits.Bit.ZERO);
+                buf.put(position, b[0]);
+            }
+            page.setPageLSN(LSN);
+        } finally {
+            page.unpin();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package edu.berkeley.cs186.database.recovery.records;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.recovery.LogRecord;
+import edu.berkeley.cs186.database.recovery.LogType;
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+public class UndoDeleteSlotLogRecord extends LogRecord {
+    private long transNum;
+    private long pageNum;
+    private long prevLSN;
+    private long undoNextLSN;
+    public short bitmapOffset;
+    public short slot;
+    public short offset;
+    public byte[] record;
+
+    public UndoDeleteSlotLogRecord(long transNum, long pageNum, long prevLSN, long undoNextLSN,
+                                   short bitmapOffset, short slot, short offset, byte[] record) {
+        super(LogType.UNDO_DELETE_SLOT);
+        this.transNum = transNum;
+        this.pageNum = pageNum;
+        this.prevLSN = prevLSN;
+        this.undoNextLSN = undoNextLSN;
+        this.bitmapOffset = bitmapOffset;
+        this.slot = slot;
+        this.offset = offset;
+        this.record = record;
+    }
+
+    @Override
+    public Optional<Long> getTransNum() {
+        return Optional.of(transNum);
+    }
+
+    @Override
+    public Optional<Long> getPrevLSN() {
+        return Optional.of(prevLSN);
+    }
+
+    @Override
+    public Optional<Long> getPageNum() {
+        return Optional.of(pageNum);
+    }
+
+    @Override
+    public Optional<Long> getUndoNextLSN() {
+        return Optional.of(undoNextLSN);
+    }
+
+    @Override
+    public boolean isRedoable() {
+        return true;
+    }
+
+    @Override
+    public void redo(RecoveryManager rm, DiskSpaceManager dsm, BufferManager bm) {
+        super.redo(rm, dsm, bm);
+
+        Slots.write(bm, pageNum, bitmapOffset, slot, offset, record, true, getLSN());
+        rm.dirtyPage(pageNum, getLSN());
+    }
+
+    @Override
+    public byte[] toBytes() {
+        byte[] b = new byte[41 + record.length];
+        ByteBuffer.wrap(b)
+        .put((byte) getType().getValue())
+        .putLong(transNum)
+        .putLong(pageNum)
+        .putLong(prevLSN)
+        .putLong(undoNextLSN)
+        .putShort(bitmapOffset)
+        .putShort(slot)
+        .putShort(offset)
+        .putShort((short) record.length)
+        .put(record);
+        return b;
+    }
+
+    public static Optional<LogRecord> fromBytes(Buffer buf) {
+        long transNum = buf.getLong();
+        long pageNum = buf.getLong();
+        long prevLSN = buf.getLong();
+        long undoNextLSN = buf.getLong();
+        short bitmapOffset = buf.getShort();
+        short slot = buf.getShort();
+        short offset = buf.getShort();
+        byte[] record = new byte[buf.getShort()];
+        buf.get(record);
+        return Optional.of(new UndoDeleteSlotLogRecord(transNum, pageNum, prevLSN, undoNextLSN, bitmapOffset,
+                           slot, offset, record));
+    }
+
+    @Override
+    public byte[] toCompactBytes() {
+        return new CompactEncoding.Writer(getType())
+               .putVarLong(transNum)
+               .putVarLong(pageNum)
+               .putVarLong(prevLSN)
+               .putVarLong(prevLSN - undoNextLSN)
+               .putVarLong(bitmapOffset + 1)
+               .putVarLong(slot)
+               .putVarLong(offset)
+               .putVarLong(record.length)
+               .put(record)
+               .toBytes();
+    }
+
+    public static Optional<LogRecord> fromCompactBytes(Buffer buf) {
+        long transNum = CompactEncoding.getVarLong(buf);
+        long pageNum = CompactEncoding.getVarLong(buf);
+        long prevLSN = CompactEncoding.getVarLong(buf);
+        long undoNextLSN = prevLSN - CompactEncoding.getVarLong(buf);
+        short bitmapOffset = (short) (CompactEncoding.getVarLong(buf) - 1);
+        short slot = (short) CompactEncoding.getVarLong(buf);
+        short offset = (short) CompactEncoding.getVarLong(buf);
+        byte[] record = new byte[(int) CompactEncoding.getVarLong(buf)];
+        buf.get(record);
+        return Optional.of(new UndoDeleteSlotLogRecord(transNum, pageNum, prevLSN, undoNextLSN, bitmapOffset,
+                           slot, offset, record));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (o == null || getClass() != o.getClass()) { return false; }
+        if (!super.equals(o)) { return false; }
+        UndoDeleteSlotLogRecord that = (UndoDeleteSlotLogRecord) o;
+        return transNum == that.transNum &&
+               pageNum == that.pageNum &&
+               prevLSN == that.prevLSN &&
+               undoNextLSN == that.undoNextLSN &&
+               bitmapOffset == that.bitmapOffset &&
+               slot == that.slot &&
+               offset == that.offset &&
+               Arrays.equals(record, that.record);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hash(super.hashCode(), transNum, pageNum, prevLSN, undoNextLSN, bitmapOffset, slot,
+                                  offset);
+        result = 31 * result + Arrays.hashCode(record);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "UndoDeleteSlotLogRecord{" +
+               "transNum=" + transNum +
+               ", pageNum=" + pageNum +
+               ", prevLSN=" + prevLSN +
+               ", undoNextLSN=" + undoNextLSN +
+               ", bitmapOffset=" + bitmapOffset +
+               ", slot=" + slot +
+               ", offset=" + offset +
+               ", record=" + Arrays.toString(record) +
+               ", LSN=" + LSN +
+               '}';
+    }
+}
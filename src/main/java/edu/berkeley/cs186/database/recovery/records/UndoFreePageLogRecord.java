@@ -83,6 +83,24 @@ public class UndoFreePageLogRecord extends LogRecord {
         return Optional.of(new UndoFreePageLogRecord(transNum, pageNum, prevLSN, undoNextLSN));
     }
 
+    @Override
+    public byte[] toCompactBytes() {
+        return new CompactEncoding.Writer(getType())
+               .putVarLong(transNum)
+               .putVarLong(pageNum)
+               .putVarLong(prevLSN)
+               .putVarLong(prevLSN - undoNextLSN)
+               .toBytes();
+    }
+
+    public static Optional<LogRecord> fromCompactBytes(Buffer buf) {
+        long transNum = CompactEncoding.getVarLong(buf);
+        long pageNum = CompactEncoding.getVarLong(buf);
+        long prevLSN = CompactEncoding.getVarLong(buf);
+        long undoNextLSN = prevLSN - CompactEncoding.getVarLong(buf);
+        return Optional.of(new UndoFreePageLogRecord(transNum, pageNum, prevLSN, undoNextLSN));
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) { return true; }
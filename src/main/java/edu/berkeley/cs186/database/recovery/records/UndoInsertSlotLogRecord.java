@@ -0,0 +1,145 @@
+package edu.berkeley.cs186.database.recovery.records;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.recovery.LogRecord;
+import edu.berkeley.cs186.database.recovery.LogType;
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+import java.util.Objects;
+import java.util.Optional;
+
+public class UndoInsertSlotLogRecord extends LogRecord {
+    private long transNum;
+    private long pageNum;
+    private long prevLSN;
+    private long undoNextLSN;
+    public short bitmapOffset;
+    public short slot;
+
+    public UndoInsertSlotLogRecord(long transNum, long pageNum, long prevLSN, long undoNextLSN,
+                                   short bitmapOffset, short slot) {
+        super(LogType.UNDO_INSERT_SLOT);
+        this.transNum = transNum;
+        this.pageNum = pageNum;
+        this.prevLSN = prevLSN;
+        this.undoNextLSN = undoNextLSN;
+        this.bitmapOffset = bitmapOffset;
+        this.slot = slot;
+    }
+
+    @Override
+    public Optional<Long> getTransNum() {
+        return Optional.of(transNum);
+    }
+
+    @Override
+    public Optional<Long> getPrevLSN() {
+        return Optional.of(prevLSN);
+    }
+
+    @Override
+    public Optional<Long> getPageNum() {
+        return Optional.of(pageNum);
+    }
+
+    @Override
+    public Optional<Long> getUndoNextLSN() {
+        return Optional.of(undoNextLSN);
+    }
+
+    @Override
+    public boolean isRedoable() {
+        return true;
+    }
+
+    @Override
+    public void redo(RecoveryManager rm, DiskSpaceManager dsm, BufferManager bm) {
+        super.redo(rm, dsm, bm);
+
+        Slots.write(bm, pageNum, bitmapOffset, slot, (short) 0, null, false, getLSN());
+        rm.dirtyPage(pageNum, getLSN());
+    }
+
+    @Override
+    public byte[] toBytes() {
+        byte[] b = new byte[37];
+        ByteBuffer.wrap(b)
+        .put((byte) getType().getValue())
+        .putLong(transNum)
+        .putLong(pageNum)
+        .putLong(prevLSN)
+        .putLong(undoNextLSN)
+        .putShort(bitmapOffset)
+        .putShort(slot);
+        return b;
+    }
+
+    public static Optional<LogRecord> fromBytes(Buffer buf) {
+        long transNum = buf.getLong();
+        long pageNum = buf.getLong();
+        long prevLSN = buf.getLong();
+        long undoNextLSN = buf.getLong();
+        short bitmapOffset = buf.getShort();
+        short slot = buf.getShort();
+        return Optional.of(new UndoInsertSlotLogRecord(transNum, pageNum, prevLSN, undoNextLSN, bitmapOffset,
+                           slot));
+    }
+
+    @Override
+    public byte[] toCompactBytes() {
+        return new CompactEncoding.Writer(getType())
+               .putVarLong(transNum)
+               .putVarLong(pageNum)
+               .putVarLong(prevLSN)
+               .putVarLong(prevLSN - undoNextLSN)
+               .putVarLong(bitmapOffset + 1)
+               .putVarLong(slot)
+               .toBytes();
+    }
+
+    public static Optional<LogRecord> fromCompactBytes(Buffer buf) {
+        long transNum = CompactEncoding.getVarLong(buf);
+        long pageNum = CompactEncoding.getVarLong(buf);
+        long prevLSN = CompactEncoding.getVarLong(buf);
+        long undoNextLSN = prevLSN - CompactEncoding.getVarLong(buf);
+        short bitmapOffset = (short) (CompactEncoding.getVarLong(buf) - 1);
+        short slot = (short) CompactEncoding.getVarLong(buf);
+        return Optional.of(new UndoInsertSlotLogRecord(transNum, pageNum, prevLSN, undoNextLSN, bitmapOffset,
+                           slot));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (o == null || getClass() != o.getClass()) { return false; }
+        if (!super.equals(o)) { return false; }
+        UndoInsertSlotLogRecord that = (UndoInsertSlotLogRecord) o;
+        return transNum == that.transNum &&
+               pageNum == that.pageNum &&
+               prevLSN == that.prevLSN &&
+               undoNextLSN == that.undoNextLSN &&
+               bitmapOffset == that.bitmapOffset &&
+               slot == that.slot;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), transNum, pageNum, prevLSN, undoNextLSN, bitmapOffset, slot);
+    }
+
+    @Override
+    public String toString() {
+        return "UndoInsertSlotLogRecord{" +
+               "transNum=" + transNum +
+               ", pageNum=" + pageNum +
+               ", prevLSN=" + prevLSN +
+               ", undoNextLSN=" + undoNextLSN +
+               ", bitmapOffset=" + bitmapOffset +
+               ", slot=" + slot +
+               ", LSN=" + LSN +
+               '}';
+    }
+}
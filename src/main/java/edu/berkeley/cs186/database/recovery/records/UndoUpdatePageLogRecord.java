@@ -108,6 +108,34 @@ public class UndoUpdatePageLogRecord extends LogRecord {
                            after));
     }
 
+    @Override
+    public byte[] toCompactBytes() {
+        byte[] b = new CompactEncoding.Writer(getType())
+                   .putVarLong(transNum)
+                   .putVarLong(pageNum)
+                   .putVarLong(prevLSN)
+                   .putVarLong(prevLSN - undoNextLSN)
+                   .putVarLong(offset)
+                   .putVarLong(after.length)
+                   .put(after)
+                   .toBytes();
+        // never longer than the regular format, so that a CLR of a whole page still fits
+        // on one log page
+        return b.length < 36 + after.length ? b : toBytes();
+    }
+
+    public static Optional<LogRecord> fromCompactBytes(Buffer buf) {
+        long transNum = CompactEncoding.getVarLong(buf);
+        long pageNum = CompactEncoding.getVarLong(buf);
+        long prevLSN = CompactEncoding.getVarLong(buf);
+        long undoNextLSN = prevLSN - CompactEncoding.getVarLong(buf);
+        short offset = (short) CompactEncoding.getVarLong(buf);
+        byte[] after = new byte[(int) CompactEncoding.getVarLong(buf)];
+        buf.get(after);
+        return Optional.of(new UndoUpdatePageLogRecord(transNum, pageNum, prevLSN, undoNextLSN, offset,
+                           after));
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) { return true; }
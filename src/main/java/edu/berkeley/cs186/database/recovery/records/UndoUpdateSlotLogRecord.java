@@ -0,0 +1,160 @@
+package edu.berkeley.cs186.database.recovery.records;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.recovery.LogRecord;
+import edu.berkeley.cs186.database.recovery.LogType;
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+public class UndoUpdateSlotLogRecord extends LogRecord {
+    private long transNum;
+    private long pageNum;
+    private long prevLSN;
+    private long undoNextLSN;
+    public short slot;
+    public short offset;
+    public byte[] after;
+
+    public UndoUpdateSlotLogRecord(long transNum, long pageNum, long prevLSN, long undoNextLSN, short slot,
+                                   short offset, byte[] after) {
+        super(LogType.UNDO_UPDATE_SLOT);
+        this.transNum = transNum;
+        this.pageNum = pageNum;
+        this.prevLSN = prevLSN;
+        this.undoNextLSN = undoNextLSN;
+        this.slot = slot;
+        this.offset = offset;
+        this.after = after;
+    }
+
+    @Override
+    public Optional<Long> getTransNum() {
+        return Optional.of(transNum);
+    }
+
+    @Override
+    public Optional<Long> getPrevLSN() {
+        return Optional.of(prevLSN);
+    }
+
+    @Override
+    public Optional<Long> getPageNum() {
+        return Optional.of(pageNum);
+    }
+
+    @Override
+    public Optional<Long> getUndoNextLSN() {
+        return Optional.of(undoNextLSN);
+    }
+
+    @Override
+    public boolean isRedoable() {
+        return true;
+    }
+
+    @Override
+    public void redo(RecoveryManager rm, DiskSpaceManager dsm, BufferManager bm) {
+        super.redo(rm, dsm, bm);
+
+        Slots.write(bm, pageNum, (short) -1, slot, offset, after, true, getLSN());
+        rm.dirtyPage(pageNum, getLSN());
+    }
+
+    @Override
+    public byte[] toBytes() {
+        byte[] b = new byte[39 + after.length];
+        ByteBuffer.wrap(b)
+        .put((byte) getType().getValue())
+        .putLong(transNum)
+        .putLong(pageNum)
+        .putLong(prevLSN)
+        .putLong(undoNextLSN)
+        .putShort(slot)
+        .putShort(offset)
+        .putShort((short) after.length)
+        .put(after);
+        return b;
+    }
+
+    public static Optional<LogRecord> fromBytes(Buffer buf) {
+        long transNum = buf.getLong();
+        long pageNum = buf.getLong();
+        long prevLSN = buf.getLong();
+        long undoNextLSN = buf.getLong();
+        short slot = buf.getShort();
+        short offset = buf.getShort();
+        byte[] after = new byte[buf.getShort()];
+        buf.get(after);
+        return Optional.of(new UndoUpdateSlotLogRecord(transNum, pageNum, prevLSN, undoNextLSN, slot, offset,
+                           after));
+    }
+
+    @Override
+    public byte[] toCompactBytes() {
+        return new CompactEncoding.Writer(getType())
+               .putVarLong(transNum)
+               .putVarLong(pageNum)
+               .putVarLong(prevLSN)
+               .putVarLong(prevLSN - undoNextLSN)
+               .putVarLong(slot)
+               .putVarLong(offset)
+               .putVarLong(after.length)
+               .put(after)
+               .toBytes();
+    }
+
+    public static Optional<LogRecord> fromCompactBytes(Buffer buf) {
+        long transNum = CompactEncoding.getVarLong(buf);
+        long pageNum = CompactEncoding.getVarLong(buf);
+        long prevLSN = CompactEncoding.getVarLong(buf);
+        long undoNextLSN = prevLSN - CompactEncoding.getVarLong(buf);
+        short slot = (short) CompactEncoding.getVarLong(buf);
+        short offset = (short) CompactEncoding.getVarLong(buf);
+        byte[] after = new byte[(int) CompactEncoding.getVarLong(buf)];
+        buf.get(after);
+        return Optional.of(new UndoUpdateSlotLogRecord(transNum, pageNum, prevLSN, undoNextLSN, slot, offset,
+                           after));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (o == null || getClass() != o.getClass()) { return false; }
+        if (!super.equals(o)) { return false; }
+        UndoUpdateSlotLogRecord that = (UndoUpdateSlotLogRecord) o;
+        return transNum == that.transNum &&
+               pageNum == that.pageNum &&
+               prevLSN == that.prevLSN &&
+               undoNextLSN == that.undoNextLSN &&
+               slot == that.slot &&
+               offset == that.offset &&
+               Arrays.equals(after, that.after);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hash(super.hashCode(), transNum, pageNum, prevLSN, undoNextLSN, slot, offset);
+        result = 31 * result + Arrays.hashCode(after);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "UndoUpdateSlotLogRecord{" +
+               "transNum=" + transNum +
+               ", pageNum=" + pageNum +
+               ", prevLSN=" + prevLSN +
+               ", undoNextLSN=" + undoNextLSN +
+               ", slot=" + slot +
+               ", offset=" + offset +
+               ", after=" + Arrays.toString(after) +
+               ", LSN=" + LSN +
+               '}';
+    }
+}
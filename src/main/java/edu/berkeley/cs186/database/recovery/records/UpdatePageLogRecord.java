@@ -110,6 +110,33 @@ public class UpdatePageLogRecord extends LogRecord {
         return Optional.of(new UpdatePageLogRecord(transNum, pageNum, prevLSN, offset, before, after));
     }
 
+    @Override
+    public byte[] toCompactBytes() {
+        byte[] b = new CompactEncoding.Writer(getType())
+                   .putVarLong(transNum)
+                   .putVarLong(pageNum)
+                   .putVarLong(prevLSN)
+                   .putVarLong(offset)
+                   .putVarLong(before.length)
+                   .put(before)
+                   .putXor(before, after)
+                   .toBytes();
+        // scattered changes can make the XOR longer than the after image: never longer
+        // than the regular format, which always fits on a log page
+        return b.length <= 31 + before.length + after.length ? b : toBytes();
+    }
+
+    public static Optional<LogRecord> fromCompactBytes(Buffer buf) {
+        long transNum = CompactEncoding.getVarLong(buf);
+        long pageNum = CompactEncoding.getVarLong(buf);
+        long prevLSN = CompactEncoding.getVarLong(buf);
+        short offset = (short) CompactEncoding.getVarLong(buf);
+        byte[] before = new byte[(int) CompactEncoding.getVarLong(buf)];
+        buf.get(before);
+        byte[] after = CompactEncoding.getXor(buf, before);
+        return Optional.of(new UpdatePageLogRecord(transNum, pageNum, prevLSN, offset, before, after));
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) { return true; }
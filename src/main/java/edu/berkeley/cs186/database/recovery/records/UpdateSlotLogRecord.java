@@ -0,0 +1,172 @@
+package edu.berkeley.cs186.database.recovery.records;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.recovery.LogRecord;
+import edu.berkeley.cs186.database.recovery.LogType;
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+public class UpdateSlotLogRecord extends LogRecord {
+    private long transNum; // transaction that updated the record
+    private long pageNum; // page of the record
+    private long prevLSN; // previous log's LSN
+    public short slot; // slot of the record
+    public short offset; // position of the slot's record
+    public byte[] before; // old record (before update)
+    public byte[] after; // new record (after update)
+
+    /**
+     * @param transNum transaction number of transaction that updated the record
+     * @param pageNum the page of the record
+     * @param prevLSN previous log's LSN
+     * @param slot slot of the record
+     * @param offset position of the slot's record
+     * @param before old record (before update)
+     * @param after new record (after update)
+     */
+    public UpdateSlotLogRecord(long transNum, long pageNum, long prevLSN, short slot, short offset,
+                               byte[] before, byte[] after) {
+        super(LogType.UPDATE_SLOT);
+        this.transNum = transNum;
+        this.pageNum = pageNum;
+        this.prevLSN = prevLSN;
+        this.slot = slot;
+        this.offset = offset;
+        this.before = before;
+        this.after = after;
+    }
+
+    @Override
+    public Optional<Long> getTransNum() {
+        return Optional.of(transNum);
+    }
+
+    @Override
+    public Optional<Long> getPrevLSN() {
+        return Optional.of(prevLSN);
+    }
+
+    @Override
+    public Optional<Long> getPageNum() {
+        return Optional.of(pageNum);
+    }
+
+    @Override
+    public boolean isUndoable() { return true; }
+
+    @Override
+    public boolean isRedoable() { return true; }
+
+    @Override
+    public LogRecord undo(long lastLSN) {
+        if (!isUndoable()) {
+            throw new UnsupportedOperationException("cannot undo this record: " + this);
+        }
+        return new UndoUpdateSlotLogRecord(transNum, pageNum, lastLSN, prevLSN, slot, offset, before);
+    }
+
+    @Override
+    public void redo(RecoveryManager rm, DiskSpaceManager dsm, BufferManager bm) {
+        super.redo(rm, dsm, bm);
+
+        Slots.write(bm, pageNum, (short) -1, slot, offset, after, true, getLSN());
+    }
+
+    @Override
+    public byte[] toBytes() {
+        byte[] b = new byte[31 + before.length + after.length];
+        ByteBuffer.wrap(b)
+        .put((byte) getType().getValue())
+        .putLong(transNum)
+        .putLong(pageNum)
+        .putLong(prevLSN)
+        .putShort(slot)
+        .putShort(offset)
+        .putShort((short) before.length)
+        .put(before)
+        .put(after);
+        return b;
+    }
+
+    public static Optional<LogRecord> fromBytes(Buffer buf) {
+        long transNum = buf.getLong();
+        long pageNum = buf.getLong();
+        long prevLSN = buf.getLong();
+        short slot = buf.getShort();
+        short offset = buf.getShort();
+        byte[] before = new byte[buf.getShort()];
+        byte[] after = new byte[before.length];
+        buf.get(before).get(after);
+        return Optional.of(new UpdateSlotLogRecord(transNum, pageNum, prevLSN, slot, offset, before, after));
+    }
+
+    @Override
+    public byte[] toCompactBytes() {
+        byte[] b = new CompactEncoding.Writer(getType())
+                   .putVarLong(transNum)
+                   .putVarLong(pageNum)
+                   .putVarLong(prevLSN)
+                   .putVarLong(slot)
+                   .putVarLong(offset)
+                   .putVarLong(before.length)
+                   .put(before)
+                   .putXor(before, after)
+                   .toBytes();
+        return b.length <= 31 + before.length + after.length ? b : toBytes();
+    }
+
+    public static Optional<LogRecord> fromCompactBytes(Buffer buf) {
+        long transNum = CompactEncoding.getVarLong(buf);
+        long pageNum = CompactEncoding.getVarLong(buf);
+        long prevLSN = CompactEncoding.getVarLong(buf);
+        short slot = (short) CompactEncoding.getVarLong(buf);
+        short offset = (short) CompactEncoding.getVarLong(buf);
+        byte[] before = new byte[(int) CompactEncoding.getVarLong(buf)];
+        buf.get(before);
+        byte[] after = CompactEncoding.getXor(buf, before);
+        return Optional.of(new UpdateSlotLogRecord(transNum, pageNum, prevLSN, slot, offset, before, after));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (o == null || getClass() != o.getClass()) { return false; }
+        if (!super.equals(o)) { return false; }
+        UpdateSlotLogRecord that = (UpdateSlotLogRecord) o;
+        return transNum == that.transNum &&
+               pageNum == that.pageNum &&
+               prevLSN == that.prevLSN &&
+               slot == that.slot &&
+               offset == that.offset &&
+               Arrays.equals(before, that.before) &&
+               Arrays.equals(after, that.after);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hash(super.hashCode(), transNum, pageNum, prevLSN, slot, offset);
+        result = 31 * result + Arrays.hashCode(before);
+        result = 31 * result + Arrays.hashCode(after);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "UpdateSlotLogRecord{" +
+               "transNum=" + transNum +
+               ", pageNum=" + pageNum +
+               ", slot=" + slot +
+               ", offset=" + offset +
+               ", before=" + Arrays.toString(before) +
+               ", after=" + Arrays.toString(after) +
+               ", prevLSN=" + prevLSN +
+               ", LSN=" + LSN +
+               '}';
+    }
+}
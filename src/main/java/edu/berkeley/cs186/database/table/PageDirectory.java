@@ -12,6 +12,7 @@ import edu.berkeley.cs186.database.concurrency.LockUtil;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.BufferRing;
 import edu.berkeley.cs186.database.memory.Page;
 
 import java.util.NoSuchElementException;
@@ -73,6 +74,10 @@ public class PageDirectory implements BacktrackingIterable<Page> {
     // page directory id
     private int pageDirectoryId;
 
+    // buffer ring that all data pages are loaded through (e.g. for temporary tables), or
+    // null to load data pages into the whole buffer unless a ring is given
+    private BufferRing bufferRing;
+
     /**
      * Creates a new heap file, or loads existing file if one already
      * exists at partNum.
@@ -101,7 +106,37 @@ public class PageDirectory implements BacktrackingIterable<Page> {
     }
 
     public Page getPage(long pageNum) {
-        return new DataPage(pageDirectoryId, this.bufferManager.fetchPage(lockContext, pageNum));
+        return this.getPage(pageNum, null);
+    }
+
+    /**
+     * @param pageNum page number of data page
+     * @param ring buffer ring to load the page through, or null to use the page directory's ring
+     * @return data page
+     */
+    public Page getPage(long pageNum, BufferRing ring) {
+        BufferRing r = ring != null ? ring : this.bufferRing;
+        return new DataPage(pageDirectoryId, this.bufferManager.fetchPage(lockContext, pageNum, r));
+    }
+
+    /**
+     * Sets the buffer ring that all data pages of this heap file are loaded through,
+     * e.g. for a temporary table, whose pages are written and read back in bulk.
+     * @param bufferRing buffer ring, or null to load data pages into the whole buffer
+     */
+    public void setBufferRing(BufferRing bufferRing) {
+        this.bufferRing = bufferRing;
+    }
+
+    /**
+     * @return buffer ring for a full scan of this heap file: the page directory's ring if it
+     * has one, a new ring if the heap file is large, and null otherwise
+     */
+    public BufferRing newScanRing() {
+        if (this.bufferRing != null) {
+            return this.bufferRing;
+        }
+        return this.bufferManager.newScanRing(this.getNumDataPages());
     }
 
     public Page getPageWithSpace(short requiredSpace) {
@@ -146,7 +181,15 @@ public class PageDirectory implements BacktrackingIterable<Page> {
 
     @Override
     public BacktrackingIterator<Page> iterator() {
-        return new ConcatBacktrackingIterator<>(new HeaderPageIterator());
+        return this.iterator(this.bufferRing);
+    }
+
+    /**
+     * @param ring buffer ring to load data pages through, or null to use the whole buffer
+     * @return iterator over the data pages of this heap file
+     */
+    public BacktrackingIterator<Page> iterator(BufferRing ring) {
+        return new ConcatBacktrackingIterator<>(new HeaderPageIterator(ring));
     }
 
     public int getNumDataPages() {
@@ -332,13 +375,13 @@ public class PageDirectory implements BacktrackingIterable<Page> {
                         b.position(b.position() - DataPageEntry.SIZE);
                         dpe.toBytes(b);
 
-                        return bufferManager.fetchPage(lockContext, dpe.pageNum);
+                        return bufferManager.fetchPage(lockContext, dpe.pageNum, bufferRing);
                     }
                 }
 
                 // if we have any unused slot in this header page, allocate a new data page
                 if (unusedSlot != -1) {
-                    Page page = bufferManager.fetchNewPage(lockContext, partNum);
+                    Page page = bufferManager.fetchNewPage(lockContext, partNum, bufferRing);
                     DataPageEntry dpe = new DataPageEntry(page.getPageNum(),
                                                           (short) (EFFECTIVE_PAGE_SIZE - emptyPageMetadataSize - requiredSpace));
 
@@ -389,13 +432,20 @@ public class PageDirectory implements BacktrackingIterable<Page> {
 
         @Override
         public BacktrackingIterator<Page> iterator() {
-            return new HeaderPageIterator();
+            return new HeaderPageIterator(bufferRing);
+        }
+
+        private BacktrackingIterator<Page> iterator(BufferRing ring) {
+            return new HeaderPageIterator(ring);
         }
 
         // iterator over the data pages managed by this header page
         private class HeaderPageIterator extends IndexBacktrackingIterator<Page> {
-            private HeaderPageIterator() {
+            private BufferRing ring;
+
+            private HeaderPageIterator(BufferRing ring) {
                 super(HEADER_ENTRY_COUNT);
+                this.ring = ring;
             }
 
             @Override
@@ -423,7 +473,7 @@ public class PageDirectory implements BacktrackingIterable<Page> {
                     Buffer b = HeaderPage.this.page.getBuffer();
                     b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
                     DataPageEntry dpe = DataPageEntry.fromBytes(b);
-                    return new DataPage(pageDirectoryId, bufferManager.fetchPage(lockContext, dpe.pageNum));
+                    return new DataPage(pageDirectoryId, bufferManager.fetchPage(lockContext, dpe.pageNum, ring));
                 } finally {
                     HeaderPage.this.page.unpin();
                 }
@@ -438,8 +488,10 @@ public class PageDirectory implements BacktrackingIterable<Page> {
         private HeaderPage nextPage;
         private HeaderPage prevPage;
         private HeaderPage markedPage;
+        private BufferRing ring;
 
-        private HeaderPageIterator() {
+        private HeaderPageIterator(BufferRing ring) {
+            this.ring = ring;
             this.nextPage = firstHeader;
             this.prevPage = null;
             this.markedPage = null;
@@ -451,14 +503,14 @@ public class PageDirectory implements BacktrackingIterable<Page> {
         }
 
         @Override
-        public HeaderPage next() {
+        public BacktrackingIterable<Page> next() {
             if (!this.hasNext()) {
                 throw new NoSuchElementException();
             }
             HeaderPage next = this.nextPage;
             this.prevPage = next;
             this.nextPage = next.nextPage;
-            return next;
+            return () -> next.iterator(this.ring);
         }
 
         @Override
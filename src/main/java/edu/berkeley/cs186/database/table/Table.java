@@ -11,6 +11,7 @@ import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
 import edu.berkeley.cs186.database.io.PageException;
+import edu.berkeley.cs186.database.memory.BufferRing;
 import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -79,6 +80,9 @@ import java.util.Map;
  *  When we add a record to a table, we add it to the very first free slot in
  *  the table. See addRecord for more information.
  *
+ *  Inserts, updates, and deletes are logged as changes to a slot of a data page
+ *  (see Page#insertSlot), rather than as writes of the bytes they change.
+ *
  * Some tables have large records. In order to efficiently handle tables with
  * large records (that still fit on a page), we format these tables a bit differently,
  * by giving each record a full page. Tables with full page records do not have a bitmap.
@@ -178,11 +182,14 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
-    private void writeBitMap(Page page, byte[] bitmap) {
-        if (bitmapSizeInBytes > 0) {
-            assert bitmap.length == bitmapSizeInBytes;
-            page.getBuffer().put(bitmap, 0, bitmapSizeInBytes);
-        }
+    // Offset of the bitmap in a data page, or -1 for pages without one.
+    private int getBitMapOffset() {
+        return bitmapSizeInBytes > 0 ? 0 : -1;
+    }
+
+    // Offset of the record in slot entryNum of a data page.
+    private int getRecordOffset(int entryNum) {
+        return bitmapSizeInBytes + (entryNum * schema.getSizeInBytes());
     }
 
     private static int computeBitmapSizeInBytes(int pageSize, Schema schema) {
@@ -231,11 +238,6 @@ public class Table implements BacktrackingIterable<Record> {
         this.stats.get(name).refreshHistograms(buckets, this);
     }
 
-    private synchronized void insertRecord(Page page, int entryNum, Record record) {
-        int offset = bitmapSizeInBytes + (entryNum * schema.getSizeInBytes());
-        page.getBuffer().position(offset).put(record.toBytes(schema));
-    }
-
     /**
      * addRecord adds a record to this table and returns the record id of the
      * newly added record. stats, freePageNums, and numRecords are updated
@@ -263,10 +265,9 @@ public class Table implements BacktrackingIterable<Record> {
             }
             assert (entryNum < numRecordsPerPage);
 
-            // Insert the record and update the bitmap.
-            insertRecord(page, entryNum, record);
-            Bits.setBit(bitmap, entryNum, Bits.Bit.ONE);
-            writeBitMap(page, bitmap);
+            // Insert the record and update the bitmap (logged as one insert of the
+            // slot, rather than as writes of the bytes changed).
+            page.insertSlot(getBitMapOffset(), entryNum, getRecordOffset(entryNum), record.toBytes(schema));
 
             // Update the metadata.
             stats.get(name).addRecord(record);
@@ -281,8 +282,16 @@ public class Table implements BacktrackingIterable<Record> {
      * exists.
      */
     public synchronized Record getRecord(RecordId rid) {
+        return getRecord(rid, null);
+    }
+
+    /**
+     * Retrieves a record from the table, loading its page through a buffer ring
+     * if it is not in memory.
+     */
+    private synchronized Record getRecord(RecordId rid, BufferRing ring) {
         validateRecordId(rid);
-        Page page = fetchPage(rid.getPageNum());
+        Page page = fetchPage(rid.getPageNum(), ring);
         try {
             byte[] bitmap = getBitMap(page);
             if (Bits.getBit(bitmap, rid.getEntryNum()) == Bits.Bit.ZERO) {
@@ -290,9 +299,8 @@ public class Table implements BacktrackingIterable<Record> {
                 throw new DatabaseException(msg);
             }
 
-            int offset = bitmapSizeInBytes + (rid.getEntryNum() * schema.getSizeInBytes());
             Buffer buf = page.getBuffer();
-            buf.position(offset);
+            buf.position(getRecordOffset(rid.getEntryNum()));
             return Record.fromBytes(buf, schema);
         } finally {
             page.unpin();
@@ -317,7 +325,8 @@ public class Table implements BacktrackingIterable<Record> {
 
         Page page = fetchPage(rid.getPageNum());
         try {
-            insertRecord(page, rid.getEntryNum(), newRecord);
+            page.updateSlot(rid.getEntryNum(), getRecordOffset(rid.getEntryNum()), oldRecord.toBytes(schema),
+                            newRecord.toBytes(schema));
 
             this.stats.get(name).removeRecord(oldRecord);
             this.stats.get(name).addRecord(newRecord);
@@ -343,9 +352,8 @@ public class Table implements BacktrackingIterable<Record> {
         try {
             Record record = getRecord(rid);
 
-            byte[] bitmap = getBitMap(page);
-            Bits.setBit(bitmap, rid.getEntryNum(), Bits.Bit.ZERO);
-            writeBitMap(page, bitmap);
+            page.deleteSlot(getBitMapOffset(), rid.getEntryNum(), getRecordOffset(rid.getEntryNum()),
+                            record.toBytes(schema));
 
             stats.get(name).removeRecord(record);
             int numRecords = numRecordsPerPage == 1 ? 0 : numRecordsOnPage(page);
@@ -364,8 +372,12 @@ public class Table implements BacktrackingIterable<Record> {
 
     // Helpers /////////////////////////////////////////////////////////////////
     private Page fetchPage(long pageNum) {
+        return fetchPage(pageNum, null);
+    }
+
+    private Page fetchPage(long pageNum, BufferRing ring) {
         try {
-            return pageDirectory.getPage(pageNum);
+            return pageDirectory.getPage(pageNum, ring);
         } catch (PageException e) {
             throw new DatabaseException(e);
         }
@@ -405,10 +417,18 @@ public class Table implements BacktrackingIterable<Record> {
      * records
      */
     public BacktrackingIterator<RecordId> ridIterator() {
+        return ridIterator(pageDirectory.newScanRing());
+    }
+
+    /**
+     * Full scan of the table, loading pages through a buffer ring (if not null) so that
+     * scanning a large table does not evict the rest of the buffer.
+     */
+    private BacktrackingIterator<RecordId> ridIterator(BufferRing ring) {
         // TODO(proj4_part2): Update the following line
         LockUtil.ensureSufficientLockHeld(tableContext, LockType.S);
 
-        BacktrackingIterator<Page> iter = pageDirectory.iterator();
+        BacktrackingIterator<Page> iter = pageDirectory.iterator(ring);
         return new ConcatBacktrackingIterator<>(new PageIterator(iter, false));
     }
 
@@ -421,7 +441,7 @@ public class Table implements BacktrackingIterable<Record> {
     public BacktrackingIterator<Record> recordIterator(Iterator<RecordId> rids) {
         // TODO(proj4_part2): Update the following line
         LockUtil.ensureSufficientLockHeld(tableContext, LockType.S);
-        return new RecordIterator(rids);
+        return new RecordIterator(rids, null);
     }
 
     public BacktrackingIterator<Page> pageIterator() {
@@ -430,8 +450,10 @@ public class Table implements BacktrackingIterable<Record> {
 
     @Override
     public BacktrackingIterator<Record> iterator() {
-        // returns an iterator over all the records in this table
-        return new RecordIterator(ridIterator());
+        // returns an iterator over all the records in this table; large tables (and
+        // temporary tables) are read through a buffer ring private to the scan
+        BufferRing ring = pageDirectory.newScanRing();
+        return new RecordIterator(ridIterator(ring), ring);
     }
 
     /**
@@ -525,9 +547,11 @@ public class Table implements BacktrackingIterable<Record> {
      */
     private class RecordIterator implements BacktrackingIterator<Record> {
         private Iterator<RecordId> ridIter;
+        private BufferRing ring;
 
-        public RecordIterator(Iterator<RecordId> ridIter) {
+        public RecordIterator(Iterator<RecordId> ridIter, BufferRing ring) {
             this.ridIter = ridIter;
+            this.ring = ring;
         }
 
         @Override
@@ -538,7 +562,7 @@ public class Table implements BacktrackingIterable<Record> {
         @Override
         public Record next() {
             try {
-                return getRecord(ridIter.next());
+                return getRecord(ridIter.next(), ring);
             } catch (DatabaseException e) {
                 throw new IllegalStateException(e);
             }
@@ -3,10 +3,15 @@ package edu.berkeley.cs186.database;
 import edu.berkeley.cs186.database.categories.Proj99Tests;
 import edu.berkeley.cs186.database.categories.SystemTests;
 import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
 import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.memory.ARCEvictionPolicy;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.memory.EvictionPolicy;
+import edu.berkeley.cs186.database.memory.TwoQueueEvictionPolicy;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
@@ -19,10 +24,13 @@ import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Iterator;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @Category({Proj99Tests.class, SystemTests.class})
 public class TestDatabase {
@@ -148,6 +156,242 @@ public class TestDatabase {
         }
     }
 
+    @Test
+    public void testIndexDurability() {
+        Schema s = new Schema()
+                .add("id", Type.intType())
+                .add("name", Type.stringType(10));
+
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, "table1");
+            for (int i = 0; i < 50; ++i) {
+                t1.insert("table1", i, "name" + i);
+            }
+            t1.createIndex("table1", "id", false);
+        }
+
+        db.close();
+        db = new Database(this.filename, 32);
+
+        // the index metadata written before the restart is read back as it was written
+        try(Transaction t1 = db.beginTransaction()) {
+            assertTrue(t1.getTransactionContext().indexExists("table1", "id"));
+            QueryPlan queryPlan = t1.query("table1");
+            queryPlan.select("id", PredicateOperator.EQUALS, 7);
+            Iterator<Record> records = queryPlan.execute();
+            assertTrue(records.hasNext());
+            assertEquals("name7", records.next().getValue(1).getString());
+            assertFalse(records.hasNext());
+        }
+    }
+
+    @Test
+    public void testCompressedTableDurability() {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        Record input = TestUtils.createRecordWithAllTypes();
+
+        String tableName = "testTable1";
+        db.setTableCompression(true);
+        db.setTableExtentSize(8);
+
+        RecordId[] rids = new RecordId[500];
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, tableName);
+            for (int i = 0; i < rids.length; ++i) {
+                rids[i] = t1.getTransactionContext().addRecord(tableName, input);
+            }
+        }
+
+        db.close();
+        db = new Database(this.filename, 32);
+
+        try(Transaction t1 = db.beginTransaction()) {
+            for (RecordId rid : rids) {
+                assertEquals(input, t1.getTransactionContext().getRecord(tableName, rid));
+            }
+        }
+    }
+
+    @Test
+    public void testScanResistantEvictionPolicies() {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        Record input = TestUtils.createRecordWithAllTypes();
+        String tableName = "testTable1";
+
+        for (EvictionPolicy policy : new EvictionPolicy[] { new TwoQueueEvictionPolicy(), new ARCEvictionPolicy() }) {
+            this.db.close();
+            this.db = new Database(this.filename, 8, new DummyLockManager(), policy);
+
+            // the table is larger than the buffer, so pages are evicted and loaded again
+            RecordId[] rids = new RecordId[500];
+            try(Transaction t1 = db.beginTransaction()) {
+                t1.createTable(s, tableName);
+                for (int i = 0; i < rids.length; ++i) {
+                    rids[i] = t1.getTransactionContext().addRecord(tableName, input);
+                }
+            }
+            try(Transaction t1 = db.beginTransaction()) {
+                for (RecordId rid : rids) {
+                    assertEquals(input, t1.getTransactionContext().getRecord(tableName, rid));
+                }
+                Iterator<Record> iter = t1.query(tableName).execute();
+                int count = 0;
+                while (iter.hasNext()) {
+                    assertEquals(input, iter.next());
+                    ++count;
+                }
+                assertEquals(rids.length, count);
+                t1.dropTable(tableName);
+            }
+        }
+    }
+
+    @Test
+    public void testBufferStatsRecords() {
+        Schema s = new Schema()
+                .add("id", Type.intType())
+                .add("name", Type.stringType(100));
+        String tableName = "testTable1";
+
+        this.db.close();
+        this.db = new Database(this.filename, 8, new DummyLockManager());
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, tableName);
+            for (int i = 0; i < 500; ++i) {
+                t1.insert(tableName, i, "name" + i);
+            }
+            t1.createIndex(tableName, "id", false);
+        }
+        db.getBufferManager().resetStats();
+        try(Transaction t1 = db.beginTransaction()) {
+            Iterator<Record> iter = t1.query(tableName).execute();
+            while (iter.hasNext()) {
+                iter.next();
+            }
+        }
+
+        boolean sawTable = false, sawIndex = false;
+        for (Record record : db.getBufferStatsRecords()) {
+            String name = record.getValue(1).getString();
+            String kind = record.getValue(2).getString();
+            if (name.equals(tableName)) {
+                sawTable = true;
+                assertEquals("table", kind);
+                // the table is larger than the buffer, so the scan misses and evicts
+                assertTrue(record.getValue(5).getLong() > 0);
+                assertTrue(record.getValue(7).getLong() > 0);
+                assertTrue(record.getValue(3).getInt() <= 8);
+            } else if (name.equals(tableName + ".id")) {
+                sawIndex = true;
+                assertEquals("index", kind);
+            }
+        }
+        assertTrue(sawTable);
+        assertTrue(sawIndex);
+    }
+
+    @Test
+    public void testResizeBuffer() {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        Record input = TestUtils.createRecordWithAllTypes();
+        String tableName = "testTable1";
+
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, tableName);
+            for (int i = 0; i < 500; ++i) {
+                t1.getTransactionContext().addRecord(tableName, input);
+            }
+        }
+        for (int numMemoryPages : new int[] { 8, 64, 16 }) {
+            db.setNumMemoryPages(numMemoryPages);
+            assertEquals(numMemoryPages, db.getNumMemoryPages());
+            assertEquals(numMemoryPages, db.getBufferManager().getBufferSize());
+            try(Transaction t1 = db.beginTransaction()) {
+                Iterator<Record> iter = t1.query(tableName).execute();
+                int count = 0;
+                while (iter.hasNext()) {
+                    assertEquals(input, iter.next());
+                    ++count;
+                }
+                assertEquals(500, count);
+            }
+        }
+    }
+
+    @Test
+    public void testPrewarm() {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        Record input = TestUtils.createRecordWithAllTypes();
+        String tableName = "testTable1";
+
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, tableName);
+            for (int i = 0; i < 100; ++i) {
+                t1.getTransactionContext().addRecord(tableName, input);
+            }
+        }
+
+        // the pages in the buffer on close are loaded back when the database is reopened
+        db.close();
+        db = new Database(this.filename, 32, new DummyLockManager(), new ClockEvictionPolicy(), false,
+                          new Database.Options().setPrewarmMode(Database.PrewarmMode.BLOCKING));
+        assertTrue(db.getBufferManager().getNumPagesPrefetched() > 0);
+        db.getBufferManager().resetStats();
+        try(Transaction t1 = db.beginTransaction()) {
+            Iterator<Record> iter = t1.query(tableName).execute();
+            int count = 0;
+            while (iter.hasNext()) {
+                assertEquals(input, iter.next());
+                ++count;
+            }
+            assertEquals(100, count);
+        }
+        assertEquals(0, db.getBufferManager().getStats().getTotal().getMisses());
+    }
+
+    @Test
+    public void testOffHeapBuffers() {
+        db.close();
+        db = new Database(this.filename, 32, new DummyLockManager(), new ClockEvictionPolicy(), false,
+                          new Database.Options().setOffHeapBuffers(true));
+        assertTrue(db.getBufferManager().isOffHeap());
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(new Schema().add("id", Type.intType()), "table1");
+            for (int i = 0; i < 100; ++i) {
+                t1.insert("table1", i);
+            }
+        }
+        try(Transaction t1 = db.beginTransaction()) {
+            Iterator<Record> iter = t1.query("table1").execute();
+            for (int i = 0; i < 100; ++i) {
+                assertEquals(i, iter.next().getValue(0).getInt());
+            }
+            assertFalse(iter.hasNext());
+        }
+    }
+
+    @Test
+    public void testARIESRecoveryManager() throws IOException {
+        try {
+            db.getARIESRecoveryManager();
+            fail("the recovery manager is not enabled");
+        } catch (DatabaseException e) {
+            // expected
+        }
+
+        db.close();
+        String dir = tempFolder.newFolder("aries").getAbsolutePath();
+        db = new Database(dir, 32, new DummyLockManager(), new ClockEvictionPolicy(), true);
+        db.getARIESRecoveryManager().enableGroupCommit(8, 1000L);
+        assertTrue(db.getARIESRecoveryManager().isGroupCommitEnabled());
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(new Schema().add("id", Type.intType()), "table1");
+            t1.insert("table1", 1);
+        }
+        db.getARIESRecoveryManager().disableGroupCommit();
+        assertFalse(db.getARIESRecoveryManager().isGroupCommitEnabled());
+    }
+
     @Test
     public void testREADMESample() {
         try (Transaction t1 = db.beginTransaction()) {
@@ -0,0 +1,86 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Multi-threaded I/O benchmark for DiskSpaceManagerImpl. Each thread issues random
+ * page reads against one partition; threads are spread over 1 to numThreads partitions,
+ * so throughput with more partitions shows how well I/O to unrelated partitions scales.
+ *
+ * Not run as part of the test suite. Usage:
+ *   DiskSpaceManagerBenchmark [numThreads] [pagesPerPartition] [readsPerThread]
+ */
+public class DiskSpaceManagerBenchmark {
+    public static void main(String[] args) throws Exception {
+        int numThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int pagesPerPartition = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int readsPerThread = args.length > 2 ? Integer.parseInt(args[2]) : 200000;
+
+        File dir = Files.createTempDirectory("dsm-bench").toFile();
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(dir.getPath(), new DummyRecoveryManager());
+        try {
+            int[] partNums = new int[numThreads];
+            for (int i = 0; i < numThreads; ++i) {
+                partNums[i] = diskSpaceManager.allocPart();
+                for (int j = 0; j < pagesPerPartition; ++j) {
+                    diskSpaceManager.allocPage(partNums[i]);
+                }
+            }
+
+            System.out.printf("%8s %11s %14s%n", "threads", "partitions", "reads/sec");
+            for (int threads = 1; threads <= numThreads; threads *= 2) {
+                for (int partitions = 1; partitions <= threads; partitions *= 2) {
+                    double rate = run(diskSpaceManager, partNums, threads, partitions, pagesPerPartition,
+                                      readsPerThread);
+                    System.out.printf("%8d %11d %14.0f%n", threads, partitions, rate);
+                }
+            }
+        } finally {
+            diskSpaceManager.close();
+            deleteAll(dir);
+        }
+    }
+
+    private static double run(DiskSpaceManager diskSpaceManager, int[] partNums, int threads, int partitions,
+                              int pagesPerPartition, int readsPerThread) throws InterruptedException {
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; ++i) {
+            int partNum = partNums[i % partitions];
+            long seed = i;
+            workers.add(new Thread(() -> {
+                Random random = new Random(seed);
+                byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+                for (int j = 0; j < readsPerThread; ++j) {
+                    int pageNum = random.nextInt(pagesPerPartition);
+                    diskSpaceManager.readPage(DiskSpaceManager.getVirtualPageNum(partNum, pageNum), buf);
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        return (double) threads * readsPerThread / (elapsed / 1e9);
+    }
+
+    private static void deleteAll(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                Files.deleteIfExists(f.toPath());
+            }
+        }
+        Files.deleteIfExists(dir.toPath());
+    }
+}
@@ -10,8 +10,13 @@ import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.NoSuchElementException;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -32,6 +37,10 @@ public class TestDiskSpaceManager {
         return new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
     }
 
+    private DiskSpaceManager getMappedDiskSpaceManager() {
+        return new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager(), true);
+    }
+
     @Test
     public void testCreateDiskSpaceManager() {
         diskSpaceManager = getDiskSpaceManager();
@@ -298,5 +307,468 @@ public class TestDiskSpaceManager {
         diskSpaceManager.freePart(partNum2);
         diskSpaceManager.close();
     }
-}
 
+    @Test
+    public void testMappedReadWrite() {
+        diskSpaceManager = getMappedDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum1 = diskSpaceManager.allocPage(partNum);
+        long pageNum2 = diskSpaceManager.allocPage(partNum);
+
+        byte[] buf1 = new byte[DiskSpaceManager.PAGE_SIZE];
+        byte[] buf2 = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < buf1.length; ++i) {
+            buf1[i] = (byte) (Integer.valueOf(i).hashCode() & 0xFF);
+            buf2[i] = (byte) ((Integer.valueOf(i).hashCode() >> 8) & 0xFF);
+        }
+        diskSpaceManager.writePage(pageNum2, buf2);
+        diskSpaceManager.writePage(pageNum1, buf1);
+        byte[] readbuf1 = new byte[DiskSpaceManager.PAGE_SIZE];
+        byte[] readbuf2 = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(pageNum1, readbuf1);
+        diskSpaceManager.readPage(pageNum2, readbuf2);
+
+        assertArrayEquals(buf1, readbuf1);
+        assertArrayEquals(buf2, readbuf2);
+
+        diskSpaceManager.freePart(partNum);
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testMappedFileSize() {
+        diskSpaceManager = getMappedDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum1 = diskSpaceManager.allocPage(partNum);
+        long pageNum2 = diskSpaceManager.allocPage(partNum);
+        long length = managerRoot.resolve("" + partNum).toFile().length();
+        // master page, header page and two data pages, rather than a whole mapped region
+        assertEquals(4 * DiskSpaceManager.PAGE_SIZE, length);
+
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        buf[0] = 1;
+        diskSpaceManager.writePage(pageNum1, buf);
+        buf[0] = 2;
+        diskSpaceManager.writePage(pageNum2, buf);
+        assertEquals(length, managerRoot.resolve("" + partNum).toFile().length());
+
+        // a page added to the file after its region was mapped is mapped too
+        long pageNum3 = diskSpaceManager.allocPage(partNum);
+        buf[0] = 3;
+        diskSpaceManager.writePage(pageNum3, buf);
+        assertEquals(length + DiskSpaceManager.PAGE_SIZE, managerRoot.resolve("" + partNum).toFile().length());
+        diskSpaceManager.readPage(pageNum1, readbuf);
+        assertEquals(1, readbuf[0]);
+        diskSpaceManager.readPage(pageNum2, readbuf);
+        assertEquals(2, readbuf[0]);
+        diskSpaceManager.readPage(pageNum3, readbuf);
+        assertEquals(3, readbuf[0]);
+
+        diskSpaceManager.freePart(partNum);
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testMappedReadWriteManySegments() {
+        diskSpaceManager = getMappedDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        // spans several mapped segments, and the boundary between the first two headers
+        int numPages = 34000;
+        long[] pageNums = new long[numPages];
+        for (int i = 0; i < numPages; i += 997) {
+            pageNums[i] = diskSpaceManager.allocPage(DiskSpaceManager.getVirtualPageNum(partNum, i));
+        }
+
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < numPages; i += 997) {
+            buf[0] = (byte) i;
+            buf[DiskSpaceManager.PAGE_SIZE - 1] = (byte) (i >> 8);
+            diskSpaceManager.writePage(pageNums[i], buf);
+        }
+        diskSpaceManager.close();
+
+        diskSpaceManager = getMappedDiskSpaceManager();
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < numPages; i += 997) {
+            diskSpaceManager.readPage(pageNums[i], readbuf);
+            assertEquals((byte) i, readbuf[0]);
+            assertEquals((byte) (i >> 8), readbuf[DiskSpaceManager.PAGE_SIZE - 1]);
+        }
+
+        diskSpaceManager.freePart(partNum);
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testMappedReadWritePersistentAcrossModes() {
+        diskSpaceManager = getMappedDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum1 = diskSpaceManager.allocPage(partNum);
+        long pageNum2 = diskSpaceManager.allocPage(partNum);
+
+        byte[] buf1 = new byte[DiskSpaceManager.PAGE_SIZE];
+        byte[] buf2 = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < buf1.length; ++i) {
+            buf1[i] = (byte) (Integer.valueOf(i).hashCode() & 0xFF);
+            buf2[i] = (byte) ((Integer.valueOf(i).hashCode() >> 16) & 0xFF);
+        }
+        diskSpaceManager.writePage(pageNum1, buf1);
+        diskSpaceManager.close();
+
+        // pages written through mappings are visible to regular I/O, and vice versa
+        diskSpaceManager = getDiskSpaceManager();
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(pageNum1, readbuf);
+        assertArrayEquals(buf1, readbuf);
+        diskSpaceManager.writePage(pageNum2, buf2);
+        diskSpaceManager.close();
+
+        diskSpaceManager = getMappedDiskSpaceManager();
+        diskSpaceManager.readPage(pageNum1, readbuf);
+        assertArrayEquals(buf1, readbuf);
+        diskSpaceManager.readPage(pageNum2, readbuf);
+        assertArrayEquals(buf2, readbuf);
+
+        diskSpaceManager.freePart(partNum);
+        diskSpaceManager.close();
+    }
+
+    private void checkBatchReadWrite(DiskSpaceManager diskSpaceManager) {
+        int partNum1 = diskSpaceManager.allocPart();
+        int partNum2 = diskSpaceManager.allocPart();
+        // crosses the boundary between the first two header pages of partNum1
+        int numPages = DiskSpaceManager.PAGE_SIZE * 8 + 10;
+        long[] pageNums = new long[numPages + 3];
+        for (int i = 0; i < numPages; ++i) {
+            if (i < 10 || i >= numPages - 20) {
+                pageNums[i] = diskSpaceManager.allocPage(DiskSpaceManager.getVirtualPageNum(partNum1, i));
+            }
+        }
+        for (int i = numPages; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum2);
+        }
+
+        // write a subset of the pages, out of order and with a gap, across both partitions
+        long[] writePages = new long[] {
+            pageNums[numPages + 2], pageNums[numPages - 1], pageNums[3], pageNums[numPages - 12],
+            pageNums[1], pageNums[numPages], pageNums[2], pageNums[numPages - 11], pageNums[5],
+        };
+        byte[][] bufs = new byte[writePages.length][];
+        for (int i = 0; i < bufs.length; ++i) {
+            bufs[i] = new byte[DiskSpaceManager.PAGE_SIZE];
+            for (int j = 0; j < bufs[i].length; ++j) {
+                bufs[i][j] = (byte) ((Integer.valueOf(j).hashCode() >> i) & 0xFF);
+            }
+        }
+        diskSpaceManager.writePages(writePages, bufs);
+
+        byte[][] readbufs = new byte[writePages.length][DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPages(writePages, readbufs);
+        for (int i = 0; i < bufs.length; ++i) {
+            byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+            diskSpaceManager.readPage(writePages[i], readbuf);
+            assertArrayEquals(bufs[i], readbuf);
+            assertArrayEquals(bufs[i], readbufs[i]);
+        }
+
+        // untouched pages are still zeroed
+        long[] otherPages = new long[] { pageNums[0], pageNums[4], pageNums[numPages + 1] };
+        byte[][] otherbufs = new byte[otherPages.length][DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPages(otherPages, otherbufs);
+        for (byte[] otherbuf : otherbufs) {
+            assertArrayEquals(new byte[DiskSpaceManager.PAGE_SIZE], otherbuf);
+        }
+
+        diskSpaceManager.freePart(partNum1);
+        diskSpaceManager.freePart(partNum2);
+    }
+
+    @Test
+    public void testBatchReadWrite() {
+        diskSpaceManager = getDiskSpaceManager();
+        checkBatchReadWrite(diskSpaceManager);
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testMappedBatchReadWrite() {
+        diskSpaceManager = getMappedDiskSpaceManager();
+        checkBatchReadWrite(diskSpaceManager);
+        diskSpaceManager.close();
+    }
+
+    @Test(expected = PageException.class)
+    public void testBatchReadUnallocated() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum = diskSpaceManager.allocPage(partNum);
+        long[] pages = new long[] { pageNum, pageNum + 1 };
+        diskSpaceManager.readPages(pages, new byte[2][DiskSpaceManager.PAGE_SIZE]);
+    }
+
+    @Test
+    public void testExtentAllocation() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, i), diskSpaceManager.allocPage(partNum));
+        }
+        diskSpaceManager.freePage(DiskSpaceManager.getVirtualPageNum(partNum, 2));
+        diskSpaceManager.freePage(DiskSpaceManager.getVirtualPageNum(partNum, 5));
+        diskSpaceManager.freePage(DiskSpaceManager.getVirtualPageNum(partNum, 6));
+
+        // holes smaller than an extent are skipped over
+        diskSpaceManager.setExtentSize(partNum, 4);
+        for (int i = 10; i < 16; ++i) {
+            assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, i), diskSpaceManager.allocPage(partNum));
+        }
+
+        // reserved pages taken by someone else are skipped over
+        diskSpaceManager.allocPage(DiskSpaceManager.getVirtualPageNum(partNum, 16));
+        assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, 17), diskSpaceManager.allocPage(partNum));
+
+        // with an extent size of 1, holes are filled first
+        diskSpaceManager.setExtentSize(partNum, 1);
+        assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, 2), diskSpaceManager.allocPage(partNum));
+        assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, 5), diskSpaceManager.allocPage(partNum));
+
+        diskSpaceManager.freePart(partNum);
+        diskSpaceManager.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidExtentSize() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        diskSpaceManager.setExtentSize(partNum, 0);
+    }
+
+    @Test
+    public void testConcurrentPartitions() throws InterruptedException {
+        diskSpaceManager = getDiskSpaceManager();
+        int numThreads = 4;
+        Thread[] threads = new Thread[numThreads];
+        Throwable[] errors = new Throwable[numThreads];
+        for (int i = 0; i < numThreads; ++i) {
+            int threadNum = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+                    byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+                    for (int j = 0; j < 5; ++j) {
+                        int partNum = diskSpaceManager.allocPart();
+                        long pageNum = diskSpaceManager.allocPage(partNum);
+                        buf[0] = (byte) threadNum;
+                        buf[1] = (byte) j;
+                        diskSpaceManager.writePage(pageNum, buf);
+                        diskSpaceManager.readPage(pageNum, readbuf);
+                        assertArrayEquals(buf, readbuf);
+                        diskSpaceManager.freePart(partNum);
+                    }
+                } catch (Throwable t) {
+                    errors[threadNum] = t;
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Throwable error : errors) {
+            assertNull(error);
+        }
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testCompression() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        diskSpaceManager.setCompression(partNum, true);
+        long pageNum1 = diskSpaceManager.allocPage(partNum);
+        long pageNum2 = diskSpaceManager.allocPage(partNum);
+        long pageNum3 = diskSpaceManager.allocPage(partNum);
+
+        // padded, repetitive contents compress well; random contents do not
+        byte[] buf1 = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < buf1.length; i += 64) {
+            buf1[i] = (byte) (i / 64);
+        }
+        byte[] buf2 = new byte[DiskSpaceManager.PAGE_SIZE];
+        new Random(186).nextBytes(buf2);
+        // pages stored as is must not start with the compressed page flag
+        buf2[0] &= 0x7f;
+        diskSpaceManager.writePage(pageNum1, buf1);
+        diskSpaceManager.writePage(pageNum2, buf2);
+        diskSpaceManager.writePages(new long[] { pageNum3 }, new byte[][] { buf1 });
+        assertTrue(diskSpaceManager.getCompressionRatio(partNum) > 2.0);
+
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(pageNum1, readbuf);
+        assertArrayEquals(buf1, readbuf);
+        diskSpaceManager.readPage(pageNum2, readbuf);
+        assertArrayEquals(buf2, readbuf);
+        byte[][] readbufs = new byte[3][DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPages(new long[] { pageNum1, pageNum2, pageNum3 }, readbufs);
+        assertArrayEquals(buf1, readbufs[0]);
+        assertArrayEquals(buf2, readbufs[1]);
+        assertArrayEquals(buf1, readbufs[2]);
+        diskSpaceManager.close();
+
+        // compressed pages are read back even when compression is off, and in mapped mode
+        diskSpaceManager = getMappedDiskSpaceManager();
+        assertEquals(1.0, diskSpaceManager.getCompressionRatio(partNum), 1e-9);
+        diskSpaceManager.readPage(pageNum1, readbuf);
+        assertArrayEquals(buf1, readbuf);
+        diskSpaceManager.readPage(pageNum3, readbuf);
+        assertArrayEquals(buf1, readbuf);
+        diskSpaceManager.writePage(pageNum1, buf2);
+        diskSpaceManager.readPage(pageNum1, readbuf);
+        assertArrayEquals(buf2, readbuf);
+
+        diskSpaceManager.freePart(partNum);
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testCompressionMarker() throws IOException {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum1 = diskSpaceManager.allocPage(partNum);
+        long pageNum2 = diskSpaceManager.allocPage(partNum);
+        Path marker = managerRoot.resolve(partNum + PartitionHandle.COMPRESSION_MARKER_SUFFIX);
+
+        // in a partition that was never compressed, a page laid out like a compressed one
+        // is stored and read as is
+        byte[] buf1 = new byte[DiskSpaceManager.PAGE_SIZE];
+        ByteBuffer.wrap(buf1).putInt(PartitionHandle.COMPRESSED_FLAG | 10)
+                .put(new byte[] { 120, 1, 99, 0, 0, 0, 1, 0, 1 });
+        diskSpaceManager.writePage(pageNum1, buf1);
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(pageNum1, readbuf);
+        assertArrayEquals(buf1, readbuf);
+        assertFalse(marker.toFile().exists());
+
+        // enabling compression marks the partition once, before any page is compressed;
+        // the flag is then written with each page, and the marker is not written again
+        diskSpaceManager.setCompression(partNum, true);
+        assertTrue(marker.toFile().exists());
+        FileTime marked = Files.getLastModifiedTime(marker);
+        byte[] buf2 = new byte[DiskSpaceManager.PAGE_SIZE];
+        buf2[100] = 42;
+        diskSpaceManager.writePage(pageNum2, buf2);
+        byte[] slot = readSlot(partNum, pageNum2);
+        int header = ByteBuffer.wrap(slot).getInt();
+        assertEquals(PartitionHandle.COMPRESSED_FLAG, header & PartitionHandle.COMPRESSED_FLAG);
+        assertTrue((header & ~PartitionHandle.COMPRESSED_FLAG) < DiskSpaceManager.PAGE_SIZE / 2);
+        diskSpaceManager.close();
+        assertEquals(0L, Files.size(marker));
+        assertEquals(marked, Files.getLastModifiedTime(marker));
+
+        // the marker is kept across restarts, and compression being off does not matter
+        diskSpaceManager = getDiskSpaceManager();
+        diskSpaceManager.readPage(pageNum2, readbuf);
+        assertArrayEquals(buf2, readbuf);
+
+        // a page rewritten as is is stored without the flag, in the same write; a page
+        // stored as is that starts with the flag could not be told apart, so is rejected
+        byte[] buf3 = new byte[DiskSpaceManager.PAGE_SIZE];
+        new Random(186).nextBytes(buf3);
+        buf3[0] &= 0x7f;
+        diskSpaceManager.writePage(pageNum2, buf3);
+        assertArrayEquals(buf3, readSlot(partNum, pageNum2));
+        buf3[0] |= (byte) 0x80;
+        try {
+            diskSpaceManager.writePage(pageNum2, buf3);
+            fail();
+        } catch (PageException e) {
+            /* do nothing */
+        }
+        diskSpaceManager.close();
+        diskSpaceManager = getDiskSpaceManager();
+        buf3[0] &= 0x7f;
+        diskSpaceManager.readPage(pageNum2, readbuf);
+        assertArrayEquals(buf3, readbuf);
+
+        // the marker is deleted with the partition, and not used by the next one
+        diskSpaceManager.freePart(partNum);
+        assertFalse(marker.toFile().exists());
+        diskSpaceManager.close();
+    }
+
+    // Reads the slot of a data page straight from the partition's OS file.
+    private byte[] readSlot(int partNum, long pageNum) throws IOException {
+        long offset = PartitionHandle.dataPageOffset(DiskSpaceManager.getPageNum(pageNum));
+        byte[] slot = new byte[DiskSpaceManager.PAGE_SIZE];
+        try (RandomAccessFile file = new RandomAccessFile(managerRoot.resolve(Integer.toString(partNum)).toFile(), "r")) {
+            file.seek(offset);
+            file.readFully(slot);
+        }
+        return slot;
+    }
+
+    private void checkDirectBufferReadWrite(DiskSpaceManager diskSpaceManager) {
+        int partNum = diskSpaceManager.allocPart();
+        diskSpaceManager.setCompression(partNum, true);
+        long pageNum1 = diskSpaceManager.allocPage(partNum);
+        long pageNum2 = diskSpaceManager.allocPage(partNum);
+
+        // pages are slices of one direct buffer, as in the buffer manager's off-heap arenas
+        ByteBuffer arena = ByteBuffer.allocateDirect(4 * DiskSpaceManager.PAGE_SIZE);
+        ByteBuffer[] slices = new ByteBuffer[4];
+        for (int i = 0; i < slices.length; ++i) {
+            arena.limit((i + 1) * DiskSpaceManager.PAGE_SIZE);
+            arena.position(i * DiskSpaceManager.PAGE_SIZE);
+            slices[i] = arena.slice();
+        }
+        byte[] buf1 = new byte[DiskSpaceManager.PAGE_SIZE];
+        new Random(186).nextBytes(buf1);
+        buf1[0] &= 0x7f;
+        byte[] buf2 = new byte[DiskSpaceManager.PAGE_SIZE];
+        buf2[100] = 42;
+        slices[0].put(buf1);
+        slices[1].put(buf2);
+        slices[0].position(17);
+
+        diskSpaceManager.writePage(pageNum1, slices[0]);
+        diskSpaceManager.writePages(new long[] { pageNum2 }, new ByteBuffer[] { slices[1] });
+        assertEquals(17, slices[0].position());
+
+        byte[] readbuf = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(pageNum2, slices[2]);
+        ByteBuffer.wrap(readbuf).put(slices[2].duplicate().clear());
+        assertArrayEquals(buf2, readbuf);
+        diskSpaceManager.readPages(new long[] { pageNum2, pageNum1 }, new ByteBuffer[] { slices[3], slices[2] });
+        ByteBuffer.wrap(readbuf).put(slices[2].duplicate().clear());
+        assertArrayEquals(buf1, readbuf);
+        ByteBuffer.wrap(readbuf).put(slices[3].duplicate().clear());
+        assertArrayEquals(buf2, readbuf);
+        diskSpaceManager.readPage(pageNum1, readbuf);
+        assertArrayEquals(buf1, readbuf);
+
+        diskSpaceManager.freePart(partNum);
+    }
+
+    @Test
+    public void testDirectBufferReadWrite() {
+        diskSpaceManager = getDiskSpaceManager();
+        checkDirectBufferReadWrite(diskSpaceManager);
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testMappedDirectBufferReadWrite() {
+        diskSpaceManager = getMappedDiskSpaceManager();
+        checkDirectBufferReadWrite(diskSpaceManager);
+        diskSpaceManager.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReadBadByteBuffer() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum = diskSpaceManager.allocPage(partNum);
+        diskSpaceManager.readPage(pageNum, ByteBuffer.allocateDirect(DiskSpaceManager.PAGE_SIZE - 1));
+    }
+}
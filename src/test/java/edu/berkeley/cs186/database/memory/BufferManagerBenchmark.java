@@ -0,0 +1,72 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Multi-threaded benchmark of buffer manager hits: every page fetched is already resident,
+ * so this measures the cost of looking up and pinning a page. Threads fetch random pages
+ * out of the whole buffer (threads pinning the same page at the same time wait for each other).
+ *
+ * Not run as part of the test suite. Usage:
+ *   BufferManagerBenchmark [maxThreads] [bufferSize] [fetchesPerThread]
+ */
+public class BufferManagerBenchmark {
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int bufferSize = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+        int fetchesPerThread = args.length > 2 ? Integer.parseInt(args[2]) : 1000000;
+
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), bufferSize,
+                new ClockEvictionPolicy());
+        try {
+            int partNum = diskSpaceManager.allocPart();
+            long[] pageNums = new long[bufferSize];
+            for (int i = 0; i < bufferSize; ++i) {
+                Page page = bufferManager.fetchNewPage(new DummyLockContext(), partNum);
+                pageNums[i] = page.getPageNum();
+                page.unpin();
+            }
+
+            System.out.printf("%8s %16s%n", "threads", "fetches/sec");
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                double rate = run(bufferManager, pageNums, threads, fetchesPerThread);
+                System.out.printf("%8d %16.0f%n", threads, rate);
+            }
+        } finally {
+            bufferManager.close();
+            diskSpaceManager.close();
+        }
+    }
+
+    private static double run(BufferManager bufferManager, long[] pageNums, int threads, int fetchesPerThread)
+            throws InterruptedException {
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; ++i) {
+            long seed = i;
+            workers.add(new Thread(() -> {
+                Random random = new Random(seed);
+                for (int j = 0; j < fetchesPerThread; ++j) {
+                    long pageNum = pageNums[random.nextInt(pageNums.length)];
+                    bufferManager.fetchPageFrame(pageNum).unpin();
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        return (double) threads * fetchesPerThread / (elapsed / 1e9);
+    }
+}
@@ -0,0 +1,154 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Trace-replay benchmark comparing the hit ratios of eviction policies. Each trace is a
+ * sequence of page accesses, replayed against a buffer manager over an in-memory disk; an
+ * access fetches the page and reads a few records from it (so the eviction policy sees
+ * several hits per access, as it does when a page is read through the buffer manager).
+ *
+ * The built-in traces are:
+ * - oltp: random accesses, 90% of which go to a hot set half the size of the buffer
+ * - scan: repeated sequential scans of a table twice the size of the buffer
+ * - mixed: the oltp trace, with a sequential scan of a table eight times the size of the
+ *   buffer after every 20 buffers' worth of accesses
+ * A trace can also be read from a file of page indices, one per line.
+ *
+ * Not run as part of the test suite. Usage:
+ *   EvictionPolicyBenchmark [bufferSize] [numAccesses] [traceFile]
+ */
+public class EvictionPolicyBenchmark {
+    // Records read from a page on every access
+    private static final int READS_PER_ACCESS = 4;
+
+    public static void main(String[] args) throws IOException {
+        int bufferSize = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int numAccesses = args.length > 1 ? Integer.parseInt(args[1]) : 500000;
+
+        List<String> traceNames = new ArrayList<>();
+        List<int[]> traces = new ArrayList<>();
+        if (args.length > 2) {
+            traceNames.add(args[2]);
+            traces.add(Files.lines(Paths.get(args[2])).map(String::trim).filter(line -> !line.isEmpty())
+                    .mapToInt(Integer::parseInt).toArray());
+        } else {
+            traceNames.add("oltp");
+            traces.add(oltpTrace(bufferSize, numAccesses, new Random(186), 0));
+            traceNames.add("scan");
+            traces.add(scanTrace(bufferSize, numAccesses));
+            traceNames.add("mixed");
+            traces.add(mixedTrace(bufferSize, numAccesses));
+        }
+
+        List<String> policyNames = new ArrayList<>();
+        List<Supplier<EvictionPolicy>> policies = new ArrayList<>();
+        policyNames.add("clock");
+        policies.add(ClockEvictionPolicy::new);
+        policyNames.add("lru");
+        policies.add(LRUEvictionPolicy::new);
+        policyNames.add("2q");
+        policies.add(TwoQueueEvictionPolicy::new);
+        policyNames.add("arc");
+        policies.add(ARCEvictionPolicy::new);
+
+        System.out.printf("%-10s", "trace");
+        for (String policyName : policyNames) {
+            System.out.printf(" %8s", policyName);
+        }
+        System.out.println();
+        for (int i = 0; i < traces.size(); ++i) {
+            System.out.printf("%-10s", traceNames.get(i));
+            for (Supplier<EvictionPolicy> policy : policies) {
+                System.out.printf(" %8.4f", replay(traces.get(i), bufferSize, policy.get()));
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * Replays a trace, and returns the fraction of accesses that did not need to load a page.
+     */
+    private static double replay(int[] trace, int bufferSize, EvictionPolicy policy) {
+        int numPages = 0;
+        for (int page : trace) {
+            numPages = Math.max(numPages, page + 1);
+        }
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), bufferSize,
+                policy);
+        try {
+            int partNum = diskSpaceManager.allocPart();
+            long[] pageNums = new long[numPages];
+            for (int i = 0; i < numPages; ++i) {
+                pageNums[i] = diskSpaceManager.allocPage(partNum);
+            }
+            byte[] buf = new byte[8];
+            for (int page : trace) {
+                BufferFrame frame = bufferManager.fetchPageFrame(pageNums[page]);
+                try {
+                    for (int i = 0; i < READS_PER_ACCESS; ++i) {
+                        frame.readBytes((short) (i * buf.length), (short) buf.length, buf);
+                    }
+                } finally {
+                    frame.unpin();
+                }
+            }
+            return 1.0 - (double) bufferManager.getNumIOs() / trace.length;
+        } finally {
+            bufferManager.close();
+            diskSpaceManager.close();
+        }
+    }
+
+    // Pages [firstPage, firstPage + 4 * bufferSize), of which the first half buffer are hot.
+    private static int[] oltpTrace(int bufferSize, int numAccesses, Random random, int firstPage) {
+        int hotPages = bufferSize / 2;
+        int coldPages = 4 * bufferSize - hotPages;
+        int[] trace = new int[numAccesses];
+        for (int i = 0; i < numAccesses; ++i) {
+            if (random.nextInt(10) < 9) {
+                trace[i] = firstPage + random.nextInt(hotPages);
+            } else {
+                trace[i] = firstPage + hotPages + random.nextInt(coldPages);
+            }
+        }
+        return trace;
+    }
+
+    private static int[] scanTrace(int bufferSize, int numAccesses) {
+        int[] trace = new int[numAccesses];
+        for (int i = 0; i < numAccesses; ++i) {
+            trace[i] = i % (2 * bufferSize);
+        }
+        return trace;
+    }
+
+    private static int[] mixedTrace(int bufferSize, int numAccesses) {
+        // the scanned table comes after the OLTP pages
+        int scanStart = 4 * bufferSize;
+        int scanPages = 8 * bufferSize;
+        int oltpBetweenScans = 20 * bufferSize;
+        int[] oltp = oltpTrace(bufferSize, numAccesses, new Random(186), 0);
+        int[] trace = new int[numAccesses];
+        for (int i = 0, o = 0; i < numAccesses; ) {
+            for (int j = 0; j < oltpBetweenScans && i < numAccesses; ++j) {
+                trace[i++] = oltp[o++];
+            }
+            for (int j = 0; j < scanPages && i < numAccesses; ++j) {
+                trace[i++] = scanStart + j;
+            }
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,75 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+
+/**
+ * Times cold full scans of a table with and without sequential read-ahead. Before every
+ * scan, the buffer is emptied, so every page of the table is read from disk (or from the
+ * OS page cache, which this benchmark does not drop). A small amount of work is done per
+ * record, so that there is processing for prefetching to overlap with.
+ *
+ * Not run as part of the test suite. Usage:
+ *   ReadAheadBenchmark [numRecords] [bufferSize] [readAheadPages] [numScans]
+ */
+public class ReadAheadBenchmark {
+    public static void main(String[] args) throws IOException {
+        int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 15000;
+        int bufferSize = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        int readAheadPages = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int numScans = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        Path dir = Files.createTempDirectory("readahead");
+        Database db = new Database(dir.resolve("db").toString(), bufferSize, new DummyLockManager());
+        try {
+            Schema schema = new Schema().add("id", Type.intType()).add("payload", Type.stringType(100));
+            try (Transaction t = db.beginTransaction()) {
+                t.createTable(schema, "t");
+                for (int i = 0; i < numRecords; ++i) {
+                    t.insert("t", i, "payload" + i);
+                }
+            }
+            BufferManager bufferManager = db.getBufferManager();
+            for (int round = 0; round < numScans; ++round) {
+                bufferManager.stopReadAhead();
+                long withoutReadAhead = timeScan(db);
+                bufferManager.startReadAhead(readAheadPages);
+                long withReadAhead = timeScan(db);
+                System.out.printf("scan %d: %.1fms without read-ahead, %.1fms with read-ahead%n", round,
+                                  withoutReadAhead / 1e6, withReadAhead / 1e6);
+            }
+            System.out.printf("pages prefetched: %d%n", bufferManager.getNumPagesPrefetched());
+        } finally {
+            db.close();
+            Files.walk(dir).sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    // Scans the table with an empty buffer, and returns the time taken in nanoseconds.
+    private static long timeScan(Database db) {
+        db.getBufferManager().evictAll();
+        long start = System.nanoTime();
+        long checksum = 0;
+        try (Transaction t = db.beginTransaction()) {
+            Iterator<Record> iter = t.getTransactionContext().getRecordIterator("t");
+            while (iter.hasNext()) {
+                Record record = iter.next();
+                checksum += record.getValue(1).getString().hashCode();
+            }
+        }
+        if (checksum == 42) {
+            System.out.println();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -1,18 +1,28 @@
 package edu.berkeley.cs186.database.memory;
 
+import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.categories.Proj99Tests;
 import edu.berkeley.cs186.database.categories.SystemTests;
 import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.concurrency.DummyTransactionContext;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
 import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -320,6 +330,567 @@ public class TestBufferManager {
         assertTrue(frame7.isValid());
     }
 
+    @Test
+    public void testEvictAll() {
+        int partNum = diskSpaceManager.allocPart(1);
+
+        byte[] expected = new byte[] { (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF };
+        byte[] actual = new byte[DiskSpaceManager.PAGE_SIZE];
+
+        BufferFrame[] frames = new BufferFrame[4];
+        for (int i = 0; i < frames.length; ++i) {
+            frames[i] = bufferManager.fetchNewPageFrame(partNum);
+            frames[i].writeBytes((short) (10 * i), (short) 4, expected);
+        }
+        // the last page stays pinned, and should be neither flushed nor evicted
+        for (int i = 0; i < frames.length - 1; ++i) {
+            frames[i].unpin();
+        }
+
+        bufferManager.evictAll();
+        for (int i = 0; i < frames.length; ++i) {
+            int offset = 10 * i + BufferManager.RESERVED_SPACE;
+            diskSpaceManager.readPage(frames[i].getPageNum(), actual);
+            if (i < frames.length - 1) {
+                assertFalse(frames[i].isValid());
+                assertArrayEquals(expected, Arrays.copyOfRange(actual, offset, offset + 4));
+            } else {
+                assertTrue(frames[i].isValid());
+                assertArrayEquals(new byte[4], Arrays.copyOfRange(actual, offset, offset + 4));
+            }
+        }
+        frames[frames.length - 1].unpin();
+    }
+
+    @Test
+    public void testEvictionVictimInUse() {
+        // a policy that keeps choosing a frame pinned by another thread
+        BufferFrame[] inUse = new BufferFrame[1];
+        int[] numEvictCalls = new int[1];
+        bufferManager.close();
+        bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 2,
+        new ClockEvictionPolicy() {
+            @Override
+            public BufferFrame evict(BufferFrame[] frames) {
+                ++numEvictCalls[0];
+                return inUse[0] != null ? inUse[0] : super.evict(frames);
+            }
+        });
+        int partNum = diskSpaceManager.allocPart(1);
+        BufferFrame frame1 = bufferManager.fetchNewPageFrame(partNum);
+        BufferFrame frame2 = bufferManager.fetchNewPageFrame(partNum);
+        frame2.unpin();
+
+        // eviction gives up instead of waiting for the frame forever
+        inUse[0] = frame1;
+        try {
+            bufferManager.fetchNewPageFrame(partNum);
+            fail();
+        } catch (IllegalStateException e) {
+            /* do nothing */
+        }
+        assertEquals(BufferManager.MAX_EVICTION_ATTEMPTS, numEvictCalls[0]);
+
+        // and the buffer manager keeps working
+        inUse[0] = null;
+        BufferFrame frame3 = bufferManager.fetchNewPageFrame(partNum);
+        assertFalse(frame2.isValid());
+        assertTrue(frame1.isValid());
+        frame3.unpin();
+        frame1.unpin();
+    }
+
+    @Test
+    public void testOffHeap() {
+        bufferManager.close();
+        bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 5,
+                                          new ClockEvictionPolicy(), true);
+        assertTrue(bufferManager.isOffHeap());
+        int partNum = diskSpaceManager.allocPart(1);
+
+        byte[] expected = new byte[] { (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF };
+        byte[] actual = new byte[4];
+
+        // more pages than frames, so every page is written back and read in again
+        long[] pageNums = new long[8];
+        for (int i = 0; i < pageNums.length; ++i) {
+            BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+            pageNums[i] = frame.getPageNum();
+            frame.writeBytes((short) (10 * i), (short) 4, expected);
+            frame.unpin();
+        }
+        bufferManager.evictAll();
+        for (int i = 0; i < pageNums.length; ++i) {
+            BufferFrame frame = bufferManager.fetchPageFrame(pageNums[i]);
+            frame.readBytes((short) (10 * i), (short) 4, actual);
+            frame.unpin();
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testCleanPages() {
+        int partNum = diskSpaceManager.allocPart(1);
+        byte[] expected = new byte[] { (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF };
+        byte[] actual = new byte[DiskSpaceManager.PAGE_SIZE];
+
+        BufferFrame[] frames = new BufferFrame[5];
+        for (int i = 0; i < frames.length; ++i) {
+            frames[i] = bufferManager.fetchNewPageFrame(partNum);
+            frames[i].writeBytes((short) 0, (short) 4, expected);
+        }
+        // pinned pages are not cleaned
+        for (int i = 0; i < frames.length - 1; ++i) {
+            frames[i].unpin();
+        }
+        assertEquals(2, bufferManager.cleanPages(2));
+        assertEquals(2, bufferManager.cleanPages(5));
+        assertEquals(0, bufferManager.cleanPages(5));
+        assertEquals(4, bufferManager.getNumPagesCleaned());
+        for (int i = 0; i < frames.length; ++i) {
+            // cleaned pages are written back, but stay loaded
+            diskSpaceManager.readPage(frames[i].getPageNum(), actual);
+            byte[] written = Arrays.copyOfRange(actual, BufferManager.RESERVED_SPACE, BufferManager.RESERVED_SPACE + 4);
+            assertArrayEquals(i < frames.length - 1 ? expected : new byte[4], written);
+            assertTrue(frames[i].isValid());
+        }
+        frames[frames.length - 1].unpin();
+
+        // evicting a clean page does not write it back; evicting a dirty page does
+        bufferManager.fetchNewPageFrame(partNum).unpin();
+        assertEquals(0, bufferManager.getNumSyncEvictionWrites());
+        bufferManager.fetchNewPageFrame(partNum).unpin();
+        bufferManager.fetchNewPageFrame(partNum).unpin();
+        bufferManager.fetchNewPageFrame(partNum).unpin();
+        bufferManager.fetchNewPageFrame(partNum).unpin();
+        assertEquals(1, bufferManager.getNumSyncEvictionWrites());
+    }
+
+    @Test
+    public void testPageCleanerThread() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart(1);
+        byte[] expected = new byte[] { (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF };
+        for (int i = 0; i < 5; ++i) {
+            BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+            frame.writeBytes((short) 0, (short) 4, expected);
+            frame.unpin();
+        }
+        bufferManager.startPageCleaner(1000, 1);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (bufferManager.getNumPagesCleaned() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        bufferManager.stopPageCleaner();
+        assertEquals(5, bufferManager.getNumPagesCleaned());
+        for (int i = 0; i < 5; ++i) {
+            bufferManager.fetchNewPageFrame(partNum).unpin();
+        }
+        assertEquals(0, bufferManager.getNumSyncEvictionWrites());
+    }
+
+    @Test
+    public void testBufferRing() {
+        bufferManager.close();
+        bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 16,
+                                          new ClockEvictionPolicy());
+        int partNum = diskSpaceManager.allocPart(1);
+
+        long[] hotPages = new long[8];
+        for (int i = 0; i < hotPages.length; ++i) {
+            BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+            hotPages[i] = frame.getPageNum();
+            frame.unpin();
+        }
+        long[] scanPages = new long[40];
+        for (int i = 0; i < scanPages.length; ++i) {
+            scanPages[i] = diskSpaceManager.allocPage(partNum);
+        }
+
+        // small scans do not need a ring, and rings are at most a quarter of the buffer
+        assertNull(bufferManager.newScanRing(4));
+        BufferRing ring = bufferManager.newScanRing(scanPages.length);
+        assertEquals(4, ring.size());
+
+        // scanning through a ring only uses the ring's frames, so the hot pages stay loaded
+        byte[] b = new byte[4];
+        for (long pageNum : scanPages) {
+            BufferFrame frame = bufferManager.fetchPageFrame(pageNum, ring);
+            frame.readBytes((short) 0, (short) 4, b);
+            frame.unpin();
+        }
+        Set<Long> resident = new HashSet<>();
+        bufferManager.iterPageNums((pageNum, dirty) -> resident.add(pageNum));
+        for (long pageNum : hotPages) {
+            assertTrue(resident.contains(pageNum));
+        }
+        assertEquals(hotPages.length + ring.size(), resident.size());
+
+        // the same scan without a ring evicts the hot pages
+        for (long pageNum : scanPages) {
+            bufferManager.fetchPageFrame(pageNum).unpin();
+        }
+        resident.clear();
+        bufferManager.iterPageNums((pageNum, dirty) -> resident.add(pageNum));
+        for (long pageNum : hotPages) {
+            assertFalse(resident.contains(pageNum));
+        }
+
+        bufferManager.setRingSize(0);
+        assertNull(bufferManager.newRing());
+    }
+
+    @Test
+    public void testStats() {
+        int partNum1 = diskSpaceManager.allocPart(1);
+        int partNum2 = diskSpaceManager.allocPart(2);
+        byte[] b = new byte[4];
+
+        // 4 misses in partition 1, written to
+        BufferFrame[] frames = new BufferFrame[4];
+        for (int i = 0; i < frames.length; ++i) {
+            frames[i] = bufferManager.fetchNewPageFrame(partNum1);
+            frames[i].writeBytes((short) 0, (short) 4, b);
+            frames[i].unpin();
+        }
+        // 2 hits in partition 1
+        bufferManager.fetchPageFrame(frames[0].getPageNum()).unpin();
+        frames[1].requestValidFrame().unpin();
+        // 3 misses in partition 2, filling the last free frame and evicting 2 pages
+        for (int i = 0; i < 3; ++i) {
+            bufferManager.fetchNewPageFrame(partNum2).unpin();
+        }
+
+        BufferStats stats = bufferManager.getStats();
+        BufferStats.PartitionStats part1 = stats.getPartition(partNum1);
+        BufferStats.PartitionStats part2 = stats.getPartition(partNum2);
+        assertEquals(2, part1.getHits());
+        assertEquals(4, part1.getMisses());
+        assertEquals(2.0 / 6, part1.getHitRatio(), 1e-9);
+        assertEquals(0, part2.getHits());
+        assertEquals(3, part2.getMisses());
+        assertEquals(7, stats.getTotal().getMisses());
+        assertEquals(2, stats.getTotal().getEvictions());
+        // every evicted page of partition 1 was dirty, and pages of partition 2 are not
+        assertEquals(part1.getEvictions(), part1.getWritebacks());
+        assertEquals(0, part2.getWritebacks());
+        assertEquals(4 - part1.getEvictions(), part1.getResidentPages());
+        assertEquals(3 - part2.getEvictions(), part2.getResidentPages());
+        assertEquals(5, stats.getTotal().getResidentPages());
+
+        // resetting keeps resident pages, but clears counters
+        bufferManager.resetStats();
+        stats = bufferManager.getStats();
+        assertEquals(0, stats.getTotal().getMisses());
+        assertEquals(5, stats.getTotal().getResidentPages());
+
+        bufferManager.freePart(partNum2);
+        assertFalse(bufferManager.getStats().getPartitions().containsKey(partNum2));
+    }
+
+    @Test
+    public void testPrefetchPages() {
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[10];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+        byte[] b = new byte[] { 1, 2, 3, 4 };
+        for (int i = 5; i < pageNums.length; ++i) {
+            BufferFrame frame = bufferManager.fetchPageFrame(pageNums[i]);
+            frame.writeBytes((short) 0, (short) 4, b);
+            frame.unpin();
+        }
+
+        // every frame is dirty, so nothing is prefetched
+        assertEquals(0, bufferManager.prefetchPages(pageNums[0], 5, null));
+        assertEquals(0, bufferManager.getNumSyncEvictionWrites());
+
+        // clean frames are reused, and prefetched pages are hits
+        bufferManager.cleanPages(2);
+        assertEquals(2, bufferManager.prefetchPages(pageNums[0], 5, null));
+        assertEquals(2, bufferManager.getNumPagesPrefetched());
+        bufferManager.resetStats();
+        bufferManager.fetchPageFrame(pageNums[0]).unpin();
+        bufferManager.fetchPageFrame(pageNums[1]).unpin();
+        assertEquals(2, bufferManager.getStats().getPartition(partNum).getHits());
+        assertEquals(0, bufferManager.getStats().getPartition(partNum).getMisses());
+
+        // prefetching stops at the first unallocated page, and skips loaded pages
+        bufferManager.evictAll();
+        assertEquals(4, bufferManager.prefetchPages(pageNums[6], 5, null));
+        assertEquals(0, bufferManager.prefetchPages(pageNums[6], 4, null));
+    }
+
+    @Test
+    public void testReadAhead() throws InterruptedException {
+        bufferManager.close();
+        bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 32,
+                                          new ClockEvictionPolicy());
+        int partNum = diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[24];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+        bufferManager.startReadAhead(8);
+        assertEquals(8, bufferManager.getReadAheadPages());
+
+        // reading two pages in order starts prefetching the next 8
+        bufferManager.fetchPageFrame(pageNums[0]).unpin();
+        bufferManager.fetchPageFrame(pageNums[1]).unpin();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (bufferManager.getNumPagesPrefetched() < 8 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(8, bufferManager.getNumPagesPrefetched());
+        bufferManager.resetStats();
+        for (int i = 2; i < 10; ++i) {
+            bufferManager.fetchPageFrame(pageNums[i]).unpin();
+        }
+        assertEquals(0, bufferManager.getStats().getPartition(partNum).getMisses());
+
+        // reading the prefetched pages kept prefetching ahead of the scan
+        deadline = System.currentTimeMillis() + 10000;
+        while (bufferManager.getNumPagesPrefetched() < 13 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(13, bufferManager.getNumPagesPrefetched());
+
+        bufferManager.stopReadAhead();
+        assertEquals(0, bufferManager.getReadAheadPages());
+    }
+
+    @Test
+    public void testResize() {
+        EvictionPolicy[] policies = new EvictionPolicy[] { new ClockEvictionPolicy(), new LRUEvictionPolicy(),
+                                                           new TwoQueueEvictionPolicy(), new ARCEvictionPolicy() };
+        for (int p = 0; p < policies.length; ++p) {
+            bufferManager.close();
+            bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 5, policies[p]);
+            int partNum = diskSpaceManager.allocPart(p + 1);
+            byte[] expected = new byte[] { (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF };
+            byte[] actual = new byte[DiskSpaceManager.PAGE_SIZE];
+
+            long[] pageNums = new long[8];
+            for (int i = 0; i < 5; ++i) {
+                BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+                frame.writeBytes((short) 0, (short) 4, expected);
+                pageNums[i] = frame.getPageNum();
+                frame.unpin();
+            }
+
+            // growing adds free frames, so loading more pages does not evict anything
+            bufferManager.resize(8);
+            assertEquals(8, bufferManager.getBufferSize());
+            for (int i = 5; i < 8; ++i) {
+                BufferFrame frame = bufferManager.fetchNewPageFrame(partNum);
+                pageNums[i] = frame.getPageNum();
+                frame.unpin();
+            }
+            assertEquals(0, bufferManager.getStats().getTotal().getEvictions());
+            assertEquals(8, bufferManager.getStats().getTotal().getResidentPages());
+
+            // shrinking waits for frames to be retired to be unpinned
+            BufferFrame pinned = bufferManager.fetchPageFrame(pageNums[7]);
+            try {
+                bufferManager.resize(4, 10);
+                fail();
+            } catch (IllegalStateException e) {
+                /* do nothing */
+            }
+            assertEquals(8, bufferManager.getBufferSize());
+            pinned.unpin();
+
+            // shrinking evicts the pages of retired frames, writing back dirty pages
+            bufferManager.resize(4);
+            assertEquals(4, bufferManager.getBufferSize());
+            assertEquals(4, bufferManager.getStats().getTotal().getResidentPages());
+            for (int i = 4; i < 5; ++i) {
+                diskSpaceManager.readPage(pageNums[i], actual);
+                assertArrayEquals(expected, Arrays.copyOfRange(actual, BufferManager.RESERVED_SPACE,
+                                                               BufferManager.RESERVED_SPACE + 4));
+            }
+
+            // the smaller buffer keeps working, and evicting through the policy only uses
+            // the remaining frames
+            for (int round = 0; round < 3; ++round) {
+                for (long pageNum : pageNums) {
+                    BufferFrame frame = bufferManager.fetchPageFrame(pageNum);
+                    frame.readBytes((short) 0, (short) 4, actual);
+                    frame.unpin();
+                }
+            }
+            assertEquals(4, bufferManager.getStats().getTotal().getResidentPages());
+
+            // freed frames are reused after growing again
+            bufferManager.evictAll();
+            bufferManager.resize(6);
+            for (long pageNum : pageNums) {
+                bufferManager.fetchPageFrame(pageNum).unpin();
+            }
+            assertEquals(6, bufferManager.getStats().getTotal().getResidentPages());
+        }
+    }
+
+    @Test
+    public void testPrewarm() throws IOException {
+        Path hotPageFile = Files.createTempFile("hot_pages", null);
+        try {
+            int partNum = diskSpaceManager.allocPart(1);
+            long[] pageNums = new long[8];
+            for (int i = 0; i < pageNums.length; ++i) {
+                pageNums[i] = diskSpaceManager.allocPage(partNum);
+            }
+
+            // nothing to prewarm from a file that is not a hot page list
+            bufferManager.setHotPageFile(hotPageFile);
+            assertEquals(0, bufferManager.prewarm());
+
+            // the pages in the buffer (3 of them, not contiguous) are saved
+            for (int i : new int[] { 1, 2, 6 }) {
+                bufferManager.fetchPageFrame(pageNums[i]).unpin();
+            }
+            assertEquals(3, bufferManager.saveHotPages());
+
+            // a new buffer manager loads them back, so they are hits
+            bufferManager.close();
+            bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 5,
+                                              new ClockEvictionPolicy());
+            bufferManager.setHotPageFile(hotPageFile);
+            assertEquals(3, bufferManager.prewarm());
+            assertEquals(3, bufferManager.getNumPagesPrefetched());
+            assertEquals(3, bufferManager.getStats().getPartition(partNum).getResidentPages());
+            for (int i : new int[] { 1, 2, 6 }) {
+                bufferManager.fetchPageFrame(pageNums[i]).unpin();
+            }
+            assertEquals(0, bufferManager.getStats().getPartition(partNum).getMisses());
+
+            // prewarming only uses free frames, and does not evict anything
+            for (int i = 0; i < pageNums.length; ++i) {
+                bufferManager.fetchPageFrame(pageNums[i]).unpin();
+            }
+            assertEquals(5, bufferManager.saveHotPages());
+            bufferManager.close();
+            bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 3,
+                                              new ClockEvictionPolicy());
+            bufferManager.setHotPageFile(hotPageFile);
+            bufferManager.fetchPageFrame(pageNums[0]).unpin();
+            bufferManager.startPrewarm();
+            bufferManager.awaitPrewarm();
+            assertEquals(2, bufferManager.getNumPagesPrefetched());
+            assertEquals(3, bufferManager.getStats().getTotal().getResidentPages());
+            assertEquals(0, bufferManager.getStats().getTotal().getEvictions());
+        } finally {
+            Files.deleteIfExists(hotPageFile);
+        }
+    }
+
+    @Test
+    public void testWriteBatching() {
+        // logs page writes, giving them consecutive LSNs
+        List<UpdatePageLogRecord> log = new ArrayList<>();
+        bufferManager.close();
+        bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager() {
+            @Override
+            public long logPageWrite(long transNum, long pageNum, short pageOffset, byte[] before,
+                                     byte[] after) {
+                log.add(new UpdatePageLogRecord(transNum, pageNum, 0L, pageOffset, before, after));
+                return log.size();
+            }
+        }, 5, new ClockEvictionPolicy());
+        int partNum = diskSpaceManager.allocPart(1);
+        long pageNum = diskSpaceManager.allocPage(partNum);
+
+        TransactionContext.setTransaction(new DummyTransactionContext(null, 1L));
+        try {
+            // without batching, every field is logged as it is written
+            Page page = bufferManager.fetchPage(new DummyLockContext(), pageNum);
+            page.disableLocking();
+            page.getBuffer().putInt(1).putInt(2).putShort((short) 3);
+            page.unpin();
+            assertEquals(3, log.size());
+
+            // with batching, adjacent and repeated writes are logged together on unpin,
+            // and writes far apart separately
+            log.clear();
+            bufferManager.setWriteBatching(true);
+            page.pin();
+            page.getBuffer().putInt(4).putInt(5).putShort((short) 6);
+            page.getBuffer().position(1000).put(new byte[] { 7, 8, 9 });
+            page.getBuffer().putInt(10);
+            assertEquals(0, log.size());
+            page.unpin();
+            assertEquals(2, log.size());
+            assertEquals(3, log.get(0).offset);
+            assertArrayEquals(new byte[] { 1, 0, 0, 0, 2, 0, 3 }, log.get(0).before);
+            assertArrayEquals(new byte[] { 10, 0, 0, 0, 5, 0, 6 }, log.get(0).after);
+            assertEquals(1000, log.get(1).offset);
+            assertArrayEquals(new byte[] { 0, 0, 0 }, log.get(1).before);
+            assertArrayEquals(new byte[] { 7, 8, 9 }, log.get(1).after);
+            assertEquals(2, page.getPageLSN());
+
+            // writes that are undone before the page is unpinned are not logged
+            log.clear();
+            page.pin();
+            page.getBuffer().putInt(99).putInt(99);
+            page.getBuffer().putInt(10).putInt(5);
+            page.unpin();
+            assertEquals(0, log.size());
+
+            // flushing a pinned page logs its writes first
+            page.pin();
+            page.getBuffer().putInt(11);
+            page.flush();
+            assertEquals(1, log.size());
+            page.getBuffer().putInt(12);
+            page.unpin();
+            assertEquals(2, log.size());
+            assertArrayEquals(new byte[] { 11 }, log.get(1).before);
+
+            // a write by another transaction logs the writes of the previous one
+            log.clear();
+            page.pin();
+            page.getBuffer().putInt(13);
+            TransactionContext.unsetTransaction();
+            TransactionContext.setTransaction(new DummyTransactionContext(null, 2L));
+            page.getBuffer().putInt(14);
+            page.unpin();
+            assertEquals(2, log.size());
+            assertEquals(1L, (long) log.get(0).getTransNum().get());
+            assertEquals(2L, (long) log.get(1).getTransNum().get());
+        } finally {
+            TransactionContext.unsetTransaction();
+        }
+    }
+
+    @Test
+    public void testLoggedWritesCoverPage() {
+        // applies the logged writes to a copy of the page
+        byte[] logged = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        bufferManager.close();
+        bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager() {
+            @Override
+            public long logPageWrite(long transNum, long pageNum, short pageOffset, byte[] before,
+                                     byte[] after) {
+                assertTrue(after.length <= BufferManager.EFFECTIVE_PAGE_SIZE / 2);
+                System.arraycopy(after, 0, logged, pageOffset, after.length);
+                return 0L;
+            }
+        }, 5, new ClockEvictionPolicy());
+        int partNum = diskSpaceManager.allocPart(1);
+        Page page = bufferManager.fetchNewPage(new DummyLockContext(), partNum);
+        byte[] data = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        Arrays.fill(data, (byte) -1);
+        TransactionContext.setTransaction(new DummyTransactionContext(null, 1L));
+        try {
+            // more than one range of maximum length, so the writes are split
+            page.getBuffer().put(data);
+        } finally {
+            TransactionContext.unsetTransaction();
+            page.unpin();
+        }
+        assertArrayEquals(data, logged);
+    }
+
     @Test(expected = PageException.class)
     public void testMissingPart() {
         bufferManager.fetchPageFrame(DiskSpaceManager.getVirtualPageNum(0, 0));
@@ -6,6 +6,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.Arrays;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -32,7 +34,7 @@ public class TestEvictionPolicy {
 
         @Override
         long getPageNum() {
-            return 0;
+            return index;
         }
 
         @Override
@@ -193,4 +195,152 @@ public class TestEvictionPolicy {
         assertEquals(frames[2], policy.evict(new BufferFrame[] {placeholderFrames[0], placeholderFrames[1], frames[2], placeholderFrames[3]}));
         policy.cleanup(frames[2]);
     }
+
+    @Test
+    public void testPeekVictims() {
+        BufferFrame[] current = new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]};
+
+        EvictionPolicy lru = new LRUEvictionPolicy();
+        for (BufferFrame frame : current) {
+            lru.init(frame); lru.hit(frame);
+        }
+        lru.hit(frames[0]);
+        frames[2].pin();
+        assertEquals(Arrays.asList(frames[1], frames[3], frames[0]), lru.peekVictims(current, 4));
+        assertEquals(Arrays.asList(frames[1]), lru.peekVictims(current, 1));
+        assertEquals(frames[1], lru.evict(current));
+        frames[2].unpin();
+
+        EvictionPolicy clock = new ClockEvictionPolicy();
+        for (BufferFrame frame : current) {
+            clock.init(frame); clock.hit(frame);
+        }
+        // clears every bit, leaving the arm at frames[1]
+        assertEquals(frames[0], clock.evict(current));
+        clock.hit(frames[2]);
+        assertEquals(Arrays.asList(frames[1], frames[3], frames[0], frames[2]), clock.peekVictims(current, 4));
+        frames[1].pin();
+        assertEquals(Arrays.asList(frames[3], frames[0]), clock.peekVictims(current, 2));
+        assertEquals(frames[3], clock.evict(current));
+        frames[1].unpin();
+    }
+
+    @Test
+    public void testTwoQueuePolicy() {
+        // with 4 frames, A1in holds 1 page and A1out remembers 2 pages
+        BufferFrame[] current = new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]};
+        EvictionPolicy policy = new TwoQueueEvictionPolicy();
+        for (BufferFrame frame : current) {
+            policy.init(frame); policy.hit(frame); policy.hit(frame);
+        }
+
+        // pages are evicted from A1in in the order they were loaded, however often they were hit
+        assertEquals(frames[0], policy.evict(current));
+        policy.cleanup(frames[0]);
+        // page 0 is remembered in A1out, so it is hot when loaded again
+        policy.init(frames[0]); policy.hit(frames[0]);
+
+        // a scan of new pages only evicts pages from A1in
+        BufferFrame[] scan = new BufferFrame[] {frames[4], frames[5], frames[6], frames[7]};
+        BufferFrame[] expected = new BufferFrame[] {frames[1], frames[2], frames[3], frames[4]};
+        for (int i = 0; i < scan.length; ++i) {
+            assertEquals(expected[i], policy.evict(current));
+            policy.cleanup(expected[i]);
+            policy.init(scan[i]); policy.hit(scan[i]);
+        }
+        assertEquals(Arrays.asList(frames[5], frames[6], frames[7], frames[0]), policy.peekVictims(current, 4));
+
+        // page 4 is still remembered in A1out, but pages 1 to 3 were forgotten
+        assertEquals(frames[5], policy.evict(current));
+        policy.cleanup(frames[5]);
+        policy.init(frames[4]);
+        assertEquals(frames[6], policy.evict(current));
+        policy.cleanup(frames[6]);
+        policy.init(frames[1]);
+        // A1in (pages 7 and 1) is over its share, and page 7 is pinned
+        frames[7].pin();
+        assertEquals(frames[1], policy.evict(current));
+        policy.cleanup(frames[1]);
+        frames[7].unpin();
+        // page 1 was just evicted from A1in, so it is hot when loaded again
+        policy.init(frames[1]);
+        policy.cleanup(frames[7]);
+
+        // A1in is empty, so the least recently used hot page is evicted
+        policy.hit(frames[0]);
+        assertEquals(frames[4], policy.evict(current));
+        policy.cleanup(frames[4]);
+        assertEquals(frames[1], policy.evict(current));
+        policy.cleanup(frames[1]);
+        assertEquals(frames[0], policy.evict(current));
+    }
+
+    @Test
+    public void testARCPolicy() {
+        BufferFrame[] current = new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]};
+        ARCEvictionPolicy policy = new ARCEvictionPolicy(0);
+        for (BufferFrame frame : current) {
+            policy.init(frame);
+        }
+        // pages used twice move to T2
+        policy.hit(frames[0]);
+        policy.hit(frames[1]);
+
+        assertEquals(frames[2], policy.evict(current));
+        policy.cleanup(frames[2]);
+        // loading a page remembered in B1 grows T1's target
+        policy.init(frames[2]);
+        assertEquals(1.0, policy.getTarget(), 1e-9);
+
+        assertEquals(Arrays.asList(frames[0], frames[1], frames[2], frames[3]), policy.peekVictims(current, 4));
+        assertEquals(frames[0], policy.evict(current));
+        policy.cleanup(frames[0]);
+        // loading a page remembered in B2 shrinks it again
+        policy.init(frames[0]);
+        assertEquals(0.0, policy.getTarget(), 1e-9);
+        assertEquals(frames[3], policy.evict(current));
+        policy.cleanup(frames[3]);
+
+        // freed pages are not remembered
+        policy.cleanup(frames[1]);
+        policy.init(frames[1]);
+        assertEquals(frames[1], policy.evict(current));
+
+        boolean exceptionThrown = false;
+        try {
+            for (BufferFrame frame : current) {
+                frame.pin();
+            }
+            policy.evict(current);
+        } catch (IllegalStateException e) {
+            exceptionThrown = true;
+        } finally {
+            for (BufferFrame frame : current) {
+                frame.unpin();
+            }
+        }
+        assertTrue(exceptionThrown);
+    }
+
+    @Test
+    public void testARCCorrelatedHits() {
+        BufferFrame[] current = new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]};
+        EvictionPolicy policy = new ARCEvictionPolicy(2);
+        // hits right after loading a page do not count as reuse
+        policy.init(frames[0]); policy.hit(frames[0]); policy.hit(frames[0]);
+        policy.init(frames[1]); policy.hit(frames[1]);
+        policy.hit(frames[0]);
+        policy.init(frames[2]); policy.hit(frames[2]);
+        policy.init(frames[3]); policy.hit(frames[3]);
+        // ...but later hits do
+        policy.hit(frames[1]);
+
+        assertEquals(frames[0], policy.evict(current));
+        policy.cleanup(frames[0]);
+        assertEquals(frames[2], policy.evict(current));
+        policy.cleanup(frames[2]);
+        assertEquals(frames[3], policy.evict(current));
+        policy.cleanup(frames[3]);
+        assertEquals(frames[1], policy.evict(current));
+    }
 }
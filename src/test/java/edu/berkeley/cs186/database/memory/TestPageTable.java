@@ -0,0 +1,103 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestPageTable {
+    @Test
+    public void testPutGetRemove() {
+        PageTable pageTable = new PageTable(8);
+        long pageNum1 = DiskSpaceManager.getVirtualPageNum(1, 0);
+        long pageNum2 = DiskSpaceManager.getVirtualPageNum(1, 1);
+
+        assertEquals(PageTable.NOT_FOUND, pageTable.get(pageNum1));
+        pageTable.put(pageNum1, 3);
+        pageTable.put(pageNum2, 0);
+        assertEquals(3, pageTable.get(pageNum1));
+        assertEquals(0, pageTable.get(pageNum2));
+        assertEquals(2, pageTable.size());
+
+        // only removed if mapped to the given frame
+        assertFalse(pageTable.remove(pageNum1, 4));
+        assertTrue(pageTable.containsKey(pageNum1));
+        assertTrue(pageTable.remove(pageNum1, 3));
+        assertFalse(pageTable.containsKey(pageNum1));
+        assertFalse(pageTable.remove(pageNum1, 3));
+        assertEquals(0, pageTable.get(pageNum2));
+
+        pageTable.put(pageNum2, 7);
+        assertEquals(7, pageTable.get(pageNum2));
+        assertEquals(1, pageTable.size());
+    }
+
+    @Test
+    public void testRandomOperations() {
+        // compare against a HashMap, with enough entries to grow stripes and cause
+        // plenty of collisions and backward shifts on removal
+        PageTable pageTable = new PageTable(16);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(186);
+        for (int i = 0; i < 200000; ++i) {
+            long pageNum = DiskSpaceManager.getVirtualPageNum(random.nextInt(4), random.nextInt(5000));
+            int frameIndex = random.nextInt(1000);
+            if (random.nextInt(3) == 0) {
+                Integer current = expected.get(pageNum);
+                if (current != null && random.nextBoolean()) {
+                    frameIndex = current;
+                }
+                assertEquals(expected.remove(pageNum, frameIndex), pageTable.remove(pageNum, frameIndex));
+            } else {
+                expected.put(pageNum, frameIndex);
+                pageTable.put(pageNum, frameIndex);
+            }
+        }
+        assertEquals(expected.size(), pageTable.size());
+        for (int partNum = 0; partNum < 4; ++partNum) {
+            for (int i = 0; i < 5000; ++i) {
+                long pageNum = DiskSpaceManager.getVirtualPageNum(partNum, i);
+                assertEquals((int) expected.getOrDefault(pageNum, PageTable.NOT_FOUND), pageTable.get(pageNum));
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentReaders() throws InterruptedException {
+        PageTable pageTable = new PageTable(1024);
+        for (int i = 0; i < 1024; ++i) {
+            pageTable.put(DiskSpaceManager.getVirtualPageNum(1, i), i);
+        }
+        boolean[] failed = new boolean[1];
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; ++t) {
+            readers[t] = new Thread(() -> {
+                for (int j = 0; j < 200000; ++j) {
+                    int i = j % 1024;
+                    if (pageTable.get(DiskSpaceManager.getVirtualPageNum(1, i)) != i) {
+                        failed[0] = true;
+                    }
+                }
+            });
+            readers[t].start();
+        }
+        // churn unrelated entries while reading
+        for (int j = 0; j < 200000; ++j) {
+            long pageNum = DiskSpaceManager.getVirtualPageNum(2, j % 3000);
+            pageTable.put(pageNum, j);
+            pageTable.remove(pageNum, j);
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertFalse(failed[0]);
+    }
+}
@@ -0,0 +1,75 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+/**
+ * Measures commit throughput of many small transactions committing concurrently, with
+ * every commit flushing the log itself, and with group commit. The log is stored on disk
+ * (in a temporary directory), so every log flush forces a page to disk.
+ *
+ * Not run as part of the test suite. Usage:
+ *   GroupCommitBenchmark [numThreads] [commitsPerThread] [maxBatchSize] [maxDelayMicros]
+ */
+public class GroupCommitBenchmark {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int numThreads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int commitsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int maxBatchSize = args.length > 2 ? Integer.parseInt(args[2]) : numThreads;
+        long maxDelayMicros = args.length > 3 ? Long.parseLong(args[3]) : 1000;
+
+        for (boolean groupCommit : new boolean[] { false, true }) {
+            Path dir = Files.createTempDirectory("groupcommit");
+            ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+            DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(dir.toString(), recoveryManager);
+            BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 256,
+                                                            new ClockEvictionPolicy());
+            try {
+                diskSpaceManager.allocPart(0);
+                recoveryManager.setManagers(diskSpaceManager, bufferManager);
+                recoveryManager.initialize();
+                if (groupCommit) {
+                    recoveryManager.enableGroupCommit(maxBatchSize, maxDelayMicros);
+                }
+
+                // transactions are created up front: DummyTransaction is not thread-safe
+                long numCommits = (long) numThreads * commitsPerThread;
+                for (long transNum = 1; transNum <= numCommits; ++transNum) {
+                    recoveryManager.startTransaction(DummyTransaction.create(transNum));
+                }
+                Thread[] threads = new Thread[numThreads];
+                for (int i = 0; i < numThreads; ++i) {
+                    final long firstTransNum = (long) i * commitsPerThread + 1;
+                    threads[i] = new Thread(() -> {
+                        for (long transNum = firstTransNum; transNum < firstTransNum + commitsPerThread; ++transNum) {
+                            recoveryManager.commit(transNum);
+                        }
+                    });
+                }
+                long start = System.nanoTime();
+                for (Thread thread : threads) {
+                    thread.start();
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                long elapsed = System.nanoTime() - start;
+                System.out.printf("%s: %d commits in %.1fms (%.0f commits/s), %d page I/Os%n",
+                                  groupCommit ? "group commit" : "no group commit", numCommits, elapsed / 1e6,
+                                  numCommits / (elapsed / 1e9), bufferManager.getNumIOs());
+            } finally {
+                recoveryManager.close();
+                bufferManager.close();
+                diskSpaceManager.close();
+                Files.walk(dir).sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
+
+/**
+ * Measures the throughput of appending page update records to the log from 1, 2, 4, ...
+ * threads at once, without flushing. The log is kept in memory, so this only measures the
+ * cost of appending (and of starting new log pages).
+ *
+ * Not run as part of the test suite. Usage:
+ *   LogAppendBenchmark [maxThreads] [appendsPerThread] [bytesPerUpdate] [numRounds]
+ */
+public class LogAppendBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int appendsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        int bytesPerUpdate = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int numRounds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        for (int round = 0; round < numRounds; ++round) {
+            for (int numThreads = 1; numThreads <= maxThreads; numThreads *= 2) {
+                DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+                diskSpaceManager.allocPart(0);
+                // large enough to hold the whole log
+                long logBytes = (long) numThreads * appendsPerThread * (31 + 2 * bytesPerUpdate);
+                int bufferSize = (int) (logBytes / DiskSpaceManager.PAGE_SIZE * 2 + 64);
+                BufferManager bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(),
+                                                                bufferSize, new ClockEvictionPolicy());
+                LogManager logManager = new LogManager(bufferManager);
+
+                Thread[] threads = new Thread[numThreads];
+                for (int i = 0; i < numThreads; ++i) {
+                    final long transNum = i + 1;
+                    threads[i] = new Thread(() -> {
+                        byte[] before = new byte[bytesPerUpdate];
+                        byte[] after = new byte[bytesPerUpdate];
+                        long prevLSN = 0;
+                        for (int j = 0; j < appendsPerThread; ++j) {
+                            after[0] = (byte) j;
+                            prevLSN = logManager.appendToLog(new UpdatePageLogRecord(transNum, 10000000001L,
+                                                                                     prevLSN, (short) 0, before, after));
+                        }
+                    });
+                }
+                long start = System.nanoTime();
+                for (Thread thread : threads) {
+                    thread.start();
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                long elapsed = System.nanoTime() - start;
+                long numAppends = (long) numThreads * appendsPerThread;
+                System.out.printf("round %d, %d threads: %d appends in %.1fms (%.2fM appends/s)%n", round,
+                                  numThreads, numAppends, elapsed / 1e6, numAppends / (elapsed / 1e3));
+
+                logManager.close();
+                bufferManager.close();
+            }
+        }
+    }
+}
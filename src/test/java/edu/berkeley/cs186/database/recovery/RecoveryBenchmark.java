@@ -0,0 +1,197 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.query.QueryPlan;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures restart recovery after a crash. A workload is run in a separate JVM, which is
+ * killed (without closing the database) once the workload is done; the database is then
+ * opened again, and the time and counters of each phase of restart recovery are printed
+ * (see ARIESRecoveryManager#getRestartCounters). The run fails unless undo rolled back
+ * the losers: no record of theirs may be left, and undo must have written a CLR for each
+ * of their inserts at least.
+ *
+ * The workload inserts recordsPerTransaction records in each of numTransactions committed
+ * transactions, updating some records inserted before, with background checkpoints every
+ * checkpointLogBytes bytes of log (0 for none). numLosers transactions are left running when
+ * the JVM is killed, for undo to roll back. The workload is seeded, so runs with the same
+ * arguments do the same work; the buffer size (bufferSize pages) bounds how many dirty
+ * pages redo may have to replay.
+ *
+ * Not run as part of the test suite. Usage:
+ *   RecoveryBenchmark [numTransactions] [recordsPerTransaction] [bufferSize]
+ *                     [checkpointLogBytes] [numLosers] [redoThreads]
+ */
+public class RecoveryBenchmark {
+    // Printed by the workload JVM once it may be killed
+    private static final String READY = "ready";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("--workload")) {
+            runWorkload(args);
+            return;
+        }
+        int numTransactions = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int recordsPerTransaction = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int bufferSize = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        long checkpointLogBytes = args.length > 3 ? Long.parseLong(args[3]) : 1 << 20;
+        int numLosers = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+        int redoThreads = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+
+        Path dir = Files.createTempDirectory("recovery");
+        String dbDir = dir.resolve("db").toString();
+        try {
+            runAndKill(dbDir, numTransactions, recordsPerTransaction, bufferSize, checkpointLogBytes, numLosers);
+
+            long start = System.nanoTime();
+            Database db = new Database(dbDir, bufferSize, new DummyLockManager(), new ClockEvictionPolicy(),
+                                       true, new Database.Options().setRedoThreads(redoThreads));
+            long elapsed = System.nanoTime() - start;
+            try {
+                System.out.printf("database opened in %.1fms%n", elapsed / 1e6);
+                ARIESRecoveryManager recoveryManager = db.getARIESRecoveryManager();
+                Map<String, Long> counters = recoveryManager.getRestartCounters();
+                for (Map.Entry<String, Long> phase : recoveryManager.getRestartPhaseNanos().entrySet()) {
+                    StringBuilder line = new StringBuilder(String.format("%-10s %8.1fms", phase.getKey(),
+                                                                         phase.getValue() / 1e6));
+                    String prefix = phase.getKey() + ".";
+                    for (Map.Entry<String, Long> counter : counters.entrySet()) {
+                        if (counter.getKey().startsWith(prefix)) {
+                            line.append(String.format("  %s=%d", counter.getKey().substring(prefix.length()),
+                                                      counter.getValue()));
+                        }
+                    }
+                    System.out.println(line);
+                }
+                // undo rolled back the losers' inserts
+                try (Transaction t = db.beginTransaction()) {
+                    QueryPlan plan = t.query("t");
+                    plan.select("id", PredicateOperator.EQUALS, -1);
+                    int numLoserRecords = 0;
+                    for (Iterator<Record> iter = plan.execute(); iter.hasNext(); iter.next()) {
+                        ++numLoserRecords;
+                    }
+                    if (numLoserRecords > 0) {
+                        throw new IllegalStateException(numLoserRecords + " loser records left after recovery");
+                    }
+                }
+                long numLoserInserts = (long) numLosers * recordsPerTransaction;
+                if (counters.get("undo.clrsWritten") < numLoserInserts) {
+                    throw new IllegalStateException("undo wrote " + counters.get("undo.clrsWritten") +
+                                                    " CLRs for " + numLoserInserts + " loser inserts");
+                }
+            } finally {
+                db.close();
+            }
+        } finally {
+            Files.walk(dir).sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    // Runs the workload in a new JVM, and kills it once the workload is done.
+    private static void runAndKill(String dbDir, int numTransactions, int recordsPerTransaction, int bufferSize,
+                                   long checkpointLogBytes, int numLosers) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(RecoveryBenchmark.class.getName());
+        command.add("--workload");
+        command.add(dbDir);
+        command.add(Integer.toString(numTransactions));
+        command.add(Integer.toString(recordsPerTransaction));
+        command.add(Integer.toString(bufferSize));
+        command.add(Long.toString(checkpointLogBytes));
+        command.add(Integer.toString(numLosers));
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null && !line.equals(READY)) {
+                System.out.println(line);
+            }
+            if (line == null) {
+                throw new IllegalStateException("workload exited with status " + process.waitFor());
+            }
+        } finally {
+            process.destroyForcibly();
+            process.waitFor();
+        }
+    }
+
+    // Runs the workload, then waits to be killed.
+    private static void runWorkload(String[] args) throws InterruptedException {
+        String dbDir = args[1];
+        int numTransactions = Integer.parseInt(args[2]);
+        int recordsPerTransaction = Integer.parseInt(args[3]);
+        int bufferSize = Integer.parseInt(args[4]);
+        long checkpointLogBytes = Long.parseLong(args[5]);
+        int numLosers = Integer.parseInt(args[6]);
+
+        Random random = new Random(186);
+        Database db = new Database(dbDir, bufferSize, new DummyLockManager(), new ClockEvictionPolicy(), true);
+        if (checkpointLogBytes > 0) {
+            db.getARIESRecoveryManager().enableCheckpointer(checkpointLogBytes, 0, 0);
+        }
+        Schema schema = new Schema().add("id", Type.intType()).add("payload", Type.stringType(100));
+        try (Transaction t = db.beginTransaction()) {
+            t.createTable(schema, "t");
+        }
+        long start = System.nanoTime();
+        int numRecords = 0;
+        for (int i = 0; i < numTransactions; ++i) {
+            try (Transaction t = db.beginTransaction()) {
+                for (int j = 0; j < recordsPerTransaction; ++j) {
+                    t.insert("t", numRecords, "payload" + numRecords);
+                    ++numRecords;
+                }
+                int id = random.nextInt(numRecords);
+                t.update("t", "payload", v -> new StringDataBox("updated", 100), "id", PredicateOperator.EQUALS,
+                         new IntDataBox(id));
+            }
+        }
+        // losers insert records, but do not commit; each runs on its own thread, as a thread
+        // runs one transaction at a time
+        for (int i = 0; i < numLosers; ++i) {
+            final int loser = i;
+            Thread thread = new Thread(() -> {
+                Transaction t = db.beginTransaction();
+                for (int j = 0; j < recordsPerTransaction; ++j) {
+                    t.insert("t", -1, "loser" + loser);
+                }
+            });
+            thread.start();
+            thread.join();
+        }
+        // a last commit flushes the log, with the losers' records
+        try (Transaction t = db.beginTransaction()) {
+            t.insert("t", numRecords, "payload" + numRecords);
+        }
+        System.out.printf("workload: %d transactions, %d records in %.1fms, %d losers%n", numTransactions + 1,
+                          numRecords + 1, (System.nanoTime() - start) / 1e6, numLosers);
+        System.out.println(READY);
+        System.out.flush();
+        Thread.sleep(Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,172 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.categories.Proj5Tests;
+import edu.berkeley.cs186.database.categories.PublicTests;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.records.CommitTransactionLogRecord;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+@Category({Proj5Tests.class})
+public class TestAsyncCommit {
+    private DiskSpaceManager diskSpaceManager;
+    private BufferManager bufferManager;
+    private LogManager logManager;
+
+    @Before
+    public void setup() {
+        diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(0);
+        bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 1024,
+                                          new ClockEvictionPolicy());
+        logManager = new LogManager(bufferManager);
+    }
+
+    @After
+    public void cleanup() {
+        logManager.close();
+        bufferManager.close();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testTimeLag() throws Exception {
+        AsyncCommit asyncCommit = new AsyncCommit(logManager, 20L, 0L);
+        asyncCommit.start();
+        try {
+            long start = System.nanoTime();
+            long LSN = logManager.appendToLog(new CommitTransactionLogRecord(1L, 0L));
+            assertTrue(asyncCommit.committed(LSN));
+            assertEquals(-1L, asyncCommit.getDurableCommitLSN());
+
+            // the commit is made durable once the lag has passed
+            awaitDurable(asyncCommit, LSN);
+            assertTrue(System.nanoTime() - start >= 20000000L);
+            assertTrue(logManager.getFlushedLSN() >= LSN);
+        } finally {
+            asyncCommit.stop();
+        }
+        assertEquals(1, asyncCommit.getNumFlushes());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testByteLag() throws Exception {
+        // the log is flushed once enough log is appended, without waiting for the (long) lag
+        AsyncCommit asyncCommit = new AsyncCommit(logManager, 60000L, 1000L);
+        asyncCommit.start();
+        try {
+            long LSN = logManager.appendToLog(new CommitTransactionLogRecord(1L, 0L));
+            assertTrue(asyncCommit.committed(LSN));
+            long lastLSN = LSN;
+            for (int i = 0; i < 10; ++i) {
+                lastLSN = logManager.appendToLog(new UpdatePageLogRecord(2L, 10000000001L, lastLSN, (short) 0,
+                                                                         new byte[100], new byte[100]));
+            }
+            awaitDurable(asyncCommit, LSN);
+            assertTrue(logManager.getFlushedLSN() >= LSN);
+        } finally {
+            asyncCommit.stop();
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testStop() {
+        AsyncCommit asyncCommit = new AsyncCommit(logManager, 60000L, 0L);
+        asyncCommit.start();
+        long LSN1 = logManager.appendToLog(new CommitTransactionLogRecord(1L, 0L));
+        long LSN2 = logManager.appendToLog(new CommitTransactionLogRecord(2L, 0L));
+        assertTrue(asyncCommit.committed(LSN1));
+        assertTrue(asyncCommit.committed(LSN2));
+        assertTrue(logManager.getFlushedLSN() < LSN1);
+
+        // stopping makes the pending commits durable
+        asyncCommit.stop();
+        assertTrue(logManager.getFlushedLSN() >= LSN2);
+        assertEquals(LSN2, asyncCommit.getDurableCommitLSN());
+        assertEquals(1, asyncCommit.getNumFlushes());
+
+        // commits after stopping are left to the caller
+        assertFalse(asyncCommit.committed(logManager.appendToLog(new CommitTransactionLogRecord(3L, 0L))));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testOtherFlushes() {
+        AsyncCommit asyncCommit = new AsyncCommit(logManager, 60000L, 0L);
+        asyncCommit.start();
+        try {
+            long LSN = logManager.appendToLog(new CommitTransactionLogRecord(1L, 0L));
+            assertTrue(asyncCommit.committed(LSN));
+
+            // a commit is durable as soon as the log is flushed past it, whoever flushes it
+            logManager.flushToLSN(LSN);
+            assertEquals(LSN, asyncCommit.getDurableCommitLSN());
+            assertEquals(0, asyncCommit.getNumFlushes());
+        } finally {
+            asyncCommit.stop();
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testRecoveryManager() throws Exception {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 32,
+                                                        new ClockEvictionPolicy());
+        diskSpaceManager.allocPart(0);
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        recoveryManager.initialize();
+        DummyTransaction.cleanupTransactions();
+        try {
+            // a synchronous commit is durable when it returns
+            recoveryManager.startTransaction(DummyTransaction.create(1L));
+            long LSN1 = recoveryManager.commit(1L);
+            assertEquals(LSN1, recoveryManager.getDurableCommitLSN());
+
+            // an async commit returns before the log is flushed
+            recoveryManager.enableAsyncCommit(60000L, 0L);
+            assertTrue(recoveryManager.isAsyncCommitEnabled());
+            recoveryManager.startTransaction(DummyTransaction.create(2L));
+            long LSN2 = recoveryManager.commit(2L);
+            assertTrue(recoveryManager.logManager.getFlushedLSN() < LSN2);
+            assertEquals(LSN1, recoveryManager.getDurableCommitLSN());
+            assertEquals(LSN2, recoveryManager.transactionTable.get(2L).lastLSN);
+            assertEquals(Transaction.Status.COMMITTING, DummyTransaction.create(2L).getStatus());
+
+            // disabling async commit makes it durable
+            recoveryManager.disableAsyncCommit();
+            assertFalse(recoveryManager.isAsyncCommitEnabled());
+            assertTrue(recoveryManager.logManager.getFlushedLSN() >= LSN2);
+            assertEquals(LSN2, recoveryManager.getDurableCommitLSN());
+        } finally {
+            recoveryManager.close();
+            bufferManager.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @Category(PublicTests.class)
+    public void testNegativeLag() {
+        new AsyncCommit(logManager, -1L, 0L);
+    }
+
+    private static void awaitDurable(AsyncCommit asyncCommit, long LSN) throws InterruptedException {
+        long deadline = System.nanoTime() + 10000000000L;
+        while (asyncCommit.getDurableCommitLSN() < LSN) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
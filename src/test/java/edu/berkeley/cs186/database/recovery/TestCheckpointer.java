@@ -0,0 +1,151 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.categories.Proj5Tests;
+import edu.berkeley.cs186.database.categories.PublicTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.records.EndCheckpointLogRecord;
+import edu.berkeley.cs186.database.recovery.records.MasterLogRecord;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+@Category({Proj5Tests.class})
+public class TestCheckpointer {
+    private ARIESRecoveryManager recoveryManager;
+    private DiskSpaceManager diskSpaceManager;
+    private BufferManager bufferManager;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() throws IOException {
+        recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+        // written back pages only leave the DPT when written through a partition handle
+        diskSpaceManager = new DiskSpaceManagerImpl(tempFolder.newFolder("checkpointer").getAbsolutePath(),
+                                                    recoveryManager);
+        bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 32, new ClockEvictionPolicy());
+        diskSpaceManager.allocPart(0);
+        diskSpaceManager.allocPart(1);
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        recoveryManager.initialize();
+        recoveryManager.redoComplete = true;
+        DummyTransaction.cleanupTransactions();
+    }
+
+    @After
+    public void cleanup() {
+        recoveryManager.close();
+        bufferManager.close();
+        diskSpaceManager.close();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCheckpointContents() {
+        recoveryManager.dirtyPageTable.put(10000000001L, 2000L);
+        recoveryManager.dirtyPageTable.put(10000000002L, 1000L);
+        Transaction transaction = DummyTransaction.create(1L);
+        recoveryManager.startTransaction(transaction);
+        recoveryManager.transactionTable.get(1L).lastLSN = 30000L;
+
+        recoveryManager.checkpoint();
+
+        MasterLogRecord master = (MasterLogRecord) recoveryManager.logManager.fetchLogRecord(0L);
+        Iterator<LogRecord> iter = recoveryManager.logManager.scanFrom(master.lastCheckpointLSN);
+        iter.next();
+        EndCheckpointLogRecord end = (EndCheckpointLogRecord) iter.next();
+        assertEquals(2, end.getDirtyPageTable().size());
+        assertEquals(2000L, (long) end.getDirtyPageTable().get(10000000001L));
+        assertEquals(1, end.getTransactionTable().size());
+        assertEquals(30000L, (long) end.getTransactionTable().get(1L).getSecond());
+
+        // redo would start from the oldest recLSN
+        assertEquals(1000L, recoveryManager.getRedoStartLSN());
+        assertTrue(recoveryManager.getLastCheckpointNanos() > 0);
+
+        // with no dirty pages, from the checkpoint itself
+        recoveryManager.dirtyPageTable.clear();
+        recoveryManager.checkpoint();
+        master = (MasterLogRecord) recoveryManager.logManager.fetchLogRecord(0L);
+        assertEquals(master.lastCheckpointLSN, recoveryManager.getRedoStartLSN());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testLogVolume() throws InterruptedException {
+        // a long interval, so that only log volume triggers checkpoints
+        recoveryManager.enableCheckpointer(4000, 60000000L, 0);
+        assertTrue(recoveryManager.isCheckpointerEnabled());
+        long numCheckpoints = recoveryManager.getNumCheckpoints();
+        Thread.sleep(200);
+        assertEquals(numCheckpoints, recoveryManager.getNumCheckpoints());
+
+        for (int i = 0; i < 100; ++i) {
+            recoveryManager.logManager.appendToLog(new UpdatePageLogRecord(1L, 10000000001L, 0L, (short) 0,
+                                                   new byte[20], new byte[20]));
+        }
+        awaitCheckpoint(numCheckpoints);
+
+        recoveryManager.disableCheckpointer();
+        assertFalse(recoveryManager.isCheckpointerEnabled());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testInterval() throws InterruptedException {
+        recoveryManager.enableCheckpointer(0, 20, 0);
+        long numCheckpoints = recoveryManager.getNumCheckpoints();
+        awaitCheckpoint(numCheckpoints);
+        awaitCheckpoint(numCheckpoints + 1);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFlushOldestDirtyPages() {
+        long[] pageNums = new long[4];
+        for (int i = 0; i < pageNums.length; ++i) {
+            Page page = bufferManager.fetchNewPage(new DummyLockContext(), 1);
+            try {
+                page.getBuffer().putInt(i);
+                pageNums[i] = page.getPageNum();
+            } finally {
+                page.unpin();
+            }
+            recoveryManager.dirtyPageTable.put(pageNums[i], 4000L - i * 1000L);
+        }
+
+        // the two pages with the oldest recLSNs are written back, and leave the DPT
+        assertEquals(2, recoveryManager.flushOldestDirtyPages(2));
+        assertTrue(recoveryManager.dirtyPageTable.containsKey(pageNums[0]));
+        assertTrue(recoveryManager.dirtyPageTable.containsKey(pageNums[1]));
+        assertFalse(recoveryManager.dirtyPageTable.containsKey(pageNums[2]));
+        assertFalse(recoveryManager.dirtyPageTable.containsKey(pageNums[3]));
+
+        recoveryManager.checkpoint();
+        assertEquals(3000L, recoveryManager.getRedoStartLSN());
+    }
+
+    private void awaitCheckpoint(long numCheckpoints) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (recoveryManager.getNumCheckpoints() <= numCheckpoints && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(recoveryManager.getNumCheckpoints() > numCheckpoints);
+    }
+}
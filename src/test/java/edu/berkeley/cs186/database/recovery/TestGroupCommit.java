@@ -0,0 +1,172 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.categories.Proj5Tests;
+import edu.berkeley.cs186.database.categories.PublicTests;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.records.CommitTransactionLogRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@Category({Proj5Tests.class})
+public class TestGroupCommit {
+    private DiskSpaceManager diskSpaceManager;
+    private BufferManager bufferManager;
+    private LogManager logManager;
+
+    @Before
+    public void setup() {
+        diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(0);
+        bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 1024,
+                                          new ClockEvictionPolicy());
+        logManager = new LogManager(bufferManager);
+    }
+
+    @After
+    public void cleanup() {
+        logManager.close();
+        bufferManager.close();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFlush() throws Exception {
+        GroupCommit groupCommit = new GroupCommit(logManager, 16, 0);
+        groupCommit.start();
+        try {
+            long LSN = logManager.appendToLog(new CommitTransactionLogRecord(1L, 0L));
+            assertTrue(logManager.getFlushedLSN() < LSN);
+            assertTrue(groupCommit.requestFlush(LSN).get(10, TimeUnit.SECONDS) >= LSN);
+            assertTrue(logManager.getFlushedLSN() >= LSN);
+            assertEquals(1, groupCommit.getNumFlushes());
+
+            // requests for records already flushed are completed right away
+            assertTrue(groupCommit.requestFlush(LSN).isDone());
+            assertEquals(1, groupCommit.getNumRequests());
+        } finally {
+            groupCommit.stop();
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testBatch() throws Exception {
+        // a full batch is flushed without waiting for the (long) delay
+        GroupCommit groupCommit = new GroupCommit(logManager, 4, 60000000L);
+        groupCommit.start();
+        try {
+            List<CompletableFuture<Long>> flushed = new ArrayList<>();
+            long maxLSN = 0;
+            for (int i = 0; i < 4; ++i) {
+                long LSN = logManager.appendToLog(new CommitTransactionLogRecord(i, 0L));
+                maxLSN = Math.max(maxLSN, LSN);
+                flushed.add(groupCommit.requestFlush(LSN));
+            }
+            for (CompletableFuture<Long> future : flushed) {
+                assertTrue(future.get(10, TimeUnit.SECONDS) >= maxLSN);
+            }
+            assertEquals(1, groupCommit.getNumFlushes());
+            assertEquals(4, groupCommit.getNumRequests());
+        } finally {
+            groupCommit.stop();
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testDelay() throws Exception {
+        GroupCommit groupCommit = new GroupCommit(logManager, 16, 20000L);
+        groupCommit.start();
+        try {
+            long start = System.nanoTime();
+            long LSN = logManager.appendToLog(new CommitTransactionLogRecord(1L, 0L));
+            groupCommit.awaitFlush(LSN);
+            assertTrue(System.nanoTime() - start >= 20000000L);
+            assertTrue(logManager.getFlushedLSN() >= LSN);
+        } finally {
+            groupCommit.stop();
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testStop() {
+        GroupCommit groupCommit = new GroupCommit(logManager, 16, 60000000L);
+        groupCommit.start();
+        long LSN = logManager.appendToLog(new CommitTransactionLogRecord(1L, 0L));
+        CompletableFuture<Long> flushed = groupCommit.requestFlush(LSN);
+
+        // stopping flushes for pending requests
+        groupCommit.stop();
+        assertTrue(flushed.isDone());
+        assertTrue(logManager.getFlushedLSN() >= LSN);
+        try {
+            groupCommit.requestFlush(logManager.appendToLog(new CommitTransactionLogRecord(2L, 0L)));
+            fail();
+        } catch (IllegalStateException e) {
+            /* do nothing */
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testConcurrentCommits() throws Exception {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 32,
+                                                        new ClockEvictionPolicy());
+        diskSpaceManager.allocPart(0);
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        recoveryManager.initialize();
+        DummyTransaction.cleanupTransactions();
+        try {
+            recoveryManager.enableGroupCommit(8, 60000000L);
+            assertTrue(recoveryManager.isGroupCommitEnabled());
+
+            // 8 transactions committing at once make a full batch
+            List<Thread> threads = new ArrayList<>();
+            long[] commitLSNs = new long[8];
+            for (int i = 0; i < commitLSNs.length; ++i) {
+                final int t = i;
+                Transaction transaction = DummyTransaction.create(t + 1);
+                recoveryManager.startTransaction(transaction);
+                threads.add(new Thread(() -> commitLSNs[t] = recoveryManager.commit(t + 1)));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join(10000);
+                assertFalse(thread.isAlive());
+            }
+            for (int i = 0; i < commitLSNs.length; ++i) {
+                assertTrue(recoveryManager.logManager.getFlushedLSN() >= commitLSNs[i]);
+                assertEquals(commitLSNs[i], recoveryManager.transactionTable.get(i + 1L).lastLSN);
+                assertEquals(Transaction.Status.COMMITTING, DummyTransaction.create(i + 1).getStatus());
+            }
+
+            // without group commit, a commit flushes the log itself
+            recoveryManager.disableGroupCommit();
+            assertFalse(recoveryManager.isGroupCommitEnabled());
+            recoveryManager.startTransaction(DummyTransaction.create(9L));
+            long LSN = recoveryManager.commit(9L);
+            assertTrue(recoveryManager.logManager.getFlushedLSN() >= LSN);
+        } finally {
+            recoveryManager.close();
+            bufferManager.close();
+        }
+    }
+}
@@ -8,7 +8,9 @@ import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
 import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.records.CommitTransactionLogRecord;
 import edu.berkeley.cs186.database.recovery.records.MasterLogRecord;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -18,6 +20,7 @@ import java.util.Iterator;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 @Category(SystemTests.class)
 public class TestLogManager {
@@ -130,4 +133,65 @@ public class TestLogManager {
         postIO = bufferManager.getNumIOs();
         assertEquals(0, postIO - prevIO);
     }
+
+    @Test
+    public void testConcurrentAppend() throws InterruptedException {
+        int numThreads = 4;
+        int numRecords = 2000;
+        long[][] LSNs = new long[numThreads][numRecords];
+        Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; ++t) {
+            final int thread = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < numRecords; ++i) {
+                    LSNs[thread][i] = logManager.appendToLog(new MasterLogRecord(thread * numRecords + i));
+                    if (thread == 0 && i % 100 == 0) {
+                        // flushing seals the log tail while other threads append to it
+                        logManager.flushToLSN(LSNs[thread][i]);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // every record is at its LSN, and records of a thread are in order
+        for (int t = 0; t < numThreads; ++t) {
+            for (int i = 0; i < numRecords; ++i) {
+                assertEquals(new MasterLogRecord(t * numRecords + i), logManager.fetchLogRecord(LSNs[t][i]));
+                if (i > 0) {
+                    assertTrue(LSNs[t][i] > LSNs[t][i - 1]);
+                }
+            }
+        }
+        int count = 0;
+        for (LogRecord record : logManager) {
+            ++count;
+        }
+        assertEquals(numThreads * numRecords, count);
+    }
+
+    @Test
+    public void testCompactFormat() {
+        LogRecord regular = new CommitTransactionLogRecord(1L, 1234L);
+        LogRecord compact = new UpdatePageLogRecord(2L, 10000000001L, 5678L, (short) 16,
+                                                    new byte[64], new byte[64]);
+        long regularLSN = logManager.appendToLog(regular);
+        logManager.setCompactFormat(true);
+        long compactLSN = logManager.appendToLog(compact);
+        logManager.setCompactFormat(false);
+        logManager.appendToLog(regular);
+
+        // records in either format are read back from the same log
+        assertEquals(compact, logManager.fetchLogRecord(compactLSN));
+        Iterator<LogRecord> iter = logManager.scanFrom(regularLSN);
+        assertEquals(regular, iter.next());
+        assertEquals(compact, iter.next());
+        assertEquals(regular, iter.next());
+        assertFalse(iter.hasNext());
+    }
 }
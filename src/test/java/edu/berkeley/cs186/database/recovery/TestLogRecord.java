@@ -12,12 +12,13 @@ import org.junit.experimental.categories.Category;
 import java.util.HashMap;
 import java.util.Map;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 @Category(SystemTests.class)
 public class TestLogRecord {
     private void checkSerialize(LogRecord record) {
         assertEquals(record, LogRecord.fromBytes(ByteBuffer.wrap(record.toBytes())).orElse(null));
+        assertEquals(record, LogRecord.fromBytes(ByteBuffer.wrap(record.toCompactBytes())).orElse(null));
     }
 
     @Test
@@ -98,6 +99,67 @@ public class TestLogRecord {
                        pageString));
     }
 
+    @Test
+    public void testInsertSlotSerialize() {
+        checkSerialize(new InsertSlotLogRecord(-98765L, -43210L, -12345L, (short) -1, (short) 12, (short) 1234,
+                                               "asdfg".getBytes()));
+    }
+
+    @Test
+    public void testDeleteSlotSerialize() {
+        checkSerialize(new DeleteSlotLogRecord(-98765L, -43210L, -12345L, (short) 0, (short) 12, (short) 1234,
+                                               "asdfg".getBytes()));
+    }
+
+    @Test
+    public void testUpdateSlotSerialize() {
+        checkSerialize(new UpdateSlotLogRecord(-98765L, -43210L, -12345L, (short) 12, (short) 1234,
+                                               "asdfg".getBytes(), "zxcvb".getBytes()));
+    }
+
+    @Test
+    public void testUndoInsertSlotSerialize() {
+        checkSerialize(new UndoInsertSlotLogRecord(-98765L, -43210L, -12345L, -57812L, (short) 0, (short) 12));
+    }
+
+    @Test
+    public void testUndoDeleteSlotSerialize() {
+        checkSerialize(new UndoDeleteSlotLogRecord(-98765L, -43210L, -12345L, -57812L, (short) -1, (short) 12,
+                                                   (short) 1234, "asdfg".getBytes()));
+    }
+
+    @Test
+    public void testUndoUpdateSlotSerialize() {
+        checkSerialize(new UndoUpdateSlotLogRecord(-98765L, -43210L, -12345L, -57812L, (short) 12, (short) 1234,
+                                                   "asdfg".getBytes()));
+    }
+
+    @Test
+    public void testCompactSize() {
+        // small transaction numbers and LSNs take a byte or a few instead of 8
+        LogRecord commit = new CommitTransactionLogRecord(12L, 10234L);
+        assertEquals(4, commit.toCompactBytes().length);
+        assertEquals(17, commit.toBytes().length);
+
+        // only the changed bytes of the after image are written
+        byte[] before = new byte[100];
+        byte[] after = new byte[100];
+        after[0] = 1;
+        after[99] = 2;
+        LogRecord update = new UpdatePageLogRecord(3L, 10000000001L, 20480L, (short) 100, before, after);
+        checkSerialize(update);
+        assertTrue(update.toCompactBytes().length < 120);
+        assertEquals(231, update.toBytes().length);
+
+        // scattered changes fall back to the regular format rather than getting longer
+        for (int i = 0; i < after.length; i += 2) {
+            after[i] = 1;
+        }
+        update = new UpdatePageLogRecord(3L, 10000000001L, 20480L, (short) 100, before, after);
+        checkSerialize(update);
+        assertArrayEquals(update.toBytes(), update.toCompactBytes());
+    }
+
     @Test
     public void testBeginCheckpointSerialize() {
         checkSerialize(new BeginCheckpointLogRecord());
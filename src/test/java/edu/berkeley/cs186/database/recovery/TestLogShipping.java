@@ -0,0 +1,454 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.categories.Proj5Tests;
+import edu.berkeley.cs186.database.categories.PublicTests;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.query.QueryPlan;
+import edu.berkeley.cs186.database.recovery.records.AbortTransactionLogRecord;
+import edu.berkeley.cs186.database.recovery.records.AllocPageLogRecord;
+import edu.berkeley.cs186.database.recovery.records.AllocPartLogRecord;
+import edu.berkeley.cs186.database.recovery.records.CommitTransactionLogRecord;
+import edu.berkeley.cs186.database.recovery.records.EndTransactionLogRecord;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+@Category({Proj5Tests.class})
+public class TestLogShipping {
+    private ARIESRecoveryManager primary;
+    private DiskSpaceManager primaryDiskSpaceManager;
+    private BufferManager primaryBufferManager;
+
+    private StandbyRecoveryManager standby;
+    private DiskSpaceManager standbyDiskSpaceManager;
+    private BufferManager standbyBufferManager;
+
+    // LSN of the last record appended by append
+    private long lastAppendedLSN;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        LogRecord.onRedoHandler(t -> {
+        });
+        primary = new ARIESRecoveryManager(DummyTransaction::create);
+        primaryDiskSpaceManager = new MemoryDiskSpaceManager();
+        primaryBufferManager = new BufferManager(primaryDiskSpaceManager, primary, 32,
+                                                 new ClockEvictionPolicy());
+        primaryDiskSpaceManager.allocPart(0);
+        primary.setManagers(primaryDiskSpaceManager, primaryBufferManager);
+        primary.initialize();
+    }
+
+    @After
+    public void cleanup() {
+        primary.close();
+        primaryBufferManager.close();
+        primaryDiskSpaceManager.close();
+        if (standby != null) {
+            standby.close();
+            standbyBufferManager.close();
+            standbyDiskSpaceManager.close();
+        }
+    }
+
+    private void startStandby(LogTransport transport) {
+        standby = new StandbyRecoveryManager(transport);
+        standbyDiskSpaceManager = new MemoryDiskSpaceManager();
+        standbyBufferManager = new BufferManager(standbyDiskSpaceManager, standby, 32,
+                                                 new ClockEvictionPolicy());
+        standby.setManagers(standbyDiskSpaceManager, standbyBufferManager);
+        standby.restart();
+    }
+
+    // Appends a record to the primary's log, and applies it to the primary's pages.
+    private long append(LogRecord record) {
+        long LSN = primary.logManager.appendToLog(record);
+        record.setLSN(LSN);
+        lastAppendedLSN = LSN;
+        if (record.isRedoable()) {
+            ARIESRecoveryManager.redoRecord(record, primary, primaryDiskSpaceManager, primaryBufferManager);
+        }
+        return LSN;
+    }
+
+    // Appends records of transaction transNum allocating a partition with numPages pages,
+    // and updating every page numUpdates times; returns the page numbers.
+    private long[] appendUpdates(long transNum, int partNum, int numPages, int numUpdates) {
+        long prevLSN = append(new AllocPartLogRecord(transNum, partNum, 0L));
+        long[] pageNums = new long[numPages];
+        for (int i = 0; i < numPages; ++i) {
+            pageNums[i] = DiskSpaceManager.getVirtualPageNum(partNum, i);
+            prevLSN = append(new AllocPageLogRecord(transNum, pageNums[i], prevLSN));
+        }
+        for (int i = 1; i <= numUpdates; ++i) {
+            for (long pageNum : pageNums) {
+                byte[] before = new byte[] { (byte) (i - 1) };
+                byte[] after = new byte[] { (byte) i };
+                prevLSN = append(new UpdatePageLogRecord(transNum, pageNum, prevLSN, (short) 0, before, after));
+            }
+        }
+        return pageNums;
+    }
+
+    // Appends a commit record for the last record appended, of transaction transNum.
+    private long appendCommit(long transNum) {
+        return append(new CommitTransactionLogRecord(transNum, lastAppendedLSN));
+    }
+
+    private static void awaitReplayed(StandbyRecoveryManager standby, long LSN) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (standby.getReplayedLSN() < LSN) {
+            assertNull(standby.getReplayFailure());
+            assertTrue("replay did not catch up", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static byte[] readPage(BufferManager bufferManager, long pageNum) {
+        Page page = bufferManager.fetchPage(new DummyLockContext(), pageNum);
+        try {
+            byte[] bytes = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+            page.getBuffer().get(bytes);
+            return bytes;
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private void assertSamePages(long[] pageNums) {
+        for (long pageNum : pageNums) {
+            assertArrayEquals(readPage(primaryBufferManager, pageNum), readPage(standbyBufferManager, pageNum));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testReplay() throws InterruptedException {
+        QueueLogTransport transport = new QueueLogTransport();
+        startStandby(transport);
+        primary.startLogShipping(transport);
+        assertTrue(primary.isLogShipping());
+
+        long[] pageNums = appendUpdates(1L, 1, 4, 10);
+        long lastLSN = appendCommit(1L);
+        // records are only shipped once flushed
+        Thread.sleep(50);
+        assertTrue(primary.getShippedLSN() < lastLSN);
+        primary.logManager.flushToLSN(lastLSN);
+
+        awaitReplayed(standby, lastLSN);
+        assertTrue(standby.awaitCommit());
+        assertSamePages(pageNums);
+        assertEquals(10, readPage(standbyBufferManager, pageNums[0])[0]);
+        assertTrue(standby.getReplayLagMillis() >= 0);
+        assertEquals(lastLSN, primary.getShippedLSN());
+
+        // later records are replayed on top
+        long[] morePageNums = appendUpdates(2L, 2, 2, 3);
+        lastLSN = appendCommit(2L);
+        primary.logManager.flushToLSN(lastLSN);
+        awaitReplayed(standby, lastLSN);
+        assertSamePages(pageNums);
+        assertSamePages(morePageNums);
+
+        primary.stopLogShipping();
+        assertFalse(primary.isLogShipping());
+        assertEquals(-1L, primary.getShippedLSN());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testReplayIsIdempotent() throws InterruptedException {
+        QueueLogTransport transport = new QueueLogTransport();
+        startStandby(transport);
+        long[] pageNums = appendUpdates(1L, 1, 2, 5);
+        long lastLSN = appendCommit(1L);
+        primary.logManager.flushToLSN(lastLSN);
+
+        // the whole log is sent twice, as after a restart of the primary: records the
+        // standby already reflects are skipped
+        for (int i = 0; i < 2; ++i) {
+            for (LogRecord record : (Iterable<LogRecord>) () -> primary.logManager.scanFrom(0L)) {
+                transport.send(LogShipper.encode(record, System.currentTimeMillis()));
+            }
+        }
+        transport.close();
+        awaitReplayed(standby, lastLSN);
+        while (!standby.isReplayEnded()) {
+            Thread.sleep(5);
+        }
+        assertNull(standby.getReplayFailure());
+        assertSamePages(pageNums);
+        assertEquals(5, readPage(standbyBufferManager, pageNums[1])[0]);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testReplayOnlyFinishedTransactions() throws InterruptedException {
+        QueueLogTransport transport = new QueueLogTransport();
+        startStandby(transport);
+        primary.startLogShipping(transport);
+        long[] pageNums = appendUpdates(1L, 1, 2, 1);
+        long committedLSN = appendCommit(1L);
+
+        // transaction 2 changes pages while transaction 3 is still running
+        byte[] before = new byte[] { 1 };
+        byte[] after = new byte[] { 2 };
+        append(new UpdatePageLogRecord(2L, pageNums[0], 0L, (short) 0, before, after));
+        long LSN3 = append(new UpdatePageLogRecord(3L, pageNums[1], 0L, (short) 0, before, after));
+        appendCommit(2L);
+        primary.logManager.flushToLSN(lastAppendedLSN);
+
+        // neither is visible until no transaction is in flight
+        awaitReplayed(standby, committedLSN);
+        Thread.sleep(50);
+        assertEquals(committedLSN, standby.getReplayedLSN());
+        assertEquals(1, readPage(standbyBufferManager, pageNums[0])[0]);
+        assertEquals(1, readPage(standbyBufferManager, pageNums[1])[0]);
+
+        // transaction 3 aborts: its change is replayed along with the CLR undoing it, and
+        // is never visible
+        LogRecord update = primary.logManager.fetchLogRecord(LSN3);
+        long abortLSN = append(new AbortTransactionLogRecord(3L, LSN3));
+        long undoLSN = append(update.undo(abortLSN));
+        long lastLSN = append(new EndTransactionLogRecord(3L, undoLSN));
+        primary.logManager.flushToLSN(lastLSN);
+        awaitReplayed(standby, lastLSN);
+        assertSamePages(pageNums);
+        assertEquals(2, readPage(standbyBufferManager, pageNums[0])[0]);
+        assertEquals(1, readPage(standbyBufferManager, pageNums[1])[0]);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testStandbyDatabase() throws Exception {
+        Database primaryDb = new Database(tempFolder.newFolder("primary").getAbsolutePath(), 128,
+                                          new DummyLockManager(), new ClockEvictionPolicy(), true);
+        Database standbyDb = null;
+        try {
+            QueueLogTransport transport = new QueueLogTransport();
+            primaryDb.getARIESRecoveryManager().startLogShipping(transport);
+            try (Transaction t = primaryDb.beginTransaction()) {
+                t.createTable(new Schema().add("id", Type.intType()), "t");
+                t.createIndex("t", "id", false);
+                for (int i = 0; i < 100; ++i) {
+                    t.insert("t", i);
+                }
+                t.createTable(new Schema().add("id", Type.intType()), "u");
+                t.createIndex("u", "id", false);
+            }
+            standbyDb = new Database(tempFolder.newFolder("standby").getAbsolutePath(), 64, transport);
+            awaitVisible(standbyDb, "t", 99);
+            assertTrue(standbyDb.isStandby());
+            assertTrue(standbyDb.getStandbyRecoveryManager().getReplayedLSN() > 0);
+            assertEquals(Arrays.asList(42), lookup(standbyDb, "t", 42));
+
+            // a transaction in flight holds back the changes of later ones (it writes to
+            // its own table: without locking, undoing its index insert would undo those of
+            // others on the same leaf)
+            CountDownLatch inserted = new CountDownLatch(1);
+            CountDownLatch rollback = new CountDownLatch(1);
+            Thread thread = new Thread(() -> {
+                Transaction t = primaryDb.beginTransaction();
+                t.insert("u", 1000);
+                inserted.countDown();
+                try {
+                    rollback.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                t.rollback();
+            });
+            thread.start();
+            inserted.await();
+            try (Transaction t = primaryDb.beginTransaction()) {
+                t.insert("t", 100);
+            }
+            Thread.sleep(100);
+            assertEquals(Collections.emptyList(), lookup(standbyDb, "u", 1000));
+            assertEquals(Collections.emptyList(), lookup(standbyDb, "t", 100));
+
+            // once it rolled back, its insert is undone and the later commit shows
+            rollback.countDown();
+            thread.join();
+            try (Transaction t = primaryDb.beginTransaction()) {
+                t.insert("t", 101);
+            }
+            awaitVisible(standbyDb, "t", 101);
+            assertEquals(Collections.emptyList(), lookup(standbyDb, "u", 1000));
+            assertEquals(Arrays.asList(100), lookup(standbyDb, "t", 100));
+            assertEquals(Arrays.asList(101), lookup(standbyDb, "t", 101));
+        } finally {
+            // the primary ships the rest of its log before the standby closes the transport
+            primaryDb.close();
+            if (standbyDb != null) {
+                standbyDb.close();
+            }
+        }
+    }
+
+    // Waits until the record of a table with an id is replayed; the log is shipped
+    // asynchronously.
+    private static void awaitVisible(Database standbyDb, String tableName, int id) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (true) {
+            try {
+                if (!lookup(standbyDb, tableName, id).isEmpty()) {
+                    return;
+                }
+            } catch (DatabaseException e) {
+                // the table is not replayed yet
+            }
+            assertTrue("replay did not catch up", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    // Looks up the records of a table with an id, through the index on id.
+    private static List<Integer> lookup(Database db, String tableName, int id) {
+        List<Integer> ids = new ArrayList<>();
+        try (Transaction t = db.beginTransaction()) {
+            QueryPlan plan = t.query(tableName);
+            plan.select("id", PredicateOperator.EQUALS, id);
+            for (Iterator<Record> iter = plan.execute(); iter.hasNext(); ) {
+                ids.add(iter.next().getValue(0).getInt());
+            }
+        }
+        return ids;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testShippingHoldsBackTruncation() throws InterruptedException {
+        primary.setLogTruncation(true);
+        // nothing is received yet, so shipping blocks once a frame is sent
+        QueueLogTransport transport = new QueueLogTransport(1);
+        primary.startLogShipping(transport);
+        try {
+            primary.startLogShipping(new QueueLogTransport());
+            fail();
+        } catch (IllegalStateException e) {
+            /* do nothing */
+        }
+
+        // about 3 pages of log
+        long[] pageNums = appendUpdates(1L, 1, 4, DiskSpaceManager.PAGE_SIZE / 40);
+        appendCommit(1L);
+        long firstLSN = LogManager.makeLSN(1L, 0);
+        primary.checkpoint();
+        // the records not shipped yet are kept
+        assertTrue(primary.getShippedLSN() < lastAppendedLSN);
+        assertNotNull(primary.logManager.fetchLogRecord(firstLSN));
+
+        // once the standby caught up and shipping stopped, the log is truncated
+        startStandby(transport);
+        long lastLSN = lastAppendedLSN;
+        awaitReplayed(standby, lastLSN);
+        assertSamePages(pageNums);
+        primary.stopLogShipping();
+        primary.checkpoint();
+        assertNull(primary.logManager.fetchLogRecord(firstLSN));
+
+        // and the standby cannot be built from it anymore
+        try {
+            primary.startLogShipping(new QueueLogTransport());
+            fail();
+        } catch (IllegalStateException e) {
+            /* do nothing */
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFrames() {
+        LogRecord record = new UpdatePageLogRecord(3L, 10000000001L, 7L, (short) 12,
+                                                   new byte[] { 1, 2 }, new byte[] { 3, 4 });
+        record.setLSN(123456L);
+        byte[] frame = LogShipper.encode(record, 42L);
+        assertEquals(42L, LogShipper.decodeShippedMillis(frame));
+        LogRecord decoded = LogShipper.decodeRecord(frame);
+        assertEquals(record, decoded);
+        assertEquals(123456L, (long) decoded.getLSN());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSocketTransport() throws InterruptedException {
+        SocketLogTransport receiver = SocketLogTransport.listen(0);
+        SocketLogTransport sender = SocketLogTransport.connect(receiver.getPort());
+        try {
+            for (int i = 0; i < 100; ++i) {
+                byte[] frame = new byte[i];
+                Arrays.fill(frame, (byte) i);
+                sender.send(frame);
+            }
+            sender.close();
+            for (int i = 0; i < 100; ++i) {
+                byte[] frame = receiver.receive(10000L);
+                assertNotNull(frame);
+                assertEquals(i, frame.length);
+                for (byte b : frame) {
+                    assertEquals((byte) i, b);
+                }
+            }
+            long deadline = System.currentTimeMillis() + 10000L;
+            while (!receiver.isClosed()) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                assertNull(receiver.receive(10L));
+            }
+            assertNull(receiver.receive(10L));
+        } finally {
+            sender.close();
+            receiver.close();
+        }
+        try {
+            receiver.send(new byte[1]);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            /* do nothing */
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testStandbyIsReadOnly() {
+        startStandby(new QueueLogTransport());
+        try {
+            standby.logPageWrite(1L, 10000000001L, (short) 0, new byte[1], new byte[1]);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            /* do nothing */
+        }
+        try {
+            standby.logAllocPart(1L, 1);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            /* do nothing */
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj5Tests;
+import edu.berkeley.cs186.database.categories.PublicTests;
+import edu.berkeley.cs186.database.concurrency.DummyTransactionContext;
+import edu.berkeley.cs186.database.concurrency.LoggingLockManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.records.MasterLogRecord;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@Category({Proj5Tests.class})
+public class TestLogTruncation {
+    // Number of master records (9 bytes each) that fit on a log page
+    private static final int RECORDS_PER_PAGE = DiskSpaceManager.PAGE_SIZE / 9;
+
+    private DiskSpaceManager diskSpaceManager;
+    private BufferManager bufferManager;
+    private LogManager logManager;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(0);
+        bufferManager = new BufferManager(diskSpaceManager, new DummyRecoveryManager(), 32,
+                                          new ClockEvictionPolicy());
+        logManager = new LogManager(bufferManager, diskSpaceManager);
+    }
+
+    @After
+    public void cleanup() {
+        logManager.close();
+        bufferManager.close();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testTruncate() {
+        // pages 0 through 7
+        for (int i = 0; i < RECORDS_PER_PAGE * 8; ++i) {
+            logManager.appendToLog(new MasterLogRecord(i));
+        }
+        logManager.flushToLSN(59999L);
+
+        // pages 1 through 4 are freed
+        assertEquals(4, logManager.truncate(50000L));
+        assertEquals(50000L, logManager.getFirstLSN());
+        assertEquals(4, logManager.getNumPagesTruncated());
+        for (long pageNum = 1; pageNum < 5; ++pageNum) {
+            assertFalse(diskSpaceManager.pageAllocated(pageNum));
+        }
+        assertTrue(diskSpaceManager.pageAllocated(0L));
+        assertNull(logManager.fetchLogRecord(20000L));
+
+        // scans skip the truncated pages
+        Iterator<LogRecord> iter = logManager.iterator();
+        for (int i = 0; i < RECORDS_PER_PAGE; ++i) {
+            assertEquals(new MasterLogRecord(i), iter.next());
+        }
+        assertEquals(new MasterLogRecord(RECORDS_PER_PAGE * 5), iter.next());
+        iter = logManager.scanFrom(30009L);
+        assertEquals(50000L, iter.next().getLSN());
+
+        // pages that are not flushed yet are kept
+        assertEquals(1, logManager.truncate(90000L));
+        assertEquals(60000L, logManager.getFirstLSN());
+
+        // freed pages are not reused: LSNs keep increasing
+        long LSN = 0;
+        for (int i = 0; i < RECORDS_PER_PAGE * 2; ++i) {
+            LSN = logManager.appendToLog(new MasterLogRecord(i));
+        }
+        assertEquals(9L, LogManager.getLSNPage(LSN));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testReopen() {
+        logManager.appendToLog(new MasterLogRecord(0));
+        for (int i = 0; i < RECORDS_PER_PAGE * 6; ++i) {
+            logManager.appendToLog(new MasterLogRecord(i));
+        }
+        logManager.rewriteMasterRecord(new MasterLogRecord(40000L));
+        logManager.flushToLSN(49999L);
+        assertEquals(3, logManager.truncate(40000L));
+        logManager.close();
+
+        // the log continues after its last page, not in the freed pages
+        logManager = new LogManager(bufferManager, diskSpaceManager);
+        assertEquals(40000L, logManager.getFirstLSN());
+        assertEquals(70000L, logManager.appendToLog(new MasterLogRecord(1234)));
+        Iterator<LogRecord> iter = logManager.iterator();
+        assertEquals(new MasterLogRecord(40000L), iter.next());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testTruncateAfterCheckpoint() {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 32,
+                                                        new ClockEvictionPolicy());
+        diskSpaceManager.allocPart(0);
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        recoveryManager.initialize();
+        DummyTransaction.cleanupTransactions();
+        try {
+            recoveryManager.setLogTruncation(true);
+            LogManager logManager = recoveryManager.logManager;
+
+            // transaction 1 logs two records, with many other records in between
+            recoveryManager.startTransaction(DummyTransaction.create(1L));
+            long firstLSN = logManager.appendToLog(new UpdatePageLogRecord(1L, 10000000001L, 0L, (short) 0,
+                                                   new byte[8], new byte[8]));
+            appendFiller(logManager);
+            long lastLSN = logManager.appendToLog(new UpdatePageLogRecord(1L, 10000000001L, firstLSN, (short) 0,
+                                                  new byte[8], new byte[8]));
+            recoveryManager.transactionTable.get(1L).lastLSN = lastLSN;
+            appendFiller(logManager);
+
+            // undo may need the transaction's first record
+            recoveryManager.checkpoint();
+            assertEquals(LogManager.getLSNPage(firstLSN), LogManager.getLSNPage(logManager.getFirstLSN()));
+            assertNotNull(logManager.fetchLogRecord(firstLSN));
+
+            // once it ended, the log is truncated up to the checkpoint
+            recoveryManager.transactionTable.remove(1L);
+            recoveryManager.checkpoint();
+            assertNull(logManager.fetchLogRecord(firstLSN));
+            assertNull(logManager.fetchLogRecord(lastLSN));
+            MasterLogRecord master = (MasterLogRecord) logManager.fetchLogRecord(0L);
+            assertEquals(LogManager.getLSNPage(master.lastCheckpointLSN),
+                         LogManager.getLSNPage(logManager.getFirstLSN()));
+            assertEquals(master.lastCheckpointLSN, recoveryManager.getRedoStartLSN());
+            Iterator<LogRecord> iter = logManager.scanFrom(master.lastCheckpointLSN);
+            assertEquals(LogType.BEGIN_CHECKPOINT, iter.next().getType());
+        } finally {
+            recoveryManager.close();
+            bufferManager.close();
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testTruncateOnTransactionThread() throws IOException {
+        // a partition handle logs the pages it frees for the thread's transaction
+        List<Long> loggedPages = new ArrayList<>();
+        RecoveryManager recoveryManager = new DummyRecoveryManager() {
+            @Override
+            public long logPageWrite(long transNum, long pageNum, short pageOffset, byte[] before,
+                                     byte[] after) {
+                loggedPages.add(pageNum);
+                return 0L;
+            }
+
+            @Override
+            public long logFreePage(long transNum, long pageNum) {
+                loggedPages.add(pageNum);
+                return 0L;
+            }
+        };
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(
+            tempFolder.newFolder("truncate").getAbsolutePath(), recoveryManager);
+        diskSpaceManager.allocPart(0);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 32,
+                                                        new ClockEvictionPolicy());
+        LogManager logManager = new LogManager(bufferManager, diskSpaceManager);
+        TransactionContext transaction = new DummyTransactionContext(new LoggingLockManager(), 1L);
+        TransactionContext.setTransaction(transaction);
+        try {
+            for (int i = 0; i < RECORDS_PER_PAGE * 4; ++i) {
+                logManager.appendToLog(new MasterLogRecord(i));
+            }
+            logManager.flushToLSN(39999L);
+
+            // log pages are freed without being logged, and the transaction is kept
+            assertEquals(2, logManager.truncate(30000L));
+            assertFalse(diskSpaceManager.pageAllocated(1L));
+            assertTrue(loggedPages.isEmpty());
+            assertSame(transaction, TransactionContext.getTransaction());
+        } finally {
+            TransactionContext.unsetTransaction();
+            logManager.close();
+            bufferManager.close();
+            diskSpaceManager.close();
+        }
+    }
+
+    // Appends about 3 pages of records
+    private void appendFiller(LogManager logManager) {
+        for (int i = 0; i < RECORDS_PER_PAGE * 3; ++i) {
+            logManager.appendToLog(new MasterLogRecord(i));
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj5Tests;
+import edu.berkeley.cs186.database.categories.PublicTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@Category({Proj5Tests.class})
+public class TestParallelRedo {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        LogRecord.onRedoHandler(t -> {
+        });
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testPageOrder() {
+        Map<Long, List<Long>> redone = new HashMap<>();
+        ParallelRedo parallelRedo = new ParallelRedo(4, record -> {
+            synchronized (redone) {
+                redone.computeIfAbsent(record.getPageNum().get(), p -> new ArrayList<>()).add(record.getLSN());
+            }
+        });
+        long LSN = 0;
+        for (int i = 0; i < 100; ++i) {
+            for (long pageNum = 0; pageNum < 10; ++pageNum) {
+                LogRecord record = new UpdatePageLogRecord(1L, pageNum, 0L, (short) 0, new byte[1], new byte[1]);
+                record.setLSN(LSN++);
+                parallelRedo.dispatch(pageNum, record);
+            }
+        }
+        parallelRedo.finish();
+
+        // the records of each page are redone in log order
+        assertEquals(10, redone.size());
+        for (Map.Entry<Long, List<Long>> entry : redone.entrySet()) {
+            List<Long> LSNs = entry.getValue();
+            assertEquals(100, LSNs.size());
+            for (int i = 0; i < LSNs.size(); ++i) {
+                assertEquals(i * 10L + entry.getKey(), (long) LSNs.get(i));
+            }
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testBarrier() {
+        AtomicInteger numRedone = new AtomicInteger();
+        ParallelRedo parallelRedo = new ParallelRedo(3, record -> {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            numRedone.incrementAndGet();
+        });
+        try {
+            for (long pageNum = 0; pageNum < 30; ++pageNum) {
+                parallelRedo.dispatch(pageNum, new UpdatePageLogRecord(1L, pageNum, 0L, (short) 0,
+                                      new byte[1], new byte[1]));
+            }
+            parallelRedo.barrier();
+            assertEquals(30, numRedone.get());
+        } finally {
+            parallelRedo.finish();
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFailure() {
+        ParallelRedo parallelRedo = new ParallelRedo(2, record -> {
+            if (record.getPageNum().get() == 5L) {
+                throw new IllegalStateException("failed redo");
+            }
+        });
+        // the failure is thrown by a later dispatch or by finish
+        try {
+            try {
+                for (long pageNum = 0; pageNum < 10; ++pageNum) {
+                    parallelRedo.dispatch(pageNum, new UpdatePageLogRecord(1L, pageNum, 0L, (short) 0,
+                                          new byte[1], new byte[1]));
+                }
+            } finally {
+                parallelRedo.finish();
+            }
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("failed redo", e.getMessage());
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testRestartRedo() {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create, 4);
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 32,
+                                                        new ClockEvictionPolicy());
+        diskSpaceManager.allocPart(0);
+        diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[8];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(1);
+        }
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        recoveryManager.initialize();
+        try {
+            // every page is overwritten 20 times, so redoing a page's records out of order
+            // would leave the wrong value on it
+            long[] lastLSNs = new long[pageNums.length];
+            long prevLSN = 0;
+            for (int i = 1; i <= 20; ++i) {
+                for (int j = 0; j < pageNums.length; ++j) {
+                    byte[] before = new byte[] { (byte) (i - 1) };
+                    byte[] after = new byte[] { (byte) i };
+                    prevLSN = recoveryManager.logManager.appendToLog(new UpdatePageLogRecord(1L, pageNums[j],
+                              prevLSN, (short) 0, before, after));
+                    lastLSNs[j] = prevLSN;
+                    if (i == 1) {
+                        recoveryManager.dirtyPageTable.put(pageNums[j], prevLSN);
+                    }
+                }
+            }
+            // page 0 is not dirty, so its records are not redone
+            recoveryManager.dirtyPageTable.remove(pageNums[0]);
+
+            recoveryManager.restartRedo();
+
+            for (int j = 0; j < pageNums.length; ++j) {
+                Page page = bufferManager.fetchPage(new DummyLockContext(), pageNums[j]);
+                try {
+                    assertEquals(j == 0 ? 0 : 20, page.getBuffer().get());
+                    assertEquals(j == 0 ? 0 : lastLSNs[j], page.getPageLSN());
+                } finally {
+                    page.unpin();
+                }
+            }
+        } finally {
+            recoveryManager.close();
+            bufferManager.close();
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testRestartCounters() {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create, 2);
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 32,
+                                                        new ClockEvictionPolicy());
+        diskSpaceManager.allocPart(0);
+        diskSpaceManager.allocPart(1);
+        long[] pageNums = new long[4];
+        for (int i = 0; i < pageNums.length; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(1);
+        }
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        recoveryManager.initialize();
+        DummyTransaction.cleanupTransactions();
+        try {
+            // the records are logged but not applied, as if we crashed before any page was
+            // written back; analysis finds the dirty pages in the log
+            long prevLSN = 0;
+            for (long pageNum : pageNums) {
+                prevLSN = recoveryManager.logManager.appendToLog(new UpdatePageLogRecord(1L, pageNum, prevLSN,
+                          (short) 0, new byte[1], new byte[] { 1 }));
+            }
+            // page 0 already reflects its record
+            Page page = bufferManager.fetchPage(new DummyLockContext(), pageNums[0]);
+            try {
+                page.setPageLSN(prevLSN);
+            } finally {
+                page.unpin();
+            }
+
+            recoveryManager.restart();
+
+            Map<String, Long> counters = recoveryManager.getRestartCounters();
+            // the master record, the checkpoint of initialize and the updates
+            assertEquals(7L, (long) counters.get("analysis.recordsScanned"));
+            assertEquals(3L, (long) counters.get("redo.recordsRedone"));
+            assertEquals(1L, (long) counters.get("redo.recordsSkipped"));
+            // the updates, and the abort record of the running transaction added by analysis
+            assertEquals(5L, (long) counters.get("redo.recordsScanned"));
+            // every page is fetched to check its pageLSN, and again to redo its record;
+            // page 0 is still in memory
+            assertEquals(7L, (long) counters.get("redo.pagesFetched"));
+            assertEquals(3L, (long) counters.get("redo.pagesRead"));
+            assertEquals(0L, (long) counters.get("redo.clrsWritten"));
+            // undo reads the abort record and the updates, and rolls back the updates
+            assertEquals(5L, (long) counters.get("undo.recordsScanned"));
+            assertEquals(4L, (long) counters.get("undo.clrsWritten"));
+            for (long pageNum : pageNums) {
+                page = bufferManager.fetchPage(new DummyLockContext(), pageNum);
+                try {
+                    assertEquals(0, page.getBuffer().get());
+                } finally {
+                    page.unpin();
+                }
+            }
+            assertFalse(recoveryManager.transactionTable.containsKey(1L));
+            // every phase timed has its counters
+            for (String phase : recoveryManager.getRestartPhaseNanos().keySet()) {
+                assertTrue(counters.containsKey(phase + ".recordsScanned"));
+                assertTrue(counters.containsKey(phase + ".pagesRead"));
+            }
+        } finally {
+            recoveryManager.close();
+            bufferManager.close();
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testRestartLosers() throws IOException {
+        String dir = tempFolder.newFolder("losers").getAbsolutePath();
+        Database db = new Database(dir, 32, new DummyLockManager(), new ClockEvictionPolicy(), true);
+        try (Transaction t = db.beginTransaction()) {
+            t.createTable(new Schema().add("id", Type.intType()), "t");
+            t.insert("t", 0);
+        }
+        // the loser's inserts are flushed with the pages they dirtied, but it never commits
+        Transaction loser = db.beginTransaction();
+        for (int i = 0; i < 100; ++i) {
+            loser.insert("t", -1);
+        }
+        db.getBufferManager().evictAll();
+        TransactionContext.unsetTransaction();
+
+        // reopen without closing, as after a crash, redoing with 2 threads
+        db = new Database(dir, 32, new DummyLockManager(), new ClockEvictionPolicy(), true,
+                          new Database.Options().setRedoThreads(2));
+        try {
+            Map<String, Long> counters = db.getARIESRecoveryManager().getRestartCounters();
+            // undo reads (at least) the loser's inserts, and rolls each of them back
+            assertTrue(counters.get("undo.recordsScanned") >= 100);
+            assertTrue(counters.get("undo.clrsWritten") >= 100);
+            try (Transaction t = db.beginTransaction()) {
+                Iterator<Record> records = t.query("t").execute();
+                assertEquals(0, records.next().getValue(0).getInt());
+                assertFalse(records.hasNext());
+            }
+        } finally {
+            db.close();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj5Tests;
+import edu.berkeley.cs186.database.categories.PublicTests;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.concurrency.DummyTransactionContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.records.DeleteSlotLogRecord;
+import edu.berkeley.cs186.database.recovery.records.InsertSlotLogRecord;
+import edu.berkeley.cs186.database.table.PageDirectory;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Table;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+@Category({Proj5Tests.class})
+public class TestSlotLogRecords {
+    private ARIESRecoveryManager recoveryManager;
+    private DiskSpaceManager diskSpaceManager;
+    private BufferManager bufferManager;
+    private Table table;
+
+    @Before
+    public void setup() {
+        recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+        diskSpaceManager = new MemoryDiskSpaceManager();
+        bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 32, new ClockEvictionPolicy());
+        diskSpaceManager.allocPart(0);
+        diskSpaceManager.allocPart(1);
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        recoveryManager.initialize();
+        recoveryManager.redoComplete = true;
+        DummyTransaction.cleanupTransactions();
+        LogRecord.onRedoHandler(t -> {
+        });
+
+        Page page = bufferManager.fetchNewPage(new DummyLockContext(), 1);
+        try {
+            PageDirectory pageDirectory = new PageDirectory(bufferManager, 1, page.getPageNum(), (short) 0,
+                                                            new DummyLockContext());
+            table = new Table("t", TestUtils.createSchemaWithAllTypes(), pageDirectory, new DummyLockContext());
+        } finally {
+            page.unpin();
+        }
+        recoveryManager.startTransaction(DummyTransaction.create(1L));
+        TransactionContext.setTransaction(new DummyTransactionContext(null, 1L));
+    }
+
+    @After
+    public void cleanup() {
+        if (TransactionContext.getTransaction() != null) {
+            TransactionContext.unsetTransaction();
+        }
+        LogRecord.onRedoHandler(t -> {
+        });
+        recoveryManager.close();
+        bufferManager.close();
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testLogRecords() {
+        RecordId rid = table.addRecord(new Record(false, 0, "a", 1.2f));
+        table.updateRecord(rid, new Record(true, 1, "b", 2.4f));
+        table.deleteRecord(rid);
+
+        // each change is logged as one slot record of the data page
+        List<LogRecord> records = slotRecords();
+        assertEquals(3, records.size());
+        assertEquals(LogType.INSERT_SLOT, records.get(0).getType());
+        assertEquals(LogType.UPDATE_SLOT, records.get(1).getType());
+        assertEquals(LogType.DELETE_SLOT, records.get(2).getType());
+        for (LogRecord record : records) {
+            assertEquals(rid.getPageNum(), (long) record.getPageNum().get());
+        }
+        assertEquals(records.get(0).getLSN(), (long) records.get(1).getPrevLSN().get());
+        // the emptied data page is then dropped from the header page, in two writes
+        LogRecord last = recoveryManager.logManager.fetchLogRecord(recoveryManager.transactionTable.get(1L).lastLSN);
+        LogRecord dropped = recoveryManager.logManager.fetchLogRecord(last.getPrevLSN().get());
+        assertEquals(records.get(2).getLSN(), (long) dropped.getPrevLSN().get());
+        // the page directory stamps the new data page before the insert
+        Iterator<LogRecord> iter = recoveryManager.logManager.iterator();
+        LogRecord first = iter.next();
+        while (!first.getPageNum().equals(Optional.of(rid.getPageNum()))) {
+            first = iter.next();
+        }
+        assertEquals(LogType.UPDATE_PAGE, first.getType());
+        assertEquals(first.getLSN(), (long) recoveryManager.dirtyPageTable.get(rid.getPageNum()));
+
+        // the delete holds the record, for undo
+        DeleteSlotLogRecord delete = (DeleteSlotLogRecord) records.get(2);
+        assertEquals(new Record(true, 1, "b", 2.4f),
+                     Record.fromBytes(ByteBuffer.wrap(delete.record), table.getSchema()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testUndoRedo() {
+        Record r0 = new Record(false, 0, "a", 1.2f);
+        Record r1 = new Record(true, 1, "b", 2.4f);
+        RecordId rid0 = table.addRecord(r0);
+        RecordId rid1 = table.addRecord(r1);
+        byte[] inserted = pageData(rid0.getPageNum());
+        table.updateRecord(rid0, new Record(false, 2, "c", 3.6f));
+        table.deleteRecord(rid1);
+        byte[] changed = pageData(rid0.getPageNum());
+        TransactionContext.unsetTransaction();
+
+        // undoing the update and the delete (through their CLRs) brings back the records
+        List<LogRecord> records = slotRecords();
+        long lastLSN = records.get(3).getLSN();
+        for (int i = 3; i >= 2; --i) {
+            LogRecord clr = records.get(i).undo(lastLSN);
+            lastLSN = recoveryManager.logManager.appendToLog(clr);
+            clr.redo(recoveryManager, diskSpaceManager, bufferManager);
+        }
+        assertArrayEquals(inserted, pageData(rid0.getPageNum()));
+        assertEquals(r0, table.getRecord(rid0));
+        assertEquals(r1, table.getRecord(rid1));
+
+        // restart redo redoes the slot records onto a page that lost them (everything
+        // before the slot bitmap is left as is)
+        List<LogType> redone = new ArrayList<>();
+        LogRecord.onRedoHandler(record -> redone.add(record.getType()));
+        short bitmapOffset = ((InsertSlotLogRecord) records.get(0)).bitmapOffset;
+        Page page = bufferManager.fetchPage(new DummyLockContext(), rid0.getPageNum());
+        try {
+            page.getBuffer().position(bitmapOffset).put(new byte[inserted.length - bitmapOffset]);
+            page.setPageLSN(0L);
+        } finally {
+            page.unpin();
+        }
+        recoveryManager.dirtyPageTable.put(rid0.getPageNum(), records.get(0).getLSN());
+        recoveryManager.restartRedo();
+        assertEquals(6, redone.size());
+        assertArrayEquals(inserted, pageData(rid0.getPageNum()));
+
+        // without the CLRs, redo repeats the update and delete
+        for (int i = 0; i < 4; ++i) {
+            records.get(i).redo(recoveryManager, diskSpaceManager, bufferManager);
+        }
+        assertArrayEquals(changed, pageData(rid0.getPageNum()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testRollback() {
+        Record r0 = new Record(false, 0, "a", 1.2f);
+        Record r1 = new Record(true, 1, "b", 2.4f);
+        RecordId rid0 = table.addRecord(r0);
+        recoveryManager.savepoint(1L, "s");
+        RecordId rid1 = table.addRecord(r1);
+        table.updateRecord(rid0, new Record(false, 2, "c", 3.6f));
+        table.deleteRecord(rid1);
+        table.addRecord(r1);
+
+        // rolling back to the savepoint undoes the slot records after it, in reverse order
+        recoveryManager.rollbackToSavepoint(1L, "s");
+        List<LogRecord> records = slotRecords();
+        assertEquals(9, records.size());
+        assertEquals(LogType.UNDO_INSERT_SLOT, records.get(5).getType());
+        assertEquals(LogType.UNDO_DELETE_SLOT, records.get(6).getType());
+        assertEquals(LogType.UNDO_UPDATE_SLOT, records.get(7).getType());
+        assertEquals(LogType.UNDO_INSERT_SLOT, records.get(8).getType());
+        assertEquals(Arrays.asList(r0), tableRecords());
+
+        // a later change and the abort undo everything; changes already rolled back are
+        // not undone again, and the undos are not logged again as page writes
+        table.addRecord(r1);
+        long abortLSN = recoveryManager.abort(1L);
+        recoveryManager.end(1L);
+        records = slotRecords();
+        assertEquals(12, records.size());
+        assertEquals(LogType.UNDO_INSERT_SLOT, records.get(10).getType());
+        assertEquals(LogType.UNDO_INSERT_SLOT, records.get(11).getType());
+        assertEquals(records.get(0).getPrevLSN(), records.get(11).getUndoNextLSN());
+        assertEquals(Collections.emptyList(), tableRecords());
+        Iterator<LogRecord> iter = recoveryManager.logManager.scanFrom(abortLSN);
+        while (iter.hasNext()) {
+            LogRecord record = iter.next();
+            assertTrue(record.getType().toString(), record.getType() == LogType.ABORT_TRANSACTION
+                       || record.getType() == LogType.END_TRANSACTION || record.getType().toString().startsWith("UNDO_"));
+        }
+        assertFalse(recoveryManager.transactionTable.containsKey(1L));
+    }
+
+    // Slot records in the log, in log order.
+    private List<LogRecord> slotRecords() {
+        List<LogRecord> records = new ArrayList<>();
+        Iterator<LogRecord> iter = recoveryManager.logManager.iterator();
+        while (iter.hasNext()) {
+            LogRecord record = iter.next();
+            if (record.getType().toString().endsWith("_SLOT")) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private List<Record> tableRecords() {
+        List<Record> records = new ArrayList<>();
+        table.iterator().forEachRemaining(records::add);
+        return records;
+    }
+
+    private byte[] pageData(long pageNum) {
+        byte[] data = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        Page page = bufferManager.fetchPage(new DummyLockContext(), pageNum);
+        try {
+            page.getBuffer().get(data);
+        } finally {
+            page.unpin();
+        }
+        return data;
+    }
+}
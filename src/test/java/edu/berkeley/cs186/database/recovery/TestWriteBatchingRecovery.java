@@ -0,0 +1,156 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.Proj5Tests;
+import edu.berkeley.cs186.database.categories.PublicTests;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.concurrency.DummyTransactionContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.LRUEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+@Category({Proj5Tests.class})
+public class TestWriteBatchingRecovery {
+    private static final int NUM_PAGES = 4;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        DummyTransaction.cleanupTransactions();
+        LogRecord.onRedoHandler(t -> {
+        });
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testBatchedWritesRecover() throws IOException {
+        String unbatchedDir = tempFolder.newFolder("unbatched").getAbsolutePath();
+        String batchedDir = tempFolder.newFolder("batched").getAbsolutePath();
+        long[] unbatched = runWorkload(unbatchedDir, false);
+        long[] batched = runWorkload(batchedDir, true);
+
+        // without batching every field written is logged as its own record; with batching
+        // each page's writes are logged as one record when it is unpinned
+        assertEquals(100 * NUM_PAGES, unbatched[0]);
+        assertEquals(NUM_PAGES, batched[0]);
+        assertTrue(batched[1] < unbatched[1]);
+
+        // recovery restores the same pages either way: the committed writes are redone, and
+        // the writes of the transaction that did not commit are undone
+        byte[][] unbatchedPages = recover(unbatchedDir);
+        byte[][] batchedPages = recover(batchedDir);
+        for (int i = 0; i < NUM_PAGES; ++i) {
+            byte[] expected = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+            if (i < NUM_PAGES - 1) {
+                writeFields(expected, i);
+            }
+            assertArrayEquals(expected, unbatchedPages[i]);
+            assertArrayEquals(expected, batchedPages[i]);
+        }
+    }
+
+    /**
+     * Writes 50 fields to each page in one pin session, one int at a time: on the last page
+     * in a transaction that does not commit, and on the others in a transaction that commits. The commit
+     * flushes the log, and the database then "crashes": no data page is written back.
+     *
+     * @return the number of records and of bytes logged for the writes
+     */
+    private long[] runWorkload(String dir, boolean writeBatching) {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(dir, recoveryManager);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 32,
+                new LRUEvictionPolicy());
+        diskSpaceManager.allocPart(0);
+        diskSpaceManager.allocPart(1);
+        for (int i = 0; i < NUM_PAGES; ++i) {
+            diskSpaceManager.allocPage(DiskSpaceManager.getVirtualPageNum(1, i));
+        }
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        recoveryManager.initialize();
+        bufferManager.setWriteBatching(writeBatching);
+        recoveryManager.startTransaction(DummyTransaction.create(1L));
+        recoveryManager.startTransaction(DummyTransaction.create(2L));
+
+        LogManager logManager = recoveryManager.logManager;
+        long numRecords = logManager.getNumRecordsAppended();
+        long numBytes = logManager.getNumBytesAppended();
+        for (int i = 0; i < NUM_PAGES; ++i) {
+            TransactionContext.setTransaction(new DummyTransactionContext(null, i < NUM_PAGES - 1 ? 1L : 2L));
+            Page page = bufferManager.fetchPage(new DummyLockContext(), DiskSpaceManager.getVirtualPageNum(1, i));
+            try {
+                page.disableLocking();
+                for (int j = 0; j < 50; ++j) {
+                    page.getBuffer().position(j * 8).putInt(j + 1).putInt(i + 1);
+                }
+            } finally {
+                page.unpin();
+                TransactionContext.unsetTransaction();
+            }
+        }
+        long[] logged = new long[] {
+            logManager.getNumRecordsAppended() - numRecords,
+            logManager.getNumBytesAppended() - numBytes
+        };
+        recoveryManager.commit(1L);
+
+        // the log is flushed up to the commit record, but the data pages are lost
+        diskSpaceManager.close();
+        DummyTransaction.cleanupTransactions();
+        return logged;
+    }
+
+    // The 50 8-byte fields written to a page: two ints, the index of the field and of the
+    // page (plus one).
+    private static void writeFields(byte[] page, int pageIndex) {
+        for (int j = 0; j < 50; ++j) {
+            page[j * 8 + 3] = (byte) (j + 1);
+            page[j * 8 + 7] = (byte) (pageIndex + 1);
+        }
+    }
+
+    /**
+     * Runs restart recovery on the database in dir.
+     *
+     * @return the contents of the data pages after recovery
+     */
+    private byte[][] recover(String dir) {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManager(DummyTransaction::create);
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(dir, recoveryManager);
+        BufferManager bufferManager = new BufferManager(diskSpaceManager, recoveryManager, 32,
+                new LRUEvictionPolicy());
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        try {
+            recoveryManager.restart();
+            byte[][] pages = new byte[NUM_PAGES][BufferManager.EFFECTIVE_PAGE_SIZE];
+            for (int i = 0; i < NUM_PAGES; ++i) {
+                Page page = bufferManager.fetchPage(new DummyLockContext(), DiskSpaceManager.getVirtualPageNum(1, i));
+                try {
+                    page.disableLocking();
+                    page.getBuffer().get(pages[i]);
+                } finally {
+                    page.unpin();
+                }
+            }
+            return pages;
+        } finally {
+            recoveryManager.close();
+            bufferManager.close();
+            diskSpaceManager.close();
+            DummyTransaction.cleanupTransactions();
+        }
+    }
+}